@@ -189,11 +189,11 @@ __global__ void transform(float dt, int numTransformRows, float* input, int* ter
       transformRowIndex += numTransformRows;
     }
    
-    float dt_over_tau = dt / my_tau;
-    
+    // exact for input held over the step, as in the java DecodedTermination (zero-order hold)
+    float decay = 1 - expf(-dt / my_tau);
 
     int outputIndex = terminationOutputIndexor[i];
-    terminationOutput[outputIndex] = (1 - dt_over_tau) * terminationOutput[outputIndex] + dt_over_tau * dot_product;
+    terminationOutput[outputIndex] += decay * (dot_product - terminationOutput[outputIndex]);
   }
 }
 
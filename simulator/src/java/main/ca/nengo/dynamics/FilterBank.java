@@ -0,0 +1,73 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "FilterBank.java". Description:
+"A LinearSystem made up of identical single-input single-output filters, one per channel"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+/*
+ * Created on 17-Oct-2026
+ */
+package ca.nengo.dynamics;
+
+/**
+ * <p>A LinearSystem made up of identical single-input single-output filters, one per channel.
+ * Input i drives filter i, which produces output i. The state vector is the concatenation
+ * of the filters' states, and the filters share their coefficients, so that all channels can
+ * be advanced in one sweep over contiguous state.</p>
+ *
+ * <p>Vector-valued synapses (eg PSC dynamics applied to each dimension of a decoded input) are
+ * filter banks.</p>
+ */
+public interface FilterBank extends LinearSystem {
+
+	/**
+	 * @return Number of channels (the input and output dimension)
+	 */
+	public int getChannels();
+
+	/**
+	 * @return Number of state variables in each channel's filter
+	 */
+	public int getOrder();
+
+	/**
+	 * @param channel Index of a channel
+	 * @return A copy of the state of the given channel's filter
+	 */
+	public float[] getChannelState(int channel);
+
+	/**
+	 * @param channel Index of a channel
+	 * @param state New state of the given channel's filter (length getOrder())
+	 */
+	public void setChannelState(int channel, float[] state);
+
+	/**
+	 * Advances all channels over a time step, with input held constant over the step, and
+	 * updates the state.
+	 *
+	 * @param input Input to each channel over the step
+	 * @param dt Length of the step
+	 * @param output Array into which to write the output of each channel at the end of the step
+	 */
+	public void integrate(float[] input, float dt, float[] output);
+
+}
@@ -0,0 +1,307 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "LTIFilterBank.java". Description:
+"A FilterBank of identical LTI filters with shared coefficients and contiguous state"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+/*
+ * Created on 17-Oct-2026
+ */
+package ca.nengo.dynamics.impl;
+
+import ca.nengo.dynamics.FilterBank;
+import ca.nengo.model.Units;
+import ca.nengo.util.MU;
+
+/**
+ * <p>A FilterBank of identical LTI filters. The coefficients of the filter are shared by all
+ * channels, and the states of all channels are kept in one array (channel by channel), rather
+ * than in one LTISystem per channel.</p>
+ *
+ * <p>integrate(...) uses the exact zero-order hold equivalent of the filter (see ZeroOrderHold),
+ * which is found once per step size.</p>
+ */
+public class LTIFilterBank implements FilterBank {
+
+	private static final long serialVersionUID = 1L;
+
+	private LTISystem myFilter;
+	private int myChannels;
+	private int myOrder;
+	private float[][] myA;
+	private float[] myB;
+	private float[] myC;
+	private float myD;
+	private float[] myState;
+	private ZeroOrderHold myDiscreteFilter;
+	private float[] myNextState;
+
+	/**
+	 * @param filter A single-input single-output LTI filter. Each channel starts in the state of this filter.
+	 * @param channels Number of channels
+	 */
+	public LTIFilterBank(LTISystem filter, int channels) {
+		if (filter.getInputDimension() != 1 || filter.getOutputDimension() != 1) {
+			throw new IllegalArgumentException("Filter must be single-input single-output");
+		}
+
+		try {
+			myFilter = (LTISystem) filter.clone();
+		} catch (CloneNotSupportedException e) {
+			throw new RuntimeException(e);
+		}
+		myChannels = channels;
+		myA = MU.clone(filter.getA(0f));
+		myOrder = myA.length;
+		myB = MU.transpose(filter.getB(0f))[0];
+		myC = filter.getC(0f)[0].clone();
+		myD = filter.getD(0f)[0][0];
+
+		myState = new float[channels * myOrder];
+		float[] initial = filter.getState();
+		for (int i = 0; i < channels; i++) {
+			System.arraycopy(initial, 0, myState, i * myOrder, myOrder);
+		}
+	}
+
+	/**
+	 * @return A copy of the filter that is applied to each channel
+	 */
+	public LTISystem getFilter() {
+		try {
+			return (LTISystem) myFilter.clone();
+		} catch (CloneNotSupportedException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * @see ca.nengo.dynamics.FilterBank#getChannels()
+	 */
+	public int getChannels() {
+		return myChannels;
+	}
+
+	/**
+	 * @see ca.nengo.dynamics.FilterBank#getOrder()
+	 */
+	public int getOrder() {
+		return myOrder;
+	}
+
+	/**
+	 * @see ca.nengo.dynamics.FilterBank#getChannelState(int)
+	 */
+	public float[] getChannelState(int channel) {
+		float[] result = new float[myOrder];
+		System.arraycopy(myState, channel * myOrder, result, 0, myOrder);
+		return result;
+	}
+
+	/**
+	 * @see ca.nengo.dynamics.FilterBank#setChannelState(int, float[])
+	 */
+	public void setChannelState(int channel, float[] state) {
+		if (state.length != myOrder) {
+			throw new IllegalArgumentException("Channel state must have length " + myOrder);
+		}
+		System.arraycopy(state, 0, myState, channel * myOrder, myOrder);
+	}
+
+	/**
+	 * @see ca.nengo.dynamics.FilterBank#integrate(float[], float, float[])
+	 */
+	public void integrate(float[] input, float dt, float[] output) {
+		if (myDiscreteFilter == null || myDiscreteFilter.getStep() != dt) {
+			myDiscreteFilter = new ZeroOrderHold(myFilter, dt);
+		}
+		float[][] A = myDiscreteFilter.getA();
+		float[][] B = myDiscreteFilter.getB();
+		float[] x = myState;
+
+		if (myOrder == 1) {
+			float a = A[0][0];
+			float b = B[0][0];
+			float c = myC[0];
+			for (int i = 0; i < myChannels; i++) {
+				float u = input[i];
+				x[i] = a * x[i] + b * u;
+				output[i] = c * x[i] + myD * u;
+			}
+			return;
+		}
+
+		if (myNextState == null) {
+			myNextState = new float[myOrder];
+		}
+		float[] next = myNextState;
+		for (int i = 0, offset = 0; i < myChannels; i++, offset += myOrder) {
+			float u = input[i];
+			for (int j = 0; j < myOrder; j++) {
+				float sum = B[j][0] * u;
+				float[] row = A[j];
+				for (int k = 0; k < myOrder; k++) {
+					sum += row[k] * x[offset + k];
+				}
+				next[j] = sum;
+			}
+			float y = myD * u;
+			for (int j = 0; j < myOrder; j++) {
+				x[offset + j] = next[j];
+				y += myC[j] * next[j];
+			}
+			output[i] = y;
+		}
+	}
+
+	/**
+	 * @see ca.nengo.dynamics.DynamicalSystem#f(float, float[])
+	 */
+	public float[] f(float t, float[] u) {
+		float[] result = new float[myState.length];
+		for (int i = 0, offset = 0; i < myChannels; i++, offset += myOrder) {
+			for (int j = 0; j < myOrder; j++) {
+				float sum = myB[j] * u[i];
+				float[] row = myA[j];
+				for (int k = 0; k < myOrder; k++) {
+					sum += row[k] * myState[offset + k];
+				}
+				result[offset + j] = sum;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @see ca.nengo.dynamics.DynamicalSystem#g(float, float[])
+	 */
+	public float[] g(float t, float[] u) {
+		float[] result = new float[myChannels];
+		for (int i = 0, offset = 0; i < myChannels; i++, offset += myOrder) {
+			float sum = myD * u[i];
+			for (int j = 0; j < myOrder; j++) {
+				sum += myC[j] * myState[offset + j];
+			}
+			result[i] = sum;
+		}
+		return result;
+	}
+
+	/**
+	 * @return States of all channels, channel by channel (this is the internal array, which
+	 * 		is updated in place by integrate(...))
+	 * @see ca.nengo.dynamics.DynamicalSystem#getState()
+	 */
+	public float[] getState() {
+		return myState;
+	}
+
+	/**
+	 * @see ca.nengo.dynamics.DynamicalSystem#setState(float[])
+	 */
+	public void setState(float[] state) {
+		if (state.length != myState.length) {
+			throw new IllegalArgumentException("State must have length " + myState.length);
+		}
+		myState = state;
+	}
+
+	/**
+	 * @see ca.nengo.dynamics.DynamicalSystem#getInputDimension()
+	 */
+	public int getInputDimension() {
+		return myChannels;
+	}
+
+	/**
+	 * @see ca.nengo.dynamics.DynamicalSystem#getOutputDimension()
+	 */
+	public int getOutputDimension() {
+		return myChannels;
+	}
+
+	/**
+	 * @see ca.nengo.dynamics.DynamicalSystem#getOutputUnits(int)
+	 */
+	public Units getOutputUnits(int outputDimension) {
+		return myFilter.getOutputUnits(0);
+	}
+
+	/**
+	 * Note that this is a block-diagonal matrix with one block per channel, which is made on each call.
+	 *
+	 * @see ca.nengo.dynamics.LinearSystem#getA(float)
+	 */
+	public float[][] getA(float t) {
+		float[][] result = new float[myState.length][myState.length];
+		for (int i = 0, offset = 0; i < myChannels; i++, offset += myOrder) {
+			for (int j = 0; j < myOrder; j++) {
+				System.arraycopy(myA[j], 0, result[offset + j], offset, myOrder);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @see ca.nengo.dynamics.LinearSystem#getB(float)
+	 */
+	public float[][] getB(float t) {
+		float[][] result = new float[myState.length][myChannels];
+		for (int i = 0, offset = 0; i < myChannels; i++, offset += myOrder) {
+			for (int j = 0; j < myOrder; j++) {
+				result[offset + j][i] = myB[j];
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @see ca.nengo.dynamics.LinearSystem#getC(float)
+	 */
+	public float[][] getC(float t) {
+		float[][] result = new float[myChannels][myState.length];
+		for (int i = 0, offset = 0; i < myChannels; i++, offset += myOrder) {
+			System.arraycopy(myC, 0, result[i], offset, myOrder);
+		}
+		return result;
+	}
+
+	/**
+	 * @see ca.nengo.dynamics.LinearSystem#getD(float)
+	 */
+	public float[][] getD(float t) {
+		float[][] result = new float[myChannels][myChannels];
+		for (int i = 0; i < myChannels; i++) {
+			result[i][i] = myD;
+		}
+		return result;
+	}
+
+	@Override
+	public LTIFilterBank clone() throws CloneNotSupportedException {
+		LTIFilterBank result = (LTIFilterBank) super.clone();
+		result.myFilter = (LTISystem) myFilter.clone();
+		result.myState = myState.clone();
+		result.myNextState = null;
+		return result;
+	}
+
+}
@@ -0,0 +1,152 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "ZeroOrderHold.java". Description:
+"Exact discrete-time equivalent of an LTISystem with input held over each time step"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+/*
+ * Created on 17-Oct-2026
+ */
+package ca.nengo.dynamics.impl;
+
+import java.io.Serializable;
+
+import Jama.Matrix;
+
+import ca.nengo.util.MU;
+
+/**
+ * <p>The exact discrete-time equivalent of an LTISystem over a time step dt, if input is held
+ * constant over the step (zero-order hold):</p>
+ *
+ * <p>x(t+dt) = Ad x(t) + Bd u(t), where Ad = exp(A dt) and Bd = integral of exp(A s) B ds over [0, dt].</p>
+ *
+ * <p>Unlike a forward-Euler step, this is stable and exact for any step size, including time
+ * constants that are close to or smaller than dt. The output matrices C and D are unchanged.</p>
+ */
+public class ZeroOrderHold implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final float myStep;
+	private final float[][] myA;
+	private final float[][] myB;
+	private final float[][] myC;
+	private final float[][] myD;
+
+	/**
+	 * @param system A continuous-time LTISystem
+	 * @param dt Time step
+	 */
+	public ZeroOrderHold(LTISystem system, float dt) {
+		myStep = dt;
+
+		//Ad and Bd are blocks of the exponential of the augmented matrix [A B; 0 0] * dt
+		float[][] A = system.getA(0f);
+		float[][] B = system.getB(0f);
+		int n = A.length;
+		int m = B[0].length;
+		double[][] augmented = new double[n + m][n + m];
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				augmented[i][j] = A[i][j] * (double) dt;
+			}
+			for (int j = 0; j < m; j++) {
+				augmented[i][n + j] = B[i][j] * (double) dt;
+			}
+		}
+		Matrix exp = exp(new Matrix(augmented));
+
+		myA = MU.convert(exp.getMatrix(0, n - 1, 0, n - 1).getArray());
+		myB = MU.convert(exp.getMatrix(0, n - 1, n, n + m - 1).getArray());
+		myC = MU.clone(system.getC(0f));
+		myD = MU.clone(system.getD(0f));
+	}
+
+	/**
+	 * @return Time step over which the system is discretized
+	 */
+	public float getStep() {
+		return myStep;
+	}
+
+	/**
+	 * @return Discrete dynamics matrix Ad
+	 */
+	public float[][] getA() {
+		return myA;
+	}
+
+	/**
+	 * @return Discrete input matrix Bd
+	 */
+	public float[][] getB() {
+		return myB;
+	}
+
+	/**
+	 * @return Output matrix C
+	 */
+	public float[][] getC() {
+		return myC;
+	}
+
+	/**
+	 * @return Passthrough matrix D
+	 */
+	public float[][] getD() {
+		return myD;
+	}
+
+	/**
+	 * Matrix exponential by scaling and squaring, with a Taylor series for the scaled matrix.
+	 *
+	 * @param M A square matrix
+	 * @return exp(M)
+	 */
+	public static Matrix exp(Matrix M) {
+		//scale so that the norm is at most 1/2, where the series converges quickly
+		int squarings = 0;
+		double norm = M.normInf();
+		while (norm > .5) {
+			norm /= 2;
+			squarings++;
+		}
+		Matrix scaled = M.times(Math.pow(2, -squarings));
+
+		int n = M.getRowDimension();
+		Matrix result = Matrix.identity(n, n);
+		Matrix term = Matrix.identity(n, n);
+		for (int k = 1; k <= 20; k++) {
+			term = term.times(scaled).times(1d / k);
+			result.plusEquals(term);
+			if (term.normInf() <= 1e-17 * result.normInf()) {
+				break;
+			}
+		}
+
+		for (int i = 0; i < squarings; i++) {
+			result = result.times(result);
+		}
+		return result;
+	}
+
+}
@@ -0,0 +1,462 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "ArrayCache.java". Description:
+"A size-bounded, content-addressed disk cache of numeric arrays"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+/*
+ * Created on 17-Oct-2026
+ */
+
+package ca.nengo.io;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+/**
+ * <p>A disk cache of float and double matrices (eg neuron activities, GAMMA inverses, and decoders),
+ * addressed by a hash of the inputs from which they were computed (see Key). Expensive results can
+ * then be reused when the same computation comes up again, in the same model or a later run.</p>
+ *
+ * <p>Each entry is a file in a compact little-endian binary format. When the total size of the
+ * entries exceeds a limit, the least recently used ones are deleted.</p>
+ *
+ * <p>There is no cache by default. Model-building code uses the one set with setDefault().</p>
+ */
+public class ArrayCache {
+
+	private static Logger ourLogger = Logger.getLogger(ArrayCache.class);
+
+	private static final String EXTENSION = ".arr";
+	private static final int MAGIC = 0x31524E41; //"ANR1"
+	private static final byte FLOAT = 0;
+	private static final byte DOUBLE = 1;
+
+	private static volatile ArrayCache ourDefault;
+
+	private final File myDirectory;
+	private final long myMaxBytes;
+	private final LinkedHashMap<String, Long> myEntries; //in order of use, with sizes
+	private long myTotalBytes;
+
+	/**
+	 * @param directory Directory in which to keep entries (created if necessary)
+	 * @param maxBytes Maximum total size of entries
+	 */
+	public ArrayCache(File directory, long maxBytes) {
+		directory.mkdirs();
+		if (!directory.isDirectory()) {
+			throw new IllegalArgumentException("Can't use " + directory + " as a cache directory");
+		}
+		myDirectory = directory;
+		myMaxBytes = maxBytes;
+		myEntries = new LinkedHashMap<String, Long>(16, .75f, true);
+
+		//existing entries, least recently used first
+		File[] files = directory.listFiles();
+		Arrays.sort(files, new Comparator<File>() {
+			public int compare(File a, File b) {
+				long difference = a.lastModified() - b.lastModified();
+				return (difference < 0) ? -1 : (difference > 0 ? 1 : 0);
+			}
+		});
+		for (File file : files) {
+			String name = file.getName();
+			if (name.endsWith(EXTENSION)) {
+				myEntries.put(name.substring(0, name.length() - EXTENSION.length()), Long.valueOf(file.length()));
+				myTotalBytes += file.length();
+			}
+		}
+		evict();
+	}
+
+	/**
+	 * @param cache Cache used by model-building code (null for none)
+	 */
+	public static void setDefault(ArrayCache cache) {
+		ourDefault = cache;
+	}
+
+	/**
+	 * @return Cache used by model-building code, or null if there is none
+	 */
+	public static ArrayCache getDefault() {
+		return ourDefault;
+	}
+
+	/**
+	 * @return Directory in which entries are kept
+	 */
+	public File getDirectory() {
+		return myDirectory;
+	}
+
+	/**
+	 * @return Maximum total size of entries
+	 */
+	public long getMaxBytes() {
+		return myMaxBytes;
+	}
+
+	/**
+	 * @return Total size of entries
+	 */
+	public synchronized long getTotalBytes() {
+		return myTotalBytes;
+	}
+
+	/**
+	 * @param key Key of an entry
+	 * @return True if there is an entry with the given key
+	 */
+	public synchronized boolean contains(String key) {
+		return myEntries.containsKey(key);
+	}
+
+	/**
+	 * @param key Key of an entry
+	 * @return The stored matrix, or null if there is no float entry with this key
+	 */
+	public float[][] getFloats(String key) {
+		ByteBuffer buffer = read(key, FLOAT);
+		if (buffer == null) {
+			return null;
+		}
+		float[][] result = new float[buffer.getInt()][];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = new float[buffer.getInt()];
+			buffer.asFloatBuffer().get(result[i]);
+			buffer.position(buffer.position() + 4 * result[i].length);
+		}
+		return result;
+	}
+
+	/**
+	 * @param key Key of an entry
+	 * @return The stored matrix, or null if there is no double entry with this key
+	 */
+	public double[][] getDoubles(String key) {
+		ByteBuffer buffer = read(key, DOUBLE);
+		if (buffer == null) {
+			return null;
+		}
+		double[][] result = new double[buffer.getInt()][];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = new double[buffer.getInt()];
+			buffer.asDoubleBuffer().get(result[i]);
+			buffer.position(buffer.position() + 8 * result[i].length);
+		}
+		return result;
+	}
+
+	/**
+	 * @param key Key of the entry
+	 * @param matrix Matrix to store (rows may have different lengths)
+	 */
+	public void put(String key, float[][] matrix) {
+		int length = 13 + 4 * matrix.length;
+		for (float[] row : matrix) {
+			length += 4 * row.length;
+		}
+		ByteBuffer buffer = newBuffer(length, FLOAT, matrix.length);
+		for (float[] row : matrix) {
+			buffer.putInt(row.length);
+			buffer.asFloatBuffer().put(row);
+			buffer.position(buffer.position() + 4 * row.length);
+		}
+		write(key, buffer);
+	}
+
+	/**
+	 * @param key Key of the entry
+	 * @param matrix Matrix to store (rows may have different lengths)
+	 */
+	public void put(String key, double[][] matrix) {
+		int length = 13 + 4 * matrix.length;
+		for (double[] row : matrix) {
+			length += 8 * row.length;
+		}
+		ByteBuffer buffer = newBuffer(length, DOUBLE, matrix.length);
+		for (double[] row : matrix) {
+			buffer.putInt(row.length);
+			buffer.asDoubleBuffer().put(row);
+			buffer.position(buffer.position() + 8 * row.length);
+		}
+		write(key, buffer);
+	}
+
+	/**
+	 * Deletes all entries.
+	 */
+	public synchronized void clear() {
+		for (String key : myEntries.keySet()) {
+			getFile(key).delete();
+		}
+		myEntries.clear();
+		myTotalBytes = 0;
+	}
+
+	private static ByteBuffer newBuffer(int length, byte type, int rows) {
+		ByteBuffer result = ByteBuffer.allocate(length);
+		result.order(ByteOrder.LITTLE_ENDIAN);
+		result.putInt(MAGIC);
+		result.put(type);
+		result.putInt(length);
+		result.putInt(rows);
+		return result;
+	}
+
+	private File getFile(String key) {
+		return new File(myDirectory, key + EXTENSION);
+	}
+
+	private synchronized ByteBuffer read(String key, byte type) {
+		//get() rather than containsKey() so that the entry becomes the most recently used
+		if (myEntries.get(key) == null) {
+			return null;
+		}
+
+		File file = getFile(key);
+		try {
+			FileChannel channel = new FileInputStream(file).getChannel();
+			ByteBuffer buffer;
+			try {
+				buffer = ByteBuffer.allocate((int) channel.size());
+				while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+				}
+			} finally {
+				channel.close();
+			}
+			buffer.flip();
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+			if (buffer.remaining() < 13 || buffer.getInt() != MAGIC || buffer.getInt(5) != buffer.limit()) {
+				throw new IOException("Invalid or incomplete cache entry");
+			}
+			if (buffer.get() != type) {
+				return null;
+			}
+			buffer.getInt();
+
+			file.setLastModified(System.currentTimeMillis());
+			return buffer;
+		} catch (IOException e) {
+			ourLogger.warn("Discarding cache entry " + file.getAbsolutePath() + ": " + e.getMessage());
+			remove(key);
+			return null;
+		}
+	}
+
+	private synchronized void write(String key, ByteBuffer buffer) {
+		//written to a temporary file first, so that an interrupted write doesn't leave a partial entry
+		File file = getFile(key);
+		File temp = new File(myDirectory, key + ".tmp");
+		try {
+			buffer.flip();
+			FileChannel channel = new FileOutputStream(temp).getChannel();
+			try {
+				while (buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+			} finally {
+				channel.close();
+			}
+			if (myEntries.containsKey(key)) {
+				remove(key);
+			}
+			if (!temp.renameTo(file)) {
+				throw new IOException("Can't rename " + temp + " to " + file);
+			}
+			myEntries.put(key, Long.valueOf(file.length()));
+			myTotalBytes += file.length();
+			evict();
+		} catch (IOException e) {
+			temp.delete();
+			ourLogger.warn("Can't write cache entry " + file.getAbsolutePath() + ": " + e.getMessage());
+		}
+	}
+
+	private void remove(String key) {
+		Long size = myEntries.remove(key);
+		if (size != null) {
+			myTotalBytes -= size.longValue();
+		}
+		getFile(key).delete();
+	}
+
+	//deletes least recently used entries until the total size is within the limit
+	private void evict() {
+		Iterator<Map.Entry<String, Long>> it = myEntries.entrySet().iterator();
+		while (myTotalBytes > myMaxBytes && it.hasNext()) {
+			Map.Entry<String, Long> entry = it.next();
+			getFile(entry.getKey()).delete();
+			myTotalBytes -= entry.getValue().longValue();
+			it.remove();
+		}
+	}
+
+	/**
+	 * <p>Builds a cache key from a hash (SHA-1) of the data from which an entry is computed.
+	 * Objects other than strings, numbers, and arrays are hashed by their serialized form.</p>
+	 */
+	public static class Key {
+
+		private MessageDigest myDigest;
+		private boolean myValid;
+		private ByteBuffer myBuffer;
+
+		/**
+		 * @param kind Kind of entry (eg "activities"), so that different kinds of data from the
+		 * 		same inputs have different keys
+		 */
+		public Key(String kind) {
+			try {
+				myDigest = MessageDigest.getInstance("SHA-1");
+			} catch (NoSuchAlgorithmException e) {
+				throw new RuntimeException(e);
+			}
+			myValid = true;
+			myBuffer = ByteBuffer.allocate(8 * 1024);
+			add(kind);
+		}
+
+		/**
+		 * @param value A string
+		 * @return This key
+		 */
+		public Key add(String value) {
+			try {
+				byte[] bytes = value.getBytes("UTF-8");
+				add(bytes.length);
+				myDigest.update(bytes);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+			return this;
+		}
+
+		/**
+		 * @param value An integer
+		 * @return This key
+		 */
+		public Key add(long value) {
+			myBuffer.clear();
+			myBuffer.putLong(value);
+			myDigest.update(myBuffer.array(), 0, 8);
+			return this;
+		}
+
+		/**
+		 * @param value A floating-point number
+		 * @return This key
+		 */
+		public Key add(double value) {
+			return add(Double.doubleToLongBits(value));
+		}
+
+		/**
+		 * @param values A vector
+		 * @return This key
+		 */
+		public Key add(float[] values) {
+			add(values.length);
+			for (int i = 0; i < values.length; ) {
+				myBuffer.clear();
+				int end = Math.min(values.length, i + myBuffer.capacity() / 4);
+				for (; i < end; i++) {
+					myBuffer.putFloat(values[i]);
+				}
+				myDigest.update(myBuffer.array(), 0, myBuffer.position());
+			}
+			return this;
+		}
+
+		/**
+		 * @param values A matrix
+		 * @return This key
+		 */
+		public Key add(float[][] values) {
+			add(values.length);
+			for (float[] row : values) {
+				add(row);
+			}
+			return this;
+		}
+
+		/**
+		 * @param value A Serializable object (if it or anything it refers to can't be serialized,
+		 * 		the key becomes invalid)
+		 * @return This key
+		 */
+		public Key addObject(Object value) {
+			try {
+				ObjectOutputStream out = new ObjectOutputStream(new OutputStream() {
+					public void write(int b) {
+						myDigest.update((byte) b);
+					}
+					public void write(byte[] b, int off, int len) {
+						myDigest.update(b, off, len);
+					}
+				});
+				out.writeObject(value);
+				out.close();
+			} catch (IOException e) {
+				myValid = false;
+			}
+			return this;
+		}
+
+		/**
+		 * Finishes the key (nothing more should be added).
+		 *
+		 * @return The key, or null if something added to it couldn't be hashed
+		 */
+		public String getKey() {
+			if (!myValid) {
+				return null;
+			}
+			byte[] hash = myDigest.digest();
+			StringBuffer result = new StringBuffer(hash.length * 2);
+			for (byte b : hash) {
+				result.append(Character.forDigit((b >> 4) & 0xF, 16));
+				result.append(Character.forDigit(b & 0xF, 16));
+			}
+			return result.toString();
+		}
+	}
+
+}
@@ -0,0 +1,332 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "BinaryTimeSeriesReader.java". Description:
+"Reads time series from files written by BinaryTimeSeriesWriter"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+/*
+ * Created on 17-Oct-2026
+ */
+
+package ca.nengo.io;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+import ca.nengo.model.Units;
+import ca.nengo.util.TimeSeries;
+import ca.nengo.util.impl.TimeSeriesImpl;
+
+/**
+ * <p>Reads time series from files written by BinaryTimeSeriesWriter.</p>
+ *
+ * <p>Only the header is read when the file is opened. Frames are read from the file as they
+ * are needed, so that one series (or one sample) can be read from a large recording without
+ * loading the others. A partial frame at the end of the file (e.g. if a simulation was
+ * interrupted) is ignored.</p>
+ */
+public class BinaryTimeSeriesReader {
+
+	private static final int BLOCK_BYTES = 1 << 16;
+
+	private FileChannel myChannel;
+	private String[] myNames;
+	private Units[][] myUnits;
+	private String[][] myLabels;
+	private int[] myOffsets;
+	private int myFrameBytes;
+	private long myDataStart;
+	private int myLength;
+
+	/**
+	 * @param file A file written by BinaryTimeSeriesWriter
+	 * @throws IOException if the file can't be read or isn't in the expected format
+	 */
+	public BinaryTimeSeriesReader(File file) throws IOException {
+		myChannel = new FileInputStream(file).getChannel();
+		try {
+			readHeader();
+		} catch (IOException e) {
+			myChannel.close();
+			throw e;
+		}
+	}
+
+	private void readHeader() throws IOException {
+		long size = myChannel.size();
+		int headerBytes = (int) Math.min(size, 4096);
+		while (true) {
+			ByteBuffer buffer = read(0, headerBytes);
+			try {
+				parseHeader(buffer);
+				myDataStart = buffer.position();
+				break;
+			} catch (BufferUnderflowException e) {
+				if (headerBytes >= size) {
+					throw new IOException("File ends within header");
+				}
+				headerBytes = (int) Math.min(size, 2L * headerBytes);
+			}
+		}
+
+		long frames = (size - myDataStart) / myFrameBytes;
+		if (frames > Integer.MAX_VALUE) {
+			throw new IOException("File has too many frames to read as a TimeSeries");
+		}
+		myLength = (int) frames;
+	}
+
+	private void parseHeader(ByteBuffer buffer) throws IOException {
+		if (buffer.getInt() != BinaryTimeSeriesWriter.MAGIC) {
+			throw new IOException("Not a binary time series file");
+		}
+		int version = buffer.getInt();
+		if (version != BinaryTimeSeriesWriter.VERSION) {
+			throw new IOException("Unsupported file version: " + version);
+		}
+
+		int numSeries = buffer.getInt();
+		myNames = new String[numSeries];
+		myUnits = new Units[numSeries][];
+		myLabels = new String[numSeries][];
+		myOffsets = new int[numSeries];
+		myFrameBytes = 4;
+		for (int i = 0; i < numSeries; i++) {
+			myNames[i] = getString(buffer);
+			int dimension = buffer.getInt();
+			myUnits[i] = new Units[dimension];
+			myLabels[i] = new String[dimension];
+			for (int j = 0; j < dimension; j++) {
+				String units = getString(buffer);
+				try {
+					myUnits[i][j] = Units.valueOf(units);
+				} catch (IllegalArgumentException e) {
+					myUnits[i][j] = Units.UNK;
+				}
+				myLabels[i][j] = getString(buffer);
+			}
+			myOffsets[i] = myFrameBytes;
+			myFrameBytes += 4 * dimension;
+		}
+	}
+
+	private static String getString(ByteBuffer buffer) throws IOException {
+		int length = buffer.getInt();
+		if (length < 0) {
+			throw new IOException("Invalid header");
+		}
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, "UTF-8");
+	}
+
+	//reads the given range of the file into a little-endian buffer
+	private ByteBuffer read(long position, int length) throws IOException {
+		ByteBuffer result = ByteBuffer.allocate(length);
+		result.order(ByteOrder.LITTLE_ENDIAN);
+		while (result.hasRemaining()) {
+			if (myChannel.read(result, position + result.position()) < 0) {
+				throw new IOException("Unexpected end of file");
+			}
+		}
+		result.flip();
+		return result;
+	}
+
+	/**
+	 * @return Number of series in the file
+	 */
+	public int getNumSeries() {
+		return myNames.length;
+	}
+
+	/**
+	 * @return Number of complete frames (samples) in the file
+	 */
+	public int getLength() {
+		return myLength;
+	}
+
+	/**
+	 * @param sample Index of a sample
+	 * @return Time of the sample
+	 * @throws IOException if there is a problem reading the file
+	 */
+	public float getTime(int sample) throws IOException {
+		checkSample(sample);
+		return read(myDataStart + (long) sample * myFrameBytes, 4).getFloat();
+	}
+
+	/**
+	 * @param sample Index of a sample
+	 * @param series Index of a series
+	 * @return Values of the series at the given sample
+	 * @throws IOException if there is a problem reading the file
+	 */
+	public float[] getValues(int sample, int series) throws IOException {
+		checkSample(sample);
+		float[] result = new float[myUnits[series].length];
+		ByteBuffer buffer = read(myDataStart + (long) sample * myFrameBytes + myOffsets[series], 4 * result.length);
+		for (int i = 0; i < result.length; i++) {
+			result[i] = buffer.getFloat();
+		}
+		return result;
+	}
+
+	private void checkSample(int sample) {
+		if (sample < 0 || sample >= myLength) {
+			throw new IndexOutOfBoundsException("Sample " + sample + " of " + myLength);
+		}
+	}
+
+	/**
+	 * @param series Index of a series
+	 * @return The series as a TimeSeries that reads from this file when its times or
+	 * 		values are first requested (only that series' values are read)
+	 */
+	public TimeSeries getSeries(int series) {
+		return new Series(this, series);
+	}
+
+	/**
+	 * Reads the times and given series' values in blocks of frames.
+	 */
+	private void readColumns(float[] times, float[][] values, int series) throws IOException {
+		int framesPerBlock = Math.max(1, BLOCK_BYTES / myFrameBytes);
+		for (int start = 0; start < myLength; start += framesPerBlock) {
+			int frames = Math.min(framesPerBlock, myLength - start);
+			ByteBuffer buffer = read(myDataStart + (long) start * myFrameBytes, frames * myFrameBytes);
+			for (int i = 0; i < frames; i++) {
+				int frameStart = i * myFrameBytes;
+				if (times != null) {
+					times[start + i] = buffer.getFloat(frameStart);
+				}
+				if (values != null) {
+					float[] sample = new float[myUnits[series].length];
+					for (int j = 0; j < sample.length; j++) {
+						sample[j] = buffer.getFloat(frameStart + myOffsets[series] + 4*j);
+					}
+					values[start + i] = sample;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Closes the file. Series that have already read their data remain usable.
+	 *
+	 * @throws IOException if there is a problem closing the file
+	 */
+	public void close() throws IOException {
+		myChannel.close();
+	}
+
+	/**
+	 * A series in a binary file, which is read on first use.
+	 */
+	private static class Series implements TimeSeries {
+
+		private static final long serialVersionUID = 1L;
+
+		private transient BinaryTimeSeriesReader myReader;
+		private int mySeries;
+		private String myName;
+		private Units[] myUnits;
+		private String[] myLabels;
+		private float[] myTimes;
+		private float[][] myValues;
+
+		public Series(BinaryTimeSeriesReader reader, int series) {
+			myReader = reader;
+			mySeries = series;
+			myName = reader.myNames[series];
+			myUnits = reader.myUnits[series];
+			myLabels = reader.myLabels[series];
+		}
+
+		public String getName() {
+			return myName;
+		}
+
+		public float[] getTimes() {
+			if (myTimes == null) {
+				float[] times = new float[myReader.getLength()];
+				try {
+					myReader.readColumns(times, null, mySeries);
+				} catch (IOException e) {
+					throw new IllegalStateException("Can't read times of " + myName, e);
+				}
+				myTimes = times;
+			}
+			return myTimes;
+		}
+
+		public float[][] getValues() {
+			if (myValues == null) {
+				float[][] values = new float[myReader.getLength()][];
+				try {
+					myReader.readColumns(null, values, mySeries);
+				} catch (IOException e) {
+					throw new IllegalStateException("Can't read values of " + myName, e);
+				}
+				myValues = values;
+			}
+			return myValues;
+		}
+
+		public int getDimension() {
+			return myUnits.length;
+		}
+
+		public Units[] getUnits() {
+			return myUnits;
+		}
+
+		public String[] getLabels() {
+			return myLabels;
+		}
+
+		@Override
+		public TimeSeries clone() throws CloneNotSupportedException {
+			float[][] values = getValues();
+			float[][] valuesCopy = new float[values.length][];
+			for (int i = 0; i < values.length; i++) {
+				valuesCopy[i] = values[i].clone();
+			}
+			TimeSeriesImpl result = new TimeSeriesImpl(getTimes().clone(), valuesCopy, myUnits.clone(), myLabels.clone());
+			result.setName(myName);
+			return result;
+		}
+
+		//reads everything before serializing, since the file isn't carried along
+		private void writeObject(java.io.ObjectOutputStream out) throws IOException {
+			getTimes();
+			getValues();
+			out.defaultWriteObject();
+		}
+	}
+
+}
@@ -0,0 +1,223 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "BinaryTimeSeriesWriter.java". Description:
+"Streams samples of one or more time series to a binary file"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+/*
+ * Created on 17-Oct-2026
+ */
+
+package ca.nengo.io;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+import ca.nengo.model.Units;
+
+/**
+ * <p>Appends samples of one or more time series to a binary file as they are produced, so that
+ * long simulations can be recorded without keeping their history in memory.</p>
+ *
+ * <p>The file starts with a header that gives the name, dimension, units, and labels of each
+ * series. This is followed by one fixed-width frame per sample, which consists of the sample time
+ * and then the values of each series in order, all as little-endian 32-bit floats. Frames are
+ * collected in a buffer and written in batches. Files can be read with BinaryTimeSeriesReader.</p>
+ */
+public class BinaryTimeSeriesWriter {
+
+	/**
+	 * Identifies files written by this class ("NTS1" in ASCII)
+	 */
+	public static final int MAGIC = 0x3153544E;
+
+	/**
+	 * Version of the file format
+	 */
+	public static final int VERSION = 1;
+
+	private static final int DEFAULT_BATCH_BYTES = 1 << 16;
+
+	private FileChannel myChannel;
+	private ByteBuffer myBuffer;
+	private int[] myDimensions;
+	private int myFrameBytes;
+	private long myFrames;
+
+	/**
+	 * Uses a 64KB batch.
+	 *
+	 * @param file File to write (overwritten if it exists)
+	 * @param names Name of each series
+	 * @param units Units of each dimension of each series (the length of each array sets the series' dimension)
+	 * @param labels Labels of each dimension of each series (may be null, in which case dimensions are numbered)
+	 * @throws IOException if the file can't be opened
+	 */
+	public BinaryTimeSeriesWriter(File file, String[] names, Units[][] units, String[][] labels) throws IOException {
+		this(file, names, units, labels, DEFAULT_BATCH_BYTES);
+	}
+
+	/**
+	 * @param file File to write (overwritten if it exists)
+	 * @param names Name of each series
+	 * @param units Units of each dimension of each series (the length of each array sets the series' dimension)
+	 * @param labels Labels of each dimension of each series (may be null, in which case dimensions are numbered)
+	 * @param batchBytes Approximate number of bytes to collect before writing to the file
+	 * @throws IOException if the file can't be opened
+	 */
+	public BinaryTimeSeriesWriter(File file, String[] names, Units[][] units, String[][] labels, int batchBytes) throws IOException {
+		if (names.length != units.length || (labels != null && labels.length != units.length)) {
+			throw new IllegalArgumentException("Expected the same number of names, units, and labels");
+		}
+
+		myDimensions = new int[units.length];
+		myFrameBytes = 4;
+		for (int i = 0; i < units.length; i++) {
+			if (labels != null && labels[i].length != units[i].length) {
+				throw new IllegalArgumentException("Expected a label for each dimension of series " + names[i]);
+			}
+			myDimensions[i] = units[i].length;
+			myFrameBytes += 4 * units[i].length;
+		}
+
+		byte[] header = makeHeader(names, units, labels);
+		myBuffer = ByteBuffer.allocate(Math.max(Math.max(batchBytes, myFrameBytes), header.length));
+		myBuffer.order(ByteOrder.LITTLE_ENDIAN);
+		myBuffer.put(header);
+
+		myChannel = new FileOutputStream(file).getChannel();
+		myFrames = 0;
+	}
+
+	private static byte[] makeHeader(String[] names, Units[][] units, String[][] labels) throws IOException {
+		byte[][] strings = new byte[names.length][];
+		byte[][][] unitStrings = new byte[names.length][][];
+		byte[][][] labelStrings = new byte[names.length][][];
+
+		int length = 12;
+		for (int i = 0; i < names.length; i++) {
+			strings[i] = names[i].getBytes("UTF-8");
+			length += 8 + strings[i].length;
+
+			unitStrings[i] = new byte[units[i].length][];
+			labelStrings[i] = new byte[units[i].length][];
+			for (int j = 0; j < units[i].length; j++) {
+				unitStrings[i][j] = units[i][j].name().getBytes("UTF-8");
+				String label = (labels == null) ? String.valueOf(j+1) : labels[i][j];
+				labelStrings[i][j] = label.getBytes("UTF-8");
+				length += 8 + unitStrings[i][j].length + labelStrings[i][j].length;
+			}
+		}
+
+		ByteBuffer result = ByteBuffer.allocate(length);
+		result.order(ByteOrder.LITTLE_ENDIAN);
+		result.putInt(MAGIC);
+		result.putInt(VERSION);
+		result.putInt(names.length);
+		for (int i = 0; i < names.length; i++) {
+			putString(result, strings[i]);
+			result.putInt(units[i].length);
+			for (int j = 0; j < units[i].length; j++) {
+				putString(result, unitStrings[i][j]);
+				putString(result, labelStrings[i][j]);
+			}
+		}
+		return result.array();
+	}
+
+	private static void putString(ByteBuffer buffer, byte[] string) {
+		buffer.putInt(string.length);
+		buffer.put(string);
+	}
+
+	/**
+	 * Appends a frame.
+	 *
+	 * @param time Time of the sample
+	 * @param values Values of each series at the given time
+	 * @throws IOException if there is a problem writing to the file
+	 */
+	public void write(float time, float[][] values) throws IOException {
+		if (myChannel == null) {
+			throw new IOException("Writer is closed");
+		}
+		if (values.length != myDimensions.length) {
+			throw new IllegalArgumentException("Expected values for " + myDimensions.length + " series");
+		}
+		for (int i = 0; i < values.length; i++) {
+			if (values[i].length != myDimensions[i]) {
+				throw new IllegalArgumentException("Expected series " + i + " to have dimension " + myDimensions[i]);
+			}
+		}
+
+		if (myBuffer.remaining() < myFrameBytes) {
+			flush();
+		}
+		myBuffer.putFloat(time);
+		for (int i = 0; i < values.length; i++) {
+			for (int j = 0; j < values[i].length; j++) {
+				myBuffer.putFloat(values[i][j]);
+			}
+		}
+		myFrames++;
+	}
+
+	/**
+	 * @return Number of frames written so far
+	 */
+	public long getNumFrames() {
+		return myFrames;
+	}
+
+	/**
+	 * Writes any buffered frames to the file.
+	 *
+	 * @throws IOException if there is a problem writing to the file
+	 */
+	public void flush() throws IOException {
+		myBuffer.flip();
+		while (myBuffer.hasRemaining()) {
+			myChannel.write(myBuffer);
+		}
+		myBuffer.clear();
+	}
+
+	/**
+	 * Writes any buffered frames and closes the file. Further calls have no effect.
+	 *
+	 * @throws IOException if there is a problem writing to the file
+	 */
+	public void close() throws IOException {
+		if (myChannel != null) {
+			try {
+				flush();
+			} finally {
+				myChannel.close();
+				myChannel = null;
+			}
+		}
+	}
+
+}
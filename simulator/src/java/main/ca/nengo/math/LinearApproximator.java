@@ -54,6 +54,15 @@ public interface LinearApproximator extends Serializable, Cloneable {
 	 */
 	public float[] findCoefficients(Function target);
 
+	/**
+	 * Finds coefficients for several target functions. This gives the same result as calling
+	 * findCoefficients(Function) for each target, but implementations may share work among targets.
+	 *
+	 * @param targets Functions to approximate
+	 * @return coefficients for each target (the first index is the target)
+	 */
+	public float[][] findCoefficients(Function[] targets);
+
 	/**
 	 * @return Valid clone
 	 * @throws CloneNotSupportedException if clone can't be made
@@ -27,16 +27,27 @@ a recipient may use your version of this file under either the MPL or the GPL Li
  */
 package ca.nengo.math;
 
-import java.util.Random;
-
 /**
  * Convenience methods for using PDFs. 
  * 
+ * <p>Random numbers are drawn from a RandomStream that belongs to the calling thread, so that
+ * threads don't contend for a shared generator. A simulation can also give each part of a model
+ * its own stream (see setStream(RandomStream)), so that a given seed reproduces the same
+ * results however the parts are distributed among threads.</p>
+ * 
  * @author Bryan Tripp
  */
 public class PDFTools {
 	
-	private static final Random ourRandom = new Random();
+	private static RandomStream ourRoot = new RandomStream(System.nanoTime());
+	private static volatile int ourGeneration = 0;
+
+	private static final ThreadLocal<StreamHolder> ourStreams = new ThreadLocal<StreamHolder>() {
+		@Override
+		protected StreamHolder initialValue() {
+			return new StreamHolder();
+		}
+	};
 
 	/**
 	 * Note: PDF treated as univariate (only first dimension considered). 
@@ -76,14 +87,64 @@ public class PDFTools {
 	 * @return A random sample between 0 and 1
 	 */
 	public static double random() {
-		return ourRandom.nextDouble();
+		return getStream().nextDouble();
 	}
 	
 	/**
-	 * @param seed New random seed for random()
+	 * @param seed New random seed for random(). The calling thread's stream is restarted from
+	 * 		this seed, and streams of other threads are split off it when they next draw.
 	 */
 	public static void setSeed(long seed) {
-		ourRandom.setSeed(seed);
+		synchronized (PDFTools.class) {
+			ourRoot = new RandomStream(seed);
+			ourGeneration++;
+		}
+		StreamHolder holder = ourStreams.get();
+		holder.myDefault = splitRoot(holder);
+	}
+	
+	/**
+	 * @return The stream from which random() draws in the calling thread
+	 */
+	public static RandomStream getStream() {
+		StreamHolder holder = ourStreams.get();
+		if (holder.myStream != null) {
+			return holder.myStream;
+		}
+		if (holder.myDefault == null || holder.myGeneration != ourGeneration) {
+			holder.myDefault = splitRoot(holder);
+		}
+		return holder.myDefault;
+	}
+	
+	/**
+	 * @param stream Stream from which random() is to draw in the calling thread (null to go back
+	 * 		to the thread's own stream)
+	 * @return The stream that was previously set, if any, so that it can be restored
+	 */
+	public static RandomStream setStream(RandomStream stream) {
+		StreamHolder holder = ourStreams.get();
+		RandomStream previous = holder.myStream;
+		holder.myStream = stream;
+		return previous;
+	}
+	
+	/**
+	 * @return A new stream, split off the calling thread's current stream
+	 */
+	public static RandomStream split() {
+		return getStream().split();
+	}
+	
+	private static synchronized RandomStream splitRoot(StreamHolder holder) {
+		holder.myGeneration = ourGeneration;
+		return ourRoot.split();
+	}
+	
+	private static class StreamHolder {
+		private RandomStream myStream;
+		private RandomStream myDefault;
+		private int myGeneration;
 	}
 	
 }
@@ -0,0 +1,48 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "PseudoInverseSolver.java". Description:
+"Computes pseudo-inverses of matrices"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+/*
+ * Created on 17-Oct-2026
+ */
+
+package ca.nengo.math;
+
+import java.io.Serializable;
+
+/**
+ * Computes (possibly regularized or truncated) pseudo-inverses of matrices, eg the GAMMA matrix
+ * from which decoders are found. Implementations differ in speed, and in how they treat small
+ * singular values.
+ */
+public interface PseudoInverseSolver extends Serializable {
+
+	/**
+	 * @param matrix Any matrix (implementations may require a square or symmetric one)
+	 * @param minSV Hint as to smallest singular value to use (or amount of regularization)
+	 * @param nSV Max number of singular values to use (unlimited if 0 or less)
+	 * @return The pseudoinverse of the given matrix
+	 */
+	public double[][] pseudoInverse(double[][] matrix, float minSV, int nSV);
+
+}
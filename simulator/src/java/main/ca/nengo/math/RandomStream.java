@@ -0,0 +1,117 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "RandomStream.java". Description:
+"A fast, splittable stream of pseudo-random numbers"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+/*
+ * Created on 17-Oct-2026
+ */
+package ca.nengo.math;
+
+import java.util.Random;
+
+/**
+ * <p>A stream of pseudo-random numbers that can be split into independent streams. This
+ * is the SplitMix64 generator of Steele, Lea &amp; Flood (2014), which is also behind
+ * java.util.SplittableRandom in later JDKs.</p>
+ *
+ * <p>Unlike java.util.Random, a RandomStream is not thread-safe. It is meant to be used by one
+ * thread at a time (see PDFTools.setStream(RandomStream)), so draws don't contend with each other,
+ * and a stream that is split off deterministically produces the same numbers whichever thread
+ * uses it.</p>
+ */
+public class RandomStream extends Random {
+
+	private static final long serialVersionUID = 1L;
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+	private static final double DOUBLE_UNIT = 1.0 / (1L << 53);
+
+	private long myState;
+	private long myGamma;
+
+	/**
+	 * @param seed Random seed
+	 */
+	public RandomStream(long seed) {
+		this(seed, GOLDEN_GAMMA);
+	}
+
+	private RandomStream(long seed, long gamma) {
+		super(0);
+		myState = seed;
+		myGamma = gamma;
+	}
+
+	/**
+	 * @return A new stream that is statistically independent of this one. Its seed is drawn from
+	 * 		this stream, so a sequence of splits is reproducible.
+	 */
+	public RandomStream split() {
+		return new RandomStream(mix64(nextSeed()), mixGamma(nextSeed()));
+	}
+
+	/**
+	 * Resets this stream as if it had been created with the given seed.
+	 *
+	 * @see java.util.Random#setSeed(long)
+	 */
+	@Override
+	public void setSeed(long seed) {
+		super.setSeed(seed); //clears the cached Gaussian
+		myState = seed;
+		myGamma = GOLDEN_GAMMA;
+	}
+
+	@Override
+	protected int next(int bits) {
+		return (int) (mix64(nextSeed()) >>> (64 - bits));
+	}
+
+	@Override
+	public long nextLong() {
+		return mix64(nextSeed());
+	}
+
+	@Override
+	public double nextDouble() {
+		return (mix64(nextSeed()) >>> 11) * DOUBLE_UNIT;
+	}
+
+	private long nextSeed() {
+		return (myState += myGamma);
+	}
+
+	private static long mix64(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	//gammas must be odd, and need enough bit transitions to mix well
+	private static long mixGamma(long z) {
+		z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+		z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+		z = (z ^ (z >>> 33)) | 1L;
+		int n = Long.bitCount(z ^ (z >>> 1));
+		return (n < 24) ? z ^ 0xaaaaaaaaaaaaaaaaL : z;
+	}
+}
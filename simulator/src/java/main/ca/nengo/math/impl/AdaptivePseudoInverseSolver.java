@@ -0,0 +1,107 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "AdaptivePseudoInverseSolver.java". Description:
+"Chooses a pseudo-inverse strategy according to the matrix"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+/*
+ * Created on 17-Oct-2026
+ */
+
+package ca.nengo.math.impl;
+
+import ca.nengo.math.PseudoInverseSolver;
+
+/**
+ * <p>Chooses a strategy according to the matrix and arguments:</p>
+ *
+ * <ul>
+ * <li>Matrices that aren't symmetric are inverted with SVDPseudoInverseSolver.</li>
+ * <li>If a Cholesky size is given, symmetric matrices at least that large are inverted with
+ * CholeskyPseudoInverseSolver, if nSV is unlimited and minSV is positive (so that it
+ * regularizes), and the matrix is positive definite after regularization.</li>
+ * <li>Other symmetric matrices are inverted with EigenPseudoInverseSolver, which gives
+ * the same result as an SVD.</li>
+ * </ul>
+ *
+ * <p>By default the Cholesky factorization isn't used, since it regularizes rather than
+ * truncates, so it gives different results. In particular WeightedCostApproximator builds Gamma
+ * from noisy activities, so regularizing Gamma again counts the noise twice.</p>
+ */
+public class AdaptivePseudoInverseSolver implements PseudoInverseSolver {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Cholesky size with which a Cholesky factorization is never used (the default)
+	 */
+	public static final int NO_CHOLESKY = Integer.MAX_VALUE;
+
+	private final int myCholeskySize;
+	private final SVDPseudoInverseSolver mySVDSolver;
+	private final EigenPseudoInverseSolver myEigenSolver;
+	private final CholeskyPseudoInverseSolver myCholeskySolver;
+
+	/**
+	 * @param numThreads Number of threads among which to divide work
+	 * @param choleskySize Matrix size from which a (regularized) Cholesky factorization is used
+	 * 		rather than a (truncated) eigendecomposition, or NO_CHOLESKY
+	 */
+	public AdaptivePseudoInverseSolver(int numThreads, int choleskySize) {
+		myCholeskySize = choleskySize;
+		mySVDSolver = new SVDPseudoInverseSolver();
+		myEigenSolver = new EigenPseudoInverseSolver(numThreads);
+		myCholeskySolver = new CholeskyPseudoInverseSolver(numThreads);
+	}
+
+	/**
+	 * Uses as many threads as there are processors, and never uses a Cholesky factorization.
+	 */
+	public AdaptivePseudoInverseSolver() {
+		this(Runtime.getRuntime().availableProcessors(), NO_CHOLESKY);
+	}
+
+	/**
+	 * @return Matrix size from which a Cholesky factorization is used
+	 */
+	public int getCholeskySize() {
+		return myCholeskySize;
+	}
+
+	/**
+	 * @see ca.nengo.math.PseudoInverseSolver#pseudoInverse(double[][], float, int)
+	 */
+	public double[][] pseudoInverse(double[][] matrix, float minSV, int nSV) {
+		if (!EigenPseudoInverseSolver.isSymmetric(matrix)) {
+			return mySVDSolver.pseudoInverse(matrix, minSV, nSV);
+		}
+
+		if (matrix.length >= myCholeskySize && nSV <= 0 && minSV > 0) {
+			double[][] result = myCholeskySolver.inverse(matrix, minSV);
+			if (result != null) {
+				return result;
+			}
+		}
+
+		return myEigenSolver.pseudoInverse(matrix, minSV, nSV);
+	}
+
+}
@@ -0,0 +1,167 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "CholeskyPseudoInverseSolver.java". Description:
+"Regularized inverse of a symmetric positive semi-definite matrix via Cholesky factorization"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+/*
+ * Created on 17-Oct-2026
+ */
+
+package ca.nengo.math.impl;
+
+import ca.nengo.math.PseudoInverseSolver;
+import ca.nengo.model.SimulationException;
+import ca.nengo.util.impl.ParallelRange;
+
+/**
+ * <p>Regularized inverse (A + minSV*I)^-1 of a symmetric positive semi-definite matrix A (such as
+ * the GAMMA matrix of WeightedCostApproximator), from a Cholesky factorization A + minSV*I = LL'.
+ * When minSV is the variance of noise added to activities, this is the usual regularized
+ * least-squares solution for decoders.</p>
+ *
+ * <p>This is much faster than a decomposition into singular values or eigenvalues, but small
+ * singular values are damped rather than discarded, and nSV is ignored. The factorization runs
+ * in one thread, and the inverse is found from it in parallel.</p>
+ */
+public class CholeskyPseudoInverseSolver implements PseudoInverseSolver {
+
+	private static final long serialVersionUID = 1L;
+
+	private final int myNumThreads;
+
+	/**
+	 * @param numThreads Number of threads among which to divide work
+	 */
+	public CholeskyPseudoInverseSolver(int numThreads) {
+		if (numThreads < 1) {
+			throw new IllegalArgumentException("Number of threads must be at least 1");
+		}
+		myNumThreads = numThreads;
+	}
+
+	/**
+	 * Uses as many threads as there are processors.
+	 */
+	public CholeskyPseudoInverseSolver() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param matrix A symmetric positive semi-definite matrix
+	 * @param minSV Amount added to the diagonal before inverting
+	 * @param nSV Ignored
+	 * @see ca.nengo.math.PseudoInverseSolver#pseudoInverse(double[][], float, int)
+	 */
+	public double[][] pseudoInverse(double[][] matrix, float minSV, int nSV) {
+		double[][] result = inverse(matrix, minSV);
+		if (result == null) {
+			throw new IllegalArgumentException("Matrix is not positive definite (try more regularization)");
+		}
+		return result;
+	}
+
+	/**
+	 * @param matrix A symmetric matrix (only the lower triangle is used)
+	 * @param regularization Amount added to the diagonal before inverting
+	 * @return Inverse of the regularized matrix, or null if it isn't positive definite
+	 */
+	public double[][] inverse(double[][] matrix, double regularization) {
+		final int n = matrix.length;
+
+		//lower-triangular factor L, by rows
+		final double[][] L = new double[n][];
+		for (int i = 0; i < n; i++) {
+			L[i] = new double[i+1];
+			for (int j = 0; j <= i; j++) {
+				double sum = matrix[i][j];
+				if (i == j) {
+					sum += regularization;
+				}
+				double[] Li = L[i];
+				double[] Lj = L[j];
+				for (int k = 0; k < j; k++) {
+					sum -= Li[k] * Lj[k];
+				}
+				if (i == j) {
+					if (!(sum > 0)) {
+						return null;
+					}
+					Li[i] = Math.sqrt(sum);
+				} else {
+					Li[j] = sum / Lj[j];
+				}
+			}
+		}
+
+		//M = inverse(L)', found one column of inverse(L) per row of M (M[c][r] is non-zero for r >= c)
+		final double[][] M = new double[n][];
+		final double[][] result = new double[n][n];
+		int chunks = (myNumThreads == 1) ? 1 : Math.min(n, 4 * myNumThreads);
+		try {
+			ParallelRange.run(n, chunks, new ParallelRange.Body() {
+				public void run(int chunk, int start, int end) {
+					for (int c = start; c < end; c++) {
+						double[] y = new double[n];
+						y[c] = 1 / L[c][c];
+						for (int r = c+1; r < n; r++) {
+							double[] Lr = L[r];
+							double sum = 0;
+							for (int k = c; k < r; k++) {
+								sum -= Lr[k] * y[k];
+							}
+							y[r] = sum / Lr[r];
+						}
+						M[c] = y;
+					}
+				}
+			}, false);
+
+			//inverse = inverse(L)' inverse(L) = M M'
+			ParallelRange.run(n, chunks, new ParallelRange.Body() {
+				public void run(int chunk, int start, int end) {
+					for (int i = start; i < end; i++) {
+						double[] Mi = M[i];
+						for (int j = i; j < n; j++) {
+							double[] Mj = M[j];
+							double sum = 0;
+							for (int k = j; k < n; k++) {
+								sum += Mi[k] * Mj[k];
+							}
+							result[i][j] = sum;
+						}
+					}
+				}
+			}, false);
+		} catch (SimulationException e) {
+			throw new RuntimeException(e);
+		}
+
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < i; j++) {
+				result[i][j] = result[j][i];
+			}
+		}
+
+		return result;
+	}
+
+}
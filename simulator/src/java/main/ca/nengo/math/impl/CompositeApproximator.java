@@ -93,6 +93,17 @@ public class CompositeApproximator implements LinearApproximator {
 		throw new RuntimeException("This method has not yet been implemented for CompositeApproximator");
 	}
 
+	/**
+	 * @see ca.nengo.math.LinearApproximator#findCoefficients(ca.nengo.math.Function[])
+	 */
+	public float[][] findCoefficients(Function[] targets) {
+		float[][] result = new float[targets.length][];
+		for (int i = 0; i < targets.length; i++) {
+			result[i] = findCoefficients(targets[i]);
+		}
+		return result;
+	}
+
 	/**
 	 * @see ca.nengo.math.LinearApproximator#findCoefficients(ca.nengo.math.Function)
 	 */
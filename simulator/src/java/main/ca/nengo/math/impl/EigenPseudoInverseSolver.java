@@ -0,0 +1,159 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "EigenPseudoInverseSolver.java". Description:
+"Pseudo-inverse of a symmetric matrix from a truncated eigendecomposition"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+/*
+ * Created on 17-Oct-2026
+ */
+
+package ca.nengo.math.impl;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.apache.log4j.Logger;
+
+import Jama.EigenvalueDecomposition;
+import Jama.Matrix;
+import ca.nengo.math.PseudoInverseSolver;
+import ca.nengo.model.SimulationException;
+import ca.nengo.util.impl.ParallelRange;
+
+/**
+ * <p>Pseudo-inverse of a symmetric matrix from its eigendecomposition. The singular values of a
+ * symmetric matrix are the magnitudes of its eigenvalues, so this treats small values in the
+ * same way as SVDPseudoInverseSolver (eigenvalues of magnitude below minSV, and beyond the
+ * largest nSV, are treated as zero), but the decomposition is several times faster than an SVD.</p>
+ *
+ * <p>The decomposition runs in one thread, and the inverse is rebuilt from the kept eigenvectors
+ * in parallel.</p>
+ */
+public class EigenPseudoInverseSolver implements PseudoInverseSolver {
+
+	private static final long serialVersionUID = 1L;
+	private static Logger ourLogger = Logger.getLogger(EigenPseudoInverseSolver.class);
+
+	private final int myNumThreads;
+
+	/**
+	 * @param numThreads Number of threads among which to divide work
+	 */
+	public EigenPseudoInverseSolver(int numThreads) {
+		if (numThreads < 1) {
+			throw new IllegalArgumentException("Number of threads must be at least 1");
+		}
+		myNumThreads = numThreads;
+	}
+
+	/**
+	 * Uses as many threads as there are processors.
+	 */
+	public EigenPseudoInverseSolver() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param matrix A symmetric matrix
+	 * @see ca.nengo.math.PseudoInverseSolver#pseudoInverse(double[][], float, int)
+	 */
+	public double[][] pseudoInverse(double[][] matrix, float minSV, int nSV) {
+		if (!isSymmetric(matrix)) {
+			throw new IllegalArgumentException("Expected a symmetric matrix");
+		}
+
+		final int n = matrix.length;
+		EigenvalueDecomposition eig = new Matrix(matrix).eig();
+		final double[] values = eig.getRealEigenvalues();
+		double[][] vectors = eig.getV().getArray();
+
+		Integer[] order = new Integer[n];
+		for (int i = 0; i < n; i++) {
+			order[i] = Integer.valueOf(i);
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return Double.compare(Math.abs(values[b.intValue()]), Math.abs(values[a.intValue()]));
+			}
+		});
+
+		int kept = 0;
+		while (kept < n && Math.abs(values[order[kept].intValue()]) > minSV && (nSV <= 0 || kept < nSV)) {
+			kept++;
+		}
+		ourLogger.debug("Using " + kept + " singular values for pseudo-inverse");
+
+		//kept eigenvectors as rows, and the same divided by their eigenvalues
+		final double[][] v = new double[n][kept];
+		final double[][] vScaled = new double[n][kept];
+		for (int i = 0; i < n; i++) {
+			for (int m = 0; m < kept; m++) {
+				int index = order[m].intValue();
+				v[i][m] = vectors[i][index];
+				vScaled[i][m] = vectors[i][index] / values[index];
+			}
+		}
+
+		final double[][] result = new double[n][n];
+		int chunks = (myNumThreads == 1) ? 1 : Math.min(n, 4 * myNumThreads);
+		try {
+			ParallelRange.run(n, chunks, new ParallelRange.Body() {
+				public void run(int chunk, int start, int end) {
+					for (int i = start; i < end; i++) {
+						double[] a = vScaled[i];
+						for (int j = 0; j < n; j++) {
+							double[] b = v[j];
+							double sum = 0;
+							for (int m = 0; m < a.length; m++) {
+								sum += a[m] * b[m];
+							}
+							result[i][j] = sum;
+						}
+					}
+				}
+			}, false);
+		} catch (SimulationException e) {
+			throw new RuntimeException(e);
+		}
+
+		return result;
+	}
+
+	/**
+	 * @param matrix Any matrix
+	 * @return True if the matrix is square and equal to its transpose
+	 */
+	public static boolean isSymmetric(double[][] matrix) {
+		for (int i = 0; i < matrix.length; i++) {
+			if (matrix[i].length != matrix.length) {
+				return false;
+			}
+			for (int j = 0; j < i; j++) {
+				if (matrix[i][j] != matrix[j][i]) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+}
@@ -31,13 +31,23 @@ import org.apache.log4j.Logger;
 import ca.nengo.math.ApproximatorFactory;
 import ca.nengo.math.Function;
 import ca.nengo.math.LinearApproximator;
+import ca.nengo.math.PDFTools;
+import ca.nengo.model.SimulationException;
 import ca.nengo.util.MU;
+import ca.nengo.util.impl.ParallelRange;
 
 /**
  * A LinearApproximator that searches for coefficients by descending an error gradient.
  * This method is slower and less powerful than WeightedCostApproximator, but
  * constraints on coefficients are allowed.
  *
+ * <p>By default each iteration is a full-batch step along the error gradient, with each
+ * coefficient's step normalized by the power of its component function. For large problems,
+ * steps can instead be taken over shuffled mini-batches of evaluation points (an iteration is
+ * then one pass through all the points), with momentum or Adam-style step control, and the
+ * search can stop early when error stops improving. Error gradients are summed over shards of
+ * evaluation points in parallel.</p>
+ *
  * @author Bryan Tripp
  */
 public class GradientDescentApproximator implements LinearApproximator {
@@ -45,6 +55,39 @@ public class GradientDescentApproximator implements LinearApproximator {
 	private static Logger ourLogger = Logger.getLogger(GradientDescentApproximator.class);
 	private static final long serialVersionUID = 1L;
 
+	//minimum multiply-adds per shard of an error gradient, below which threads don't pay
+	private static final int MIN_SHARD_WORK = 20000;
+
+	//relative decrease in error that counts as improvement for early stopping
+	private static final float MIN_IMPROVEMENT = 1e-4f;
+
+	//decay of the running mean squared gradient, and a guard against division by zero, in ADAM steps
+	private static final float ADAM_SQUARE_DECAY = .999f;
+	private static final double ADAM_EPSILON = 1e-8;
+
+	/**
+	 * Rules for the size of each step along the error gradient.
+	 */
+	public static enum StepRule {
+		/**
+		 * Each coefficient moves by the rate times its error gradient, divided by the power of
+		 * its component function over the batch
+		 */
+		NORMALIZED,
+
+		/**
+		 * As NORMALIZED, with a fraction (the momentum) of the previous step added to each step
+		 */
+		MOMENTUM,
+
+		/**
+		 * Adam: steps are the rate times a running mean of the gradient, divided by the root of a
+		 * running mean of its square, so that the rate bounds the change in each coefficient
+		 * per step
+		 */
+		ADAM
+	}
+
 	private float[][] myEvalPoints;
 	private float[][] myValues;
 	private float[] myStartingCoefficients;
@@ -53,6 +96,13 @@ public class GradientDescentApproximator implements LinearApproximator {
 	private float myRate;
 	private float myTolerance;
 	private boolean myIgnoreBias;
+	private int myBatchSize;
+	private StepRule myStepRule;
+	private float myMomentum;
+	private int myPatience;
+	private int myNumThreads;
+	private int myIterations;
+	private float[] myNorms;
 
 	/**
 	 * @param evaluationPoints Points at which error is evaluated (should be uniformly
@@ -79,6 +129,11 @@ public class GradientDescentApproximator implements LinearApproximator {
 		myStartingCoefficients = new float[values.length];
 		myRate = 0.5f / myValues.length;
 		myTolerance = .000000001f;
+		myBatchSize = 0;
+		myStepRule = StepRule.NORMALIZED;
+		myMomentum = .9f;
+		myPatience = 0;
+		myNumThreads = Runtime.getRuntime().availableProcessors();
 
 		myIgnoreBias = ignoreBias;
 		if (ignoreBias) {
@@ -137,36 +192,318 @@ public class GradientDescentApproximator implements LinearApproximator {
 		myTolerance = tolerance;
 	}
 
+	/**
+	 * @return Step size (see StepRule)
+	 */
+	public float getRate() {
+		return myRate;
+	}
+
+	/**
+	 * @param rate Step size (see StepRule). The default (0.5 / number of component functions)
+	 * 		suits NORMALIZED and MOMENTUM steps. With ADAM it is roughly the largest change in
+	 * 		a coefficient per step, so it should be a fraction of the expected coefficient size.
+	 */
+	public void setRate(float rate) {
+		myRate = rate;
+	}
+
+	/**
+	 * @return Number of evaluation points per step (zero or less means all of them)
+	 */
+	public int getBatchSize() {
+		return myBatchSize;
+	}
+
+	/**
+	 * @param batchSize Number of evaluation points per step (zero or less means all of them).
+	 * 		Mini-batches are drawn without replacement from a new shuffle of the evaluation points
+	 * 		in each iteration.
+	 */
+	public void setBatchSize(int batchSize) {
+		myBatchSize = batchSize;
+	}
+
+	/**
+	 * @return Rule for the size of each step
+	 */
+	public StepRule getStepRule() {
+		return myStepRule;
+	}
+
+	/**
+	 * @param rule Rule for the size of each step
+	 */
+	public void setStepRule(StepRule rule) {
+		myStepRule = rule;
+	}
+
+	/**
+	 * @return Fraction of the previous step added to each MOMENTUM step, and decay of the running
+	 * 		mean gradient in ADAM steps
+	 */
+	public float getMomentum() {
+		return myMomentum;
+	}
+
+	/**
+	 * @param momentum Fraction of the previous step added to each MOMENTUM step, and decay of the
+	 * 		running mean gradient in ADAM steps (default 0.9)
+	 */
+	public void setMomentum(float momentum) {
+		myMomentum = momentum;
+	}
+
+	/**
+	 * @return Number of iterations without improvement after which the search stops (zero or
+	 * 		less means the search doesn't stop early)
+	 */
+	public int getPatience() {
+		return myPatience;
+	}
+
+	/**
+	 * @param patience Number of iterations without improvement after which the search stops (zero
+	 * 		or less means the search doesn't stop early). When stopping early is enabled, the
+	 * 		coefficients with the lowest error found are returned.
+	 */
+	public void setPatience(int patience) {
+		myPatience = patience;
+	}
+
+	/**
+	 * @return Number of threads over which error gradients are summed
+	 */
+	public int getNumThreads() {
+		return myNumThreads;
+	}
+
+	/**
+	 * @param numThreads Number of threads over which error gradients are summed (defaults to the
+	 * 		number of processors)
+	 */
+	public void setNumThreads(int numThreads) {
+		myNumThreads = numThreads;
+	}
+
+	/**
+	 * @return Number of iterations taken by the most recent findCoefficients(...)
+	 */
+	public int getIterations() {
+		return myIterations;
+	}
+
+	/**
+	 * @see ca.nengo.math.LinearApproximator#findCoefficients(ca.nengo.math.Function[])
+	 */
+	public float[][] findCoefficients(Function[] targets) {
+		float[][] result = new float[targets.length][];
+		for (int i = 0; i < targets.length; i++) {
+			result[i] = findCoefficients(targets[i]);
+		}
+		return result;
+	}
+
 	/**
 	 * @see ca.nengo.math.LinearApproximator#findCoefficients(ca.nengo.math.Function)
 	 */
 	public float[] findCoefficients(Function target) {
-		float[] result = new float[myValues.length];
+		int n = myValues.length;
+		float[] result = new float[n];
 		System.arraycopy(myStartingCoefficients, 0, result, 0, result.length);
 
 		float[] targetValues = getTargetValues(target);
+		int p = targetValues.length;
+		int batchSize = (myBatchSize <= 0 || myBatchSize > p) ? p : myBatchSize;
+		boolean fullBatch = (batchSize == p);
+
+		int[] order = new int[p];
+		for (int k = 0; k < p; k++) {
+			order[k] = k;
+		}
+
+		//with full batches, the gradient comes from the same pass as the error
+		boolean normalized = (myStepRule != StepRule.ADAM);
+		float[] gradient = new float[n];
+		float[] norms = (normalized && fullBatch) ? getNorms() : new float[n];
+		float[] velocity = (myStepRule == StepRule.NORMALIZED) ? null : new float[n];
+		float[] meanSquare = (myStepRule == StepRule.ADAM) ? new float[n] : null;
+		int steps = 0;
+
+		float[] best = null;
+		float bestMSE = Float.MAX_VALUE;
+		int sinceImprovement = 0;
 
 		boolean stuck = false;
 		boolean done = false;
-		float[] error = findError(targetValues, result);
-		for (int i = 0; i < myMaxIterations && !stuck && !done; i++) {
-			for (int j = 0; j < myValues.length; j++) {
-				float norm = MU.prod(myValues[j], myValues[j]);
-				if (norm > 0) {
-					result[j] -= myRate * MU.prod(error, myValues[j]) / norm; //(float) myEvalPoints.length;
+		float mse = fullBatch ? accumulate(targetValues, result, order, 0, p, gradient, null) / p : 0;
+		int i = 0;
+		for (; i < myMaxIterations && !stuck && !done; i++) {
+			if (fullBatch) {
+				stuck = step(result, gradient, norms, p, velocity, meanSquare, ++steps);
+			} else {
+				shuffle(order);
+				for (int start = 0; start < p && !stuck; start += batchSize) {
+					int end = Math.min(p, start + batchSize);
+					accumulate(targetValues, result, order, start, end, gradient, normalized ? norms : null);
+					stuck = step(result, gradient, norms, end - start, velocity, meanSquare, ++steps);
 				}
 			}
-			stuck = myConstraints.correct(result);
 
-			error = findError(targetValues, result);
-			float mse = MU.prod(error, error) / error.length;
+			mse = accumulate(targetValues, result, order, 0, p, fullBatch ? gradient : null, null) / p;
 			done = mse < myTolerance;
 			ourLogger.debug("Iteration: " + i + "  MSE: " + mse + " Stuck: " + stuck);
+
+			if (myPatience > 0) {
+				if (mse < bestMSE) {
+					if (mse < bestMSE * (1 - MIN_IMPROVEMENT)) {
+						sinceImprovement = -1;
+					}
+					bestMSE = mse;
+					best = result.clone();
+				}
+				if (++sinceImprovement >= myPatience) {
+					done = true;
+				}
+			}
 		}
+		myIterations = i;
 
+		return (best == null) ? result : best;
+	}
+
+	//takes a step given the error gradient over a batch of the given size; returns true if stuck
+	private boolean step(float[] coefficients, float[] gradient, float[] norms, int batchSize,
+			float[] velocity, float[] meanSquare, int steps) {
+
+		float[] uncorrected = null;
+		if (myStepRule == StepRule.NORMALIZED) {
+			for (int j = 0; j < coefficients.length; j++) {
+				if (norms[j] > 0) {
+					coefficients[j] -= myRate * gradient[j] / norms[j];
+				}
+			}
+		} else if (myStepRule == StepRule.MOMENTUM) {
+			for (int j = 0; j < coefficients.length; j++) {
+				float change = (norms[j] > 0) ? myRate * gradient[j] / norms[j] : 0;
+				velocity[j] = myMomentum * velocity[j] + change;
+				coefficients[j] -= velocity[j];
+			}
+			uncorrected = coefficients.clone();
+		} else {
+			double meanCorrection = 1 - Math.pow(myMomentum, steps);
+			double squareCorrection = 1 - Math.pow(ADAM_SQUARE_DECAY, steps);
+			for (int j = 0; j < coefficients.length; j++) {
+				float g = gradient[j] / batchSize;
+				velocity[j] = myMomentum * velocity[j] + (1 - myMomentum) * g;
+				meanSquare[j] = ADAM_SQUARE_DECAY * meanSquare[j] + (1 - ADAM_SQUARE_DECAY) * g * g;
+				double mean = velocity[j] / meanCorrection;
+				double rms = Math.sqrt(meanSquare[j] / squareCorrection);
+				coefficients[j] -= (float) (myRate * mean / (rms + ADAM_EPSILON));
+			}
+			uncorrected = coefficients.clone();
+		}
+
+		boolean stuck = myConstraints.correct(coefficients);
+
+		//momentum doesn't carry coefficients further into a constraint
+		if (uncorrected != null) {
+			for (int j = 0; j < coefficients.length; j++) {
+				if (coefficients[j] != uncorrected[j]) {
+					velocity[j] = 0;
+				}
+			}
+		}
+		return stuck;
+	}
+
+	//Sums squared error over the evaluation points order[from] to order[to-1], and optionally
+	//the error gradient and power of each component function over these points. Shards of the
+	//points are summed in parallel.
+	private float accumulate(final float[] target, final float[] coefficients, final int[] order,
+			final int from, int to, float[] gradient, float[] norms) {
+
+		final int n = myValues.length;
+		final int length = to - from;
+		int shards = Math.max(1, Math.min(Math.min(myNumThreads * 4, length), (int) ((long) length * n / MIN_SHARD_WORK)));
+		if (myNumThreads <= 1) {
+			shards = 1;
+		}
+
+		final float[] squaredErrors = new float[shards];
+		final float[][] gradients = (gradient == null) ? null : new float[shards][n];
+		final float[][] powers = (norms == null) ? null : new float[shards][n];
+		try {
+			ParallelRange.run(length, shards, new ParallelRange.Body() {
+				public void run(int chunk, int start, int end) {
+					float[] g = (gradients == null) ? null : gradients[chunk];
+					float[] power = (powers == null) ? null : powers[chunk];
+					float sum = 0;
+					for (int position = from + start; position < from + end; position++) {
+						int k = order[position];
+						float error = -target[k];
+						for (int j = 0; j < n; j++) {
+							error += myValues[j][k] * coefficients[j];
+						}
+						sum += error * error;
+						for (int j = 0; g != null && j < n; j++) {
+							g[j] += error * myValues[j][k];
+						}
+						for (int j = 0; power != null && j < n; j++) {
+							power[j] += myValues[j][k] * myValues[j][k];
+						}
+					}
+					squaredErrors[chunk] = sum;
+				}
+			}, false);
+		} catch (SimulationException e) {
+			throw new RuntimeException(e);
+		}
+
+		float result = 0;
+		for (int c = 0; c < shards; c++) {
+			result += squaredErrors[c];
+		}
+		if (gradient != null) {
+			sumShards(gradients, gradient);
+		}
+		if (norms != null) {
+			sumShards(powers, norms);
+		}
 		return result;
 	}
 
+	private static void sumShards(float[][] shards, float[] result) {
+		System.arraycopy(shards[0], 0, result, 0, result.length);
+		for (int c = 1; c < shards.length; c++) {
+			for (int j = 0; j < result.length; j++) {
+				result[j] += shards[c][j];
+			}
+		}
+	}
+
+	//power of each component function over all evaluation points
+	private float[] getNorms() {
+		if (myNorms == null) {
+			float[] norms = new float[myValues.length];
+			for (int j = 0; j < norms.length; j++) {
+				norms[j] = MU.prod(myValues[j], myValues[j]);
+			}
+			myNorms = norms;
+		}
+		return myNorms;
+	}
+
+	//Fisher-Yates shuffle using the PDFTools random stream
+	private static void shuffle(int[] order) {
+		for (int k = order.length - 1; k > 0; k--) {
+			int other = (int) (PDFTools.random() * (k + 1));
+			int temp = order[k];
+			order[k] = order[other];
+			order[other] = temp;
+		}
+	}
+
 	//finds values of target function at eval points
 	private float[] getTargetValues(Function target) {
 		float[] result = new float[myEvalPoints.length];
@@ -179,20 +516,6 @@ public class GradientDescentApproximator implements LinearApproximator {
 		return result;
 	}
 
-	//finds approximation error with given coefficients and target function values
-	//we don't use matrix ops here because a a transpose would be needed
-	private float[] findError(float[] target, float[] coefficients) {
-		float[] result = new float[target.length];
-		for (int i = 0; i < result.length; i++) {
-			float estimate = 0f;
-			for (int j = 0; j < myValues.length; j++) {
-				estimate += myValues[j][i] * coefficients[j];
-			}
-			result[i] = estimate - target[i];
-		}
-		return result;
-	}
-
 	//removes bias
 	private float[] unbias(float[] x) {
 		float sum = 0;
@@ -214,6 +537,7 @@ public class GradientDescentApproximator implements LinearApproximator {
 		GradientDescentApproximator result = (GradientDescentApproximator) super.clone();
 
 		result.myStartingCoefficients = myStartingCoefficients.clone();
+		result.myNorms = null;
 
 		result.myConstraints = myConstraints.clone();
 
@@ -268,6 +592,11 @@ public class GradientDescentApproximator implements LinearApproximator {
 
 		private Constraints myConstraints;
 		private boolean myIgnoreBiasFlag;
+		private int myMaxIterations;
+		private int myBatchSize;
+		private StepRule myStepRule;
+		private float myRate;
+		private int myPatience;
 
 		/**
 		 * @param constraints As in GradientDescentApproximator constructor
@@ -276,18 +605,105 @@ public class GradientDescentApproximator implements LinearApproximator {
 		public Factory(Constraints constraints, boolean ignoreBias) {
 			myConstraints = constraints;
 			myIgnoreBiasFlag = ignoreBias;
+			myMaxIterations = 1000;
+			myBatchSize = 0;
+			myStepRule = StepRule.NORMALIZED;
+			myRate = 0;
+			myPatience = 0;
+		}
+
+		/**
+		 * @param max Maximum iterations per findCoefficients(...) of new approximators
+		 */
+		public void setMaxIterations(int max) {
+			myMaxIterations = max;
+		}
+
+		/**
+		 * @return Maximum iterations per findCoefficients(...) of new approximators
+		 */
+		public int getMaxIterations() {
+			return myMaxIterations;
+		}
+
+		/**
+		 * @param batchSize Evaluation points per step of new approximators (see
+		 * 		GradientDescentApproximator.setBatchSize(int))
+		 */
+		public void setBatchSize(int batchSize) {
+			myBatchSize = batchSize;
+		}
+
+		/**
+		 * @return Evaluation points per step of new approximators
+		 */
+		public int getBatchSize() {
+			return myBatchSize;
+		}
+
+		/**
+		 * @param rule Step rule of new approximators
+		 */
+		public void setStepRule(StepRule rule) {
+			myStepRule = rule;
+		}
+
+		/**
+		 * @return Step rule of new approximators
+		 */
+		public StepRule getStepRule() {
+			return myStepRule;
+		}
+
+		/**
+		 * @param rate Step size of new approximators (zero or less means the approximator's default)
+		 */
+		public void setRate(float rate) {
+			myRate = rate;
+		}
+
+		/**
+		 * @return Step size of new approximators (zero or less means the approximator's default)
+		 */
+		public float getRate() {
+			return myRate;
+		}
+
+		/**
+		 * @param patience Iterations without improvement after which new approximators stop (see
+		 * 		GradientDescentApproximator.setPatience(int))
+		 */
+		public void setPatience(int patience) {
+			myPatience = patience;
+		}
+
+		/**
+		 * @return Iterations without improvement after which new approximators stop
+		 */
+		public int getPatience() {
+			return myPatience;
 		}
 
 		/**
 		 * @see ca.nengo.math.ApproximatorFactory#getApproximator(float[][], float[][])
 		 */
 		public LinearApproximator getApproximator(float[][] evalPoints, float[][] values) {
-			return new GradientDescentApproximator(evalPoints, values, myConstraints, myIgnoreBiasFlag);
+			GradientDescentApproximator result = new GradientDescentApproximator(evalPoints, values, myConstraints, myIgnoreBiasFlag);
+			result.setMaxIterations(myMaxIterations);
+			result.setBatchSize(myBatchSize);
+			result.setStepRule(myStepRule);
+			if (myRate > 0) {
+				result.setRate(myRate);
+			}
+			result.setPatience(myPatience);
+			return result;
 		}
 
 		@Override
 		public ApproximatorFactory clone() throws CloneNotSupportedException {
-			return new Factory(myConstraints.clone(), myIgnoreBiasFlag);
+			Factory result = (Factory) super.clone();
+			result.myConstraints = myConstraints.clone();
+			return result;
 		}
 
 	}
@@ -0,0 +1,270 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "GramMatrix.java". Description:
+"Computes weighted Gram matrices in parallel, cache-blocked tiles"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+/*
+ * Created on 17-Oct-2026
+ */
+
+package ca.nengo.math.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import ca.nengo.model.SimulationException;
+import ca.nengo.util.impl.ParallelRange;
+
+/**
+ * <p>Computes weighted Gram matrices of the form G_ij = sum_k w_k a_i[k] a_j[k] / P, where a_i
+ * are rows of values (eg neuron activities over P evaluation points) and w_k are weights (eg
+ * a cost function evaluated at each point). This is the GAMMA matrix of WeightedCostApproximator.</p>
+ *
+ * <p>Only the upper triangle is computed, in square tiles, with the sum over k split into blocks
+ * so that the rows of a tile stay in cache. Tiles are divided among threads.</p>
+ *
+ * <p>Sums can be accumulated in double precision, or in single precision within each block
+ * (which is faster, but has error that grows with the block length rather than P).</p>
+ */
+public class GramMatrix {
+
+	/**
+	 * Precision with which products are summed.
+	 */
+	public static enum Precision {
+		/**
+		 * Accumulate in double precision
+		 */
+		DOUBLE,
+
+		/**
+		 * Accumulate in single precision within each block of points, and in double precision across blocks
+		 */
+		FLOAT
+	}
+
+	private static final int TILE = 64;
+	private static final int BLOCK = 512;
+
+	private final int myNumThreads;
+	private final Precision myPrecision;
+
+	/**
+	 * @param numThreads Number of threads among which to divide the work (1 to use only the calling thread)
+	 * @param precision Precision with which to sum products
+	 */
+	public GramMatrix(int numThreads, Precision precision) {
+		if (numThreads < 1) {
+			throw new IllegalArgumentException("Number of threads must be at least 1");
+		}
+		myNumThreads = numThreads;
+		myPrecision = precision;
+	}
+
+	/**
+	 * Uses as many threads as there are processors, and double precision.
+	 */
+	public GramMatrix() {
+		this(Runtime.getRuntime().availableProcessors(), Precision.DOUBLE);
+	}
+
+	/**
+	 * @return Number of threads among which work is divided
+	 */
+	public int getNumThreads() {
+		return myNumThreads;
+	}
+
+	/**
+	 * @return Precision with which products are summed
+	 */
+	public Precision getPrecision() {
+		return myPrecision;
+	}
+
+	/**
+	 * @param values Values of each row (eg neuron) at each point (must all have the same length P)
+	 * @param weights Weight of each point (length P)
+	 * @return The symmetric matrix sum_k weights[k] values[i][k] values[j][k] / P
+	 */
+	public double[][] compute(float[][] values, float[] weights) {
+		int n = values.length;
+		double[][] result = new double[n][];
+		for (int i = 0; i < n; i++) {
+			result[i] = new double[n];
+		}
+		accumulate(values, weights, result);
+
+		int p = (weights.length > 0) ? weights.length : 1;
+		for (int i = 0; i < n; i++) {
+			result[i][i] = result[i][i] / p;
+			for (int j = i+1; j < n; j++) {
+				result[i][j] = result[i][j] / p;
+				result[j][i] = result[i][j];
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Adds sum_k weights[k] values[i][k] values[j][k] (not divided by P) to the upper triangle
+	 * (j >= i) of a matrix. This allows a Gram matrix to be accumulated over chunks of points
+	 * that are not all in memory at once.
+	 *
+	 * @param values Values of each row at each point in a chunk
+	 * @param weights Weight of each point in the chunk
+	 * @param sums Matrix to which to add products (the lower triangle is not changed)
+	 */
+	public void accumulate(final float[][] values, final float[] weights, final double[][] sums) {
+		final int n = values.length;
+
+		//tiles of the upper triangle, as {first row, first column}
+		final List<int[]> tiles = new ArrayList<int[]>();
+		for (int i = 0; i < n; i += TILE) {
+			for (int j = i; j < n; j += TILE) {
+				tiles.add(new int[]{i, j});
+			}
+		}
+
+		//more chunks than threads, so that threads that finish early take over remaining tiles
+		int chunks = (myNumThreads == 1) ? 1 : Math.min(tiles.size(), 4 * myNumThreads);
+		try {
+			ParallelRange.run(tiles.size(), chunks, new ParallelRange.Body() {
+				public void run(int chunk, int start, int end) {
+					if (myPrecision == Precision.FLOAT) {
+						float[][] scaled = new float[TILE][BLOCK];
+						for (int t = start; t < end; t++) {
+							computeTileFloat(values, weights, tiles.get(t), scaled, sums);
+						}
+					} else {
+						double[][] scaled = new double[TILE][BLOCK];
+						for (int t = start; t < end; t++) {
+							computeTileDouble(values, weights, tiles.get(t), scaled, sums);
+						}
+					}
+				}
+			}, false);
+		} catch (SimulationException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * @param rows Values of one set of rows at each point (eg existing neurons)
+	 * @param columns Values of another set of rows at the same points (eg new neurons)
+	 * @param weights Weight of each point (length P)
+	 * @return The block sum_k weights[k] rows[i][k] columns[j][k] / P, summed in double precision
+	 */
+	public double[][] compute(final float[][] rows, final float[][] columns, final float[] weights) {
+		final double[][] result = new double[rows.length][columns.length];
+		final int p = (weights.length > 0) ? weights.length : 1;
+
+		int chunks = (myNumThreads == 1) ? 1 : Math.min(rows.length, 4 * myNumThreads);
+		try {
+			ParallelRange.run(rows.length, chunks, new ParallelRange.Body() {
+				public void run(int chunk, int start, int end) {
+					double[] scaledRow = new double[weights.length];
+					for (int i = start; i < end; i++) {
+						float[] row = rows[i];
+						for (int k = 0; k < weights.length; k++) {
+							scaledRow[k] = (double) row[k] * weights[k];
+						}
+						for (int j = 0; j < columns.length; j++) {
+							float[] column = columns[j];
+							double sum = 0;
+							for (int k = 0; k < weights.length; k++) {
+								sum += scaledRow[k] * column[k];
+							}
+							result[i][j] = sum / p;
+						}
+					}
+				}
+			}, false);
+		} catch (SimulationException e) {
+			throw new RuntimeException(e);
+		}
+
+		return result;
+	}
+
+	private static void computeTileDouble(float[][] values, float[] weights, int[] tile, double[][] scaled, double[][] result) {
+		int rowEnd = Math.min(tile[0] + TILE, values.length);
+		int colEnd = Math.min(tile[1] + TILE, values.length);
+
+		for (int k0 = 0; k0 < weights.length; k0 += BLOCK) {
+			int k1 = Math.min(k0 + BLOCK, weights.length);
+
+			for (int i = tile[0]; i < rowEnd; i++) {
+				float[] row = values[i];
+				double[] scaledRow = scaled[i - tile[0]];
+				for (int k = k0; k < k1; k++) {
+					scaledRow[k - k0] = (double) row[k] * weights[k];
+				}
+			}
+
+			for (int i = tile[0]; i < rowEnd; i++) {
+				double[] scaledRow = scaled[i - tile[0]];
+				double[] resultRow = result[i];
+				for (int j = Math.max(i, tile[1]); j < colEnd; j++) {
+					float[] column = values[j];
+					double sum = 0;
+					for (int k = k0; k < k1; k++) {
+						sum += scaledRow[k - k0] * column[k];
+					}
+					resultRow[j] += sum;
+				}
+			}
+		}
+	}
+
+	private static void computeTileFloat(float[][] values, float[] weights, int[] tile, float[][] scaled, double[][] result) {
+		int rowEnd = Math.min(tile[0] + TILE, values.length);
+		int colEnd = Math.min(tile[1] + TILE, values.length);
+
+		for (int k0 = 0; k0 < weights.length; k0 += BLOCK) {
+			int k1 = Math.min(k0 + BLOCK, weights.length);
+
+			for (int i = tile[0]; i < rowEnd; i++) {
+				float[] row = values[i];
+				float[] scaledRow = scaled[i - tile[0]];
+				for (int k = k0; k < k1; k++) {
+					scaledRow[k - k0] = row[k] * weights[k];
+				}
+			}
+
+			for (int i = tile[0]; i < rowEnd; i++) {
+				float[] scaledRow = scaled[i - tile[0]];
+				double[] resultRow = result[i];
+				for (int j = Math.max(i, tile[1]); j < colEnd; j++) {
+					float[] column = values[j];
+					float sum = 0;
+					for (int k = k0; k < k1; k++) {
+						sum += scaledRow[k - k0] * column[k];
+					}
+					resultRow[j] += sum;
+				}
+			}
+		}
+	}
+
+}
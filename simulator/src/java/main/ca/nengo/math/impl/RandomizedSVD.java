@@ -0,0 +1,250 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "RandomizedSVD.java". Description:
+"Approximate truncated SVD by randomized range finding"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+/*
+ * Created on 17-Oct-2026
+ */
+
+package ca.nengo.math.impl;
+
+import Jama.EigenvalueDecomposition;
+import Jama.Matrix;
+import ca.nengo.math.PDFTools;
+import ca.nengo.math.RandomStream;
+import ca.nengo.model.SimulationException;
+import ca.nengo.util.impl.ParallelRange;
+
+/**
+ * <p>Approximates the largest singular values, and corresponding left singular vectors, of a
+ * matrix B = A*diag(s), where A is a (typically wide) float matrix and s scales its columns.
+ * This is the randomized method of Halko, Martinsson & Tropp (2011): the range of B is found
+ * by multiplying it by a few more random vectors than the rank sought (refined by a few power
+ * iterations), and an exact decomposition is found within that range.</p>
+ *
+ * <p>Only matrices of size (rows x rank) and (columns x rank) are formed, so B*B' (eg the GAMMA
+ * matrix of WeightedCostApproximator) is never needed. Products with B are divided among threads.</p>
+ */
+public class RandomizedSVD {
+
+	private final int myOversampling;
+	private final int myPowerIterations;
+	private final int myNumThreads;
+
+	/**
+	 * @param oversampling Number of random vectors beyond the rank sought (eg 10)
+	 * @param powerIterations Number of power iterations, which improve accuracy when singular
+	 * 		values decay slowly (eg 2)
+	 * @param numThreads Number of threads among which to divide work
+	 */
+	public RandomizedSVD(int oversampling, int powerIterations, int numThreads) {
+		if (oversampling < 0 || powerIterations < 0 || numThreads < 1) {
+			throw new IllegalArgumentException("Expected non-negative oversampling and iterations, and at least one thread");
+		}
+		myOversampling = oversampling;
+		myPowerIterations = powerIterations;
+		myNumThreads = numThreads;
+	}
+
+	/**
+	 * Uses oversampling of 10, 2 power iterations, and as many threads as there are processors.
+	 */
+	public RandomizedSVD() {
+		this(10, 2, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param matrix The matrix A (rows of equal length)
+	 * @param columnScale Scale of each column of A (may be null for no scaling)
+	 * @param rank Number of singular values sought
+	 * @return Approximate singular values (largest first) and left singular vectors of A*diag(columnScale)
+	 */
+	public Result decompose(float[][] matrix, float[] columnScale, int rank) {
+		int rows = matrix.length;
+		int columns = (rows > 0) ? matrix[0].length : 0;
+		int l = Math.min(Math.min(rank + myOversampling, rows), columns);
+		int k = Math.min(rank, l);
+
+		RandomStream random = PDFTools.split();
+		double[][] omega = new double[l][columns];
+		for (int c = 0; c < l; c++) {
+			for (int j = 0; j < columns; j++) {
+				omega[c][j] = random.nextGaussian();
+			}
+		}
+
+		//basis of the range (stored by column, as for the other rows x l and columns x l matrices)
+		double[][] q = orthonormalize(times(matrix, columnScale, omega));
+		for (int i = 0; i < myPowerIterations; i++) {
+			double[][] z = orthonormalize(transposeTimes(matrix, columnScale, q));
+			q = orthonormalize(times(matrix, columnScale, z));
+		}
+
+		//C = Q'B, of which the left singular vectors and values follow from the eigenvectors and values of CC'
+		double[][] c = transposeTimes(matrix, columnScale, q);
+		double[][] cct = new double[l][l];
+		for (int a = 0; a < l; a++) {
+			for (int b = a; b < l; b++) {
+				cct[a][b] = dot(c[a], c[b]);
+				cct[b][a] = cct[a][b];
+			}
+		}
+		EigenvalueDecomposition eig = new Matrix(cct).eig();
+		double[] eigenvalues = eig.getRealEigenvalues();
+		double[][] eigenvectors = eig.getV().getArray();
+
+		//Jama sorts eigenvalues of symmetric matrices in increasing order
+		double[] values = new double[k];
+		double[][] vectors = new double[rows][k];
+		for (int m = 0; m < k; m++) {
+			int index = l - 1 - m;
+			values[m] = Math.sqrt(Math.max(0, eigenvalues[index]));
+			for (int b = 0; b < l; b++) {
+				double weight = eigenvectors[b][index];
+				double[] qb = q[b];
+				for (int i = 0; i < rows; i++) {
+					vectors[i][m] += weight * qb[i];
+				}
+			}
+		}
+
+		return new Result(values, vectors);
+	}
+
+	//B*X, where X has l columns of length equal to B's columns
+	private double[][] times(final float[][] matrix, final float[] columnScale, final double[][] x) {
+		final double[][] result = new double[x.length][matrix.length];
+		run(matrix.length, new ParallelRange.Body() {
+			public void run(int chunk, int start, int end) {
+				for (int i = start; i < end; i++) {
+					float[] row = matrix[i];
+					for (int c = 0; c < x.length; c++) {
+						double[] xc = x[c];
+						double sum = 0;
+						for (int j = 0; j < row.length; j++) {
+							sum += (columnScale == null ? row[j] : row[j] * columnScale[j]) * xc[j];
+						}
+						result[c][i] = sum;
+					}
+				}
+			}
+		});
+		return result;
+	}
+
+	//B'*Y, where Y has l columns of length equal to B's rows
+	private double[][] transposeTimes(final float[][] matrix, final float[] columnScale, final double[][] y) {
+		final int columns = (matrix.length > 0) ? matrix[0].length : 0;
+		final double[][] result = new double[y.length][columns];
+		run(columns, new ParallelRange.Body() {
+			public void run(int chunk, int start, int end) {
+				for (int i = 0; i < matrix.length; i++) {
+					float[] row = matrix[i];
+					for (int c = 0; c < y.length; c++) {
+						double yci = y[c][i];
+						double[] rc = result[c];
+						for (int j = start; j < end; j++) {
+							rc[j] += row[j] * yci;
+						}
+					}
+				}
+				if (columnScale != null) {
+					for (int c = 0; c < y.length; c++) {
+						for (int j = start; j < end; j++) {
+							result[c][j] *= columnScale[j];
+						}
+					}
+				}
+			}
+		});
+		return result;
+	}
+
+	private void run(int length, ParallelRange.Body body) {
+		int chunks = (myNumThreads == 1) ? 1 : Math.min(length, 4 * myNumThreads);
+		try {
+			ParallelRange.run(length, chunks, body, false);
+		} catch (SimulationException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	//modified Gram-Schmidt, repeated once for stability (columns that vanish are left as zero)
+	private static double[][] orthonormalize(double[][] columns) {
+		for (int pass = 0; pass < 2; pass++) {
+			for (int c = 0; c < columns.length; c++) {
+				double[] col = columns[c];
+				for (int b = 0; b < c; b++) {
+					double projection = dot(col, columns[b]);
+					double[] other = columns[b];
+					for (int i = 0; i < col.length; i++) {
+						col[i] -= projection * other[i];
+					}
+				}
+				double norm = Math.sqrt(dot(col, col));
+				double scale = (norm > 1e-300) ? 1 / norm : 0;
+				for (int i = 0; i < col.length; i++) {
+					col[i] *= scale;
+				}
+			}
+		}
+		return columns;
+	}
+
+	private static double dot(double[] a, double[] b) {
+		double result = 0;
+		for (int i = 0; i < a.length; i++) {
+			result += a[i] * b[i];
+		}
+		return result;
+	}
+
+	/**
+	 * Approximate singular values and left singular vectors.
+	 */
+	public static class Result {
+
+		private final double[] mySingularValues;
+		private final double[][] myVectors;
+
+		private Result(double[] singularValues, double[][] vectors) {
+			mySingularValues = singularValues;
+			myVectors = vectors;
+		}
+
+		/**
+		 * @return Singular values, largest first
+		 */
+		public double[] getSingularValues() {
+			return mySingularValues;
+		}
+
+		/**
+		 * @return Left singular vectors, as the columns of a (rows x rank) matrix
+		 */
+		public double[][] getVectors() {
+			return myVectors;
+		}
+	}
+
+}
@@ -0,0 +1,68 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "SVDPseudoInverseSolver.java". Description:
+"Pseudo-inverse from a singular value decomposition"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+/*
+ * Created on 17-Oct-2026
+ */
+
+package ca.nengo.math.impl;
+
+import org.apache.log4j.Logger;
+
+import Jama.Matrix;
+import Jama.SingularValueDecomposition;
+import ca.nengo.math.PseudoInverseSolver;
+
+/**
+ * Moore-Penrose pseudo-inverse from a full singular value decomposition (Jama), with singular
+ * values below minSV, and beyond the first nSV, treated as zero. Works for any matrix, but is
+ * the slowest of the solvers, and is mainly useful as a reference.
+ */
+public class SVDPseudoInverseSolver implements PseudoInverseSolver {
+
+	private static final long serialVersionUID = 1L;
+	private static Logger ourLogger = Logger.getLogger(SVDPseudoInverseSolver.class);
+
+	/**
+	 * @see ca.nengo.math.PseudoInverseSolver#pseudoInverse(double[][], float, int)
+	 */
+	public double[][] pseudoInverse(double[][] matrix, float minSV, int nSV) {
+		Matrix m = new Matrix(matrix);
+		SingularValueDecomposition svd = m.svd();
+		Matrix sInv = svd.getS().inverse();
+
+		int i = 0;
+		while (i < svd.getS().getRowDimension() && svd.getS().get(i, i) > minSV && (nSV <= 0 || i < nSV)) {
+			i++;
+		}
+		ourLogger.debug("Using " + i + " singular values for pseudo-inverse");
+
+		for (int j = i; j < sInv.getRowDimension(); j++) {
+			sInv.set(j, j, 0d);
+		}
+
+		return svd.getV().times(sInv).times(svd.getU().transpose()).getArray();
+	}
+
+}
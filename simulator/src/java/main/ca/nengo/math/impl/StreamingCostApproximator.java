@@ -0,0 +1,410 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "StreamingCostApproximator.java". Description:
+"A weighted-cost LinearApproximator that streams component values over chunks of evaluation points"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+/*
+ * Created on 17-Oct-2026
+ */
+package ca.nengo.math.impl;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import ca.nengo.math.ApproximatorFactory;
+import ca.nengo.math.Function;
+import ca.nengo.math.LinearApproximator;
+import ca.nengo.math.StreamingApproximatorFactory;
+import ca.nengo.model.SimulationException;
+import ca.nengo.util.impl.ParallelRange;
+
+/**
+ * <p>Minimizes the same weighted cost as WeightedCostApproximator, but without holding the values
+ * of the component functions at all the evaluation points in memory. The values are computed
+ * by a ValueSource in chunks of evaluation points. GAMMA is accumulated over the chunks when
+ * the approximator is made, and UPSILON when coefficients are found, and each chunk is
+ * discarded once it has been used. Memory then grows with the square of the number of
+ * components, plus one chunk, rather than with components x evaluation points.</p>
+ *
+ * <p>Because values are computed again for each set of coefficients, it is best to find
+ * coefficients for many targets at once, with findCoefficients(Function[]).</p>
+ *
+ * <p>Rather than adding random noise to the values, which would have to be stored or
+ * regenerated for each chunk, the expected effect of noise (its variance, weighted like the
+ * squared error, on the diagonal of GAMMA) is added to GAMMA directly. As in
+ * WeightedCostApproximator, the variance is also given to the pseudo-inverse solver as minSV.
+ * The GramMatrix and PseudoInverseSolver are those of WeightedCostApproximator.</p>
+ */
+public class StreamingCostApproximator implements LinearApproximator {
+
+	private static final long serialVersionUID = 1L;
+
+	private float[][] myEvalPoints;
+	private StreamingApproximatorFactory.ValueSource mySource;
+	private Function myCostFunction;
+	private int myChunkSize;
+	private int myNumComponents;
+	private double[][] myGammaInverse;
+	private float[] myCostWeights;
+
+	/**
+	 * @param evalPoints Points at which error is evaluated
+	 * @param source Source of values of the component functions at chunks of the evalPoints
+	 * @param costFunction A cost function that weights squared error over the domain of
+	 * 		evaluation points
+	 * @param noise Standard deviation of noise to account for, as a proportion of the maximum
+	 * 		absolute value over all values
+	 * @param nSV Number of singular values to keep in the pseudo-inverse (zero or less for no limit)
+	 * @param chunkSize Number of evaluation points at which to compute values at once
+	 */
+	public StreamingCostApproximator(float[][] evalPoints, StreamingApproximatorFactory.ValueSource source,
+			Function costFunction, float noise, int nSV, int chunkSize) {
+		if (chunkSize < 1) {
+			throw new IllegalArgumentException("Chunk size must be at least 1");
+		}
+		myEvalPoints = evalPoints;
+		mySource = source;
+		myCostFunction = costFunction;
+		myChunkSize = chunkSize;
+
+		double[][] gamma = null;
+		float maxValue = 0f;
+		float[] weights = getCostWeights();
+		for (int start = 0; start < evalPoints.length; start += chunkSize) {
+			int end = Math.min(start + chunkSize, evalPoints.length);
+			float[][] values = source.getValues(slice(evalPoints, start, end), start);
+			if (gamma == null) {
+				myNumComponents = values.length;
+				gamma = new double[values.length][values.length];
+			}
+			WeightedCostApproximator.getGramMatrix().accumulate(values, slice(weights, start, end), gamma);
+			for (float[] row : values) {
+				for (float value : row) {
+					maxValue = Math.max(maxValue, Math.abs(value));
+				}
+			}
+		}
+		if (gamma == null) {
+			throw new IllegalArgumentException("There must be at least one evaluation point");
+		}
+
+		int p = evalPoints.length;
+		for (int i = 0; i < gamma.length; i++) {
+			gamma[i][i] = gamma[i][i] / p;
+			for (int j = i+1; j < gamma.length; j++) {
+				gamma[i][j] = gamma[i][j] / p;
+				gamma[j][i] = gamma[i][j];
+			}
+		}
+
+		float SD = noise * maxValue;
+		double weightSum = 0;
+		for (float weight : weights) {
+			weightSum += weight;
+		}
+		double variance = SD * SD * weightSum / p;
+		for (int i = 0; i < gamma.length; i++) {
+			gamma[i][i] += variance;
+		}
+		myGammaInverse = WeightedCostApproximator.getPseudoInverseSolver().pseudoInverse(gamma, SD*SD, nSV);
+	}
+
+	/**
+	 * @return Number of evaluation points at which values are computed at once
+	 */
+	public int getChunkSize() {
+		return myChunkSize;
+	}
+
+	/**
+	 * @see ca.nengo.math.LinearApproximator#getEvalPoints()
+	 */
+	public float[][] getEvalPoints() {
+		return myEvalPoints;
+	}
+
+	/**
+	 * Note that values are computed again at all the evaluation points, so this takes the
+	 * memory that this approximator otherwise avoids.
+	 *
+	 * @see ca.nengo.math.LinearApproximator#getValues()
+	 */
+	public float[][] getValues() {
+		return mySource.getValues(myEvalPoints, 0);
+	}
+
+	/**
+	 * @see ca.nengo.math.LinearApproximator#findCoefficients(ca.nengo.math.Function)
+	 */
+	public float[] findCoefficients(Function target) {
+		return findCoefficients(new Function[]{target})[0];
+	}
+
+	/**
+	 * Values of the components and targets are computed once per chunk for all targets together.
+	 *
+	 * @see ca.nengo.math.LinearApproximator#findCoefficients(ca.nengo.math.Function[])
+	 */
+	public float[][] findCoefficients(Function[] targets) {
+		//the same function may appear more than once, but is evaluated once
+		List<Function> distinct = new ArrayList<Function>();
+		Map<Function, Integer> indices = new IdentityHashMap<Function, Integer>();
+		for (Function target : targets) {
+			if (!indices.containsKey(target)) {
+				indices.put(target, Integer.valueOf(distinct.size()));
+				distinct.add(target);
+			}
+		}
+
+		//UPSILON, by target
+		final int n = myNumComponents;
+		final double[][] upsilon = new double[distinct.size()][n];
+		final float[] weights = getCostWeights();
+		for (int start = 0; start < myEvalPoints.length; start += myChunkSize) {
+			final int first = start;
+			int end = Math.min(start + myChunkSize, myEvalPoints.length);
+			float[][] points = slice(myEvalPoints, start, end);
+			final float[][] values = mySource.getValues(points, start);
+
+			//targets times cost weights
+			final float[][] weighted = new float[distinct.size()][points.length];
+			for (int d = 0; d < weighted.length; d++) {
+				Function target = distinct.get(d);
+				for (int k = 0; k < points.length; k++) {
+					weighted[d][k] = target.map(points[k]) * weights[first + k];
+				}
+			}
+
+			run(n, new ParallelRange.Body() {
+				public void run(int chunk, int start, int end) {
+					for (int i = start; i < end; i++) {
+						float[] row = values[i];
+						for (int d = 0; d < weighted.length; d++) {
+							float[] w = weighted[d];
+							double sum = 0;
+							for (int k = 0; k < w.length; k++) {
+								sum += row[k] * w[k];
+							}
+							upsilon[d][i] += sum;
+						}
+					}
+				}
+			});
+		}
+
+		//coefficients = inverse(GAMMA) * UPSILON
+		final int p = myEvalPoints.length;
+		final float[][] distinctResult = new float[distinct.size()][n];
+		run(n, new ParallelRange.Body() {
+			public void run(int chunk, int start, int end) {
+				for (int i = start; i < end; i++) {
+					double[] row = myGammaInverse[i];
+					for (int d = 0; d < upsilon.length; d++) {
+						double[] u = upsilon[d];
+						double sum = 0;
+						for (int j = 0; j < n; j++) {
+							sum += row[j] * u[j];
+						}
+						distinctResult[d][i] = (float) (sum / p);
+					}
+				}
+			}
+		});
+
+		float[][] result = new float[targets.length][];
+		for (int d = 0; d < targets.length; d++) {
+			result[d] = distinctResult[indices.get(targets[d]).intValue()].clone();
+		}
+		return result;
+	}
+
+	//runs work over the given range with as many threads as the GramMatrix uses
+	private static void run(int length, ParallelRange.Body body) {
+		int threads = WeightedCostApproximator.getGramMatrix().getNumThreads();
+		int chunks = (threads == 1) ? 1 : Math.min(length, 4 * threads);
+		try {
+			ParallelRange.run(length, chunks, body, false);
+		} catch (SimulationException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	//the cost function evaluated at each eval point
+	private float[] getCostWeights() {
+		if (myCostWeights == null) {
+			float[] weights = new float[myEvalPoints.length];
+			for (int k = 0; k < weights.length; k++) {
+				weights[k] = myCostFunction.map(myEvalPoints[k]);
+			}
+			myCostWeights = weights;
+		}
+		return myCostWeights;
+	}
+
+	private static float[][] slice(float[][] points, int start, int end) {
+		float[][] result = new float[end - start][];
+		System.arraycopy(points, start, result, 0, result.length);
+		return result;
+	}
+
+	private static float[] slice(float[] values, int start, int end) {
+		float[] result = new float[end - start];
+		System.arraycopy(values, start, result, 0, result.length);
+		return result;
+	}
+
+	@Override
+	public LinearApproximator clone() throws CloneNotSupportedException {
+		StreamingCostApproximator result = (StreamingCostApproximator) super.clone();
+		result.myCostFunction = myCostFunction.clone();
+		result.myGammaInverse = new double[myGammaInverse.length][];
+		for (int i = 0; i < myGammaInverse.length; i++) {
+			result.myGammaInverse[i] = myGammaInverse[i].clone();
+		}
+		return result;
+	}
+
+	/**
+	 * A StreamingApproximatorFactory that produces StreamingCostApproximators.
+	 */
+	public static class Factory implements StreamingApproximatorFactory {
+
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * Default number of evaluation points at which values are computed at once
+		 */
+		public static final int DEFAULT_CHUNK_SIZE = 1000;
+
+		private float myNoise;
+		private int myNSV;
+		private int myChunkSize;
+
+		/**
+		 * @param noise Noise to account for in component functions (proportion of largest value over all functions)
+		 */
+		public Factory(float noise) {
+			this(noise, -1, DEFAULT_CHUNK_SIZE);
+		}
+
+		/**
+		 * @param noise Noise to account for in component functions (proportion of largest value over all functions)
+		 * @param NSV Number of singular values to keep
+		 * @param chunkSize Number of evaluation points at which values are computed at once
+		 */
+		public Factory(float noise, int NSV, int chunkSize) {
+			myNoise = noise;
+			myNSV = NSV;
+			myChunkSize = chunkSize;
+		}
+
+		/**
+		 * @return Noise to account for in component functions (proportion of largest value over all functions)
+		 */
+		public float getNoise() {
+			return myNoise;
+		}
+
+		/**
+		 * @param noise Noise to account for in component functions (proportion of largest value over all functions)
+		 */
+		public void setNoise(float noise) {
+			myNoise = noise;
+		}
+
+		/**
+		 * @return Maximum number of singular values to use in pseudoinverse of correlation matrix (zero or less means
+		 * 		use as many as possible to a threshold magnitude determined by noise).
+		 */
+		public int getNSV() {
+			return myNSV;
+		}
+
+		/**
+		 * @param nSV Maximum number of singular values to use in pseudoinverse of correlation matrix (zero or less means
+		 * 		use as many as possible to a threshold magnitude determined by noise).
+		 */
+		public void setNSV(int nSV) {
+			myNSV = nSV;
+		}
+
+		/**
+		 * @return Number of evaluation points at which values are computed at once
+		 */
+		public int getChunkSize() {
+			return myChunkSize;
+		}
+
+		/**
+		 * @param chunkSize Number of evaluation points at which values are computed at once
+		 */
+		public void setChunkSize(int chunkSize) {
+			myChunkSize = chunkSize;
+		}
+
+		/**
+		 * @see ca.nengo.math.StreamingApproximatorFactory#getApproximator(float[][], ca.nengo.math.StreamingApproximatorFactory.ValueSource)
+		 */
+		public LinearApproximator getApproximator(float[][] evalPoints, ValueSource source) {
+			return new StreamingCostApproximator(evalPoints, source, getCostFunction(evalPoints[0].length), myNoise, myNSV, myChunkSize);
+		}
+
+		/**
+		 * Values are read from the given table a chunk at a time.
+		 *
+		 * @see ca.nengo.math.ApproximatorFactory#getApproximator(float[][], float[][])
+		 */
+		public LinearApproximator getApproximator(float[][] evalPoints, final float[][] values) {
+			return getApproximator(evalPoints, new ValueSource() {
+				private static final long serialVersionUID = 1L;
+
+				public float[][] getValues(float[][] points, int offset) {
+					float[][] result = new float[values.length][];
+					for (int i = 0; i < values.length; i++) {
+						result[i] = slice(values[i], offset, offset + points.length);
+					}
+					return result;
+				}
+			});
+		}
+
+		/**
+		 * Note: override to use non-uniform error weighting.
+		 *
+		 * @param dimension Dimension of the function to be approximated
+		 * @return A function over the input space that defines relative importance of error at each point (defaults
+		 * 		to a ConstantFunction)
+		 */
+		public Function getCostFunction(int dimension) {
+			return new ConstantFunction(dimension, 1);
+		}
+
+		@Override
+		public ApproximatorFactory clone() throws CloneNotSupportedException {
+			return (ApproximatorFactory) super.clone();
+		}
+
+	}
+
+}
@@ -28,24 +28,28 @@ a recipient may use your version of this file under either the MPL or the GPL Li
  */
 package ca.nengo.math.impl;
 
-import java.io.FileNotFoundException;
-import java.util.Random;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.apache.log4j.Logger;
 
-import Jama.Matrix;
-import Jama.SingularValueDecomposition;
+import ca.nengo.io.ArrayCache;
 import ca.nengo.math.ApproximatorFactory;
 import ca.nengo.math.Function;
 import ca.nengo.math.LinearApproximator;
+import ca.nengo.math.PseudoInverseSolver;
+import ca.nengo.model.SimulationException;
 import ca.nengo.util.MU;
 import ca.nengo.util.Memory;
+import ca.nengo.util.impl.ParallelRange;
 
 /**
  * <p>A LinearApproximator in which error is evaluated at a fixed set of points, and
  * the cost function that is minimized is a weighted integral of squared error.</p>
  *
- * <p>Uses the Moore-Penrose pseudoinverse.</p>
+ * <p>Uses the Moore-Penrose pseudoinverse (see setPseudoInverseSolver()).</p>
  *
  * TODO: test
  *
@@ -64,6 +68,22 @@ public class WeightedCostApproximator implements LinearApproximator {
 	private final boolean myQuiet;
 
 	private double[][] myGammaInverse;
+	private double[][] myLowRankVectors;
+	private double[] myLowRankInverse;
+	private float[] myCostWeights;
+	private String myCacheKey;
+	private float myNoiseSD;
+	private int myNSV;
+	private boolean myExactInverse;
+	private double myRegularization;
+	private transient double[][] myUpdateInverse;
+	private transient boolean myUpdateInverseFound;
+
+	private static GramMatrix ourGramMatrix = new GramMatrix();
+	private static PseudoInverseSolver ourPseudoInverseSolver = new AdaptivePseudoInverseSolver();
+	private static int ourLowRankSize = Integer.MAX_VALUE;
+	private static int ourMaxLowRank = 1000;
+	private static RandomizedSVD ourRandomizedSVD = new RandomizedSVD();
 
 	private static boolean myUseGPU = false;
 	private static boolean canUseGPU;
@@ -115,6 +135,78 @@ public class WeightedCostApproximator implements LinearApproximator {
 		return myGPUErrorMessage;
 	}
 
+	/**
+	 * @param gramMatrix Computes the GAMMA matrix (sets the number of threads and precision used)
+	 */
+	public static void setGramMatrix(GramMatrix gramMatrix) {
+		if (gramMatrix == null) {
+			throw new IllegalArgumentException("GramMatrix can't be null");
+		}
+		ourGramMatrix = gramMatrix;
+	}
+
+	/**
+	 * @return Computes the GAMMA matrix
+	 */
+	public static GramMatrix getGramMatrix() {
+		return ourGramMatrix;
+	}
+
+	/**
+	 * @param solver Finds the pseudoinverse of the GAMMA matrix
+	 */
+	public static void setPseudoInverseSolver(PseudoInverseSolver solver) {
+		if (solver == null) {
+			throw new IllegalArgumentException("PseudoInverseSolver can't be null");
+		}
+		ourPseudoInverseSolver = solver;
+	}
+
+	/**
+	 * @return Finds the pseudoinverse of the GAMMA matrix
+	 */
+	public static PseudoInverseSolver getPseudoInverseSolver() {
+		return ourPseudoInverseSolver;
+	}
+
+	/**
+	 * Sets the number of functions (eg neurons) from which an approximate low-rank solution is used
+	 * instead of the pseudoinverse of GAMMA. In this case a randomized SVD of the values is found
+	 * (GAMMA is never formed), and only its leading singular vectors are kept, which takes memory
+	 * proportional to the number of functions times the rank rather than its square. The rank is
+	 * nSV if given, or otherwise the max set with setMaxLowRank().
+	 *
+	 * @param size Number of functions from which the low-rank solution is used (Integer.MAX_VALUE,
+	 * 		the default, to never use it)
+	 */
+	public static void setLowRankSize(int size) {
+		ourLowRankSize = size;
+	}
+
+	/**
+	 * @return Number of functions from which the low-rank solution is used
+	 */
+	public static int getLowRankSize() {
+		return ourLowRankSize;
+	}
+
+	/**
+	 * @param rank Rank of low-rank solutions if nSV isn't given (default 1000)
+	 */
+	public static void setMaxLowRank(int rank) {
+		if (rank < 1) {
+			throw new IllegalArgumentException("Rank must be at least 1");
+		}
+		ourMaxLowRank = rank;
+	}
+
+	/**
+	 * @return Rank of low-rank solutions if nSV isn't given
+	 */
+	public static int getMaxLowRank() {
+		return ourMaxLowRank;
+	}
+
 	private static native boolean hasGPU();
 	
 	@SuppressWarnings("unused")
@@ -239,6 +331,321 @@ public class WeightedCostApproximator implements LinearApproximator {
 	public WeightedCostApproximator(float[][] evaluationPoints, float[][] values, Function costFunction, float noise, int nSV) {
 		this(evaluationPoints, values, costFunction, noise, nSV, false);
 	}
+
+	//an approximator for other values at the same eval points, with the same settings
+	private WeightedCostApproximator(WeightedCostApproximator source, float[][] values, float[][] noisyValues) {
+		myEvalPoints = source.myEvalPoints;
+		myValues = values;
+		myNoisyValues = noisyValues;
+		myCostFunction = source.myCostFunction;
+		myCostWeights = source.myCostWeights;
+		mySignalLength = source.mySignalLength;
+		myQuiet = source.myQuiet;
+		myNoiseSD = source.myNoiseSD;
+		myNSV = source.myNSV;
+	}
+
+	/**
+	 * <p>Makes an approximator for a subset of the values (eg after some neurons are removed from
+	 * an ensemble), keeping the noise that was added to them.</p>
+	 *
+	 * <p>If the values can be updated (see isUpdatable()), the inverse for the remaining values is
+	 * found with a rank-k downdate, where k is the number of values left out: if B is the exact
+	 * inverse and K and R are the kept and removed values, the new inverse is
+	 * B_KK - B_KR inv(B_RR) B_RK. This takes O(n^2 k) rather than O(n^3) time. Otherwise (if nSV is
+	 * limited, or the low-rank solution is used) GAMMA is found and inverted again. If all the
+	 * values are kept in order, the inverse is shared.</p>
+	 *
+	 * @param indices Indices of the values to keep, in the order wanted
+	 * @return A new approximator over the given values
+	 */
+	public WeightedCostApproximator selectValues(final int[] indices) {
+		WeightedCostApproximator result = subset(indices);
+		if (result == null) {
+			return share();
+		}
+		double[][] update = getUpdateInverse();
+		final int[] removed = getRemoved(indices);
+		double[][] inverseRR = null;
+		if (update != null) {
+			inverseRR = (removed.length == 0) ? new double[0][0]
+					: new CholeskyPseudoInverseSolver(1).inverse(select(update, removed, removed), 0);
+		}
+		if (inverseRR == null) {
+			result.calcGamma(myNoiseSD, myNSV);
+			return result;
+		}
+
+		//inv(B_RR) B_RK
+		final double[][] B = update;
+		final double[][] T = multiply(inverseRR, select(B, removed, indices));
+		final double[][] inverse = new double[indices.length][indices.length];
+		run(indices.length, new ParallelRange.Body() {
+			public void run(int chunk, int start, int end) {
+				for (int i = start; i < end; i++) {
+					double[] row = B[indices[i]];
+					for (int j = 0; j < indices.length; j++) {
+						double sum = row[indices[j]];
+						for (int m = 0; m < removed.length; m++) {
+							sum -= row[removed[m]] * T[m][j];
+						}
+						inverse[i][j] = sum;
+					}
+				}
+			}
+		});
+
+		result.setUpdatedInverse(inverse, myRegularization);
+		return result;
+	}
+
+	/**
+	 * <p>Makes an approximator with additional values (eg for neurons added to an ensemble) after
+	 * the existing ones. Noise with the same standard deviation as before is added to the new
+	 * values only.</p>
+	 *
+	 * <p>If the values can be updated (see isUpdatable()), the new inverse is found blockwise from
+	 * the exact inverse B, the block C of GAMMA between existing and new values, and the block D
+	 * among the new values: with S = D - C'BC, it is
+	 * [B + BC inv(S) C'B, -BC inv(S); -inv(S) C'B, inv(S)]. This takes O(n^2 k) time for k new
+	 * values. Otherwise GAMMA is found and inverted again.</p>
+	 *
+	 * @param values Values of the additional functions at the eval points
+	 * @return A new approximator over the existing and given values
+	 */
+	public WeightedCostApproximator appendValues(float[][] values) {
+		final int n = myNoisyValues.length;
+		final int k = values.length;
+		WeightedCostApproximator result = append(values);
+		final float[][] newValues = new float[k][];
+		System.arraycopy(result.myNoisyValues, n, newValues, 0, k);
+		final double[][] B = getUpdateInverse();
+		if (B == null) {
+			result.calcGamma(myNoiseSD, myNSV);
+			return result;
+		}
+
+		final double[][] C = ourGramMatrix.compute(myNoisyValues, newValues, getCostWeights());
+		double[][] S = ourGramMatrix.compute(newValues, newValues, getCostWeights());
+		for (int a = 0; a < k; a++) {
+			S[a][a] += myRegularization;
+		}
+
+		//BC, then S = D - C'BC
+		final double[][] BC = new double[n][k];
+		run(n, new ParallelRange.Body() {
+			public void run(int chunk, int start, int end) {
+				for (int i = start; i < end; i++) {
+					double[] row = B[i];
+					for (int j = 0; j < n; j++) {
+						for (int a = 0; a < k; a++) {
+							BC[i][a] += row[j] * C[j][a];
+						}
+					}
+				}
+			}
+		});
+		for (int i = 0; i < n; i++) {
+			for (int a = 0; a < k; a++) {
+				for (int b = 0; b < k; b++) {
+					S[a][b] -= C[i][a] * BC[i][b];
+				}
+			}
+		}
+		final double[][] inverseS = new CholeskyPseudoInverseSolver(1).inverse(S, 0);
+		if (inverseS == null) {
+			result.calcGamma(myNoiseSD, myNSV);
+			return result;
+		}
+
+		//BC inv(S)
+		final double[][] W = multiply(BC, inverseS);
+		final double[][] inverse = new double[n + k][n + k];
+		run(n, new ParallelRange.Body() {
+			public void run(int chunk, int start, int end) {
+				for (int i = start; i < end; i++) {
+					for (int j = 0; j < n; j++) {
+						double sum = B[i][j];
+						for (int a = 0; a < k; a++) {
+							sum += W[i][a] * BC[j][a];
+						}
+						inverse[i][j] = sum;
+					}
+					for (int a = 0; a < k; a++) {
+						inverse[i][n + a] = -W[i][a];
+						inverse[n + a][i] = -W[i][a];
+					}
+				}
+			}
+		});
+		for (int a = 0; a < k; a++) {
+			System.arraycopy(inverseS[a], 0, inverse[n + a], n, k);
+		}
+
+		result.setUpdatedInverse(inverse, myRegularization);
+		return result;
+	}
+
+	/**
+	 * Keeps a subset of the values and then adds others, as selectValues(int[]) followed by
+	 * appendValues(float[][]), but if the inverse can't be updated, GAMMA is found and inverted
+	 * only once for the result.
+	 *
+	 * @param indices Indices of the values to keep, in the order wanted
+	 * @param values Values of the additional functions at the eval points
+	 * @return A new approximator over the kept and given values
+	 */
+	public WeightedCostApproximator changeValues(int[] indices, float[][] values) {
+		if (values.length == 0) {
+			return selectValues(indices);
+		}
+		if (isUpdatable()) {
+			return selectValues(indices).appendValues(values);
+		}
+		WeightedCostApproximator kept = subset(indices);
+		WeightedCostApproximator result = (kept == null) ? append(values) : kept.append(values);
+		result.calcGamma(myNoiseSD, myNSV);
+		return result;
+	}
+
+	/**
+	 * <p>The inverse of GAMMA used for decoding may be truncated (eg small eigenvalues are discarded
+	 * by the default EigenPseudoInverseSolver), and can't then be updated exactly. For updates, an
+	 * exact inverse of GAMMA (regularized if it isn't positive definite) is kept instead. It is the
+	 * same as the inverse used for decoding if that is exact, and is otherwise found with a Cholesky
+	 * factorization the first time it is needed, which is much faster than inverting GAMMA again.
+	 * Approximators made by updates decode with their exact inverse.</p>
+	 *
+	 * @return True if the inverse of GAMMA is updated rather than found again as values are added
+	 * 		or removed (false if nSV is limited or the low-rank solution is used)
+	 */
+	boolean isUpdatable() {
+		return getUpdateInverse() != null;
+	}
+
+	/**
+	 * @return True if an exact inverse of GAMMA is held for updates, without finding one
+	 */
+	boolean hasUpdateInverse() {
+		return myUpdateInverse != null;
+	}
+
+	//the exact inverse of GAMMA (plus myRegularization on the diagonal) used for updates, or null
+	private synchronized double[][] getUpdateInverse() {
+		if (!myUpdateInverseFound) {
+			myUpdateInverseFound = true;
+			if (myGammaInverse != null && myExactInverse) {
+				myUpdateInverse = myGammaInverse;
+			} else if (myGammaInverse != null && myNSV <= 0) {
+				double[][] gamma = findGamma();
+				CholeskyPseudoInverseSolver solver = new CholeskyPseudoInverseSolver();
+				double regularization = 0;
+				myUpdateInverse = solver.inverse(gamma, regularization);
+				if (myUpdateInverse == null) {
+					regularization = myNoiseSD*myNoiseSD;
+					myUpdateInverse = solver.inverse(gamma, regularization);
+				}
+				if (myUpdateInverse != null) {
+					myRegularization = regularization;
+				}
+			}
+		}
+		return myUpdateInverse;
+	}
+
+	private void setUpdatedInverse(double[][] inverse, double regularization) {
+		myGammaInverse = inverse;
+		myExactInverse = true;
+		myRegularization = regularization;
+		myUpdateInverse = inverse;
+		myUpdateInverseFound = true;
+	}
+
+	//an approximator over the given values (without the inverse of GAMMA), or null if they are all kept in order
+	private WeightedCostApproximator subset(int[] indices) {
+		boolean same = (indices.length == myNoisyValues.length);
+		float[][] values = new float[indices.length][];
+		float[][] noisyValues = new float[indices.length][];
+		for (int i = 0; i < indices.length; i++) {
+			values[i] = myValues[indices[i]];
+			noisyValues[i] = myNoisyValues[indices[i]];
+			same = same && (indices[i] == i);
+		}
+		return same ? null : new WeightedCostApproximator(this, values, noisyValues);
+	}
+
+	//indices of the values that aren't kept
+	private int[] getRemoved(int[] indices) {
+		int n = myNoisyValues.length;
+		boolean[] kept = new boolean[n];
+		for (int index : indices) {
+			kept[index] = true;
+		}
+		int[] removed = new int[n - indices.length];
+		int r = 0;
+		for (int i = 0; i < n && r < removed.length; i++) {
+			if (!kept[i]) {
+				removed[r++] = i;
+			}
+		}
+		return removed;
+	}
+
+	//an approximator over these values and the given ones, with noise added to the new ones (without the inverse of GAMMA)
+	private WeightedCostApproximator append(float[][] values) {
+		int n = myNoisyValues.length;
+		int k = values.length;
+		float[][] newValues = MU.clone(values);
+		addAbsoluteNoise(newValues, myNoiseSD);
+
+		float[][] allValues = new float[n + k][];
+		float[][] allNoisyValues = new float[n + k][];
+		System.arraycopy(myValues, 0, allValues, 0, n);
+		System.arraycopy(myNoisyValues, 0, allNoisyValues, 0, n);
+		for (int a = 0; a < k; a++) {
+			allValues[n + a] = values[a].clone();
+			allNoisyValues[n + a] = newValues[a];
+		}
+		return new WeightedCostApproximator(this, allValues, allNoisyValues);
+	}
+
+	//an approximator over the same values that shares the inverse of GAMMA
+	private WeightedCostApproximator share() {
+		WeightedCostApproximator result = new WeightedCostApproximator(this, myValues, myNoisyValues);
+		result.myGammaInverse = myGammaInverse;
+		result.myLowRankVectors = myLowRankVectors;
+		result.myLowRankInverse = myLowRankInverse;
+		result.myCacheKey = myCacheKey;
+		result.myExactInverse = myExactInverse;
+		result.myRegularization = myRegularization;
+		result.myUpdateInverse = myUpdateInverse;
+		result.myUpdateInverseFound = myUpdateInverseFound;
+		return result;
+	}
+
+	private static double[][] select(double[][] matrix, int[] rows, int[] columns) {
+		double[][] result = new double[rows.length][columns.length];
+		for (int i = 0; i < rows.length; i++) {
+			for (int j = 0; j < columns.length; j++) {
+				result[i][j] = matrix[rows[i]][columns[j]];
+			}
+		}
+		return result;
+	}
+
+	private static double[][] multiply(double[][] A, double[][] B) {
+		int columns = (B.length > 0) ? B[0].length : 0;
+		double[][] result = new double[A.length][columns];
+		for (int i = 0; i < A.length; i++) {
+			for (int m = 0; m < B.length; m++) {
+				double a = A[i][m];
+				for (int j = 0; j < columns; j++) {
+					result[i][j] += a * B[m][j];
+				}
+			}
+		}
+		return result;
+	}
 	
 	/**
 	 * Calculate the gamma matrix.
@@ -251,8 +658,23 @@ public class WeightedCostApproximator implements LinearApproximator {
 		if(!myQuiet) {
             Memory.report("before gamma");
         }
+		myNoiseSD = absNoiseSD;
+		myNSV = nSV;
+		myExactInverse = false;
+		myUpdateInverse = null;
+		myUpdateInverseFound = false;
+
+		ArrayCache cache = ArrayCache.getDefault();
+		boolean lowRank = !getUseGPU() && myNoisyValues.length >= ourLowRankSize;
+		if (cache != null && !getUseGPU()) {
+			if (loadFromCache(cache, absNoiseSD, nSV, lowRank)) {
+				return;
+			}
+		}
 
-		if(getUseGPU())
+		if(lowRank) {
+			calcLowRank(absNoiseSD*absNoiseSD, nSV);
+		} else if(getUseGPU())
 		{
 			float[][] float_result = new float[myNoisyValues.length][myNoisyValues.length];
 			myGammaInverse = new double[myNoisyValues.length][myNoisyValues.length];
@@ -272,10 +694,158 @@ public class WeightedCostApproximator implements LinearApproximator {
 			if(!myQuiet) {
                 Memory.report("after inverse");
             }
+			checkInverse(gamma, absNoiseSD*absNoiseSD);
+		}
 
+		if (cache != null && myCacheKey != null) {
+			//the last row holds the low-rank inverse values, or whether the inverse is exact
+			double[][] entry = lowRank ? myLowRankVectors : myGammaInverse;
+			double[][] rows = new double[entry.length + 1][];
+			System.arraycopy(entry, 0, rows, 0, entry.length);
+			rows[entry.length] = lowRank ? myLowRankInverse : new double[]{myExactInverse ? 1 : 0, myRegularization};
+			cache.put(myCacheKey, rows);
 		}
 	}
 
+	/**
+	 * Checks whether the inverse of GAMMA is exact, either as it is or after adding minSV to the
+	 * diagonal (as in CholeskyPseudoInverseSolver), rather than truncated. An exact inverse can be
+	 * updated when values are added or removed (see selectValues(int[]) and appendValues(float[][])).
+	 */
+	private void checkInverse(double[][] gamma, float minSV) {
+		myExactInverse = true;
+		if (isInverse(gamma, 0, myGammaInverse)) {
+			myRegularization = 0;
+		} else if (isInverse(gamma, minSV, myGammaInverse)) {
+			myRegularization = minSV;
+		} else {
+			myExactInverse = false;
+		}
+	}
+
+	//checks a few columns of (matrix + regularization*I) * inverse against the identity
+	private static boolean isInverse(double[][] matrix, double regularization, double[][] inverse) {
+		int n = matrix.length;
+		if (n == 0) {
+			return false;
+		}
+		for (int c : new int[]{0, n/2, n-1}) {
+			for (int i = 0; i < n; i++) {
+				double sum = regularization * inverse[i][c];
+				for (int j = 0; j < n; j++) {
+					sum += matrix[i][j] * inverse[j][c];
+				}
+				if (Math.abs(sum - (i == c ? 1 : 0)) > 1e-6) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Looks for the inverse of GAMMA (or its low-rank factors) in a cache, under a key made from
+	 * everything it depends on (the noisy values, cost function, and settings).
+	 *
+	 * @return True if the inverse was found
+	 */
+	private boolean loadFromCache(ArrayCache cache, float absNoiseSD, int nSV, boolean lowRank) {
+		ArrayCache.Key key = new ArrayCache.Key(lowRank ? "lowRankGammaInverse" : "gammaInverse")
+			.add(getClass().getName()).add(myNoisyValues).add(getCostWeights()).add(absNoiseSD).add(nSV);
+		if (lowRank) {
+			key.add(ourMaxLowRank);
+		} else {
+			key.add(ourGramMatrix.getPrecision().name()).add(ourPseudoInverseSolver.getClass().getName());
+		}
+		myCacheKey = key.getKey();
+
+		double[][] cached = cache.getDoubles(myCacheKey);
+		if (cached == null || cached.length != myNoisyValues.length + 1) {
+			return false;
+		}
+
+		double[][] entry = new double[myNoisyValues.length][];
+		System.arraycopy(cached, 0, entry, 0, entry.length);
+		double[] last = cached[entry.length];
+		if (lowRank) {
+			myLowRankVectors = entry;
+			myLowRankInverse = last;
+			myGammaInverse = null;
+		} else if (last.length == 2) {
+			myGammaInverse = entry;
+			myExactInverse = (last[0] != 0);
+			myRegularization = last[1];
+		} else {
+			return false;
+		}
+		if(!myQuiet) {
+			ourLogger.info("Loaded inverse of GAMMA from cache");
+		}
+		return true;
+	}
+
+	/**
+	 * Finds leading singular vectors U and values S of B = values*diag(sqrt(cost/P)), so that
+	 * GAMMA = BB' ~= US^2U' and its pseudoinverse is approximately U S^-2 U'.
+	 */
+	private void calcLowRank(float minSV, int nSV) {
+		float[] costWeights = getCostWeights();
+		float[] scale = new float[costWeights.length];
+		for (int k = 0; k < scale.length; k++) {
+			if (costWeights[k] < 0) {
+				throw new IllegalArgumentException("Low-rank solution requires a non-negative cost function");
+			}
+			scale[k] = (float) Math.sqrt(costWeights[k] / costWeights.length);
+		}
+
+		int rank = (nSV > 0) ? nSV : ourMaxLowRank;
+		RandomizedSVD.Result svd = ourRandomizedSVD.decompose(myNoisyValues, scale, rank);
+		double[] values = svd.getSingularValues();
+
+		//GAMMA's singular values are the squares of those of B
+		int kept = 0;
+		while (kept < values.length && values[kept]*values[kept] > minSV) {
+			kept++;
+		}
+		if(!myQuiet) {
+			Memory.report("after low-rank SVD (rank " + kept + ")");
+		}
+
+		myLowRankInverse = new double[kept];
+		for (int m = 0; m < kept; m++) {
+			myLowRankInverse[m] = 1 / (values[m]*values[m]);
+		}
+		double[][] vectors = svd.getVectors();
+		myLowRankVectors = new double[vectors.length][];
+		for (int i = 0; i < vectors.length; i++) {
+			myLowRankVectors[i] = new double[kept];
+			System.arraycopy(vectors[i], 0, myLowRankVectors[i], 0, kept);
+		}
+		myGammaInverse = null;
+	}
+
+	//the low-rank approximation of the pseudoinverse of GAMMA, times upsilon
+	private float[] applyGammaInverse(float[] upsilon) {
+		float[] result = new float[upsilon.length];
+		double[] projection = new double[myLowRankInverse.length];
+		for (int i = 0; i < upsilon.length; i++) {
+			for (int m = 0; m < projection.length; m++) {
+				projection[m] += myLowRankVectors[i][m] * upsilon[i];
+			}
+		}
+		for (int m = 0; m < projection.length; m++) {
+			projection[m] *= myLowRankInverse[m];
+		}
+		for (int i = 0; i < upsilon.length; i++) {
+			double sum = 0;
+			for (int m = 0; m < projection.length; m++) {
+				sum += myLowRankVectors[i][m] * projection[m];
+			}
+			result[i] = (float) sum;
+		}
+		return result;
+	}
+
 	private float addNoise(float[][] values, float noise) {
 		float maxValue = 0f;
 		for (float[] value : values) {
@@ -287,6 +857,11 @@ public class WeightedCostApproximator implements LinearApproximator {
 		}
 
 		float SD = noise * maxValue;
+		addAbsoluteNoise(values, SD);
+		return SD;
+	}
+
+	private static void addAbsoluteNoise(float[][] values, float SD) {
 		GaussianPDF pdf = new GaussianPDF(0f, SD*SD);
 
 		for (int i = 0; i < values.length; i++) {
@@ -294,8 +869,6 @@ public class WeightedCostApproximator implements LinearApproximator {
 				values[i][j] += pdf.sample()[0];
 			}
 		}
-
-		return SD;
 	}
 	
 	@SuppressWarnings("unused")
@@ -366,7 +939,8 @@ public class WeightedCostApproximator implements LinearApproximator {
 
 
 	/**
-	 * Override this method to use a different pseudoinverse implementation (eg clustered).
+	 * Uses the solver set with setPseudoInverseSolver(). Override this method to use a different
+	 * pseudoinverse implementation (eg clustered).
 	 *
 	 * @param matrix Any matrix
 	 * @param minSV Hint as to smallest singular value to use
@@ -374,145 +948,7 @@ public class WeightedCostApproximator implements LinearApproximator {
 	 * @return The pseudoinverse of the given matrix
 	 */
 	public double[][] pseudoInverse(double[][] matrix, float minSV, int nSV) {
-		double[][] result=null;
-
-		Random random=new Random();
-
-		Runtime runtime=Runtime.getRuntime();
-//		int hashCode=java.util.Arrays.hashCode(matrix);
-//		int testpos = 0;
-
-		String parent=System.getProperty("user.dir");
-		java.io.File path=new java.io.File(parent,"external");
-		String filename="matrix_"+random.nextLong();
-
-	 	try {
-			// TODO: separate this out into a helper method, so we can do this sort of thing for other calculations as well
-	 		java.io.File pinvfile = new java.io.File(path,"pseudoInverse");
-
-			if(pinvfile.exists())
-			{
-
-				java.io.File file=new java.io.File(path,filename);
-				if (file.canRead()) {
-                    file.delete();
-                }
-				java.io.File file2=new java.io.File(path,filename+".inv");
-				if (file2.canRead()) {
-                    file2.delete();
-                }
-
-				java.nio.channels.FileChannel channel=new java.io.RandomAccessFile(file,"rw").getChannel();
-	//			java.nio.ByteBuffer buffer=channel.map(java.nio.channels.FileChannel.MapMode.READ_WRITE, 0, matrix.length*matrix.length*4);
-				java.nio.ByteBuffer buffer= java.nio.ByteBuffer.allocate(matrix.length*matrix.length*4);
-				buffer.rewind();
-
-
-				buffer.order(java.nio.ByteOrder.BIG_ENDIAN);
-				for (double[] element : matrix) {
-					for (int j=0; j<matrix.length; j++) {
-						buffer.putFloat((float)(element[j]));
-					}
-				}
-				buffer.rewind();
-
-				channel.write(buffer);
-				channel.force(true);
-	            channel.close();
-
-				if (System.getProperty("os.name").startsWith("Windows")) {
-					Process process=runtime.exec("cmd /c pseudoInverse.bat "+filename+" "+filename+".inv"+" "+minSV+" "+nSV,null,path);
-					process.waitFor();
-				} else {
-					Process process=runtime.exec("external"+java.io.File.separatorChar+"pseudoInverse external/"+filename+" external/"+filename+".inv"+" "+minSV+" "+nSV,null,null);
-					process.waitFor();
-
-					java.io.InputStream s=process.getErrorStream();
-					if (s.available()>0) {
-						System.out.println("external error:");
-						while (s.available()>0) {
-							System.out.write(s.read());
-						}
-					}
-					java.io.InputStream s2=process.getInputStream();
-					if (s2.available()>0) {
-						System.out.println("external output:");
-						while (s2.available()>0) {
-							System.out.write(s2.read());
-						}
-					}
-				}
-
-				// matrix file cleaned up in finally block
-
-				channel=new java.io.RandomAccessFile(file2,"r").getChannel();
-	//			buffer=channel.map(java.nio.channels.FileChannel.MapMode.READ_ONLY, 0, matrix.length*matrix.length*4);
-				buffer= java.nio.ByteBuffer.allocate(matrix.length*matrix.length*4);
-				channel.read(buffer);
-				buffer.rewind();
-
-				double[][] inv=new double[matrix.length][];
-
-				for (int i=0; i<matrix.length; i++) {
-					double[] row=new double[matrix.length];
-					for (int j=0; j<matrix.length; j++) {
-						row[j]=buffer.getFloat();
-					}
-					inv[i]=row;
-				}
-				result=inv;
-
-				// Close all file handles
-	            channel.close();
-
-	            // channel file cleaned up in finally block
-			}
-		} catch (FileNotFoundException e) {
-			System.err.println("File not found: " + e);
-		} catch (java.io.IOException e) {
-			//e.printStackTrace();
-            System.err.println("WeightedCostApproximator.pseudoInverse() - IO Exception: " + e);
-		} catch (InterruptedException e) {
-            System.err.println("WeightedCostApproximator.pseudoInverse() - Interrupted: " + e);
-			//e.printStackTrace();
-		} catch (Exception e){
-            System.err.println("WeightedCostApproximator.pseudoInverse() - Gen Exception: " + e);
-            //e.printStackTrace();
-        } finally {
-        	java.io.File file=new java.io.File(path,filename);
-			if (file.exists()) {
-                file.delete();
-            }
-			java.io.File file2=new java.io.File(path,filename+".inv");
-			if (file2.exists()) {
-                file2.delete();
-            }
-        }
-
-		if (result==null) {
-
-			Matrix m = new Matrix(matrix);
-			SingularValueDecomposition svd = m.svd();
-			Matrix sInv = svd.getS().inverse();
-
-			int i = 0;
-			while (i < svd.getS().getRowDimension() && svd.getS().get(i, i) > minSV && (nSV <= 0 || i < nSV)) {
-                i++;
-            }
-
-			if(!myQuiet) {
-                ourLogger.info("Using " + i + " singular values for pseudo-inverse");
-            }
-
-			for (int j = i; j < matrix.length; j++) {
-				sInv.set(j, j, 0d);
-			}
-
-			result = svd.getV().times(sInv).times(svd.getU().transpose()).getArray();
-
-		}
-
-		return result;
+		return ourPseudoInverseSolver.pseudoInverse(matrix, minSV, nSV);
 	}
 
 	/**
@@ -524,40 +960,77 @@ public class WeightedCostApproximator implements LinearApproximator {
 	 * @see ca.nengo.math.LinearApproximator#findCoefficients(ca.nengo.math.Function)
 	 */
     public float[] findCoefficients(Function target) {
+		return findCoefficients(new Function[]{target})[0];
+	}
+
+	/**
+	 * Target functions are evaluated in parallel (each distinct Function object by one thread), and
+	 * the coefficients for all targets are found together, with one matrix-matrix product.
+	 *
+	 * @see ca.nengo.math.LinearApproximator#findCoefficients(ca.nengo.math.Function[])
+	 */
+	public float[][] findCoefficients(final Function[] targets) {
     	if(mySignalLength != -1)
     		System.err.println("Warning, finding coefficients using a function on WeightedCostApproximator initialized with signals");
-    	
-		float[] targetValues = new float[myEvalPoints.length];
-		for (int i = 0; i < targetValues.length; i++) {
-			targetValues[i] = target.map(myEvalPoints[i]);
-		}
 
-		float[] upsilon = new float[myNoisyValues.length];
-		for (int i = 0; i < myNoisyValues.length; i++) {
-			for (int j = 0; j < myEvalPoints.length; j++) {
-				upsilon[i] += myNoisyValues[i][j] * targetValues[j] * myCostFunction.map(myEvalPoints[j]);
+		//the same function may appear more than once (eg in different origins), but is evaluated once
+		final List<Function> distinct = new ArrayList<Function>();
+		Map<Function, Integer> indices = new IdentityHashMap<Function, Integer>();
+		for (Function target : targets) {
+			if (!indices.containsKey(target)) {
+				indices.put(target, Integer.valueOf(distinct.size()));
+				distinct.add(target);
 			}
-			upsilon[i] = upsilon[i] / myEvalPoints.length;
 		}
 
-		float[] result = new float[myNoisyValues.length];
-		for (int i = 0; i < myNoisyValues.length; i++) {
-			for (int j = 0; j < myNoisyValues.length; j++) {
-				result[i] += myGammaInverse[i][j] * upsilon[j];
+		final float[][] distinctValues = new float[distinct.size()][];
+		run(distinct.size(), new ParallelRange.Body() {
+			public void run(int chunk, int start, int end) {
+				for (int d = start; d < end; d++) {
+					Function target = distinct.get(d);
+					float[] values = new float[myEvalPoints.length];
+					for (int i = 0; i < values.length; i++) {
+						values[i] = target.map(myEvalPoints[i]);
+					}
+					distinctValues[d] = values;
+				}
 			}
-		}
+		});
 
-		return result;
+		float[][] targetValues = new float[targets.length][];
+		for (int d = 0; d < targets.length; d++) {
+			targetValues[d] = distinctValues[indices.get(targets[d]).intValue()];
+		}
+		return solve(targetValues);
 	}
-    
+
     /**
      * Similar to findCoefficients(ca.nengo.math.Function), but finds coefficients for a target signal (over time)
      * rather than a target function.
-     * 
+     *
      * @param targetSignal signal over time that the coefficients should fit to
      * @return coefficients (weights on the output of each neuron)
      */
     public float[] findCoefficients(float[] targetSignal) {
+    	return findCoefficients(new float[][]{targetSignal})[0];
+    }
+
+    /**
+     * Finds coefficients for several target signals together (see findCoefficients(float[])).
+     *
+     * @param targetSignals signals over time that the coefficients should fit to
+     * @return coefficients for each signal (weights on the output of each neuron)
+     */
+    public float[][] findCoefficients(float[][] targetSignals) {
+    	float[][] targetValues = new float[targetSignals.length][];
+    	for (int d = 0; d < targetSignals.length; d++) {
+    		targetValues[d] = getSignalValues(targetSignals[d]);
+    	}
+    	return solve(targetValues);
+    }
+
+    //target values at eval points for a target signal
+    private float[] getSignalValues(float[] targetSignal) {
     	if(mySignalLength == -1)
     		System.err.println("Warning, finding coefficients using a signal on WeightedCostApproximator initialized with points");
     	if(targetSignal.length != mySignalLength)
@@ -581,40 +1054,112 @@ public class WeightedCostApproximator implements LinearApproximator {
     			targetValues[i*mySignalLength+j] = targetSignal[j];
     	}
     	
-    	float[] upsilon = new float[myNoisyValues.length];
-		for (int i = 0; i < myNoisyValues.length; i++) {
-			for (int j = 0; j < myEvalPoints.length; j++) {
-				upsilon[i] += myNoisyValues[i][j] * targetValues[j] * myCostFunction.map(myEvalPoints[j]);
-			}
-			upsilon[i] = upsilon[i] / myEvalPoints.length;
-		}
+    	return targetValues;
+    }
 
-		float[] result = new float[myNoisyValues.length];
-		for (int i = 0; i < myNoisyValues.length; i++) {
-			for (int j = 0; j < myNoisyValues.length; j++) {
-				result[i] += myGammaInverse[i][j] * upsilon[j];
+	/**
+	 * Finds PHI = GAMMA" UPSILON for several targets at once.
+	 *
+	 * @param targetValues Values of each target at each eval point
+	 * @return Coefficients for each target
+	 */
+	private float[][] solve(final float[][] targetValues) {
+		ArrayCache cache = ArrayCache.getDefault();
+		String key = null;
+		if (cache != null && myCacheKey != null) {
+			key = new ArrayCache.Key("coefficients").add(myCacheKey).add(targetValues).getKey();
+			float[][] cached = cache.getFloats(key);
+			if (cached != null && cached.length == targetValues.length) {
+				return cached;
 			}
 		}
 
+		float[][] result = doSolve(targetValues);
+		if (key != null) {
+			cache.put(key, result);
+		}
 		return result;
-    }
+	}
 
-	private double[][] findGamma() {
+	private float[][] doSolve(final float[][] targetValues) {
+		final float[] costWeights = getCostWeights();
+		final int n = myNoisyValues.length;
+		final int p = myEvalPoints.length;
+
+		//UPSILON, by target
+		final float[][] upsilon = new float[targetValues.length][n];
+		run(n, new ParallelRange.Body() {
+			public void run(int chunk, int start, int end) {
+				float[] weighted = new float[p];
+				for (int i = start; i < end; i++) {
+					float[] row = myNoisyValues[i];
+					for (int k = 0; k < p; k++) {
+						weighted[k] = row[k] * costWeights[k];
+					}
+					for (int d = 0; d < targetValues.length; d++) {
+						float[] target = targetValues[d];
+						double sum = 0;
+						for (int k = 0; k < p; k++) {
+							sum += weighted[k] * target[k];
+						}
+						upsilon[d][i] = (float) (sum / p);
+					}
+				}
+			}
+		});
 
-		double[][] result = new double[myNoisyValues.length][];
-//		double[][] nativeResult = new double[myNoisyValues.length][];
+		if (myGammaInverse == null) {
+			float[][] result = new float[targetValues.length][];
+			for (int d = 0; d < result.length; d++) {
+				result[d] = applyGammaInverse(upsilon[d]);
+			}
+			return result;
+		}
 
-		for (int i = 0; i < result.length; i++) {
-			result[i] = new double[myNoisyValues.length];
-			for (int j = 0; j < result[i].length; j++) {
-				for (int k = 0; k < myEvalPoints.length; k++) {
-					result[i][j] += myNoisyValues[i][k] * myNoisyValues[j][k] * myCostFunction.map(myEvalPoints[k]);
+		final float[][] result = new float[targetValues.length][n];
+		run(n, new ParallelRange.Body() {
+			public void run(int chunk, int start, int end) {
+				for (int i = start; i < end; i++) {
+					double[] row = myGammaInverse[i];
+					for (int d = 0; d < upsilon.length; d++) {
+						float[] u = upsilon[d];
+						double sum = 0;
+						for (int j = 0; j < n; j++) {
+							sum += row[j] * u[j];
+						}
+						result[d][i] = (float) sum;
+					}
 				}
-				result[i][j] = result[i][j] / myEvalPoints.length;
 			}
+		});
+		return result;
+	}
+
+	//runs work over the given range with as many threads as the GramMatrix uses
+	private static void run(int length, ParallelRange.Body body) {
+		int threads = ourGramMatrix.getNumThreads();
+		int chunks = (threads == 1) ? 1 : Math.min(length, 4 * threads);
+		try {
+			ParallelRange.run(length, chunks, body, false);
+		} catch (SimulationException e) {
+			throw new RuntimeException(e);
 		}
+	}
 
-		return result;
+	private double[][] findGamma() {
+		return ourGramMatrix.compute(myNoisyValues, getCostWeights());
+	}
+
+	//the cost function evaluated at each eval point
+	private float[] getCostWeights() {
+		if (myCostWeights == null) {
+			float[] weights = new float[myEvalPoints.length];
+			for (int k = 0; k < weights.length; k++) {
+				weights[k] = myCostFunction.map(myEvalPoints[k]);
+			}
+			myCostWeights = weights;
+		}
+		return myCostWeights;
 	}
 
 	@Override
@@ -625,9 +1170,21 @@ public class WeightedCostApproximator implements LinearApproximator {
 		result.myEvalPoints = MU.clone(myEvalPoints);
 		result.myNoisyValues = MU.clone(myNoisyValues);
 
-		result.myGammaInverse = new double[myGammaInverse.length][];
-		for (int i = 0; i < myGammaInverse.length; i++) {
-			result.myGammaInverse[i] = myGammaInverse[i].clone();
+		if (myGammaInverse != null) {
+			result.myGammaInverse = new double[myGammaInverse.length][];
+			for (int i = 0; i < myGammaInverse.length; i++) {
+				result.myGammaInverse[i] = myGammaInverse[i].clone();
+			}
+		}
+		if (myLowRankVectors != null) {
+			result.myLowRankVectors = new double[myLowRankVectors.length][];
+			for (int i = 0; i < myLowRankVectors.length; i++) {
+				result.myLowRankVectors[i] = myLowRankVectors[i].clone();
+			}
+			result.myLowRankInverse = myLowRankInverse.clone();
+		}
+		if (myUpdateInverse == myGammaInverse) {
+			result.myUpdateInverse = result.myGammaInverse;
 		}
 
 		return result;
@@ -31,6 +31,7 @@ import java.io.Serializable;
 import java.util.HashMap;
 
 import ca.nengo.util.ScriptGenException;
+import ca.nengo.util.WeightMatrix;
 
 /**
  * A connection between an Origin and a Termination.
@@ -88,6 +89,12 @@ public interface Projection extends Serializable {
 	 * @return Matrix of weights in this Projection (if there are neurons on each end, then these are synaptic weights)
 	 */
 	public float[][] getWeights();
+
+	/**
+	 * @return Weights in this Projection, in whatever form is most compact (e.g. between NEF
+	 * 		ensembles, as a product of low-rank factors)
+	 */
+	public WeightMatrix getWeightMatrix();
 	
 	
 	public String toScript(HashMap<String, Object> scriptData) throws ScriptGenException;
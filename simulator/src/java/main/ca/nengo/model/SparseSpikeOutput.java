@@ -0,0 +1,43 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "SparseSpikeOutput.java". Description:
+"SpikeOutput that also lists the channels that spiked"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+/*
+ * Created on 17-Oct-2026
+ */
+package ca.nengo.model;
+
+/**
+ * SpikeOutput that also provides the indices of the channels that spiked. Spikes are
+ * typically sparse, so that consumers that only need the spiking channels (e.g. to sum
+ * the synaptic weights of spiking inputs) can skip the rest.
+ */
+public interface SparseSpikeOutput extends SpikeOutput {
+
+	/**
+	 * @return Indices of the channels that spiked (i.e. those that are true in getValues()),
+	 * 		in ascending order. The array should not be modified.
+	 */
+	public int[] getSpikeIndices();
+
+}
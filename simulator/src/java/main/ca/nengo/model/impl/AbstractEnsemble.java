@@ -190,7 +190,33 @@ public abstract class AbstractEnsemble implements Ensemble, Probeable, VisiblyMu
 			mySpikePattern = new SpikePatternImpl(myNodes.length);
 		}
 
-		for (int i = 0; i < myNodes.length; i++) {
+		runNodes(startTime, endTime);
+	}
+
+	/**
+	 * Runs each Node and collects spikes if requested. Subclasses that can update their Nodes
+	 * more efficiently in bulk may override this, and report spikes through setSpikePattern(...).
+	 *
+	 * @param startTime simulation time at which running starts
+	 * @param endTime simulation time at which running ends
+	 * @throws SimulationException if a Node can not be run
+	 */
+	protected void runNodes(float startTime, float endTime) throws SimulationException {
+		runNodes(startTime, endTime, 0, myNodes.length);
+	}
+
+	/**
+	 * Runs a contiguous range of Nodes and collects their spikes if requested. Disjoint ranges
+	 * may be run concurrently.
+	 *
+	 * @param startTime simulation time at which running starts
+	 * @param endTime simulation time at which running ends
+	 * @param start Index of the first Node to run
+	 * @param end Index after the last Node to run
+	 * @throws SimulationException if a Node can not be run
+	 */
+	protected void runNodes(float startTime, float endTime, int start, int end) throws SimulationException {
+		for (int i = start; i < end; i++) {
 			myNodes[i].run(startTime, endTime);
 
 			if (myCollectSpikesFlag && (myCollectSpikesRatio == 1 || i % myCollectSpikesRatio == 0)) {
@@ -41,6 +41,7 @@ import ca.nengo.model.SimulationMode;
 import ca.nengo.model.StructuralException;
 import ca.nengo.model.Termination;
 import ca.nengo.util.ScriptGenException;
+import ca.nengo.util.WeightMatrix;
 
 /**
  * <p>Default implementation of Ensemble.</p>
@@ -178,6 +179,43 @@ public class EnsembleImpl extends AbstractEnsemble implements ExpandableNode {
 		return result;
 	}
 
+	/**
+	 * Like addTermination(String, float[][], float, boolean), but the weights of the new
+	 * Termination are kept in the given matrix (see EnsembleTermination.setWeightMatrix(...)).
+	 *
+	 * @param name Unique name for the Termination (in the scope of this Node)
+	 * @param weights Weight matrix with a row for each expandable node
+	 * @param tauPSC Time constant with which incoming signals are filtered
+	 * @param modulatory If true, inputs to the Termination are not summed with other inputs
+	 * @return Termination that was added
+	 * @throws StructuralException if the matrix has the wrong number of rows, or if the expandable
+	 * 		nodes don't make LinearExponentialTerminations
+	 */
+	public synchronized Termination addTermination(String name, WeightMatrix weights, float tauPSC, boolean modulatory) throws StructuralException {
+		EnsembleTermination result = (EnsembleTermination) addTermination(name, placeholderWeights(weights), tauPSC, modulatory);
+		try {
+			result.setWeightMatrix(weights);
+		} catch (StructuralException e) {
+			removeTermination(name);
+			throw e;
+		}
+		return result;
+	}
+
+	/**
+	 * @param weights A weight matrix
+	 * @return Weights of the same size, with one row of zeros shared by all rows, for making
+	 * 		node terminations that will be given the matrix afterwards
+	 */
+	protected static float[][] placeholderWeights(WeightMatrix weights) {
+		float[] zeros = new float[weights.getColumns()];
+		float[][] result = new float[weights.getRows()][];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = zeros;
+		}
+		return result;
+	}
+
 	/**
 	 * @throws StructuralException if Termination does not exist
 	 * @see ca.nengo.model.ExpandableNode#removeTermination(java.lang.String)
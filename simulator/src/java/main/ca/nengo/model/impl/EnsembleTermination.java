@@ -31,9 +31,13 @@ import ca.nengo.model.Network;
 import ca.nengo.model.Ensemble;
 import ca.nengo.model.InstantaneousOutput;
 import ca.nengo.model.Node;
+import ca.nengo.model.PreciseSpikeOutput;
+import ca.nengo.model.RealOutput;
 import ca.nengo.model.SimulationException;
+import ca.nengo.model.SparseSpikeOutput;
 import ca.nengo.model.StructuralException;
 import ca.nengo.model.Termination;
+import ca.nengo.util.WeightMatrix;
 
 /**
  * <p>A Termination that is composed of Terminations onto multiple Nodes.
@@ -47,6 +51,10 @@ import ca.nengo.model.Termination;
  * but here we deal with all branches (an Ensemble-level Termination).
  * In either case the spikes transmitted by the axons are the same.</p>
  *
+ * <p>If the Node-level Terminations are LinearExponentialTerminations, their weights can be
+ * kept in one WeightMatrix (see setWeightMatrix(...)), in which case the weighted sums of
+ * real-valued and spike inputs are found for all Nodes at once.</p>
+ *
  * TODO: test
  *
  * @author Bryan Tripp
@@ -58,6 +66,7 @@ public class EnsembleTermination implements Termination {
 	private Node myNode;
 	private String myName;
 	private Termination[] myNodeTerminations;
+	private WeightMatrix myWeightMatrix;
 
 	/**
 	 * @param node The parent Node
@@ -104,11 +113,68 @@ public class EnsembleTermination implements Termination {
 			throw new SimulationException("Input to this Termination must have dimension " + getDimensions());
 		}
 
+		float[] netInputs = (myWeightMatrix == null) ? null : combine(values);
+		if (netInputs == null) {
+			for (Termination myNodeTermination : myNodeTerminations) {
+				myNodeTermination.setValues(values);
+			}
+		} else {
+			for (int i = 0; i < myNodeTerminations.length; i++) {
+				((LinearExponentialTermination) myNodeTerminations[i]).setValues(values, netInputs[i]);
+			}
+		}
+	}
+
+	//weighted sums of input for all nodes, or null if the node terminations must weight the input themselves
+	private float[] combine(InstantaneousOutput values) {
+		if (values instanceof RealOutput) {
+			return myWeightMatrix.prod(((RealOutput) values).getValues());
+		} else if (values instanceof SparseSpikeOutput && !(values instanceof PreciseSpikeOutput)) {
+			for (Termination myNodeTermination : myNodeTerminations) {
+				if (((LinearExponentialTermination) myNodeTermination).getWeightProbabilities() != null) {
+					return null;
+				}
+			}
+			return myWeightMatrix.sumColumns(((SparseSpikeOutput) values).getSpikeIndices());
+		}
+		return null;
+	}
+
+	/**
+	 * Replaces the weights of the Node-level Terminations with rows of a shared matrix.
+	 *
+	 * @param matrix Weight matrix with a row for each Node and a column for each input dimension
+	 * @throws StructuralException if the matrix has the wrong size, or if the Node-level
+	 * 		Terminations are not LinearExponentialTerminations
+	 */
+	public void setWeightMatrix(WeightMatrix matrix) throws StructuralException {
+		useWeightMatrix(matrix);
+	}
+
+	private void useWeightMatrix(WeightMatrix matrix) throws StructuralException {
+		if (matrix.getRows() != myNodeTerminations.length || matrix.getColumns() != getDimensions()) {
+			throw new StructuralException("Weight matrix is " + matrix.getRows() + "x" + matrix.getColumns()
+					+ "; should be " + myNodeTerminations.length + "x" + getDimensions());
+		}
 		for (Termination myNodeTermination : myNodeTerminations) {
-			myNodeTermination.setValues(values);
+			if ( !(myNodeTermination instanceof LinearExponentialTermination) ) {
+				throw new StructuralException("A weight matrix requires LinearExponentialTerminations on each Node");
+			}
+		}
+
+		myWeightMatrix = matrix;
+		for (int i = 0; i < myNodeTerminations.length; i++) {
+			((LinearExponentialTermination) myNodeTerminations[i]).setWeightMatrix(matrix, i);
 		}
 	}
 
+	/**
+	 * @return Shared weight matrix of the Node-level Terminations, or null if they have their own weights
+	 */
+	public WeightMatrix getWeightMatrix() {
+		return myWeightMatrix;
+	}
+
 	/**
 	 * @return Latest input to the underlying terminations.
 	 */
@@ -228,6 +294,14 @@ public class EnsembleTermination implements Termination {
 		else {
 			throw new CloneNotSupportedException("Error cloning EnsembleTermination: Wrong node type.");
 		}
+
+		if (myWeightMatrix != null) {
+			try {
+				result.useWeightMatrix(myWeightMatrix.clone());
+			} catch (StructuralException e) {
+				throw new CloneNotSupportedException("Error cloning EnsembleTermination: " + e.getMessage());
+			}
+		}
 		return result;
 	}
 
@@ -25,16 +25,17 @@ a recipient may use your version of this file under either the MPL or the GPL Li
 
 package ca.nengo.model.impl;
 
-import java.util.Random;
-
+import ca.nengo.math.PDFTools;
 import ca.nengo.model.InstantaneousOutput;
 import ca.nengo.model.Node;
 import ca.nengo.model.PlasticNodeTermination;
 import ca.nengo.model.PreciseSpikeOutput;
 import ca.nengo.model.RealOutput;
 import ca.nengo.model.SimulationException;
+import ca.nengo.model.SparseSpikeOutput;
 import ca.nengo.model.SpikeOutput;
 import ca.nengo.model.StructuralException;
+import ca.nengo.util.WeightMatrix;
 
 /**
  * <p>A Termination at which incoming spikes induce exponentially decaying post-synaptic
@@ -47,6 +48,10 @@ import ca.nengo.model.StructuralException;
  * equals the weight. This means that spike input and spike-rate input have roughly the
  * same effects.</p>
  *
+ * <p>The weights can alternatively be a row of a WeightMatrix that is shared by the Terminations
+ * onto all the neurons in an ensemble (see EnsembleTermination.setWeightMatrix(...)). The matrix
+ * is then the only copy of the weights, and saving and restoring them is up to its owner.</p>
+ *
  * @author Bryan Tripp
  */
 public class LinearExponentialTermination implements PlasticNodeTermination {
@@ -58,10 +63,11 @@ public class LinearExponentialTermination implements PlasticNodeTermination {
     private float myTauPSC;
     private boolean myModulatory;
 
-    private float[] myInitialWeights;
+    private float[] myInitialWeights; //with a shared matrix, only kept once the row has unsaved changes
     private float[] myWeights;
     private float[] myWeightProbabilities;
-    private Random random;
+    private WeightMatrix myMatrix;
+    private int myRow;
 
     private float myCurrent = 0;
     private float myNetSpikeInput;
@@ -99,11 +105,50 @@ public class LinearExponentialTermination implements PlasticNodeTermination {
         myNetSpikeInput = 0;
         myPreciseSpikeInputTimes=null;
         myIntegrationTime = 0;
-        myWeights = myInitialWeights.clone();
+        if (myMatrix == null) {
+            myWeights = myInitialWeights.clone();
+        } else if (myInitialWeights != null) {
+            myMatrix.setRow(myRow, myInitialWeights);
+            myInitialWeights = null;
+        }
     }
 
     public void saveWeights() {
-        myInitialWeights = myWeights.clone();
+        if (myMatrix == null) {
+            myInitialWeights = myWeights.clone();
+        } else {
+            myInitialWeights = null; //the row as it is now is what reset() goes back to
+        }
+    }
+
+    //keeps a copy of the row in a shared matrix before it is first changed, for reset()
+    private void keepInitialRow() {
+        if (myInitialWeights == null) {
+            myInitialWeights = myMatrix.getRow(myRow);
+        }
+    }
+
+    /**
+     * @param matrix A weight matrix shared with other Terminations, which replaces this Termination's
+     * 		own weights
+     * @param row The row of the matrix that holds this Termination's weights
+     */
+    public void setWeightMatrix(WeightMatrix matrix, int row) {
+        if (matrix.getColumns() != getDimensions()) {
+            throw new IllegalArgumentException("Weight matrix has " + matrix.getColumns()
+                    + " columns; should be " + getDimensions());
+        }
+        myMatrix = matrix;
+        myRow = row;
+        myWeights = null;
+        myInitialWeights = null;
+    }
+
+    /**
+     * @return The shared weight matrix that holds this Termination's weights, or null if it has its own
+     */
+    public WeightMatrix getWeightMatrix() {
+        return myMatrix;
     }
 
     /**
@@ -117,26 +162,32 @@ public class LinearExponentialTermination implements PlasticNodeTermination {
      * @see ca.nengo.model.Termination#getDimensions()
      */
     public int getDimensions() {
-        return myWeights.length;
+        return (myMatrix == null) ? myWeights.length : myMatrix.getColumns();
     }
 
     /**
-     * @return List of synaptic weights for each input channel
+     * @return List of synaptic weights for each input channel (a copy if the weights are
+     * 		in a shared weight matrix)
      */
     public float[] getWeights() {
-        return myWeights;
+        return (myMatrix == null) ? myWeights : myMatrix.getRow(myRow);
     }
 
     /**
      * @param weights The new synaptic weights for each input channel
      */
     public void setWeights(float[] weights, boolean save) {
-        if(weights.length != myInitialWeights.length) {
+        if(weights.length != getDimensions()) {
             System.err.println("Error, dimensions don't match in setWeights, ignoring new weights");
             return;
         }
 
-        myWeights = weights.clone();
+        if (myMatrix != null) {
+            keepInitialRow();
+            myMatrix.setRow(myRow, weights);
+        } else {
+            myWeights = weights.clone();
+        }
 
         if (save) {
             saveWeights();
@@ -150,13 +201,18 @@ public class LinearExponentialTermination implements PlasticNodeTermination {
      * @param change The change in the synaptic weights for each input channel
      */
     public void modifyWeights(float[] change, boolean save) {
-        if(change.length != myInitialWeights.length) {
+        if(change.length != getDimensions()) {
             System.err.println("Error, dimensions don't match in modifyWeights, ignoring new weights");
             return;
         }
 
-        for(int i=0; i < change.length; i++)
-        	myWeights[i] += change[i];
+        if (myMatrix != null) {
+            keepInitialRow();
+            myMatrix.addToRow(myRow, change);
+        } else {
+            for(int i=0; i < change.length; i++)
+            	myWeights[i] += change[i];
+        }
 
         if (save) {
             saveWeights();
@@ -168,15 +224,11 @@ public class LinearExponentialTermination implements PlasticNodeTermination {
      * @param probs The new synaptic vesicle release probabilities for each input channel
      */
     public void setWeightProbabilities(float[] probs) {
-        if(probs.length != myInitialWeights.length)
+        if(probs.length != getDimensions())
         {
             System.err.println("Error, dimensions don't match in setWeightProbabilities, ignoring probabilities");
             return;
         }
-        if (random==null) {
-            random=new Random();
-        }
-
         myWeightProbabilities = probs;
     }
 
@@ -214,7 +266,7 @@ public class LinearExponentialTermination implements PlasticNodeTermination {
 
         myPreciseSpikeInputTimes = (values instanceof PreciseSpikeOutput) ? ((PreciseSpikeOutput)values).getSpikeTimes() : null;
         myIntegrationTime = 0; // start at the beginning of these spike times (given as an offset increasing from the previous time step)
-        myNetSpikeInput = (values instanceof SpikeOutput && myPreciseSpikeInputTimes==null) ? combineSpikes((SpikeOutput) values, myWeights) : 0;
+        myNetSpikeInput = (values instanceof SpikeOutput && myPreciseSpikeInputTimes==null) ? combineSpikes((SpikeOutput) values) : 0;
 
         // convert precise spike times that happen right at the beginning of the time window
         //  to be handled separately (we really don't need this, but I'm paranoid about losing
@@ -222,20 +274,44 @@ public class LinearExponentialTermination implements PlasticNodeTermination {
         if (myPreciseSpikeInputTimes!=null) {
             if (myWeightProbabilities!=null) {
                 for (int i=0; i<myPreciseSpikeInputTimes.length; i++) {
-                    if ((myPreciseSpikeInputTimes[i]==0f) && (random.nextFloat()<myWeightProbabilities[i])) {
-                        myNetSpikeInput+=myWeights[i];
+                    if ((myPreciseSpikeInputTimes[i]==0f) && ((float) PDFTools.random()<myWeightProbabilities[i])) {
+                        myNetSpikeInput+=getWeight(i);
                     }
                 }
             } else {
                 for (int i=0; i<myPreciseSpikeInputTimes.length; i++) {
                     if (myPreciseSpikeInputTimes[i]==0f) {
-                        myNetSpikeInput+=myWeights[i];
+                        myNetSpikeInput+=getWeight(i);
                     }
                 }
             }
         }
 
-        myNetRealInput = (values instanceof RealOutput) ? combineReals((RealOutput) values, myWeights) : 0;
+        myNetRealInput = (values instanceof RealOutput) ? combineReals((RealOutput) values) : 0;
+    }
+
+    /**
+     * Like setValues(values), but with the weighted sum of the input given by the caller, who
+     * may have found it more efficiently (e.g. for all the neurons in an ensemble at once).
+     * Precise spike times are not supported this way, and release probabilities are ignored.
+     *
+     * @param values Can be either SpikeOutput or RealOutput
+     * @param netInput Weighted sum of the input (for spikes, the sum of the weights of spiking inputs)
+     * @throws SimulationException if the input has the wrong dimension
+     */
+    public void setValues(InstantaneousOutput values, float netInput) throws SimulationException {
+        if (values.getDimension() != getDimensions()) {
+            throw new SimulationException("Input must have dimension " + getDimensions());
+        }
+        if (values instanceof PreciseSpikeOutput) {
+            throw new SimulationException("Precise spike times must be weighted by the Termination");
+        }
+
+        myRawInput = values;
+        myPreciseSpikeInputTimes = null;
+        myIntegrationTime = 0;
+        myNetSpikeInput = (values instanceof SpikeOutput) ? netInput : 0;
+        myNetRealInput = (values instanceof RealOutput) ? netInput : 0;
     }
 
     /**
@@ -302,8 +378,8 @@ public class LinearExponentialTermination implements PlasticNodeTermination {
             for (int i=0; i<myPreciseSpikeInputTimes.length; i++)
             {
                 float time=myPreciseSpikeInputTimes[i];
-                if (time>myIntegrationTime && (time<=endTime+epsilon) && (random.nextFloat()<myWeightProbabilities[i])) {
-                    myCurrent+=myWeights[i]*(1f/myTauPSC-((endTime-time)/(myTauPSC*myTauPSC)));
+                if (time>myIntegrationTime && (time<=endTime+epsilon) && ((float) PDFTools.random()<myWeightProbabilities[i])) {
+                    myCurrent+=getWeight(i)*(1f/myTauPSC-((endTime-time)/(myTauPSC*myTauPSC)));
                 }
             }
 
@@ -312,27 +388,52 @@ public class LinearExponentialTermination implements PlasticNodeTermination {
             {
                 float time=myPreciseSpikeInputTimes[i];
                 if (time>myIntegrationTime && (time<=endTime+epsilon)) {
-                    myCurrent+=myWeights[i]*(1f/myTauPSC-((endTime-time)/(myTauPSC*myTauPSC)));
+                    myCurrent+=getWeight(i)*(1f/myTauPSC-((endTime-time)/(myTauPSC*myTauPSC)));
                 }
             }
         }
         myIntegrationTime=endTime;
     }
 
-    private float combineSpikes(SpikeOutput input, float[] weights) {
+    private float getWeight(int i) {
+        return (myMatrix == null) ? myWeights[i] : myMatrix.get(myRow, i);
+    }
+
+    private float combineSpikes(SpikeOutput input) {
         float result = 0;
+
+        if (input instanceof SparseSpikeOutput) {
+            //only the spiking inputs contribute, and there are usually few of them
+            int[] indices = ((SparseSpikeOutput) input).getSpikeIndices();
+            if (myWeightProbabilities!=null) {
+                for (int j = 0; j < indices.length; j++) {
+                    int i = indices[j];
+                    if ((float) PDFTools.random()<myWeightProbabilities[i]) {
+                        result += getWeight(i);
+                    }
+                }
+            } else if (myMatrix != null) {
+                result = myMatrix.sumRow(myRow, indices);
+            } else {
+                float[] weights = myWeights;
+                for (int j = 0; j < indices.length; j++) {
+                    result += weights[indices[j]];
+                }
+            }
+            return result;
+        }
+
         boolean[] spikes = input.getValues();
-
         if (myWeightProbabilities!=null) {
             for (int i = 0; i < spikes.length; i++) {
-                if (spikes[i] && (random.nextFloat()<myWeightProbabilities[i])) {
-                    result += weights[i];
+                if (spikes[i] && ((float) PDFTools.random()<myWeightProbabilities[i])) {
+                    result += getWeight(i);
                 }
             }
         } else {
             for (int i = 0; i < spikes.length; i++) {
                 if (spikes[i]) {
-                    result += weights[i];
+                    result += getWeight(i);
                 }
             }
         }
@@ -340,9 +441,14 @@ public class LinearExponentialTermination implements PlasticNodeTermination {
         return result;
     }
 
-    private float combineReals(RealOutput input, float[] weights) {
-        float result = 0;
+    private float combineReals(RealOutput input) {
         float[] reals = input.getValues();
+        if (myMatrix != null) {
+            return myMatrix.dotRow(myRow, reals);
+        }
+
+        float result = 0;
+        float[] weights = myWeights;
 
         for (int i = 0; i < reals.length; i++) {
             result += weights[i] * reals[i];
@@ -401,8 +507,13 @@ public class LinearExponentialTermination implements PlasticNodeTermination {
 	public LinearExponentialTermination clone(Node node) throws CloneNotSupportedException {
 		LinearExponentialTermination result = (LinearExponentialTermination) super.clone();
 		result.myNode = node;
-		result.myWeights = myWeights.clone();
-		result.saveWeights();
+		if (myMatrix == null) {
+			result.myWeights = myWeights.clone();
+			result.saveWeights();
+		} else if (myInitialWeights != null) {
+			//the owner of the matrix gives the clone a copy (see EnsembleTermination)
+			result.myInitialWeights = myInitialWeights.clone();
+		}
 //		result.myWeightProbabilities = myWeightProbabilities.clone();
 		result.myRawInput = (myRawInput != null) ? myRawInput.clone() : null;
 //		result.myRawInput = null;
@@ -28,6 +28,7 @@ a recipient may use your version of this file under either the MPL or the GPL Li
 package ca.nengo.model.impl;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
@@ -43,6 +44,8 @@ import ca.nengo.model.SpikeOutput;
 import ca.nengo.model.StructuralException;
 import ca.nengo.model.Termination;
 import ca.nengo.model.Units;
+import ca.nengo.math.LinearApproximator;
+import ca.nengo.model.nef.NEFEnsembleFactory;
 import ca.nengo.model.nef.impl.DecodedTermination;
 import ca.nengo.model.nef.impl.NEFEnsembleImpl;
 import ca.nengo.model.nef.impl.DecodedOrigin;
@@ -50,6 +53,7 @@ import ca.nengo.model.plasticity.impl.PESTermination;
 import ca.nengo.model.plasticity.impl.PlasticEnsembleImpl;
 import ca.nengo.util.MU;
 import ca.nengo.util.TimeSeries;
+import ca.nengo.util.impl.ParallelRange;
 import ca.nengo.util.impl.TimeSeriesImpl;
 
 /**
@@ -120,6 +124,52 @@ public class NetworkArrayImpl extends NetworkImpl {
 		createEnsembleOrigin("X");
 		this.setUseGPU(true);
 	}
+
+	/**
+	 * Create a network array whose elements are made in parallel by the given factory, and
+	 * named by their indices.
+	 *
+	 * @param name The name of the NetworkArray to create
+	 * @param length Number of elements
+	 * @param factory Factory that makes each element (it must make NEFEnsembleImpls)
+	 * @param neurons Number of neurons in each element
+	 * @param dimension Number of dimensions represented by each element
+	 * @throws StructuralException
+	 */
+	public NetworkArrayImpl(String name, int length, NEFEnsembleFactory factory, int neurons, int dimension) throws StructuralException {
+		this(name, makeNodes(length, factory, neurons, dimension));
+	}
+
+	//elements are made in parallel, each with its own random stream, so that the result doesn't depend on thread count
+	private static NEFEnsembleImpl[] makeNodes(int length, final NEFEnsembleFactory factory, final int neurons, final int dimension)
+			throws StructuralException {
+
+		final NEFEnsembleImpl[] result = new NEFEnsembleImpl[length];
+		forEachNode(length, new ParallelRange.Body() {
+			public void run(int chunk, int start, int end) throws SimulationException {
+				try {
+					for (int i = start; i < end; i++) {
+						result[i] = (NEFEnsembleImpl) factory.make(String.valueOf(i), neurons, dimension);
+					}
+				} catch (StructuralException e) {
+					throw new SimulationException(e);
+				}
+			}
+		});
+		return result;
+	}
+
+	//runs body in parallel with one chunk per element, so that each element has its own random stream
+	private static void forEachNode(int length, ParallelRange.Body body) throws StructuralException {
+		try {
+			ParallelRange.run(length, length, body);
+		} catch (SimulationException e) {
+			if (e.getCause() instanceof StructuralException) {
+				throw (StructuralException) e.getCause();
+			}
+			throw new StructuralException(e);
+		}
+	}
 	
 	/** 
 	 * Create an Origin that concatenates the values of internal Origins.
@@ -160,12 +210,88 @@ public class NetworkArrayImpl extends NetworkImpl {
 	 * @throws StructuralException
 	 */
 	public Origin addDecodedOrigin(String name, Function[] functions, String nodeOrigin) throws StructuralException {
-		DecodedOrigin[] origins = new DecodedOrigin[myNumNodes];
+		Function[][] nodeFunctions = new Function[myNumNodes][];
+		Arrays.fill(nodeFunctions, functions);
+		this.createEnsembleOrigin(name, addDecodedOrigins(name, nodeFunctions, nodeOrigin));
+		return this.getOrigin(name);
+	}
+
+	/**
+	 * Adds a decoded origin to each node. Decoders are found for the nodes in parallel. Nodes
+	 * that reuse approximators and have the same decoding key (see NEFEnsembleImpl.getDecodingKey(String))
+	 * share one approximator, and if their functions are also the same, one set of decoders.
+	 */
+	private DecodedOrigin[] addDecodedOrigins(final String name, final Function[][] functions, final String nodeOrigin)
+			throws StructuralException {
+
+		//groups of interchangeable nodes, by the index of their first node
+		final String[] keys = new String[myNumNodes];
+		forEachNode(myNumNodes, new ParallelRange.Body() {
+			public void run(int chunk, int start, int end) {
+				for (int i = start; i < end; i++) {
+					if (myNodes[i].getReuseApproximators()) {
+						keys[i] = myNodes[i].getDecodingKey(nodeOrigin);
+					}
+				}
+			}
+		});
+		final int[] first = new int[myNumNodes];
+		Map<String, Integer> firstByKey = new HashMap<String, Integer>();
 		for (int i = 0; i < myNumNodes; i++) {
-			origins[i] = (DecodedOrigin) myNodes[i].addDecodedOrigin(name,  functions,  nodeOrigin);
+			first[i] = i;
+			if (keys[i] != null) {
+				Integer existing = firstByKey.get(keys[i]);
+				if (existing == null) {
+					firstByKey.put(keys[i], Integer.valueOf(i));
+				} else {
+					first[i] = existing.intValue();
+				}
+			}
 		}
-		this.createEnsembleOrigin(name, origins);
-		return this.getOrigin(name);
+
+		final LinearApproximator[] approximators = new LinearApproximator[myNumNodes];
+		forEachNode(myNumNodes, new ParallelRange.Body() {
+			public void run(int chunk, int start, int end) throws SimulationException {
+				try {
+					for (int i = start; i < end; i++) {
+						if (first[i] == i) {
+							approximators[i] = myNodes[i].prepareDecodingApproximator(nodeOrigin);
+						}
+					}
+				} catch (StructuralException e) {
+					throw new SimulationException(e);
+				}
+			}
+		});
+
+		final DecodedOrigin[] result = new DecodedOrigin[myNumNodes];
+		forEachNode(myNumNodes, new ParallelRange.Body() {
+			public void run(int chunk, int start, int end) throws SimulationException {
+				try {
+					for (int i = start; i < end; i++) {
+						if (first[i] == i || functions[i] != functions[first[i]]) {
+							result[i] = new DecodedOrigin(myNodes[i], name, myNodes[i].getNodes(), nodeOrigin, functions[i],
+									approximators[first[i]]);
+						}
+					}
+				} catch (StructuralException e) {
+					throw new SimulationException(e);
+				}
+			}
+		});
+
+		//nodes are changed in this thread, since they notify listeners
+		for (int i = 0; i < myNumNodes; i++) {
+			if (result[i] == null) {
+				result[i] = new DecodedOrigin(myNodes[i], name, myNodes[i].getNodes(), nodeOrigin, functions[i],
+						MU.clone(result[first[i]].getDecoders()));
+			}
+			if (first[i] != i) {
+				myNodes[i].setDecodingApproximator(nodeOrigin, approximators[first[i]]);
+			}
+			myNodes[i].addDecodedOrigin(result[i]);
+		}
+		return result;
 	}
 	
 	/**
@@ -190,15 +316,15 @@ public class NetworkArrayImpl extends NetworkImpl {
 			System.err.println("Warning, trying to split functions but function list length does " +
 					"not match network array dimension");
 		
-		DecodedOrigin[] origins = new DecodedOrigin[myNumNodes];
+		Function[][] nodeFunctions = new Function[myNumNodes][];
 		int f=0;
 		for (int i = 0; i < myNumNodes; i++) {
 			Function[] oFuncs = new Function[myNodeDimensions[i]];
 			for (int d=0; d < myNodeDimensions[i]; d++)
 				oFuncs[d] = functions[f++];
-			origins[i] = (DecodedOrigin) myNodes[i].addDecodedOrigin(name,  oFuncs,  nodeOrigin);
+			nodeFunctions[i] = oFuncs;
 		}
-		this.createEnsembleOrigin(name, origins);
+		this.createEnsembleOrigin(name, addDecodedOrigins(name, nodeFunctions, nodeOrigin));
 		return this.getOrigin(name);
 	}
 	
@@ -502,8 +628,9 @@ public class NetworkArrayImpl extends NetworkImpl {
 	 * @param learnTerm name of the learned termination
 	 * @param modTerm name of the modulatory termination
 	 * @param rate learning rate
+	 * @throws StructuralException if a learned termination can't use Oja smoothing
 	 */
-	public void learn(String learnTerm, String modTerm, float rate) {
+	public void learn(String learnTerm, String modTerm, float rate) throws StructuralException {
 		learn(learnTerm, modTerm, rate, true);
 	}
 	
@@ -514,8 +641,9 @@ public class NetworkArrayImpl extends NetworkImpl {
 	 * @param modTerm name of the modulatory termination
 	 * @param rate learning rate
 	 * @param oja whether or not to use Oja smoothing
+	 * @throws StructuralException if a learned termination can't use Oja smoothing
 	 */
-	public void learn(String learnTerm, String modTerm, float rate, boolean oja) {
+	public void learn(String learnTerm, String modTerm, float rate, boolean oja) throws StructuralException {
 		for(int i=0; i < myNumNodes; i++) {
 			PESTermination term;
 			try {
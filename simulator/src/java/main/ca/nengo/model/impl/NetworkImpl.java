@@ -36,6 +36,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -86,7 +87,7 @@ public class NetworkImpl implements Network, VisiblyMutable, VisiblyMutable.List
 	private static Logger ourLogger = Logger.getLogger(NetworkImpl.class);
 
 	private Map<String, Node> myNodeMap; //keyed on name
-	private Map<Termination, Projection> myProjectionMap; //keyed on Termination
+	private Map<Termination, Projection> myProjectionMap; //keyed on Termination, in the order added
 	private String myName;
 	private SimulationMode myMode;
 	private List<SimulationMode> myFixedModes;
@@ -120,7 +121,7 @@ public class NetworkImpl implements Network, VisiblyMutable, VisiblyMutable.List
 	 */
 	public NetworkImpl() {
 		myNodeMap = new HashMap<String, Node>(20);
-		myProjectionMap	= new HashMap<Termination, Projection>(50);
+		myProjectionMap	= new LinkedHashMap<Termination, Projection>(50);
 		myName = DEFAULT_NAME;
 		myStepSize = .001f;
 		myProbeables = new HashMap<String, Probeable>(30);
@@ -456,6 +457,9 @@ public class NetworkImpl implements Network, VisiblyMutable, VisiblyMutable.List
 	}
 
 	/**
+	 * Projections are returned in the order they were added, so that a simulation gives each one
+	 * the same random stream (see NodeRandomStreams) on every run.
+	 *
 	 * @see ca.nengo.model.Network#getProjections()
 	 */
 	public Projection[] getProjections() {
@@ -1159,7 +1163,7 @@ public class NetworkImpl implements Network, VisiblyMutable, VisiblyMutable.List
 //		result.myProbeableStates
 
 		//TODO: this works with a single Projection impl & no params; should add Projection.copy(Origin, Termination, Network)?
-		result.myProjectionMap = new HashMap<Termination, Projection>(10);
+		result.myProjectionMap = new LinkedHashMap<Termination, Projection>(10);
 		for (Projection oldProjection : getProjections()) {
 			try {
 				Origin newOrigin = result.getNode(oldProjection.getOrigin().getNode().getName())
@@ -43,6 +43,7 @@ import ca.nengo.model.impl.NetworkImpl.OriginWrapper;
 import ca.nengo.model.impl.NetworkImpl.TerminationWrapper;
 import ca.nengo.model.Node;
 import ca.nengo.model.Origin;
+import ca.nengo.model.PlasticNodeTermination;
 import ca.nengo.model.Projection;
 import ca.nengo.model.StructuralException;
 import ca.nengo.model.Termination;
@@ -54,6 +55,9 @@ import ca.nengo.model.nef.impl.DecodedOrigin;
 import ca.nengo.model.nef.impl.DecodedTermination;
 import ca.nengo.util.MU;
 import ca.nengo.util.ScriptGenException;
+import ca.nengo.util.WeightMatrix;
+import ca.nengo.util.impl.DenseWeightMatrix;
+import ca.nengo.util.impl.LowRankWeightMatrix;
 
 /**
  * Default implementation of <code>Projection</code>.
@@ -217,30 +221,52 @@ public class ProjectionImpl implements Projection {
 	 * @see ca.nengo.model.Projection#getWeights()
 	 */
 	public float[][] getWeights() {
-		float[][] result = null;
+		return getWeightMatrix().toArray();
+	}
 
+	/**
+	 * Between NEF ensembles the weights are encoders x transform x decoders (plus a rank-one
+	 * term for the bias, if it is enabled), so the result is a LowRankWeightMatrix. Onto other
+	 * ensembles, the result is the termination's own matrix, or else a copy of the weights of
+	 * its node terminations.
+	 *
+	 * @see ca.nengo.model.Projection#getWeightMatrix()
+	 */
+	public WeightMatrix getWeightMatrix() {
 		if ( (myOrigin instanceof DecodedOrigin) && (myTermination instanceof DecodedTermination)) {
 			float[][] encoders = ((NEFEnsemble) myTermination.getNode()).getEncoders();
 			float[][] transform = ((DecodedTermination) myTermination).getTransform();
 			float[][] decoders = ((DecodedOrigin) myOrigin).getDecoders();
-			result = MU.prod(encoders, MU.prod(transform, MU.transpose(decoders)));
+			LowRankWeightMatrix result = new LowRankWeightMatrix(encoders, MU.prod(transform, MU.transpose(decoders)));
 
 			if (myBiasIsEnabled) {
 				float[] biasEncoders = myDirectBT.getBiasEncoders();
 				float[][] biasDecoders = myBiasOrigin.getDecoders();
-				float[][] weightBiases = MU.prod(MU.transpose(new float[][]{biasEncoders}), MU.transpose(biasDecoders));
-				result = MU.sum(result, weightBiases);
+				result = result.extend(MU.transpose(new float[][]{biasEncoders}));
+				float[] coefficients = new float[result.getRank()];
+				coefficients[coefficients.length-1] = 1;
+				result.addToRight(coefficients, MU.transpose(biasDecoders)[0]);
 			}
+			return result;
 		} else if (myTermination instanceof DecodedTermination) {
 			float[][] encoders = ((NEFEnsemble) myTermination.getNode()).getEncoders();
 			float[][] transform = ((DecodedTermination) myTermination).getTransform();
-			result = MU.prod(encoders, transform);
+			return new LowRankWeightMatrix(encoders, transform);
+		} else if (myTermination instanceof EnsembleTermination && ((EnsembleTermination) myTermination).getWeightMatrix() != null) {
+			return ((EnsembleTermination) myTermination).getWeightMatrix();
+		} else if (myTermination instanceof EnsembleTermination) {
+			Termination[] nodeTerminations = ((EnsembleTermination) myTermination).getNodeTerminations();
+			float[][] weights = new float[nodeTerminations.length][];
+			for (int i = 0; i < nodeTerminations.length; i++) {
+				if (!(nodeTerminations[i] instanceof PlasticNodeTermination)) {
+					throw new RuntimeException("Not implemented for node Terminations without weights");
+				}
+				weights[i] = ((PlasticNodeTermination) nodeTerminations[i]).getWeights().clone();
+			}
+			return new DenseWeightMatrix(weights);
 		} else {
-			//TODO: add getWeights() to Termination, implement in EnsembleTermination from LinearExponentialTermination.getWeights()
-			throw new RuntimeException("Not implemented for non-DecodedTerminations");
+			throw new RuntimeException("Not implemented for Terminations without weights");
 		}
-
-		return result;
 	}
 	
 	public String toScript(HashMap<String, Object> scriptData) throws ScriptGenException {
@@ -0,0 +1,144 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "RealOutputBuffer.java". Description:
+"A pair of reusable RealOutputs that are written alternately"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+/*
+ * Created on 17-Oct-2026
+ */
+package ca.nengo.model.impl;
+
+import java.io.Serializable;
+
+import ca.nengo.model.RealOutput;
+import ca.nengo.model.Units;
+
+/**
+ * <p>A pair of mutable RealOutputs that an Origin or Termination can fill in alternately,
+ * instead of creating a new RealOutput at each time step.</p>
+ *
+ * <p>Because the two outputs alternate, the output published at one step remains valid
+ * throughout the next step (while other Nodes may still be reading it), and is only
+ * overwritten at the step after that. Consumers that keep outputs for longer should
+ * clone them; clones are ordinary RealOutputImpls that do not change.</p>
+ */
+public class RealOutputBuffer implements Serializable, Cloneable {
+
+	private static final long serialVersionUID = 1L;
+
+	private Holder[] myHolders;
+	private int myCurrent;
+
+	/**
+	 * @param dimension Dimension of the outputs
+	 * @param units Units of the outputs
+	 */
+	public RealOutputBuffer(int dimension, Units units) {
+		myHolders = new Holder[]{new Holder(dimension, units), new Holder(dimension, units)};
+		myCurrent = 0;
+	}
+
+	/**
+	 * Switches to the other output, which is to be filled in by the caller before publish(...).
+	 *
+	 * @return Values of the output that is to be filled in. These are not cleared.
+	 */
+	public float[] next() {
+		myCurrent = 1 - myCurrent;
+		return myHolders[myCurrent].myValues;
+	}
+
+	/**
+	 * @param time Time at which the output is produced
+	 * @return The output most recently returned by next(), stamped with the given time
+	 */
+	public RealOutput publish(float time) {
+		Holder holder = myHolders[myCurrent];
+		holder.myTime = time;
+		return holder;
+	}
+
+	/**
+	 * @return Dimension of the outputs
+	 */
+	public int getDimension() {
+		return myHolders[0].myValues.length;
+	}
+
+	/**
+	 * @return Units of the outputs
+	 */
+	public Units getUnits() {
+		return myHolders[0].myUnits;
+	}
+
+	@Override
+	public RealOutputBuffer clone() throws CloneNotSupportedException {
+		RealOutputBuffer result = (RealOutputBuffer) super.clone();
+		result.myHolders = new Holder[]{myHolders[0].copy(), myHolders[1].copy()};
+		return result;
+	}
+
+	private static class Holder implements RealOutput {
+
+		private static final long serialVersionUID = 1L;
+
+		private final float[] myValues;
+		private final Units myUnits;
+		private float myTime;
+
+		public Holder(int dimension, Units units) {
+			myValues = new float[dimension];
+			myUnits = units;
+		}
+
+		public float[] getValues() {
+			return myValues;
+		}
+
+		public Units getUnits() {
+			return myUnits;
+		}
+
+		public int getDimension() {
+			return myValues.length;
+		}
+
+		public float getTime() {
+			return myTime;
+		}
+
+		private Holder copy() {
+			Holder result = new Holder(myValues.length, myUnits);
+			System.arraycopy(myValues, 0, result.myValues, 0, myValues.length);
+			result.myTime = myTime;
+			return result;
+		}
+
+		//clones are detached from the buffer, so that they can be kept
+		@Override
+		public RealOutput clone() {
+			return new RealOutputImpl(myValues.clone(), myUnits, myTime);
+		}
+	}
+
+}
@@ -27,21 +27,25 @@ a recipient may use your version of this file under either the MPL or the GPL Li
  */
 package ca.nengo.model.impl;
 
+import ca.nengo.model.SparseSpikeOutput;
 import ca.nengo.model.SpikeOutput;
 import ca.nengo.model.Units;
 
 /**
- * Default implementation of SpikeOutput. 
+ * Default implementation of SpikeOutput. The indices of spiking channels are found
+ * on first request (or given to the constructor), so values should not be changed
+ * after they are passed in.
  *  
  * @author Bryan Tripp
  */
-public class SpikeOutputImpl implements SpikeOutput {
+public class SpikeOutputImpl implements SparseSpikeOutput {
 
 	private static final long serialVersionUID = 1L;
 	
 	private boolean[] myValues;
 	private Units myUnits;
 	private float myTime;
+	private transient volatile int[] mySpikeIndices;
 
 	/**
 	 * @param values @see #getValues()
@@ -54,6 +58,17 @@ public class SpikeOutputImpl implements SpikeOutput {
 		myTime = time;
 	}
 
+	/**
+	 * @param values @see #getValues()
+	 * @param spikeIndices @see #getSpikeIndices()
+	 * @param units @see #getUnits()
+	 * @param time @see #getTime()
+	 */
+	public SpikeOutputImpl(boolean[] values, int[] spikeIndices, Units units, float time) {
+		this(values, units, time);
+		mySpikeIndices = spikeIndices;
+	}
+
 	/**
 	 * @see ca.nengo.model.SpikeOutput#getValues()
 	 */
@@ -61,6 +76,39 @@ public class SpikeOutputImpl implements SpikeOutput {
 		return myValues;
 	}
 
+	/**
+	 * @see ca.nengo.model.SparseSpikeOutput#getSpikeIndices()
+	 */
+	public int[] getSpikeIndices() {
+		int[] result = mySpikeIndices;
+		if (result == null) {
+			result = findSpikes(myValues);
+			mySpikeIndices = result;
+		}
+		return result;
+	}
+
+	/**
+	 * @param values Spike values
+	 * @return Indices of the true values, in ascending order
+	 */
+	public static int[] findSpikes(boolean[] values) {
+		int count = 0;
+		for (int i = 0; i < values.length; i++) {
+			if (values[i]) {
+				count++;
+			}
+		}
+
+		int[] result = new int[count];
+		for (int i = 0, j = 0; j < count; i++) {
+			if (values[i]) {
+				result[j++] = i;
+			}
+		}
+		return result;
+	}
+
 	/**
 	 * @see ca.nengo.model.InstantaneousOutput#getUnits()
 	 */
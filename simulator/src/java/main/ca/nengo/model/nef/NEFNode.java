@@ -29,6 +29,7 @@ a recipient may use your version of this file under either the MPL or the GPL Li
 package ca.nengo.model.nef;
 
 import ca.nengo.model.Node;
+import ca.nengo.model.SimulationException;
 
 /**
  * <p>A Node with a distinguished Termination that corresponds to a net  
@@ -53,5 +54,29 @@ public interface NEFNode extends Node {
 	 * 		represented by the NEFEnsemble to which this Node belongs. 
 	 */
 	public void setRadialInput(float value);
-	
+
+	/**
+	 * <p>An NEFNode that can find its constant-rate output for many radial inputs at once,
+	 * without running through each input.</p>
+	 */
+	public static interface TuningCurve {
+
+		/**
+		 * Finds the output that the node would have in SimulationMode.CONSTANT_RATE with
+		 * each of the given radial inputs (and its other inputs as they are). The state of
+		 * the node is not changed.
+		 *
+		 * @param origin Name of the Origin whose output is wanted
+		 * @param radialInputs Radial input values
+		 * @param rates Array to fill with the output at each radial input (may be the same
+		 * 		array as radialInputs)
+		 * @return False if the node can not find this output in bulk (e.g. because it is noisy
+		 * 		or its output is not a rate), in which case rates is unchanged or partly
+		 * 		overwritten, and the caller should run the node one input at a time instead
+		 * @throws SimulationException If the node's other inputs can not be evaluated
+		 */
+		public boolean getConstantRates(String origin, float[] radialInputs, float[] rates) throws SimulationException;
+
+	}
+
 }
@@ -501,6 +501,9 @@ public class DecodableEnsembleImpl extends PlasticEnsembleImpl implements Decoda
 			
 		    origin.setRequiredOnCPU(true);
 			float[] vals = ((RealOutput) origin.getValues()).getValues();
+			if (origin instanceof DecodedOrigin && ((DecodedOrigin) origin).getReuseOutputs()) {
+				vals = vals.clone(); //the origin's buffer is overwritten at the next step
+			}
 			Units[] units = new Units[vals.length];
 			for (int i = 0; i < vals.length; i++) {
 				units[i] = origin.getValues().getUnits();
@@ -27,6 +27,8 @@ a recipient may use your version of this file under either the MPL or the GPL Li
  */
 package ca.nengo.model.nef.impl;
 
+import java.util.Arrays;
+
 import org.apache.log4j.Logger;
 
 import ca.nengo.config.ConfigUtil;
@@ -51,6 +53,7 @@ import ca.nengo.model.SimulationMode;
 import ca.nengo.model.SpikeOutput;
 import ca.nengo.model.StructuralException;
 import ca.nengo.model.Units;
+import ca.nengo.model.impl.RealOutputBuffer;
 import ca.nengo.model.impl.RealOutputImpl;
 import ca.nengo.model.nef.DecodableEnsemble;
 import ca.nengo.model.nef.ExpressModel;
@@ -59,6 +62,7 @@ import ca.nengo.model.plasticity.ShortTermPlastic;
 import ca.nengo.util.MU;
 import ca.nengo.util.TimeSeries;
 import ca.nengo.util.VectorGenerator;
+import ca.nengo.util.impl.ParallelRange;
 import ca.nengo.util.impl.RandomHypersphereVG;
 import ca.nengo.util.impl.TimeSeries1DImpl;
 import ca.nengo.util.impl.TimeSeriesImpl;
@@ -94,6 +98,9 @@ public class DecodedOrigin implements Origin, Resettable, SimulationMode.ModeCon
 	private float myTime;
 	private boolean myRequiredOnCPU;
 	private ExpressModel myExpressModel;
+	private boolean myReuseOutputs;
+	private RealOutputBuffer myOutputBuffer;
+	private transient float[][] myChunkSums;
 
 	/**
 	 * With this constructor, decoding vectors are generated using default settings.
@@ -316,34 +323,22 @@ public class DecodedOrigin implements Origin, Resettable, SimulationMode.ModeCon
 	}
 
 	private static float[][] findDecoders(Node[] nodes, Function[] functions, LinearApproximator approximator)  {
-		float[][] result = new float[nodes.length][];
-		for (int i = 0; i < result.length; i++) {
-			result[i] = new float[functions.length];
-		}
-
-		for (int j = 0; j < functions.length; j++) {
-			float[] coeffs = approximator.findCoefficients(functions[j]);
-			for (int i = 0; i < nodes.length; i++) {
-				result[i][j] = coeffs[i];
-			}
-		}
-
-		return result;
+		return toDecoders(nodes, approximator.findCoefficients(functions));
 	}
 	
 	private static float[][] findDecoders(Node[] nodes, float[][] targetSignal, LinearApproximator approximator)  {
+		return toDecoders(nodes, ((WeightedCostApproximator)approximator).findCoefficients(targetSignal));
+	}
+
+	//coefficients by function to decoders by node
+	private static float[][] toDecoders(Node[] nodes, float[][] coefficients) {
 		float[][] result = new float[nodes.length][];
 		for (int i = 0; i < result.length; i++) {
-			result[i] = new float[targetSignal.length];
-		}
-
-		for (int j = 0; j < targetSignal.length; j++) {
-			float[] coeffs = ((WeightedCostApproximator)approximator).findCoefficients(targetSignal[j]);
-			for (int i = 0; i < nodes.length; i++) {
-				result[i][j] = coeffs[i];
+			result[i] = new float[coefficients.length];
+			for (int j = 0; j < coefficients.length; j++) {
+				result[i][j] = coefficients[j][i];
 			}
 		}
-
 		return result;
 	}
 
@@ -447,6 +442,22 @@ public class DecodedOrigin implements Origin, Resettable, SimulationMode.ModeCon
 		return myMode;
 	}
 
+	/**
+	 * @param reuse If true, output values (and STP history) are written into buffers that are
+	 * 		reused at every step, rather than newly created. The output returned by getValues()
+	 * 		then remains valid until the end of the following step (see RealOutputBuffer).
+	 */
+	public void setReuseOutputs(boolean reuse) {
+		myReuseOutputs = reuse;
+	}
+
+	/**
+	 * @return True if output buffers are reused between steps (see setReuseOutputs(boolean))
+	 */
+	public boolean getReuseOutputs() {
+		return myReuseOutputs;
+	}
+
 	/**
 	 * Must be called at each time step after Nodes are run and before getValues().
 	 *
@@ -464,10 +475,24 @@ public class DecodedOrigin implements Origin, Resettable, SimulationMode.ModeCon
 					" but state dimension is " + state.length);
 		}
 
-		float[] values = new float[myFunctions.length];
-		float stepSize = endTime - startTime;
+		float[] values;
+		if (myReuseOutputs) {
+			if (myOutputBuffer == null || myOutputBuffer.getDimension() != myFunctions.length) {
+				myOutputBuffer = new RealOutputBuffer(myFunctions.length, Units.UNK);
+			}
+			values = myOutputBuffer.next();
+			Arrays.fill(values, 0);
+		} else {
+			values = new float[myFunctions.length];
+		}
+		float[] outputValues = values;
+		float[] nodeOutput = getPopulationOutput();
 
-		mySTPHistory = new float[myNodes.length];
+		if (myReuseOutputs && mySTPHistory != null && mySTPHistory.length == myNodes.length) {
+			Arrays.fill(mySTPHistory, 0);
+		} else {
+			mySTPHistory = new float[myNodes.length];
+		}
 		if (myMode == SimulationMode.DIRECT) {
 			for (int i = 0; i < values.length; i++) {
 				values[i] = myFunctions[i].map(state);
@@ -484,7 +509,66 @@ public class DecodedOrigin implements Origin, Resettable, SimulationMode.ModeCon
 			
 			values = myExpressModel.getOutput(startTime, state, values);
 		} else {
-			for (int i = 0; i < myNodes.length; i++) {
+			int chunks = getParallelChunks();
+			if (chunks > 1) {
+				accumulateInChunks(values, chunks, nodeOutput, startTime, endTime);
+			} else {
+				accumulate(values, 0, myNodes.length, nodeOutput, startTime, endTime);
+			}
+		}
+		
+		if (myNoise != null) {
+			for (int i = 0; i < values.length; i++) {
+				values[i] = myNoises[i].getValue(startTime, endTime, values[i]);
+			}
+		}
+
+		myTime = endTime;
+		if (myReuseOutputs) {
+			if (values != outputValues) { //express model returns a new array
+				System.arraycopy(values, 0, outputValues, 0, outputValues.length);
+			}
+			myOutput = myOutputBuffer.publish(endTime);
+		} else {
+			myOutput = new RealOutputImpl(values, Units.UNK, endTime);
+		}
+	}
+
+	/*
+	 * Adds the decoded outputs of a range of nodes to the given values.
+	 *
+	 * @param nodeOutput Outputs of all nodes if they were run in bulk, otherwise null (in which
+	 * 		case outputs are read from the nodes' Origins)
+	 */
+	private void accumulate(float[] values, int start, int end, float[] nodeOutput, float startTime, float endTime)
+			throws SimulationException {
+		float stepSize = endTime - startTime;
+		if (nodeOutput != null && mySTPDynamicsTemplate == null) {
+			//outputs are already in a flat array and decoders are static, so this is a plain
+			//product of the decoder matrix with the outputs
+			float[][] decoders = myDecoders;
+			for (int i = start; i < end; i++) {
+				float val = nodeOutput[i];
+				if (val != 0) {
+					float[] decoder = decoders[i];
+					for (int j = 0; j < values.length; j++) {
+						values[j] += val * decoder[j];
+					}
+				}
+			}
+		} else if (nodeOutput != null) {
+			//nodes were run in bulk, so their outputs are already in a flat array
+			for (int i = start; i < end; i++) {
+				float val = nodeOutput[i];
+				if (val != 0 || mySTPDynamicsTemplate != null) {
+					float[] decoder = getDynamicDecoder(i, val, startTime, endTime);
+					for (int j = 0; j < values.length; j++) {
+						values[j] += val * decoder[j];
+					}
+				}
+			}
+		} else {
+			for (int i = start; i < end; i++) {
 				try {
 					InstantaneousOutput o = myNodes[i].getOrigin(myNodeOrigin).getValues();
 
@@ -507,15 +591,47 @@ public class DecodedOrigin implements Origin, Resettable, SimulationMode.ModeCon
 				}
 			}
 		}
-		
-		if (myNoise != null) {
-			for (int i = 0; i < values.length; i++) {
-				values[i] = myNoises[i].getValue(startTime, endTime, values[i]);
+	}
+
+	/*
+	 * Accumulates each chunk of nodes into its own partial sum in parallel, then adds the partial
+	 * sums in chunk order, so that the result doesn't depend on which chunk finishes first.
+	 */
+	private void accumulateInChunks(float[] values, int chunks, final float[] nodeOutput,
+			final float startTime, final float endTime) throws SimulationException {
+		if (myChunkSums == null || myChunkSums.length != chunks || myChunkSums[0].length != values.length) {
+			myChunkSums = new float[chunks][values.length];
+		}
+		final float[][] sums = myChunkSums;
+
+		ParallelRange.run(myNodes.length, chunks, new ParallelRange.Body() {
+			public void run(int chunk, int start, int end) throws SimulationException {
+				Arrays.fill(sums[chunk], 0);
+				accumulate(sums[chunk], start, end, nodeOutput, startTime, endTime);
+			}
+		}, true, ParallelRange.getHelpers());
+
+		for (int c = 0; c < chunks; c++) {
+			for (int j = 0; j < values.length; j++) {
+				values[j] += sums[c][j];
 			}
 		}
+	}
 
-		myTime = endTime;
-		myOutput = new RealOutputImpl(values, Units.UNK, endTime);
+	//number of chunks into which the parent ensemble splits its neurons for parallel processing
+	private int getParallelChunks() {
+		if (myNode instanceof NEFEnsembleImpl) {
+			return ((NEFEnsembleImpl) myNode).getNumParallelChunks();
+		}
+		return 1;
+	}
+
+	//output of the parent ensemble's population engine, if it ran this Origin's nodes
+	private float[] getPopulationOutput() {
+		if (myNode instanceof NEFEnsembleImpl) {
+			return ((NEFEnsembleImpl) myNode).getPopulationOutput(myNodeOrigin);
+		}
+		return null;
 	}
 
 	private float[] getDynamicDecoder(int i, float input, float startTime, float endTime) {
@@ -535,7 +651,8 @@ public class DecodedOrigin implements Origin, Resettable, SimulationMode.ModeCon
 		if (mySTPHistory == null) {
             mySTPHistory = new float[myNodes.length];
         }
-		return new TimeSeriesImpl(new float[]{myTime}, new float[][]{mySTPHistory}, Units.uniform(Units.UNK, mySTPHistory.length));
+		float[] history = myReuseOutputs ? mySTPHistory.clone() : mySTPHistory;
+		return new TimeSeriesImpl(new float[]{myTime}, new float[][]{history}, Units.uniform(Units.UNK, history.length));
 	}
 
 	/**
@@ -571,7 +688,7 @@ public class DecodedOrigin implements Origin, Resettable, SimulationMode.ModeCon
 	/**
 	 * @return Name of Node-level Origin on which this DecodedOrigin is based
 	 */
-	protected String getNodeOrigin() {
+	public String getNodeOrigin() {
 		return myNodeOrigin;
 	}
 
@@ -608,6 +725,13 @@ public class DecodedOrigin implements Origin, Resettable, SimulationMode.ModeCon
 			result.myNodes = de.getNodes();
 			result.myNode = de;
 			result.myOutput = (RealOutput) myOutput.clone();
+			if (myOutputBuffer != null) {
+				result.myOutputBuffer = myOutputBuffer.clone();
+			}
+			if (mySTPHistory != null) {
+				result.mySTPHistory = mySTPHistory.clone();
+			}
+			result.myChunkSums = null;
             if (myNoise != null) {
 			    result.setNoise(myNoise.clone());
             }
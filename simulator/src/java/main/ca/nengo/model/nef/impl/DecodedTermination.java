@@ -31,6 +31,7 @@ import org.apache.log4j.Logger;
 import ca.nengo.dynamics.Integrator;
 import ca.nengo.dynamics.LinearSystem;
 import ca.nengo.dynamics.impl.CanonicalModel;
+import ca.nengo.dynamics.impl.LTIFilterBank;
 import ca.nengo.dynamics.impl.LTISystem;
 import ca.nengo.model.InstantaneousOutput;
 import ca.nengo.model.Node;
@@ -41,6 +42,7 @@ import ca.nengo.model.SimulationException;
 import ca.nengo.model.StructuralException;
 import ca.nengo.model.Termination;
 import ca.nengo.model.Units;
+import ca.nengo.model.impl.RealOutputBuffer;
 import ca.nengo.model.impl.RealOutputImpl;
 import ca.nengo.model.neuron.SynapticIntegrator;
 import ca.nengo.util.MU;
@@ -63,6 +65,10 @@ import ca.nengo.util.impl.TimeSeriesImpl;
  * because all inputs to a non-linear dynamical process must be taken into account before
  * the effect of any single input is known.</p>
  *
+ * <p>LTI dynamics of all dimensions are kept in one LTIFilterBank, and advanced with their
+ * exact discrete-time (zero-order hold) equivalent rather than with the Integrator. Only
+ * time-varying dynamics are copied for each dimension and use the Integrator.</p>
+ *
  * @author Bryan Tripp
  */
 public class DecodedTermination implements Termination, Resettable, Probeable {
@@ -82,6 +88,7 @@ public class DecodedTermination implements Termination, Resettable, Probeable {
 	private float[][] myTransform;
 	private LinearSystem myDynamicsTemplate;
 	private LinearSystem[] myDynamics;
+	private LTIFilterBank myFilterBank;
 	private Integrator myIntegrator;
 	private Units[] myNullUnits;
 	private RealOutput myInputValues;
@@ -95,6 +102,14 @@ public class DecodedTermination implements Termination, Resettable, Probeable {
 	private float[][] myInitialState;
 	private boolean myValuesSet;
 
+	private boolean myReuseOutputs;
+	private RealOutputBuffer myInputBuffer;
+	private float[] myDynamicsInputs;
+	private float[] mySpareOutputValues;
+	private float[] myStepInput;
+	private float[] myStepTimes;
+	private TimeSeries myStepSeries;
+
 	/**
 	 * @param node The parent Node
 	 * @param name The name of this Termination
@@ -130,26 +145,52 @@ public class DecodedTermination implements Termination, Resettable, Probeable {
 		myScalingTermination = null;
 	}
 
-	//copies dynamics for to each dimension
+	//copies dynamics for to each dimension, or makes a filter bank for all dimensions if dynamics are LTI
 	private synchronized void setDynamics(int dimension) {
-		LinearSystem[] newDynamics = new LinearSystem[dimension];
-		for (int i = 0; i < newDynamics.length; i++) {
-			try {
-				newDynamics[i] = (LinearSystem) myDynamicsTemplate.clone();
-
-				//maintain state if there is state
-				if (myDynamics != null && myDynamics[i] != null) {
-					newDynamics[i].setState(myDynamics[i].getState());
+		int order = myDynamicsTemplate.getState().length;
+		if (myDynamicsTemplate instanceof LTISystem) {
+			LTIFilterBank bank = new LTIFilterBank((LTISystem) myDynamicsTemplate, dimension);
+			for (int i = 0; i < dimension; i++) {
+				float[] state = getState(i);
+				if (state != null && state.length == order) {
+					bank.setChannelState(i, state);
+				}
+			}
+			myFilterBank = bank;
+			myDynamics = null;
+		} else {
+			LinearSystem[] newDynamics = new LinearSystem[dimension];
+			for (int i = 0; i < newDynamics.length; i++) {
+				try {
+					newDynamics[i] = (LinearSystem) myDynamicsTemplate.clone();
+
+					//maintain state if there is state
+					float[] state = getState(i);
+					if (state != null && state.length == order) {
+						newDynamics[i].setState(state);
+					}
+				} catch (CloneNotSupportedException e) {
+					throw new Error("The clone() operation is not supported by the given dynamics object");
 				}
-			} catch (CloneNotSupportedException e) {
-				throw new Error("The clone() operation is not supported by the given dynamics object");
 			}
+			myDynamics = newDynamics;
+			myFilterBank = null;
 		}
-		myDynamics = newDynamics;
 
 		//zero corresponding initial state if necessary
-		if (myInitialState == null || myInitialState[0].length != newDynamics[0].getState().length) {
+		if (myInitialState == null || myInitialState[0].length != order) {
 			initInitialState();
+		}
+	}
+
+	//copy of current state of dynamics for the given dimension, or null if there isn't one
+	private float[] getState(int dimension) {
+		if (myFilterBank != null && dimension < myFilterBank.getChannels()) {
+			return myFilterBank.getChannelState(dimension);
+		} else if (myDynamics != null && dimension < myDynamics.length && myDynamics[dimension] != null) {
+			return myDynamics[dimension].getState().clone();
+		} else {
+			return null;
 		}
 	}
 
@@ -188,7 +229,20 @@ public class DecodedTermination implements Termination, Resettable, Probeable {
 		}
 
 		RealOutput ro = (RealOutput) values;
-		myInputValues = new RealOutputImpl(MU.sum(ro.getValues(), myStaticBias), ro.getUnits(), ro.getTime());
+		if (myReuseOutputs) {
+			if (myInputBuffer == null || myInputBuffer.getDimension() != ro.getDimension()
+					|| myInputBuffer.getUnits() != ro.getUnits()) {
+				myInputBuffer = new RealOutputBuffer(ro.getDimension(), ro.getUnits());
+			}
+			float[] in = ro.getValues();
+			float[] sum = myInputBuffer.next();
+			for (int i = 0; i < sum.length; i++) {
+				sum[i] = in[i] + myStaticBias[i];
+			}
+			myInputValues = myInputBuffer.publish(ro.getTime());
+		} else {
+			myInputValues = new RealOutputImpl(MU.sum(ro.getValues(), myStaticBias), ro.getUnits(), ro.getTime());
+		}
 
 		if (!myValuesSet) {
             myValuesSet = true;
@@ -200,13 +254,18 @@ public class DecodedTermination implements Termination, Resettable, Probeable {
 	 * @param endTime Simulation time at which running is to end
 	 */
 	public void run(float startTime, float endTime) throws SimulationException {
-		if (myDynamics == null) {
+		if (myDynamics == null && myFilterBank == null) {
 			setDynamics(myOutputDimension);
 		}
 
 		if (!myValuesSet) {
 			ourLogger.warn("Input values not set on termination " + myName + ".  Assuming input of zero.");
 			setValues(new RealOutputImpl(new float[getDimensions()], Units.UNK, 0.0f));
+		}
+
+		if (myReuseOutputs) {
+			runWithBuffers(startTime, endTime);
+			return;
 		}
 
 		float[][] transform = getTransform();
@@ -217,6 +276,13 @@ public class DecodedTermination implements Termination, Resettable, Probeable {
 		float[] dynamicsInputs = MU.prod(transform, myInputValues.getValues());
 		float[] result = new float[dynamicsInputs.length];
 
+		if (myFilterBank != null) {
+			myFilterBank.integrate(dynamicsInputs, endTime - startTime, result);
+			myTime = endTime;
+			myOutputValues = result;
+			return;
+		}
+
 		for (int i = 0; i < myDynamics.length; i++) {
 			float[] inVal  = new float[]{dynamicsInputs[i]};
 			if(myTau <= endTime-startTime) {
@@ -236,6 +302,56 @@ public class DecodedTermination implements Termination, Resettable, Probeable {
 		myOutputValues = result;
 	}
 
+	//equivalent to the rest of run(...), but with working arrays that are kept between steps
+	private void runWithBuffers(float startTime, float endTime) {
+		int n = myTransform.length;
+		if (myDynamicsInputs == null || myDynamicsInputs.length != n) {
+			myDynamicsInputs = new float[n];
+			mySpareOutputValues = new float[n];
+			myStepInput = new float[1];
+			myStepTimes = new float[2];
+			myStepSeries = new TimeSeriesImpl(myStepTimes, new float[][]{myStepInput, myStepInput}, myNullUnits);
+		}
+
+		float[] input = myInputValues.getValues();
+		boolean scaled = (myScalingTermination != null);
+		float scale = scaled ? myScalingTermination.getOutput()[0] : 1;
+		for (int i = 0; i < n; i++) {
+			float sum = 0;
+			float[] row = myTransform[i];
+			for (int j = 0; j < input.length; j++) {
+				float weight = scaled ? row[j] * scale : row[j];
+				sum += weight * input[j];
+			}
+			myDynamicsInputs[i] = sum;
+		}
+
+		//alternate between two output arrays, so the previous output is still valid during this step
+		float[] result = mySpareOutputValues.length == n ? mySpareOutputValues : new float[n];
+		if (myFilterBank != null) {
+			myFilterBank.integrate(myDynamicsInputs, endTime - startTime, result);
+		} else {
+			for (int i = 0; i < n; i++) {
+				myStepInput[0] = myDynamicsInputs[i];
+				if(myTau <= endTime-startTime) {
+					myStepTimes[0] = startTime;
+					myStepTimes[1] = endTime;
+					TimeSeries outSeries = myIntegrator.integrate(myDynamics[i], myStepSeries);
+					result[i] = outSeries.getValues()[outSeries.getValues().length-1][0];
+				}
+				else {
+					float[] dxdt = myDynamics[i].f(startTime, myStepInput);
+					myDynamics[i].setState(MU.sum(myDynamics[i].getState(), MU.prod(dxdt, endTime-startTime)));
+					result[i] = myDynamics[i].g(endTime, myStepInput)[0];
+				}
+			}
+		}
+
+		myTime = endTime;
+		mySpareOutputValues = myOutputValues;
+		myOutputValues = result;
+	}
+
 	/**
 	 * This method should be called after run(...).
 	 *
@@ -245,6 +361,22 @@ public class DecodedTermination implements Termination, Resettable, Probeable {
 		return myOutputValues;
 	}
 
+	/**
+	 * @param reuse If true, inputs and outputs are written into arrays that are reused at every
+	 * 		step, rather than newly created. The values returned by getInput() and getOutput()
+	 * 		then remain valid until the end of the following step.
+	 */
+	public void setReuseOutputs(boolean reuse) {
+		myReuseOutputs = reuse;
+	}
+
+	/**
+	 * @return True if input and output arrays are reused between steps (see setReuseOutputs(boolean))
+	 */
+	public boolean getReuseOutputs() {
+		return myReuseOutputs;
+	}
+
 	/**
 	 * @return Latest input to Termination (pre transform and dynamics)
 	 */
@@ -276,8 +408,12 @@ public class DecodedTermination implements Termination, Resettable, Probeable {
 	}
 
 	private void resetInitialState() {
+		int order = myDynamicsTemplate.getState().length;
+		for (int i = 0; myFilterBank != null && i < myFilterBank.getChannels(); i++) {
+			myFilterBank.setChannelState(i, myInitialState != null ? myInitialState[i] : new float[order]);
+		}
 		for (int i = 0; myDynamics != null && i < myDynamics.length; i++) {
-			float[] state = myInitialState != null ? myInitialState[i] : new float[myDynamics[i].getState().length];
+			float[] state = myInitialState != null ? myInitialState[i].clone() : new float[order];
 			myDynamics[i].setState(state);
 		}
 	}
@@ -296,7 +432,7 @@ public class DecodedTermination implements Termination, Resettable, Probeable {
 	 * @param state Initial state of dynamics (dimension of termination output X dimension of dynamics state)
 	 */
 	public void setInitialState(float[][] state) {
-		if (state.length != myDynamics.length) {
+		if (state.length != myTransform.length) {
 			throw new IllegalArgumentException("Must give one state vector for each output dimension");
 		}
 		if (!MU.isMatrix(state) || state[0].length != myDynamicsTemplate.getState().length) {
@@ -310,7 +446,7 @@ public class DecodedTermination implements Termination, Resettable, Probeable {
 	private void initInitialState() {
 		myInitialState = new float[myOutputDimension][];
 		for (int i = 0; i < myOutputDimension; i++) {
-			myInitialState[i] = new float[myDynamics[i].getState().length];
+			myInitialState[i] = new float[myDynamicsTemplate.getState().length];
 		}
 	}
 
@@ -344,7 +480,8 @@ public class DecodedTermination implements Termination, Resettable, Probeable {
 			myStaticBias = newStaticBias;
 		}
 
-		if (myDynamics != null && myDynamics.length != transform.length) {
+		if ((myDynamics != null && myDynamics.length != transform.length)
+				|| (myFilterBank != null && myFilterBank.getChannels() != transform.length)) {
 			setDynamics(transform.length);
 		}
 	}
@@ -369,6 +506,7 @@ public class DecodedTermination implements Termination, Resettable, Probeable {
 	 */
 	public LinearSystem getDynamics() {
 		myDynamics = null; //caller may change properties so we'll have to re-clone at next run
+		myFilterBank = null;
 		return myDynamicsTemplate;
 	}
 
@@ -436,8 +574,9 @@ public class DecodedTermination implements Termination, Resettable, Probeable {
 	 */
 	public TimeSeries getHistory(String stateName) throws SimulationException {
 		if (stateName.equals(OUTPUT)) {
+			float[] values = myReuseOutputs ? myOutputValues.clone() : myOutputValues;
 			return new TimeSeriesImpl(new float[]{myTime},
-					new float[][]{myOutputValues}, Units.uniform(Units.UNK, myOutputValues.length));
+					new float[][]{values}, Units.uniform(Units.UNK, values.length));
 		} else {
 			throw new SimulationException("The state '" + stateName + "' is unknown");
 		}
@@ -482,6 +621,10 @@ public class DecodedTermination implements Termination, Resettable, Probeable {
 			if (myOutputValues != null) {
                 result.myOutputValues = myOutputValues.clone();
             }
+			if (myInputBuffer != null) {
+				result.myInputBuffer = myInputBuffer.clone();
+			}
+			result.myDynamicsInputs = null; //working arrays are re-created at the next run
 			result.myScalingTermination = myScalingTermination; //refer to same copy
 			result.myStaticBias = myStaticBias.clone();
 			result.setNode(node);
@@ -55,6 +55,15 @@ import ca.nengo.util.impl.RandomHypersphereVG;
 /**
  * Default implementation of NEFEnsembleFactory.
  *
+ * <p>Building large ensembles is dominated by the activity and decoder calculations. These
+ * can be kept across runs by installing a disk cache, e.g.
+ * <code>ArrayCache.setDefault(new ArrayCache(dir, maxBytes))</code>, in which case identical
+ * ensembles (same nodes, encoders, eval points and noise) reuse earlier results.</p>
+ *
+ * <p>When there are too many eval points to hold all the activities in memory, set a
+ * StreamingApproximatorFactory such as StreamingCostApproximator.Factory, and activities are
+ * computed and used a chunk of eval points at a time.</p>
+ *
  * @author Bryan Tripp
  */
 public class NEFEnsembleFactoryImpl implements NEFEnsembleFactory, java.io.Serializable {
@@ -29,11 +29,12 @@ package ca.nengo.model.nef.impl;
 
 import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Random;
+import java.util.Set;
 import java.lang.StringBuilder;
 
 import ca.nengo.dynamics.DynamicalSystem;
@@ -41,9 +42,11 @@ import ca.nengo.dynamics.Integrator;
 import ca.nengo.dynamics.LinearSystem;
 import ca.nengo.dynamics.impl.EulerIntegrator;
 import ca.nengo.dynamics.impl.SimpleLTISystem;
+import ca.nengo.io.ArrayCache;
 import ca.nengo.math.ApproximatorFactory;
 import ca.nengo.math.Function;
 import ca.nengo.math.LinearApproximator;
+import ca.nengo.math.StreamingApproximatorFactory;
 import ca.nengo.math.impl.IndicatorPDF;
 import ca.nengo.math.impl.WeightedCostApproximator;
 import ca.nengo.model.Node;
@@ -61,6 +64,7 @@ import ca.nengo.model.nef.NEFEnsembleFactory;
 import ca.nengo.model.nef.NEFNode;
 import ca.nengo.model.neuron.Neuron;
 import ca.nengo.model.neuron.impl.LIFNeuronFactory;
+import ca.nengo.model.neuron.impl.LIFPopulationEngine;
 import ca.nengo.model.neuron.impl.LIFSpikeGenerator;
 import ca.nengo.model.neuron.impl.SpikeGeneratorOrigin;
 import ca.nengo.model.neuron.impl.SpikingNeuron;
@@ -72,7 +76,9 @@ import ca.nengo.model.plasticity.impl.hPESTermination;
 import ca.nengo.util.MU;
 import ca.nengo.util.ScriptGenException;
 import ca.nengo.util.TimeSeries;
+import ca.nengo.util.WeightMatrix;
 import ca.nengo.util.impl.LearningTask;
+import ca.nengo.util.impl.ParallelRange;
 import ca.nengo.util.impl.TimeSeriesImpl;
 /**
  * Default implementation of NEFEnsemble.
@@ -117,6 +123,37 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 
 	private boolean myUseGPU;
 
+	private boolean myUsePopulationEngine;
+	private transient LIFPopulationEngine myPopulationEngine;
+	private transient boolean myPopulationEngineChecked;
+	private transient boolean myPopulationEngineHasRun;
+
+	private boolean myReuseOutputs;
+	private transient boolean myReuseOutputsApplied;
+	private transient float[] myStateBuffer;
+
+	private int myParallelChunks = 0;
+	private static final int ourNeuronsPerChunk = 1000; //for the default number of chunks
+
+	//inputs of the current step, prepared by run(...) for encoding in parallel chunks
+	private transient float[] myScaledState;
+	private transient float[] myScaledStateBuffer;
+	private transient float[] myBiasInput;
+	private transient float[] myBiasInputBuffer;
+
+	//summed input of each pair of bias terminations in the current step, by base termination name
+	private transient String[] myBiasNames;
+	private transient float[][] myBiasEncoders;
+	private transient float[] myBiasSums;
+	private transient int myBiasCount;
+
+	//loop bodies over ranges of neurons, kept so that steps don't create them (see run(float, float))
+	private transient ParallelRange.Body myRadialInputBody;
+	private transient ParallelRange.Body myNodeBody;
+	private transient ParallelRange.Body myEngineBody;
+	private transient float myStepStartTime;
+	private transient float myStepEndTime;
+
 	/**
 	 * @param name Unique name of Ensemble
 	 * @param nodes Nodes that make up the Ensemble
@@ -177,6 +214,138 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 		return myUseGPU && (getMode() == SimulationMode.DEFAULT || getMode() == SimulationMode.RATE);
 	}
 
+	/**
+	 * @param use If true, and all neurons are LIF neurons that receive input only through decoded
+	 * 		Terminations, the neurons are run in bulk by a LIFPopulationEngine in DEFAULT and rate
+	 * 		modes. Spikes and decoded outputs are the same either way, but the neuron objects
+	 * 		are not updated while the engine is in use (so neuron-level state histories are not
+	 * 		available). In rate modes, encoding and the rate nonlinearity are then computed in a
+	 * 		single pass over the encoder matrix.
+	 */
+	public void setUsePopulationEngine(boolean use) {
+		myUsePopulationEngine = use;
+		invalidatePopulationEngine();
+	}
+
+	/**
+	 * @return True if the neurons are to be run in bulk where possible (see setUsePopulationEngine(boolean))
+	 */
+	public boolean getUsePopulationEngine() {
+		return myUsePopulationEngine;
+	}
+
+	/**
+	 * @return The engine that runs the neurons of this ensemble in bulk, or null if the neurons
+	 * 		are to be run individually
+	 */
+	private LIFPopulationEngine getPopulationEngine() {
+		if (myUsePopulationEngine && !myPopulationEngineChecked) {
+			myPopulationEngineChecked = true;
+			myPopulationEngine = null;
+
+			//node-level origins other than the axon are only updated by the neuron objects
+			boolean axonOnly = true;
+			for (DecodedOrigin origin : myDecodedOrigins.values()) {
+				if (!Neuron.AXON.equals(origin.getNodeOrigin())) {
+					axonOnly = false;
+				}
+			}
+			if (axonOnly) {
+				myPopulationEngine = LIFPopulationEngine.create(getNodes());
+			}
+		}
+		return myPopulationEngine;
+	}
+
+	/**
+	 * Discards the population engine (handing its state back to the neuron objects) so that
+	 * it is rebuilt from the current neurons before the next step.
+	 */
+	private void invalidatePopulationEngine() {
+		if (myPopulationEngine != null) {
+			myPopulationEngine.writeBack();
+		}
+		myPopulationEngine = null;
+		myPopulationEngineChecked = false;
+		myPopulationEngineHasRun = false;
+	}
+
+	/**
+	 * @param reuse If true, decoded origins, decoded terminations and spiking neurons (see
+	 * 		SpikingNeuron.setReuseOutputs(boolean)) write their outputs into buffers that are reused at every step instead of creating new ones
+	 * 		(see RealOutputBuffer), so that a long simulation allocates little memory in steady
+	 * 		state. Outputs are then only valid until the end of the following step, so anything
+	 * 		that keeps them for longer should clone them.
+	 */
+	public void setReuseOutputs(boolean reuse) {
+		myReuseOutputs = reuse;
+		applyReuseOutputs();
+	}
+
+	/**
+	 * @return True if output buffers are reused between steps (see setReuseOutputs(boolean))
+	 */
+	public boolean getReuseOutputs() {
+		return myReuseOutputs;
+	}
+
+	/**
+	 * @param chunks Number of contiguous ranges into which the neurons are split, so that radial
+	 * 		inputs, neuron updates and decoding of each range can run in parallel, or 0 (the
+	 * 		default) for one range per 1000 neurons. Ranges are shared with the other threads of
+	 * 		the NodeThreadPool that runs the ensemble, as they run out of nodes of their own (see
+	 * 		NodeThreadPool.helpWithNodes()); otherwise they all run in the calling thread. Decoded
+	 * 		outputs are summed per range and then across ranges in a fixed order, so results are
+	 * 		repeatable for a given number of chunks (however many threads there are), but may
+	 * 		differ slightly in the last bits from a single chunk.
+	 */
+	public void setNumParallelChunks(int chunks) {
+		if (chunks < 0) {
+			throw new IllegalArgumentException("Number of chunks can't be negative");
+		}
+		myParallelChunks = chunks;
+	}
+
+	/**
+	 * @return Number of ranges into which the neurons are split for parallel processing
+	 * 		(see setNumParallelChunks(int))
+	 */
+	public int getNumParallelChunks() {
+		if (myParallelChunks > 0) {
+			return myParallelChunks;
+		}
+		return Math.max(1, getNodes().length / ourNeuronsPerChunk);
+	}
+
+	//passes the reuse setting to origins, terminations and spike generators (which may have been added since)
+	private void applyReuseOutputs() {
+		for (DecodedOrigin origin : myDecodedOrigins.values()) {
+			origin.setReuseOutputs(myReuseOutputs);
+		}
+		for (DecodedTermination termination : myDecodedTerminations.values()) {
+			termination.setReuseOutputs(myReuseOutputs);
+		}
+		Node[] nodes = getNodes();
+		for (int i = 0; i < nodes.length; i++) {
+			if (nodes[i] instanceof SpikingNeuron) {
+				((SpikingNeuron) nodes[i]).setReuseOutputs(myReuseOutputs);
+			}
+		}
+		myReuseOutputsApplied = true;
+	}
+
+	/**
+	 * @param nodeOrigin Name of a node-level Origin
+	 * @return Output of each node from the last step if it was produced by the population engine
+	 * 		(see LIFPopulationEngine.getOutput()), otherwise null
+	 */
+	float[] getPopulationOutput(String nodeOrigin) {
+		if (myPopulationEngine != null && myPopulationEngineHasRun && Neuron.AXON.equals(nodeOrigin)) {
+			return myPopulationEngine.getOutput();
+		}
+		return null;
+	}
+
 	/**
 	 * @param radii A list of radii of encoded area along each dimension; uniform
 	 * 		radius along each dimension can be specified with a list of length 1
@@ -242,9 +411,7 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 					String nodeOrigin=origin.getNodeOrigin();
 					// recalculate the decoders
 					if (!myReuseApproximators || !myDecodingApproximators.containsKey(nodeOrigin)) {
-						float[][] outputs = getConstantOutputs(myEvalPoints, nodeOrigin);
-						LinearApproximator approximator = getApproximatorFactory().getApproximator(myEvalPoints, outputs);
-						myDecodingApproximators.put(nodeOrigin, approximator);
+						myDecodingApproximators.put(nodeOrigin, makeDecodingApproximator(nodeOrigin));
 					}
 
 					origin.rebuildDecoder(myDecodingApproximators.get(nodeOrigin));
@@ -325,21 +492,100 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 	 * @param evalPoints Vector points at which to find output (each one must have same dimension as
 	 * 		encoder)
 	 * @param origin Name of Origin from which to collect output for each Node
-	 * @return Output of each Node at each evaluation point (1st dimension corresponds to Node)
+	 * @return Output of each Node at each evaluation point (1st dimension corresponds to Node).
+	 * 		If there is a default ArrayCache, outputs are kept there, under a key made from the
+	 * 		nodes, encoders, radii, and eval points. Nodes that are NEFNode.TuningCurves are
+	 * 		evaluated in parallel, and other Nodes one at a time in the calling thread.
 	 * @throws StructuralException If CONSTANT_RATE is not supported by any Node
 	 */
-	protected float[][] getConstantOutputs(float[][] evalPoints, String origin) throws StructuralException {
-		NEFNode[] nodes = (NEFNode[]) getNodes();
-		float[][] result = new float[nodes.length][];
+	protected float[][] getConstantOutputs(float[][] evalPoints, final String origin) throws StructuralException {
+		final NEFNode[] nodes = (NEFNode[]) getNodes();
+
+		ArrayCache cache = ArrayCache.getDefault();
+		String key = null;
+		if (cache != null) {
+			key = new ArrayCache.Key("activities").add(origin).add(evalPoints).add(myEncoders).add(myRadii)
+				.addObject(nodes).getKey();
+			float[][] cached = (key == null) ? null : cache.getFloats(key);
+			if (cached != null && cached.length == nodes.length) {
+				return cached;
+			}
+		}
 
-		for (int i = 0; i < nodes.length; i++) {
+		float[][] result = getConstantOutputs(evalPoints, origin, 0);
+		if (key != null) {
+			cache.put(key, result);
+		}
+		return result;
+	}
+
+	//a LinearApproximator over outputs of the given node origin at the eval points; outputs are
+	//computed a chunk of eval points at a time if the factory supports it
+	private LinearApproximator makeDecodingApproximator(String nodeOrigin) throws StructuralException {
+		ApproximatorFactory factory = getApproximatorFactory();
+		if (factory instanceof StreamingApproximatorFactory) {
 			try {
-				result[i] = getConstantOutput(i, evalPoints, origin);
-			} catch (SimulationException e) {
-				throw new StructuralException("Node " + i + " does not have the Origin " + origin);
+				return ((StreamingApproximatorFactory) factory).getApproximator(myEvalPoints, new ActivitySource(nodeOrigin));
+			} catch (RuntimeException e) {
+				if (e.getCause() instanceof StructuralException) {
+					throw (StructuralException) e.getCause();
+				}
+				throw e;
+			}
+		}
+		return factory.getApproximator(myEvalPoints, getConstantOutputs(myEvalPoints, nodeOrigin));
+	}
+
+	//outputs of the nodes at chunks of eval points, for streaming decoder solves
+	private class ActivitySource implements StreamingApproximatorFactory.ValueSource {
+
+		private static final long serialVersionUID = 1L;
+
+		private final String myNodeOrigin;
+
+		public ActivitySource(String nodeOrigin) {
+			myNodeOrigin = nodeOrigin;
+		}
+
+		public float[][] getValues(float[][] evalPoints, int offset) {
+			try {
+				return getConstantOutputs(evalPoints, myNodeOrigin, 0);
+			} catch (StructuralException e) {
+				throw new RuntimeException(e);
 			}
 		}
+	}
+
+	//outputs of the nodes from the given index on (see getConstantOutputs(float[][], String))
+	private float[][] getConstantOutputs(float[][] evalPoints, final String origin, final int first)
+			throws StructuralException {
+
+		final Node[] nodes = getNodes();
+		final float[][] result = new float[nodes.length - first][];
+		final float[][] scaledPoints = scaleEvalPoints(evalPoints);
+		int threads = Runtime.getRuntime().availableProcessors();
+		int chunks = (threads == 1) ? 1 : Math.min(result.length, 4 * threads);
+		try {
+			ParallelRange.run(result.length, chunks, new ParallelRange.Body() {
+				public void run(int chunk, int start, int end) throws SimulationException {
+					for (int i = start; i < end; i++) {
+						result[i] = getTuningCurve(nodes[first + i], first + i, scaledPoints, origin);
+					}
+				}
+			}, false);
+		} catch (SimulationException e) {
+			throw new StructuralException("Can't find constant-rate outputs of Origin " + origin, e);
+		}
 
+		for (int i = 0; i < result.length; i++) {
+			if (result[i] == null) {
+				try {
+					result[i] = runConstantRate(first + i, evalPoints, origin);
+				} catch (SimulationException e) {
+					throw new StructuralException("Node " + (first + i) + " does not have the Origin " + origin);
+				}
+			}
+		}
 		return result;
 	}
 
@@ -355,6 +601,39 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 	protected float[] getConstantOutput(int nodeIndex, float[][] evalPoints, String origin)
 			throws StructuralException, SimulationException {
 
+		float[] result = getTuningCurve(getNodes()[nodeIndex], nodeIndex, scaleEvalPoints(evalPoints), origin);
+		return (result != null) ? result : runConstantRate(nodeIndex, evalPoints, origin);
+	}
+
+	//eval points divided by radii, as in getRadialInput(float[], int)
+	private float[][] scaleEvalPoints(float[][] evalPoints) {
+		if (myRadiiAreOne) {
+			return evalPoints;
+		}
+		float[][] result = new float[evalPoints.length][];
+		for (int i = 0; i < evalPoints.length; i++) {
+			result[i] = MU.prodElementwise(evalPoints[i], myInverseRadii);
+		}
+		return result;
+	}
+
+	//null if the node can't find its outputs in bulk
+	private float[] getTuningCurve(Node node, int nodeIndex, float[][] scaledPoints, String origin)
+			throws SimulationException {
+
+		if (!(node instanceof NEFNode.TuningCurve) || scaledPoints.length == 0) {
+			return null;
+		}
+		float[] result = MU.prod(scaledPoints, myEncoders[nodeIndex]);
+		synchronized (node) {
+			return ((NEFNode.TuningCurve) node).getConstantRates(origin, result, result) ? result : null;
+		}
+	}
+
+	//runs the node in CONSTANT_RATE mode at each eval point
+	private float[] runConstantRate(int nodeIndex, float[][] evalPoints, String origin)
+			throws StructuralException, SimulationException {
+
 		float[] result = new float[evalPoints.length];
 
 		NEFNode node = (NEFNode) getNodes()[nodeIndex];
@@ -514,15 +793,48 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 	 * @see ca.nengo.model.nef.NEFEnsemble#addDecodedOrigin(java.lang.String, Function[], String)
 	 */
     public Origin addDecodedOrigin(String name, Function[] functions, String nodeOrigin) throws StructuralException {
+		LinearApproximator approximator = prepareDecodingApproximator(nodeOrigin);
+		DecodedOrigin result = new DecodedOrigin(this, name, getNodes(), nodeOrigin, functions, approximator);
+		
+		return addDecodedOrigin(result);
+	}
+
+	/**
+	 * Finds the LinearApproximator with which addDecodedOrigin(...) decodes the given Node Origin,
+	 * making a new one if approximators aren't reused or none has been made yet. This is the
+	 * expensive part of adding a decoded Origin, and it changes nothing else about this ensemble,
+	 * so it can be done for several ensembles in parallel.
+	 *
+	 * @param nodeOrigin Name of an Origin on each Node
+	 * @return LinearApproximator over the outputs of nodeOrigin at the eval points
+	 * @throws StructuralException If the Nodes don't have the nodeOrigin
+	 */
+	public synchronized LinearApproximator prepareDecodingApproximator(String nodeOrigin) throws StructuralException {
 		if (!myReuseApproximators || !myDecodingApproximators.containsKey(nodeOrigin)) {
-			float[][] outputs = getConstantOutputs(myEvalPoints, nodeOrigin);
-			LinearApproximator approximator = getApproximatorFactory().getApproximator(myEvalPoints, outputs);
-			myDecodingApproximators.put(nodeOrigin, approximator);
+			myDecodingApproximators.put(nodeOrigin, makeDecodingApproximator(nodeOrigin));
 		}
+		return myDecodingApproximators.get(nodeOrigin);
+	}
 
-		DecodedOrigin result = new DecodedOrigin(this, name, getNodes(), nodeOrigin, functions, myDecodingApproximators.get(nodeOrigin));
-		
-		return addDecodedOrigin(result);
+	/**
+	 * @param nodeOrigin Name of an Origin on each Node
+	 * @param approximator LinearApproximator over the outputs of nodeOrigin at the eval points, which
+	 * 		may come from another ensemble with the same decoding key (see getDecodingKey(String)).
+	 * 		If approximators are reused, later decoded Origins from nodeOrigin are decoded with it.
+	 */
+	public synchronized void setDecodingApproximator(String nodeOrigin, LinearApproximator approximator) {
+		myDecodingApproximators.put(nodeOrigin, approximator);
+	}
+
+	/**
+	 * @param nodeOrigin Name of an Origin on each Node
+	 * @return A key that is the same for ensembles whose approximators for nodeOrigin are
+	 * 		interchangeable, because they have the same Nodes, encoders, radii, eval points and
+	 * 		approximator factory, or null if the key can't be found (eg Nodes aren't Serializable)
+	 */
+	public String getDecodingKey(String nodeOrigin) {
+		return new ArrayCache.Key("decoding").add(nodeOrigin).add(myEvalPoints).add(myEncoders).add(myRadii)
+			.addObject(getNodes()).addObject(getApproximatorFactory()).getKey();
 	}
     
     /**
@@ -669,6 +981,24 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
         return result;
     }
     
+    /**
+     * Like addPESTermination(String, float[][], float, boolean), but the weights are kept in the
+     * given matrix. With a LowRankWeightMatrix (e.g. from Projection.getWeightMatrix()), memory and
+     * learning costs are proportional to the rank rather than to the number of neurons.
+     *
+     * @param name Unique name for the Termination (in the scope of this Node)
+     * @param weights Weight matrix with a row for each neuron
+     * @param tauPSC Time constant with which incoming signals are filtered
+     * @param modulatory If true, inputs to the Termination are not summed with other inputs
+     * @return Termination that was added
+     * @throws StructuralException if weight matrix dimensionality is incorrect
+     */
+    public synchronized Termination addPESTermination(String name, WeightMatrix weights, float tauPSC, boolean modulatory) throws StructuralException {
+        PESTermination result = (PESTermination) addPESTermination(name, placeholderWeights(weights), tauPSC, modulatory);
+        result.setWeightMatrix(weights);
+        return result;
+    }
+
     /**
      * @param name Unique name for the Termination (in the scope of this Node)
      * @param weights Each row is used as a 1 by m matrix of weights in a new termination on the nth expandable node
@@ -922,8 +1252,21 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
     public void run(float startTime, float endTime) throws SimulationException {
 		synchronized (this) {
 			try{
-				float[] state = new float[myDimension];
-				Map<String, Float> bias = new HashMap<String, Float>(5);
+				if (!myReuseOutputsApplied) {
+					applyReuseOutputs();
+				}
+
+				float[] state;
+				if (myReuseOutputs) {
+					if (myStateBuffer == null || myStateBuffer.length != myDimension) {
+						myStateBuffer = new float[myDimension];
+					}
+					state = myStateBuffer;
+					Arrays.fill(state, 0);
+				} else {
+					state = new float[myDimension];
+				}
+				myBiasCount = 0;
 
 				//run terminations and sum state ...
 				DecodedTermination[] dts = super.getDecodedTerminations();
@@ -934,15 +1277,16 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 					boolean isModulatory = t.getModulatory();
 					//TODO: handle modulatory bias input
 					if (t instanceof BiasTermination) {
-						String baseName = ((BiasTermination) t).getBaseTerminationName();
-						if (!bias.containsKey(baseName)) {
-                            bias.put(baseName, new Float(0));
-                        }
+						int index = getBiasIndex((BiasTermination) t);
 						if (!isModulatory) {
-                            bias.put(baseName, new Float(bias.get(baseName).floatValue() + output[0]));
+                            myBiasSums[index] += output[0];
                         }
 					} else {
-						if (!isModulatory) {
+						if (!isModulatory && myReuseOutputs) {
+							for (int i = 0; i < state.length; i++) {
+								state[i] += output[i];
+							}
+						} else if (!isModulatory) {
                             state = MU.sum(state, output);
                         }
 					}
@@ -969,10 +1313,19 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 				} else {
 					//multiply state by encoders (cosine tuning), set radial input of each Neuron and run ...
 					Node[] nodes = getNodes();
-					for (int i = 0; i < nodes.length; i++) {
-						((NEFNode) nodes[i]).setRadialInput(getRadialInput(state, i) +
-						        getBiasInput(bias, myDecodedTerminations, i));
-					}
+					LIFPopulationEngine engine = getPopulationEngine();
+					myScaledState = scaleState(state);
+					myBiasInput = getBiasInputs(nodes.length);
+					if (engine == null || engine.getMode() == SimulationMode.DEFAULT) {
+						if (myRadialInputBody == null) {
+							myRadialInputBody = new ParallelRange.Body() {
+								public void run(int chunk, int start, int end) {
+									setRadialInputs(getNodes(), getPopulationEngine(), start, end);
+								}
+							};
+						}
+						ParallelRange.run(nodes.length, getNumParallelChunks(), myRadialInputBody, true, ParallelRange.getHelpers());
+					} //otherwise encoding is fused with the rate nonlinearity in runNodes(...)
 					super.run(startTime, endTime);
 				}
 			} catch (SimulationException e) {
@@ -982,17 +1335,142 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 		}
 	}
 
+	/**
+	 * Runs neurons through the population engine if it is in use.
+	 *
+	 * @see ca.nengo.model.impl.AbstractEnsemble#runNodes(float, float)
+	 */
+	@Override
+	protected void runNodes(float startTime, float endTime) throws SimulationException {
+		LIFPopulationEngine engine = getPopulationEngine();
+		myStepStartTime = startTime;
+		myStepEndTime = endTime;
+		if (engine == null) {
+			int chunks = getNumParallelChunks();
+			if (chunks > 1) {
+				if (myNodeBody == null) {
+					myNodeBody = new ParallelRange.Body() {
+						public void run(int chunk, int start, int end) throws SimulationException {
+							runNodes(myStepStartTime, myStepEndTime, start, end);
+						}
+					};
+				}
+				ParallelRange.run(getNodes().length, chunks, myNodeBody, true, ParallelRange.getHelpers());
+			} else {
+				super.runNodes(startTime, endTime);
+			}
+		} else {
+			if (myEngineBody == null) {
+				myEngineBody = new ParallelRange.Body() {
+					public void run(int chunk, int start, int end) {
+						LIFPopulationEngine engine = getPopulationEngine();
+						if (engine.getMode() != SimulationMode.DEFAULT) {
+							engine.runRate(myEncoders, myScaledState, myBiasInput, start, end);
+						} else {
+							engine.run(myStepStartTime, myStepEndTime, start, end);
+						}
+					}
+				};
+			}
+			ParallelRange.run(engine.getOutput().length, getNumParallelChunks(), myEngineBody, true, ParallelRange.getHelpers());
+			myPopulationEngineHasRun = true;
+			if (engine.getMode() == SimulationMode.DEFAULT) {
+				setSpikePattern(engine.getOutput(), endTime);
+			}
+		}
+	}
+
+	/**
+	 * Also discards the population engine, since a visible change may mean that neurons,
+	 * origins or modes have changed.
+	 *
+	 * @see ca.nengo.model.impl.AbstractEnsemble#fireVisibleChangeEvent()
+	 */
+	@Override
+	protected void fireVisibleChangeEvent() {
+		invalidatePopulationEngine();
+		myReuseOutputsApplied = false;
+		super.fireVisibleChangeEvent();
+	}
+
 	// @param bias Bias input (related to avoidance of negative weights with interneurons)
-	private static float getBiasInput(Map<String, Float> bias, Map<String, DecodedTermination> dt, int node) {
-		float sumBias = 0;
-		Iterator<String> it = bias.keySet().iterator();
-		while (it.hasNext()) {
-			String baseName = it.next();
-			float netBias = bias.get(baseName).floatValue();
-			float biasEncoder = ((BiasTermination) dt.get(baseName+BIAS_SUFFIX)).getBiasEncoders()[node];
-			sumBias += netBias * biasEncoder;
+	/*
+	 * Sets the radial input of a range of neurons, either in the population engine (if not null)
+	 * or in the neuron objects.
+	 */
+	private void setRadialInputs(Node[] nodes, LIFPopulationEngine engine, int start, int end) {
+		float[] state = myScaledState;
+		float[] biasInput = myBiasInput;
+		float[] radialInput = engine == null ? null : engine.getRadialInput();
+		for (int i = start; i < end; i++) {
+			//same operations as getRadialInput(float[], int), without scaling the state for every node
+			float[] encoder = myEncoders[i];
+			float input = 0f;
+			for (int j = 0; j < state.length; j++) {
+				input += state[j] * encoder[j];
+			}
+			if (biasInput != null) {
+				input += biasInput[i];
+			}
+
+			if (radialInput != null) {
+				radialInput[i] = input;
+			} else {
+				((NEFNode) nodes[i]).setRadialInput(input);
+			}
 		}
-		return sumBias;
+	}
+
+	//state scaled to the unit circle, in a buffer that is reused between steps
+	private float[] scaleState(float[] state) {
+		if (myRadiiAreOne) {
+			return state;
+		}
+		if (myScaledStateBuffer == null || myScaledStateBuffer.length != state.length) {
+			myScaledStateBuffer = new float[state.length];
+		}
+		for (int i = 0; i < state.length; i++) {
+			myScaledStateBuffer[i] = state[i] * myInverseRadii[i];
+		}
+		return myScaledStateBuffer;
+	}
+
+	//index of the sum for the termination's pair in this step, starting it at zero if there is none yet
+	private int getBiasIndex(BiasTermination termination) {
+		String baseName = termination.getBaseTerminationName();
+		for (int k = 0; k < myBiasCount; k++) {
+			if (myBiasNames[k].equals(baseName)) {
+				return k;
+			}
+		}
+		if (myBiasNames == null || myBiasNames.length == myBiasCount) {
+			int size = Math.max(2, 2 * myBiasCount);
+			myBiasNames = (myBiasNames == null) ? new String[size] : Arrays.copyOf(myBiasNames, size);
+			myBiasEncoders = (myBiasEncoders == null) ? new float[size][] : Arrays.copyOf(myBiasEncoders, size);
+			myBiasSums = (myBiasSums == null) ? new float[size] : Arrays.copyOf(myBiasSums, size);
+		}
+		myBiasNames[myBiasCount] = baseName;
+		myBiasEncoders[myBiasCount] = ((BiasTermination) myDecodedTerminations.get(baseName+BIAS_SUFFIX)).getBiasEncoders();
+		myBiasSums[myBiasCount] = 0;
+		return myBiasCount++;
+	}
+
+	//radial input of each neuron from bias terminations, or null if there are none
+	private float[] getBiasInputs(int n) {
+		if (myBiasCount == 0) {
+			return null;
+		}
+		if (myBiasInputBuffer == null || myBiasInputBuffer.length != n) {
+			myBiasInputBuffer = new float[n];
+		}
+		for (int i = 0; i < n; i++) {
+			float sumBias = 0;
+			for (int k = 0; k < myBiasCount; k++) {
+				sumBias += myBiasSums[k] * myBiasEncoders[k][i];
+			}
+			myBiasInputBuffer[i] = sumBias;
+		}
+		return myBiasInputBuffer;
 	}
 
 	/**
@@ -1046,9 +1524,11 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 	 */
 	@Override
     public void reset(boolean randomize) {
+		//neurons are reset, so the engine is rebuilt from their new state rather than written back
+		myPopulationEngine = null;
+		invalidatePopulationEngine();
 		super.reset(randomize);
 
-		
 
 		if (myDirectModeDynamics != null) {
 			myDirectModeDynamics.setState(new float[myDirectModeDynamics.getState().length]);
@@ -1078,6 +1558,14 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 		return getNodes().length;
 	}
 
+	/**
+	 * Changes the number of neurons. Existing neurons are kept (if there are to be fewer, the last
+	 * ones are removed), and new neurons are made with the NEFEnsembleFactory. Decoders are then
+	 * updated for the added or removed neurons (see changeNodes(int[], int)).
+	 *
+	 * @param n New number of neurons
+	 * @throws StructuralException if the factory hasn't been set or n is less than 1
+	 */
     public void setNodeCount(int n) throws StructuralException {
 		if (myEnsembleFactory==null) {
 			throw new StructuralException("Error changing node count: EnsembleFactory has not been set");
@@ -1086,51 +1574,124 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 			throw new StructuralException("Error changing node count: Cannot have "+n+" neurons");
 		}
 
+		int[] kept = new int[Math.min(n, getNodes().length)];
+		for (int i = 0; i < kept.length; i++) {
+			kept[i] = i;
+		}
+		changeNodes(kept, n - kept.length);
+	}
 
-		NEFNode[] nodes = new NEFNode[n];
-
-		NodeFactory nodeFactory=myEnsembleFactory.getNodeFactory();
-
-		for (int i = 0; i < n; i++) {
-			Node node = nodeFactory.make("node" + i);
-			if ( !(node instanceof NEFNode) ) {
-				throw new StructuralException("Nodes must be NEFNodes");
+	/**
+	 * Removes the given neurons (eg in a lesion study), and finds decoders for the remaining ones
+	 * (see changeNodes(int[], int)). Unlike killNeurons(float, boolean), this lets the remaining
+	 * neurons compensate for the removed ones.
+	 *
+	 * @param indices Indices of neurons to remove
+	 * @throws StructuralException if an index is out of range or no neurons would remain
+	 */
+	public void removeNodes(int[] indices) throws StructuralException {
+		Node[] nodes = getNodes();
+		boolean[] removed = new boolean[nodes.length];
+		for (int index : indices) {
+			if (index < 0 || index >= nodes.length) {
+				throw new StructuralException("Can't remove neuron " + index + " from an ensemble of " + nodes.length);
 			}
-			nodes[i] = (NEFNode) node;
-
-			nodes[i].setMode(SimulationMode.CONSTANT_RATE);
-			if ( !nodes[i].getMode().equals(SimulationMode.CONSTANT_RATE) ) {
-				throw new StructuralException("Neurons in an NEFEnsemble must support CONSTANT_RATE mode");
+			removed[index] = true;
+		}
+		if (indices.length == 0) {
+			return;
+		}
+		int[] kept = new int[nodes.length];
+		int count = 0;
+		for (int i = 0; i < nodes.length; i++) {
+			if (!removed[i]) {
+				kept[count++] = i;
 			}
+		}
+		if (count == 0) {
+			throw new StructuralException("Can't remove all neurons from an ensemble");
+		}
+		int[] result = new int[count];
+		System.arraycopy(kept, 0, result, 0, count);
+		changeNodes(result, 0);
+	}
 
-			nodes[i].setMode(getMode());
+	/**
+	 * <p>Keeps the given neurons, adds new ones, and updates decoders.</p>
+	 *
+	 * <p>Where the decoding approximator for a node origin is a WeightedCostApproximator that has
+	 * been kept, its inverse of GAMMA is updated for the change (see
+	 * WeightedCostApproximator.changeValues(int[], float[][])), and activities are only found for
+	 * the new neurons, so the cost is proportional to the size of the change. Otherwise the
+	 * approximator is made again from scratch.</p>
+	 *
+	 * @param kept Indices of existing neurons to keep, in order
+	 * @param added Number of new neurons to make with the NEFEnsembleFactory
+	 * @throws StructuralException if new neurons are not NEFNodes that support CONSTANT_RATE mode
+	 */
+	private void changeNodes(int[] kept, int added) throws StructuralException {
+		Node[] oldNodes = getNodes();
+		NEFNode[] nodes = new NEFNode[kept.length + added];
+		float[][] encoders = new float[nodes.length][];
+		Set<String> names = new HashSet<String>();
+		for (int i = 0; i < kept.length; i++) {
+			nodes[i] = (NEFNode) oldNodes[kept[i]];
+			encoders[i] = myEncoders[kept[i]];
+			names.add(nodes[i].getName());
 		}
-		redefineNodes(nodes);
 
-		myEncoders = myEnsembleFactory.getEncoderFactory().genVectors(n, getDimension());
+		if (added > 0) {
+			NodeFactory nodeFactory=myEnsembleFactory.getNodeFactory();
+			float[][] newEncoders = myEnsembleFactory.getEncoderFactory().genVectors(added, getDimension());
+			int suffix = kept.length;
+			for (int i = kept.length; i < nodes.length; i++) {
+				while (names.contains("node" + suffix)) {
+					suffix++;
+				}
+				Node node = nodeFactory.make("node" + suffix);
+				names.add(node.getName());
+				if ( !(node instanceof NEFNode) ) {
+					throw new StructuralException("Nodes must be NEFNodes");
+				}
+				nodes[i] = (NEFNode) node;
 
+				nodes[i].setMode(SimulationMode.CONSTANT_RATE);
+				if ( !nodes[i].getMode().equals(SimulationMode.CONSTANT_RATE) ) {
+					throw new StructuralException("Neurons in an NEFEnsemble must support CONSTANT_RATE mode");
+				}
 
-		myDecodingApproximators.clear();
+				nodes[i].setMode(getMode());
+				encoders[i] = newEncoders[i - kept.length];
+			}
+		}
+
+		invalidatePopulationEngine();
+		redefineNodes(nodes);
+		myEncoders = encoders;
 
 		// update the decoders for any existing origins
-		Origin[] origins = getOrigins();
-		for (Origin origin2 : origins) {
+		Map<String, LinearApproximator> oldApproximators = new HashMap<String, LinearApproximator>(myDecodingApproximators);
+		myDecodingApproximators.clear();
+		for (Origin origin2 : getOrigins()) {
 			if (origin2 instanceof DecodedOrigin) {
 				DecodedOrigin origin=((DecodedOrigin) origin2);
 				String nodeOrigin=origin.getNodeOrigin();
-				// recalculate the decoders
 				if (!myReuseApproximators || !myDecodingApproximators.containsKey(nodeOrigin)) {
-					float[][] outputs = getConstantOutputs(myEvalPoints, nodeOrigin);
-					LinearApproximator approximator = getApproximatorFactory().getApproximator(myEvalPoints, outputs);
+					LinearApproximator approximator = myReuseApproximators ? oldApproximators.get(nodeOrigin) : null;
+					if (approximator instanceof WeightedCostApproximator
+							&& approximator.getValues().length == oldNodes.length) {
+						float[][] values = (added > 0) ? getConstantOutputs(myEvalPoints, nodeOrigin, kept.length) : new float[0][];
+						approximator = ((WeightedCostApproximator) approximator).changeValues(kept, values);
+					} else {
+						approximator = makeDecodingApproximator(nodeOrigin);
+					}
 					myDecodingApproximators.put(nodeOrigin, approximator);
 				}
-					origin.redefineNodes(nodes,myDecodingApproximators.get(nodeOrigin));
+				origin.redefineNodes(nodes, myDecodingApproximators.get(nodeOrigin));
 			}
 		}
 
 		fireVisibleChangeEvent();
-
-
 	}
 
 	@Override
@@ -1200,6 +1761,21 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 		result.myInverseRadii = myInverseRadii.clone();
 		result.myRadii = myRadii.clone();
 		result.myUnscaledEvalPoints = MU.clone(myUnscaledEvalPoints);
+		result.myPopulationEngine = null;
+		result.myPopulationEngineChecked = false;
+		result.myPopulationEngineHasRun = false;
+		result.myReuseOutputsApplied = false;
+		result.myStateBuffer = null;
+		result.myScaledState = null;
+		result.myScaledStateBuffer = null;
+		result.myBiasInput = null;
+		result.myBiasInputBuffer = null;
+		result.myBiasNames = null;
+		result.myBiasEncoders = null;
+		result.myBiasSums = null;
+		result.myRadialInputBody = null;
+		result.myNodeBody = null;
+		result.myEngineBody = null;
 		return result;
 	}
 
@@ -1300,6 +1876,8 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
             return;
         }
 
+		invalidatePopulationEngine();
+
 		for (Node neuron : neurons) {
 			if(rand.nextFloat() < killrate)
 			{
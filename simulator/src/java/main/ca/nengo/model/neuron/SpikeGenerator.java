@@ -69,4 +69,22 @@ public interface SpikeGenerator extends Resettable, Serializable, SimulationMode
 	 */
 	public SpikeGenerator clone() throws CloneNotSupportedException;
 
+	/**
+	 * A SpikeGenerator whose constant-rate response to many currents can be found at once.
+	 */
+	public static interface RateCurve {
+
+		/**
+		 * Finds the firing rate in SimulationMode.CONSTANT_RATE for each of the given
+		 * currents. The state of the generator is not changed, so this can be called from
+		 * several threads.
+		 *
+		 * @param currents Driving currents
+		 * @param rates Array to fill with the rate at each current (may be the same array
+		 * 		as currents)
+		 */
+		public void constantRateRun(float[] currents, float[] rates);
+
+	}
+
 }
@@ -0,0 +1,306 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "LIFPopulationEngine.java". Description:
+"Updates a population of LIF neurons from flat arrays"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+/*
+ * Created on 17-Oct-2026
+ */
+package ca.nengo.model.neuron.impl;
+
+import ca.nengo.model.Node;
+import ca.nengo.model.SimulationMode;
+import ca.nengo.model.neuron.SynapticIntegrator;
+
+/**
+ * <p>Updates a whole population of LIF neurons in one loop over flat primitive arrays, rather
+ * than through one SpikingNeuron object per neuron.</p>
+ *
+ * <p>The engine takes over the state of a set of SpikingNeurons that have LIFSpikeGenerators,
+ * LinearSynapticIntegrators without Terminations, and no Noise (this is how the neurons of an
+ * NEFEnsemble with decoded Terminations are normally made). It then produces the same spikes
+ * and rates as SpikingNeuron.run(...) would, step for step. While the engine is in use,
+ * the neuron objects are not updated, so their "V", "I" and "current" histories are stale. Call
+ * writeBack() to hand the state back to the neuron objects.</p>
+ *
+ * <p>Only DEFAULT, RATE and CONSTANT_RATE modes are supported.</p>
+ */
+public class LIFPopulationEngine {
+
+	private final LIFSpikeGenerator[] myGenerators;
+	private final SimulationMode myMode;
+	private final float myIntegratorMaxTimeStep;
+	private final float myGeneratorMaxTimeStep;
+
+	private final float[] myGain;
+	private final float[] myBias;
+	private final float[] myTauRC;
+	private final float[] myInverseTauRC;
+	private final float[] myTauRef;
+
+	private final float[] myVoltage;
+	private final float[] myTimeSinceLastSpike;
+
+	private final float[] myRadialInput;
+	private final float[] myOutput;
+
+	private LIFPopulationEngine(SpikingNeuron[] neurons, LIFSpikeGenerator[] generators, SimulationMode mode,
+			float integratorMaxTimeStep, float generatorMaxTimeStep) {
+		int n = neurons.length;
+		myGenerators = generators;
+		myMode = mode;
+		myIntegratorMaxTimeStep = integratorMaxTimeStep;
+		myGeneratorMaxTimeStep = generatorMaxTimeStep;
+
+		myGain = new float[n];
+		myBias = new float[n];
+		myTauRC = new float[n];
+		myInverseTauRC = new float[n];
+		myTauRef = new float[n];
+		myVoltage = new float[n];
+		myTimeSinceLastSpike = new float[n];
+		myRadialInput = new float[n];
+		myOutput = new float[n];
+
+		for (int i = 0; i < n; i++) {
+			myGain[i] = neurons[i].getScale();
+			myBias[i] = neurons[i].getBias();
+			myTauRC[i] = generators[i].getTauRC();
+			myInverseTauRC[i] = 1 / myTauRC[i];
+			myTauRef[i] = generators[i].getTauRef();
+			myVoltage[i] = generators[i].getVoltage();
+			myTimeSinceLastSpike[i] = generators[i].getTimeSinceLastSpike();
+		}
+	}
+
+	/**
+	 * @param nodes Nodes of a population
+	 * @return An engine that takes over the state of the given nodes, or null if any of them
+	 * 		can not be run by the engine (see class documentation)
+	 */
+	public static LIFPopulationEngine create(Node[] nodes) {
+		if (nodes.length == 0) {
+			return null;
+		}
+
+		SpikingNeuron[] neurons = new SpikingNeuron[nodes.length];
+		LIFSpikeGenerator[] generators = new LIFSpikeGenerator[nodes.length];
+		SimulationMode mode = null;
+		float integratorMaxTimeStep = 0;
+		float generatorMaxTimeStep = 0;
+
+		for (int i = 0; i < nodes.length; i++) {
+			//subclasses may override run(), so only the known classes are accepted
+			Class<?> c = nodes[i].getClass();
+			if (c != SpikingNeuron.class && c != ExpandableSpikingNeuron.class) {
+				return null;
+			}
+			neurons[i] = (SpikingNeuron) nodes[i];
+
+			SynapticIntegrator integrator = neurons[i].getIntegrator();
+			if (integrator.getClass() != LinearSynapticIntegrator.class
+					|| integrator.getTerminations().length > 0
+					|| neurons[i].getNoise() != null
+					|| neurons[i].getGenerator().getClass() != LIFSpikeGenerator.class) {
+				return null;
+			}
+			generators[i] = (LIFSpikeGenerator) neurons[i].getGenerator();
+
+			float integratorStep = ((LinearSynapticIntegrator) integrator).getCorrectedMaxTimeStep();
+			float generatorStep = generators[i].getCorrectedMaxTimeStep();
+			if (i == 0) {
+				mode = generators[i].getMode();
+				integratorMaxTimeStep = integratorStep;
+				generatorMaxTimeStep = generatorStep;
+			} else if (generators[i].getMode() != mode
+					|| integratorStep != integratorMaxTimeStep
+					|| generatorStep != generatorMaxTimeStep) {
+				return null;
+			}
+		}
+
+		if (mode != SimulationMode.DEFAULT && mode != SimulationMode.RATE && mode != SimulationMode.CONSTANT_RATE) {
+			return null;
+		}
+
+		return new LIFPopulationEngine(neurons, generators, mode, integratorMaxTimeStep, generatorMaxTimeStep);
+	}
+
+	/**
+	 * @return Radial input of each neuron (see NEFNode.setRadialInput(float)). This array is
+	 * 		read by run(...) and may be written directly.
+	 */
+	public float[] getRadialInput() {
+		return myRadialInput;
+	}
+
+	/**
+	 * @return Output of each neuron from the last run(...). In DEFAULT mode this is
+	 * 		1/(endTime-startTime) for neurons that spiked and 0 otherwise, i.e. the value that
+	 * 		DecodedOrigin uses for a spike. In rate modes it is the firing rate.
+	 */
+	public float[] getOutput() {
+		return myOutput;
+	}
+
+	/**
+	 * @return The mode in which the population runs
+	 */
+	public SimulationMode getMode() {
+		return myMode;
+	}
+
+	/**
+	 * @return Number of neurons in the population
+	 */
+	public int getNeuronCount() {
+		return myVoltage.length;
+	}
+
+	/**
+	 * Runs all neurons over the given interval.
+	 *
+	 * @param startTime Simulation time at which running starts
+	 * @param endTime Simulation time at which running ends
+	 */
+	public void run(float startTime, float endTime) {
+		run(startTime, endTime, 0, myVoltage.length);
+	}
+
+	/**
+	 * Runs a contiguous range of neurons over the given interval. Ranges are independent, so
+	 * disjoint ranges may be run concurrently.
+	 *
+	 * @param startTime Simulation time at which running starts
+	 * @param endTime Simulation time at which running ends
+	 * @param start Index of first neuron to run
+	 * @param end Index after last neuron to run
+	 */
+	public void run(float startTime, float endTime, int start, int end) {
+		if (myMode == SimulationMode.DEFAULT) {
+			runSpiking(startTime, endTime, start, end);
+		} else {
+			runRate(start, end);
+		}
+	}
+
+	/*
+	 * Follows LinearSynapticIntegrator.run(...) and LIFSpikeGenerator.doPreciseSpikingRun(...)
+	 * operation for operation, so that spikes are identical to those of the neuron objects.
+	 */
+	private void runSpiking(float startTime, float endTime, int start, int end) {
+		//the integrator's last time point, which the generator integrates up to
+		float len = endTime - startTime;
+		int integratorSteps = (int) Math.ceil(len / myIntegratorMaxTimeStep);
+		float integratorDt = len / integratorSteps;
+		float generatorLen = (startTime + integratorSteps * integratorDt) - startTime;
+
+		int steps = (int) Math.ceil(generatorLen / myGeneratorMaxTimeStep);
+		float dt = generatorLen / steps;
+		float spikeOutput = 1f / (endTime - startTime);
+
+		for (int n = start; n < end; n++) {
+			float current = myBias[n] + myGain[n] * myRadialInput[n];
+			float inverseTauRC = myInverseTauRC[n];
+			float tauRef = myTauRef[n];
+			float voltage = myVoltage[n];
+			float timeSinceLastSpike = myTimeSinceLastSpike[n];
+			boolean spiked = false;
+
+			for (int i = 0; i < steps; i++) {
+				float dV = inverseTauRC * (current - voltage);
+				timeSinceLastSpike = timeSinceLastSpike + dt;
+				if (timeSinceLastSpike < tauRef) {
+					dV = 0;
+				} else if (timeSinceLastSpike < tauRef + dt) {
+					dV *= (timeSinceLastSpike - tauRef) / dt;
+				}
+				float previousVoltage = voltage;
+				voltage = Math.max(0, voltage + dt * dV);
+
+				if (voltage >= 1) {
+					float dSpike = (1 - previousVoltage) * dt / (voltage - previousVoltage);
+					timeSinceLastSpike = dt - dSpike;
+					spiked = true;
+					voltage = 0;
+				}
+			}
+
+			myVoltage[n] = voltage;
+			myTimeSinceLastSpike[n] = timeSinceLastSpike;
+			myOutput[n] = spiked ? spikeOutput : 0f;
+		}
+	}
+
+	//see LIFSpikeGenerator.constantRateRun(float)
+	private void runRate(int start, int end) {
+		for (int n = start; n < end; n++) {
+			myOutput[n] = getRate(n, myRadialInput[n]);
+		}
+	}
+
+	private float getRate(int n, float radialInput) {
+		float current = myBias[n] + myGain[n] * radialInput;
+		return current > 1 ? 1f / ( myTauRef[n] - myTauRC[n] * ((float) Math.log(1 - 1/current)) ) : 0;
+	}
+
+	/**
+	 * Runs a contiguous range of neurons in a rate mode, computing their radial inputs from
+	 * an encoder matrix in the same pass (rather than having them set through getRadialInput()
+	 * first). The radial input of neuron n is the dot product of encoders[n] and input, plus
+	 * extraInput[n].
+	 *
+	 * @param encoders Encoding vector of each neuron
+	 * @param input Input vector (eg the state of an NEF ensemble, scaled by its radii)
+	 * @param extraInput Additional radial input of each neuron (may be null)
+	 * @param start Index of first neuron to run
+	 * @param end Index after last neuron to run
+	 */
+	public void runRate(float[][] encoders, float[] input, float[] extraInput, int start, int end) {
+		if (myMode == SimulationMode.DEFAULT) {
+			throw new IllegalStateException("Engine is in spiking mode");
+		}
+		for (int n = start; n < end; n++) {
+			float[] encoder = encoders[n];
+			float radialInput = 0f;
+			for (int j = 0; j < input.length; j++) {
+				radialInput += input[j] * encoder[j];
+			}
+			if (extraInput != null) {
+				radialInput += extraInput[n];
+			}
+			myRadialInput[n] = radialInput;
+			myOutput[n] = getRate(n, radialInput);
+		}
+	}
+
+	/**
+	 * Copies membrane state back into the LIFSpikeGenerators that the engine was created from,
+	 * so that they can continue where the engine left off.
+	 */
+	public void writeBack() {
+		for (int i = 0; i < myGenerators.length; i++) {
+			myGenerators[i].setState(myVoltage[i], myTimeSinceLastSpike[i]);
+		}
+	}
+
+}
@@ -37,7 +37,9 @@ import ca.nengo.model.SimulationException;
 import ca.nengo.model.SimulationMode;
 import ca.nengo.model.Units;
 import ca.nengo.model.impl.PreciseSpikeOutputImpl;
+import ca.nengo.model.impl.RealOutputBuffer;
 import ca.nengo.model.impl.RealOutputImpl;
+import ca.nengo.model.impl.SpikeOutputBuffer;
 import ca.nengo.model.impl.SpikeOutputImpl;
 import ca.nengo.model.neuron.SpikeGenerator;
 import ca.nengo.util.TimeSeries;
@@ -55,7 +57,7 @@ import ca.nengo.util.impl.TimeSeries1DImpl;
  *
  * @author Bryan Tripp
  */
-public class LIFSpikeGenerator implements SpikeGenerator, Probeable {
+public class LIFSpikeGenerator implements SpikeGenerator, SpikeGenerator.RateCurve, Probeable {
 
 	private static final long serialVersionUID = 1L;
 
@@ -79,6 +81,10 @@ public class LIFSpikeGenerator implements SpikeGenerator, Probeable {
 	private SimulationMode myMode;
 	private SimulationMode[] mySupportedModes;
 
+	private boolean myReuseOutputs;
+	private RealOutputBuffer myRateOutput;
+	private SpikeOutputBuffer mySpikeOutput;
+
 	private static final float[] ourNullTime = new float[0];
 	private static final float[] ourNullVoltageHistory = new float[0];
 	private static final float ourMaxTimeStepCorrection = 1.01f;
@@ -163,6 +169,26 @@ public class LIFSpikeGenerator implements SpikeGenerator, Probeable {
 		myTauRef = tauRef;
 	}
 
+	/**
+	 * @param reuse If true, outputs are written into a pair of buffers that are reused at every
+	 * 		step, rather than newly created (see RealOutputBuffer). An output returned by run(...)
+	 * 		is then only valid until the next-but-one call to run(...).
+	 */
+	public void setReuseOutputs(boolean reuse) {
+		myReuseOutputs = reuse;
+		if (reuse && myRateOutput == null) {
+			myRateOutput = new RealOutputBuffer(1, Units.SPIKES_PER_S);
+			mySpikeOutput = new SpikeOutputBuffer(1, Units.SPIKES);
+		}
+	}
+
+	/**
+	 * @return True if output buffers are reused between steps (see setReuseOutputs(boolean))
+	 */
+	public boolean getReuseOutputs() {
+		return myReuseOutputs;
+	}
+
 	public void reset(boolean randomize) {
 		myTimeSinceLastSpike = myTauRef;
 		myVoltage = myInitialVoltage;
@@ -177,7 +203,13 @@ public class LIFSpikeGenerator implements SpikeGenerator, Probeable {
 	public InstantaneousOutput run(float[] time, float[] current) {
 		InstantaneousOutput result = null;
 
-		if (myMode.equals(SimulationMode.CONSTANT_RATE) || myMode.equals(SimulationMode.RATE)) {
+		if (myReuseOutputs && (myMode == SimulationMode.CONSTANT_RATE || myMode == SimulationMode.RATE)) {
+			myRateOutput.next()[0] = doConstantRateRun(time[0], current[0]);
+			result = myRateOutput.publish(time[time.length-1]);
+		} else if (myReuseOutputs && myMode == SimulationMode.DEFAULT) {
+			mySpikeOutput.next()[0] = doPreciseSpikingRun(time, current) >= 0;
+			result = mySpikeOutput.publish(time[time.length-1]);
+		} else if (myMode.equals(SimulationMode.CONSTANT_RATE) || myMode.equals(SimulationMode.RATE)) {
 			result = new RealOutputImpl(new float[]{doConstantRateRun(time[0], current[0])}, Units.SPIKES_PER_S, time[time.length-1]);
 		} else if (myMode.equals(SimulationMode.PRECISE)) {
 			result = new PreciseSpikeOutputImpl(new float[]{doPreciseSpikingRun(time, current)}, Units.SPIKES, time[time.length-1]);
@@ -248,8 +280,10 @@ public class LIFSpikeGenerator implements SpikeGenerator, Probeable {
 		int steps = (int) Math.ceil(len / myMaxTimeStep);
 		float dt = len / steps;
 
-		myTime = new float[steps];
-		myVoltageHistory = new float[steps];
+		if (!myReuseOutputs || myTime.length != steps) {
+			myTime = new float[steps];
+			myVoltageHistory = new float[steps];
+		}
 //		mySpikeTimes = new ArrayList(10);
 
 		int inputIndex = 0;
@@ -293,6 +327,34 @@ public class LIFSpikeGenerator implements SpikeGenerator, Probeable {
 		return myVoltage;
 	}
 
+	/**
+	 * @return Time since the last spike (s), used by LIFPopulationEngine to take over the state
+	 * 		of this generator
+	 */
+	float getTimeSinceLastSpike() {
+		return myTimeSinceLastSpike;
+	}
+
+	/**
+	 * @return Maximum integration time step (s), including the correction that is applied so that
+	 * 		float/float divisions round to the intended number of steps
+	 */
+	float getCorrectedMaxTimeStep() {
+		return myMaxTimeStep;
+	}
+
+	/**
+	 * Restores state that has been advanced elsewhere (by LIFPopulationEngine).
+	 *
+	 * @param voltage Membrane voltage
+	 * @param timeSinceLastSpike Time since the last spike (s)
+	 */
+	void setState(float voltage, float timeSinceLastSpike) {
+		myVoltage = voltage;
+		myPreviousVoltage = voltage;
+		myTimeSinceLastSpike = timeSinceLastSpike;
+	}
+
 	//Note that no voltage history is available after a constant-rate run.
 	private float doConstantRateRun(float time, float current) {
 		myTime = ourNullTime;
@@ -310,13 +372,28 @@ public class LIFSpikeGenerator implements SpikeGenerator, Probeable {
 		return current > 1 ? 1f / ( myTauRef - myTauRC * ((float) Math.log(1 - 1/current)) ) : 0;
 	}
 
+	/**
+	 * @see ca.nengo.model.neuron.SpikeGenerator.RateCurve#constantRateRun(float[], float[])
+	 */
+	public void constantRateRun(float[] currents, float[] rates) {
+		float tauRef = myTauRef;
+		float tauRC = myTauRC;
+		for (int i = 0; i < currents.length; i++) {
+			float current = currents[i];
+			rates[i] = current > 1 ? 1f / ( tauRef - tauRC * ((float) Math.log(1 - 1/current)) ) : 0;
+		}
+	}
+
 	/**
 	 * @see Probeable#getHistory(String)
 	 */
 	public TimeSeries getHistory(String stateName) throws SimulationException {
 		TimeSeries1D result = null;
 
-		if (stateName.equals("V")) {
+		if (stateName.equals("V") && myReuseOutputs) {
+			//history arrays are overwritten at the next step
+			result = new TimeSeries1DImpl(myTime.clone(), myVoltageHistory.clone(), Units.AVU);
+		} else if (stateName.equals("V")) {
 			result = new TimeSeries1DImpl(myTime, myVoltageHistory, Units.AVU);
 		} else {
 			throw new SimulationException("The state name " + stateName + " is unknown.");
@@ -355,6 +432,10 @@ public class LIFSpikeGenerator implements SpikeGenerator, Probeable {
 		System.arraycopy(mySupportedModes, 0, result.mySupportedModes, 0, mySupportedModes.length);
 		result.myTime = myTime.clone();
 		result.myVoltageHistory = myVoltageHistory.clone();
+		if (myRateOutput != null) {
+			result.myRateOutput = myRateOutput.clone();
+			result.mySpikeOutput = mySpikeOutput.clone();
+		}
 		return result;
 	}
 
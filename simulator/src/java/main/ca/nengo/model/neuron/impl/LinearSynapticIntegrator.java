@@ -30,6 +30,7 @@ a recipient may use your version of this file under either the MPL or the GPL Li
  */
 package ca.nengo.model.neuron.impl;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -70,6 +71,8 @@ public class LinearSynapticIntegrator implements ExpandableSynapticIntegrator {
 	private float myMaxTimeStep;
 	private Units myCurrentUnits;
 	private Map<String, LinearExponentialTermination> myTerminations;
+	private boolean myReuseOutputs;
+	private TimeSeries1D myOutput;
 
 	/**
 	 * @param maxTimeStep Maximum length of integration time step. Shorter steps may be used to better match
@@ -97,8 +100,16 @@ public class LinearSynapticIntegrator implements ExpandableSynapticIntegrator {
 		int steps = (int) Math.ceil(len / myMaxTimeStep);
 		float dt = len / steps;
 
-		float[] times = new float[steps+1];
-		float[] currents = new float[steps+1];
+		float[] times;
+		float[] currents;
+		if (myReuseOutputs && myOutput != null && myOutput.getTimes().length == steps+1) {
+			times = myOutput.getTimes();
+			currents = myOutput.getValues1D();
+			Arrays.fill(currents, 0);
+		} else {
+			times = new float[steps+1];
+			currents = new float[steps+1];
+		}
 
 		times[0] = startTime;
 		if (myTerminations.size() == 0) {
@@ -119,7 +130,29 @@ public class LinearSynapticIntegrator implements ExpandableSynapticIntegrator {
 			}
 		}
 
-		return new TimeSeries1DImpl(times, currents, myCurrentUnits);
+		if (!myReuseOutputs) {
+			return new TimeSeries1DImpl(times, currents, myCurrentUnits);
+		}
+		if (myOutput == null || myOutput.getTimes() != times) {
+			myOutput = new TimeSeries1DImpl(times, currents, myCurrentUnits);
+		}
+		return myOutput;
+	}
+
+	/**
+	 * @param reuse If true, run(...) writes into the same TimeSeries at every step instead of
+	 * 		creating a new one, so it is only valid until the next call
+	 */
+	public void setReuseOutputs(boolean reuse) {
+		myReuseOutputs = reuse;
+		myOutput = null;
+	}
+
+	/**
+	 * @return True if the output is reused between steps (see setReuseOutputs(boolean))
+	 */
+	public boolean getReuseOutputs() {
+		return myReuseOutputs;
 	}
 
 	//update current in all Terminations
@@ -162,6 +195,14 @@ public class LinearSynapticIntegrator implements ExpandableSynapticIntegrator {
 		myMaxTimeStep = maxTimeStep * ourTimeStepCorrection; //increased slightly because float/float != integer
 	}
 
+	/**
+	 * @return Maximum time step including the correction applied so that float/float
+	 * 		divisions round to the intended number of steps
+	 */
+	float getCorrectedMaxTimeStep() {
+		return myMaxTimeStep;
+	}
+
 	/**
 	 * @return Units that current is expressed in
 	 */
@@ -226,6 +267,7 @@ public class LinearSynapticIntegrator implements ExpandableSynapticIntegrator {
 	@Override
 	public LinearSynapticIntegrator clone() throws CloneNotSupportedException {
 		LinearSynapticIntegrator result = (LinearSynapticIntegrator) super.clone();
+		result.myOutput = null;
 
 		result.myTerminations = new HashMap<String, LinearExponentialTermination>(10);
 		for (LinearExponentialTermination oldTerm : myTerminations.values()) {
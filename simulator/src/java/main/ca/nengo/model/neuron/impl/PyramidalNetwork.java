@@ -23,6 +23,8 @@ import ca.nengo.model.neuron.SpikeGenerator;
 import ca.nengo.model.neuron.SynapticIntegrator;
 import ca.nengo.model.neuron.impl.RateFunctionSpikeGenerator.PoiraziDendriteSigmoidFactory;
 import ca.nengo.util.MU;
+import ca.nengo.util.WeightMatrix;
+import ca.nengo.util.impl.SparseWeightMatrix;
 
 /**
  * Non Linear Network
@@ -555,39 +557,37 @@ public class PyramidalNetwork extends NetworkImpl
     }
 
     /**creates encoders such that each dendrite ensemble will only project to one neuron of the "soma" ensemble
-     * this is done by setting all encoder values to 0 unless weights are being set between a specific dendritic tree and its corresponding soma
+     * this is done by giving synapses only to the soma neuron that the termination is being created for, so that the neuron
+     * only spikes when receiving inputs from its specific dendritic tree. The weights are stored sparsely, since all the
+     * other rows would be zero.
      * @param index index number for current neuron encoders are being solved for
      */
-    private float[][] solveEncoders(int index)
+    private WeightMatrix solveEncoders(int index)
     {
-        int i = 0;
-        int j = 0;
-        float[][] weights = new float[this.size][this.somaDim];
-
-
-        while (i<this.size)
-        {
-            while (j<this.somaDim)
-            {
-                if (i==index) //if i is the same as the index value (Soma neuron we are creating a termination for), then that neuron's specific
-                { //encoders will be used in the weights matrix. All other values are set to 0, ensuring that the neuron only spikes when recieving
-                    //inputs from it's specific dendritic tree
-                    weights[i][j] = this.somaEncoders[i][j];
-                }
-                else
-                {
-                    weights[i][j] = 0;
-                }
-                j = j + 1;
+        int count = 0;
+        for (int j = 0; j < this.somaDim; j++) {
+            if (this.somaEncoders[index][j] != 0) {
+                count++;
             }
-
-            i = i +1;
-            j = 0;
         }
 
-        return weights;
+        int[] rowStarts = new int[this.size + 1];
+        for (int i = index + 1; i <= this.size; i++) {
+            rowStarts[i] = count;
+        }
 
+        int[] columns = new int[count];
+        float[] values = new float[count];
+        int k = 0;
+        for (int j = 0; j < this.somaDim; j++) {
+            if (this.somaEncoders[index][j] != 0) {
+                columns[k] = j;
+                values[k] = this.somaEncoders[index][j];
+                k++;
+            }
+        }
 
+        return new SparseWeightMatrix(this.somaDim, rowStarts, columns, values);
     }
 
 
@@ -45,6 +45,7 @@ import ca.nengo.model.StructuralException;
 import ca.nengo.model.Termination;
 import ca.nengo.model.Units;
 import ca.nengo.model.impl.BasicOrigin;
+import ca.nengo.model.impl.RealOutputBuffer;
 import ca.nengo.model.nef.NEFNode;
 import ca.nengo.model.neuron.Neuron;
 import ca.nengo.model.neuron.SpikeGenerator;
@@ -61,7 +62,7 @@ import ca.nengo.util.impl.TimeSeries1DImpl;
  *
  * @author Bryan Tripp
  */
-public class SpikingNeuron implements Neuron, Probeable, NEFNode {
+public class SpikingNeuron implements Neuron, Probeable, NEFNode, NEFNode.TuningCurve {
 
 	private static final long serialVersionUID = 1L;
 
@@ -83,6 +84,8 @@ public class SpikingNeuron implements Neuron, Probeable, NEFNode {
 	private String myDocumentation;
 	private transient List<VisiblyMutable.Listener> myListeners;
 	private Noise myNoise = null;
+	private boolean myReuseOutputs;
+	private RealOutputBuffer myCurrentOutput;
 
 
 	/**
@@ -125,8 +128,9 @@ public class SpikingNeuron implements Neuron, Probeable, NEFNode {
 		TimeSeries1D current = myIntegrator.run(startTime, endTime);
 
 		float[] integratorOutput = current.getValues1D();
-		float[] generatorInput = new float[integratorOutput.length];
-		
+		float[] generatorInput = (myReuseOutputs && myCurrent.getValues1D().length == integratorOutput.length)
+				? myCurrent.getValues1D() : new float[integratorOutput.length];
+
 		for (int i = 0; i < integratorOutput.length; i++) {
 			myUnscaledCurrent = (myRadialInput + integratorOutput[i]);
 			generatorInput[i] = myBias + myScale * myUnscaledCurrent;
@@ -135,10 +139,45 @@ public class SpikingNeuron implements Neuron, Probeable, NEFNode {
 			}
 		}
 
-		myCurrent = new TimeSeries1DImpl(current.getTimes(), generatorInput, Units.UNK);
+		if (!myReuseOutputs || myCurrent.getTimes() != current.getTimes() || myCurrent.getValues1D() != generatorInput) {
+			myCurrent = new TimeSeries1DImpl(current.getTimes(), generatorInput, Units.UNK);
+		}
 
 		mySpikeOrigin.run(myCurrent.getTimes(), generatorInput);
-		myCurrentOrigin.setValues(startTime, endTime, new float[]{myUnscaledCurrent});
+		if (myReuseOutputs && myCurrentOrigin.getNoise() == null) {
+			myCurrentOutput.next()[0] = myUnscaledCurrent;
+			myCurrentOrigin.setValues(myCurrentOutput.publish(endTime));
+		} else {
+			myCurrentOrigin.setValues(startTime, endTime, new float[]{myUnscaledCurrent});
+		}
+	}
+
+	/**
+	 * @param reuse If true, the current and its origin's output are written into buffers that are
+	 * 		reused at every step instead of creating new ones, and the setting is passed on to the
+	 * 		SynapticIntegrator and SpikeGenerator if they support it (see
+	 * 		LinearSynapticIntegrator.setReuseOutputs(boolean) and
+	 * 		LIFSpikeGenerator.setReuseOutputs(boolean)). Outputs are then only valid until the end
+	 * 		of the following step.
+	 */
+	public void setReuseOutputs(boolean reuse) {
+		myReuseOutputs = reuse;
+		if (reuse && myCurrentOutput == null) {
+			myCurrentOutput = new RealOutputBuffer(1, Units.ACU);
+		}
+		if (myIntegrator instanceof LinearSynapticIntegrator) {
+			((LinearSynapticIntegrator) myIntegrator).setReuseOutputs(reuse);
+		}
+		if (myGenerator instanceof LIFSpikeGenerator) {
+			((LIFSpikeGenerator) myGenerator).setReuseOutputs(reuse);
+		}
+	}
+
+	/**
+	 * @return True if output buffers are reused between steps (see setReuseOutputs(boolean))
+	 */
+	public boolean getReuseOutputs() {
+		return myReuseOutputs;
 	}
 
 	/**
@@ -200,7 +239,10 @@ public class SpikingNeuron implements Neuron, Probeable, NEFNode {
 	 */
 	public TimeSeries getHistory(String stateName) throws SimulationException {
 		TimeSeries result = null;
-		if (stateName.equals("I")) {
+		if (stateName.equals("I") && myReuseOutputs) {
+			//the current's arrays are overwritten at the next step
+			result = new TimeSeries1DImpl(myCurrent.getTimes().clone(), myCurrent.getValues1D().clone(), Units.UNK);
+		} else if (stateName.equals("I")) {
 			result = myCurrent;
 		} else if (stateName.equals("rate")) {
 			InstantaneousOutput output = mySpikeOrigin.getValues();
@@ -290,6 +332,9 @@ public class SpikingNeuron implements Neuron, Probeable, NEFNode {
 	public void setIntegrator(SynapticIntegrator integrator) {
 		myIntegrator = integrator;
 		myIntegrator.setNode(this);
+		if (myReuseOutputs && integrator instanceof LinearSynapticIntegrator) {
+			((LinearSynapticIntegrator) integrator).setReuseOutputs(true);
+		}
 	}
 
 	/**
@@ -306,6 +351,9 @@ public class SpikingNeuron implements Neuron, Probeable, NEFNode {
 	public void setGenerator(SpikeGenerator generator) {
 		myGenerator = generator;
 		mySpikeOrigin = new SpikeGeneratorOrigin(this, generator);
+		if (myReuseOutputs && generator instanceof LIFSpikeGenerator) {
+			((LIFSpikeGenerator) generator).setReuseOutputs(true);
+		}
 	}
 
 	/**
@@ -329,6 +377,32 @@ public class SpikingNeuron implements Neuron, Probeable, NEFNode {
 		myRadialInput = value;
 	}
 
+	/**
+	 * Supported for the CURRENT Origin, and for the AXON Origin if there is no Noise and the
+	 * SpikeGenerator is a SpikeGenerator.RateCurve.
+	 *
+	 * @see ca.nengo.model.nef.NEFNode.TuningCurve#getConstantRates(java.lang.String, float[], float[])
+	 */
+	public boolean getConstantRates(String origin, float[] radialInputs, float[] rates) throws SimulationException {
+		boolean axon = origin.equals(Neuron.AXON);
+		if (axon && (myNoise != null || !(myGenerator instanceof SpikeGenerator.RateCurve))) {
+			return false;
+		} else if (!axon && !origin.equals(CURRENT)) {
+			return false;
+		}
+
+		//the summed input from Terminations, as in run(0, 0)
+		float integratorOutput = myIntegrator.run(0f, 0f).getValues1D()[0];
+		for (int i = 0; i < radialInputs.length; i++) {
+			float unscaledCurrent = radialInputs[i] + integratorOutput;
+			rates[i] = axon ? myBias + myScale * unscaledCurrent : unscaledCurrent;
+		}
+		if (axon) {
+			((SpikeGenerator.RateCurve) myGenerator).constantRateRun(rates, rates);
+		}
+		return true;
+	}
+
 	/**
 	 * @see ca.nengo.model.Node#getDocumentation()
 	 */
@@ -371,7 +445,12 @@ public class SpikingNeuron implements Neuron, Probeable, NEFNode {
 	@Override
 	public SpikingNeuron clone() throws CloneNotSupportedException {
 		SpikingNeuron result = (SpikingNeuron) super.clone();
-		result.myCurrent = (TimeSeries1D) myCurrent.clone();
+		if (myReuseOutputs) {
+			result.myCurrent = new TimeSeries1DImpl(myCurrent.getTimes().clone(), myCurrent.getValues1D().clone(), Units.UNK);
+			result.myCurrentOutput = myCurrentOutput.clone();
+		} else {
+			result.myCurrent = (TimeSeries1D) myCurrent.clone();
+		}
 
 		result.myCurrentOrigin = (BasicOrigin) myCurrentOrigin.clone();
 
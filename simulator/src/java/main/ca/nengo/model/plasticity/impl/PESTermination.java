@@ -33,6 +33,8 @@ import ca.nengo.model.StructuralException;
 import ca.nengo.model.nef.NEFEnsemble;
 import ca.nengo.model.neuron.impl.SpikingNeuron;
 import ca.nengo.util.MU;
+import ca.nengo.util.WeightMatrix;
+import ca.nengo.util.impl.LowRankWeightMatrix;
 
 /**
  * A termination whose transformation evolves according to the PES rule.
@@ -44,6 +46,14 @@ import ca.nengo.util.MU;
  * modulatory variable, though it can be multi-dimensional. This is also user-defined, as some other Termination
  * onto the same NEFEnsemble.
  *
+ * If the weights are a LowRankWeightMatrix (e.g. encoders times transform times decoders),
+ * the left factor is extended with the gain-scaled encoders, and learning changes only the
+ * corresponding rows of the right factor. The weights then keep a rank of twice the
+ * dimension, and each update costs dimension x inputs rather than neurons x inputs. Since
+ * every neuron's weights change together, learning tasks share out the update by columns
+ * of the right factor rather than by neurons. Oja smoothing needs each neuron's weights, so
+ * it can't be used with low-rank weights.
+ *
  * TODO: test
  *
  * @author Bryan Tripp
@@ -59,6 +69,7 @@ public class PESTermination extends ModulatedPlasticEnsembleTermination  {
     private float[][] myScaledEncoders;
 
     private boolean myOja = false; // Apply Oja smoothing?
+    private int myLearnedOffset; // first row of a low-rank right factor that is changed by learning
 
     /**
      * @param ensemble The ensemble this termination belongs to
@@ -88,8 +99,12 @@ public class PESTermination extends ModulatedPlasticEnsembleTermination  {
 
     /**
      * @param oja Should this termination use Oja smoothing?
+     * @throws StructuralException if Oja smoothing is requested with low-rank weights
      */
-    public void setOja(boolean oja) {
+    public void setOja(boolean oja) throws StructuralException {
+        if (oja && getLearnedFactors() != null) {
+            throw new StructuralException("Oja smoothing isn't supported with low-rank weights");
+        }
         myOja = oja;
     }
     
@@ -109,6 +124,36 @@ public class PESTermination extends ModulatedPlasticEnsembleTermination  {
     	myScaledEncoders = MU.prod(MU.diag(MU.prod(myGain, myLearningRate)), myEncoders);
     }
 
+    /**
+     * @see ca.nengo.model.plasticity.impl.PlasticEnsembleTermination#setWeightMatrix(ca.nengo.util.WeightMatrix)
+     */
+    @Override
+    public void setWeightMatrix(WeightMatrix matrix) throws StructuralException {
+        if (matrix instanceof LowRankWeightMatrix && ((LowRankWeightMatrix) matrix).isFactored() && supportsLowRankWeights()) {
+            if (myOja) {
+                throw new StructuralException("Oja smoothing isn't supported with low-rank weights");
+            }
+            LowRankWeightMatrix lowRank = (LowRankWeightMatrix) matrix;
+            myLearnedOffset = lowRank.getRank();
+            matrix = lowRank.extend(MU.prod(MU.diag(myGain), myEncoders));
+        }
+        super.setWeightMatrix(matrix);
+    }
+
+    @Override
+    protected boolean supportsLowRankWeights() {
+        return true;
+    }
+
+    //the weights, if learning changes their right factor (see setWeightMatrix(...)), otherwise null
+    private LowRankWeightMatrix getLearnedFactors() {
+        WeightMatrix matrix = getWeightMatrix();
+        if (matrix instanceof LowRankWeightMatrix && ((LowRankWeightMatrix) matrix).isFactored() && supportsLowRankWeights()) {
+            return (LowRankWeightMatrix) matrix;
+        }
+        return null;
+    }
+
     /**
      * @see ca.nengo.model.plasticity.impl.PlasticEnsembleTermination#updateTransform(float, int, int)
      */
@@ -121,10 +166,29 @@ public class PESTermination extends ModulatedPlasticEnsembleTermination  {
         if (myFilteredInput == null) {
         	return;
         }
-        
-        float[][] delta = deltaOmega(start, end);
-        modifyTransform(delta, false, start, end);
-        
+
+        WeightMatrix matrix = getWeightMatrix();
+        LowRankWeightMatrix factors = getLearnedFactors();
+        if (factors != null) {
+            //one update of the factor changes all the rows, so the tasks' row ranges are mapped
+            //onto ranges of the factor's columns, which together cover it once per step
+            float[] coefficients = new float[factors.getRank()];
+            for (int i = 0; i < myFilteredModInput.length; i++) {
+                coefficients[myLearnedOffset + i] = myLearningRate * myFilteredModInput[i];
+            }
+            long rows = factors.getRows();
+            long columns = factors.getColumns();
+            factors.addToRight(coefficients, myFilteredInput, (int) (columns * start / rows), (int) (columns * end / rows));
+        } else if (matrix != null && !myOja) {
+            float[] encodedError = new float[end-start];
+            for (int i = start; i < end; i++) {
+                encodedError[i-start] = MU.prod(myScaledEncoders[i], myFilteredModInput);
+            }
+            matrix.addOuterProduct(encodedError, myFilteredInput, start, end);
+        } else {
+            float[][] delta = deltaOmega(start, end);
+            modifyTransform(delta, false, start, end);
+        }
     }
 
     protected float[][] deltaOmega(int start, int end) {
@@ -38,6 +38,7 @@ import ca.nengo.model.StructuralException;
 import ca.nengo.model.Termination;
 import ca.nengo.model.impl.EnsembleTermination;
 import ca.nengo.model.nef.NEFEnsemble;
+import ca.nengo.util.WeightMatrix;
 
 /**
  * <p>A Termination that is composed of Terminations onto multiple Nodes.
@@ -68,6 +69,7 @@ public abstract class PlasticEnsembleTermination extends EnsembleTermination {
     protected float[] myFilteredOutput;
     protected float[] myInput;
     protected float[] myFilteredInput;
+    private WeightMatrix myInitialWeightMatrix;
 
     /**
      * @param node The parent Node
@@ -184,12 +186,36 @@ public abstract class PlasticEnsembleTermination extends EnsembleTermination {
         }
     }
 
+    /**
+     * Learning rules other than those that override supportsLowRankWeights() change weights
+     * row by row, so a LowRankWeightMatrix becomes dense the first time they learn.
+     *
+     * @see ca.nengo.model.impl.EnsembleTermination#setWeightMatrix(ca.nengo.util.WeightMatrix)
+     */
+    @Override
+    public void setWeightMatrix(WeightMatrix matrix) throws StructuralException {
+        super.setWeightMatrix(matrix);
+        saveTransform();
+    }
+
+    /**
+     * @return True if this learning rule changes a LowRankWeightMatrix without making it dense
+     */
+    protected boolean supportsLowRankWeights() {
+        return false;
+    }
+
     /**
      * @return The transformation matrix, which is made up of the
      *   weight vectors for each of the PlasticNodeTerminations within.
      *   This can be thought of as the connection weight matrix in most cases.
+     *   If the weights are in a shared weight matrix, this is a copy.
      */
     public float[][] getTransform() {
+        if (getWeightMatrix() != null) {
+            return getWeightMatrix().toArray();
+        }
+
         Termination[] terms = this.getNodeTerminations();
         float[][] transform = new float[terms.length][];
         for (int postIx = 0; postIx < terms.length; postIx++) {
@@ -206,6 +232,19 @@ public abstract class PlasticEnsembleTermination extends EnsembleTermination {
      *   to set the weight vectors on each PlasticNodeTermination within.
      */
     public void setTransform(float[][] transform, boolean save) {
+        WeightMatrix matrix = getWeightMatrix();
+        if (matrix != null) {
+            for (int postIx = 0; postIx < transform.length; postIx++) {
+                matrix.setRow(postIx, transform[postIx]);
+            }
+        }
+        if (matrix != null) {
+            if (save) {
+                saveTransform();
+            }
+            return;
+        }
+
         Termination[] terms = this.getNodeTerminations();
         for(int postIx = 0; postIx < terms.length; postIx++) {
             PlasticNodeTermination pnt = (PlasticNodeTermination) terms[postIx];
@@ -222,6 +261,17 @@ public abstract class PlasticEnsembleTermination extends EnsembleTermination {
      * @param end Row in transformation matrix to end modifications
      */
     public void modifyTransform(float[][] change, boolean save, int start, int end) {
+        WeightMatrix matrix = getWeightMatrix();
+        if (matrix != null) {
+            for (int postIx = start; postIx < end; postIx++) {
+                matrix.addToRow(postIx, change[postIx-start]);
+            }
+            if (save) {
+                saveTransform();
+            }
+            return;
+        }
+
         Termination[] terms = this.getNodeTerminations();
         for(int postIx = start; postIx < end; postIx++) {
             PlasticNodeTermination pnt = (PlasticNodeTermination) terms[postIx];
@@ -233,6 +283,11 @@ public abstract class PlasticEnsembleTermination extends EnsembleTermination {
      * Saves the weights in the PlasticNodeTerminations within.
      */
     public void saveTransform() {
+        if (getWeightMatrix() != null) {
+            myInitialWeightMatrix = getWeightMatrix().clone();
+            return;
+        }
+
         Termination[] terms = this.getNodeTerminations();
         for (Termination term : terms) {
             ((PlasticNodeTermination) term).saveWeights();
@@ -246,7 +301,10 @@ public abstract class PlasticEnsembleTermination extends EnsembleTermination {
     public void reset(boolean randomize) {
         super.reset(randomize);
         // super calls reset on each node, which should reset the weights that
-        // were saved in saveTransform()
+        // were saved in saveTransform(), unless they are in a shared matrix
+        if (myInitialWeightMatrix != null) {
+            attach(myInitialWeightMatrix.clone());
+        }
         myLearning = true;
         if (myOutput != null) {
             Arrays.fill(myOutput, 0.0f);
@@ -263,6 +321,15 @@ public abstract class PlasticEnsembleTermination extends EnsembleTermination {
         myLastTime = 0.0f;
     }
 
+    //replaces the weight matrix without saving it
+    private void attach(WeightMatrix matrix) {
+        try {
+            super.setWeightMatrix(matrix);
+        } catch (StructuralException e) {
+            throw new RuntimeException("Error while replacing weight matrix (this is probably a bug in PlasticEnsembleTermination)", e);
+        }
+    }
+
     /**
      * @param time Current time
      * @param start The start index of the range of transform values to update (for multithreading)
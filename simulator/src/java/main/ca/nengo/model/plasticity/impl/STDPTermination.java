@@ -187,6 +187,13 @@ public class STDPTermination extends PlasticEnsembleTermination {
             }
         }
 
+        //a shared weight matrix gives a copy of the transform
+        if (getWeightMatrix() != null) {
+            for (int post_i = start; post_i < end; post_i++) {
+                getWeightMatrix().setRow(post_i, transform[post_i]);
+            }
+        }
+
         // after dOmega
         for (int pre_i = 0; pre_i < myPreTrace2.length; pre_i++) {
             if (myPreSpiking[pre_i]) {
@@ -114,6 +114,12 @@ public class hPESTermination extends PESTermination  {
 		mySupervisionRatio = supervisionRatio;
 	}
 
+    //the unsupervised part of the rule changes rows individually
+    @Override
+    protected boolean supportsLowRankWeights() {
+        return false;
+    }
+
     /**
      * @see ca.nengo.model.plasticity.impl.PlasticEnsembleTermination#updateTransform(float, int, int)
      */
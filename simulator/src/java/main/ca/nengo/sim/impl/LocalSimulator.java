@@ -54,8 +54,10 @@ import ca.nengo.util.Probe;
 import ca.nengo.util.ThreadTask;
 import ca.nengo.util.VisiblyMutable;
 import ca.nengo.util.VisiblyMutableUtils;
+import ca.nengo.util.impl.NodeRandomStreams;
 import ca.nengo.util.impl.NodeThreadPool;
 import ca.nengo.util.impl.ProbeImpl;
+import ca.nengo.util.impl.StepPlan;
 
 /**
  * A Simulator that runs locally (ie in the Java Virtual Machine in which it is
@@ -76,6 +78,9 @@ public class LocalSimulator implements Simulator, java.io.Serializable {
     private boolean myDisplayProgress;
     private transient List<VisiblyMutable.Listener> myChangeListeners;
     private transient NodeThreadPool myNodeThreadPool;
+    private transient NodeRandomStreams myRandomStreams;
+    private transient volatile StepPlan myStepPlan;
+    private transient Listener myStepPlanListener;
 
     /**
      * Collection of Simulator
@@ -93,6 +98,9 @@ public class LocalSimulator implements Simulator, java.io.Serializable {
      */
     public synchronized void initialize(Network network) {
     	
+    	if (myNetwork != null && myNetwork != network && myStepPlanListener != null) {
+    		myNetwork.removeChangeListener(myStepPlanListener);
+    	}
     	myNetwork = network;
         
         myNodes = network.getNodes();
@@ -111,7 +119,35 @@ public class LocalSimulator implements Simulator, java.io.Serializable {
         	myProbeTasks = new ArrayList<ThreadTask>(20);
         }
 
-        myTasks = NodeThreadPool.collectTasks(myNodes).toArray(new ThreadTask[0]);
+        myTasks = null;
+        myStepPlan = null;
+    }
+
+    /**
+     * Flattening a large network takes a while, so the result is kept for as long as the
+     * network reports no changes, and reused by successive runs and thread pools.
+     *
+     * @return The network flattened for running (see StepPlan)
+     */
+    public synchronized StepPlan getStepPlan() {
+        StepPlan result = myStepPlan;
+        if (result == null) {
+            if (myStepPlanListener == null) {
+                myStepPlanListener = new Listener() {
+                    public void changed(Event e) {
+                        myStepPlan = null;
+                        myTasks = null;
+                    }
+                };
+            }
+            //make sure the listener is registered exactly once (listeners aren't serialized)
+            myNetwork.removeChangeListener(myStepPlanListener);
+            myNetwork.addChangeListener(myStepPlanListener);
+
+            result = new StepPlan(myNodes, myProjections);
+            myStepPlan = result;
+        }
+        return result;
     }
 
     /**
@@ -154,6 +190,7 @@ public class LocalSimulator implements Simulator, java.io.Serializable {
         if(topLevel)
         {
             resetProbes();
+            myTasks = null; //tasks can change without a structural change (see StepPlan)
             makeNodeThreadPool();
         }
 
@@ -211,6 +248,9 @@ public class LocalSimulator implements Simulator, java.io.Serializable {
             myNodeThreadPool.kill();
             myNodeThreadPool = null;
         }
+        if(topLevel){
+            myRandomStreams = null;
+        }
 
     }
 
@@ -223,18 +263,27 @@ public class LocalSimulator implements Simulator, java.io.Serializable {
             myNodeThreadPool.step(startTime, endTime);
         }else{
             for (Projection myProjection : myProjections) {
-                InstantaneousOutput values = myProjection.getOrigin().getValues();
-                myProjection.getTermination().setValues(values);
+                if (myRandomStreams != null) {
+                    myRandomStreams.transmit(myProjection);
+                } else {
+                    InstantaneousOutput values = myProjection.getOrigin().getValues();
+                    myProjection.getTermination().setValues(values);
+                }
             }
 
             for (Node myNode : myNodes) {
                 if(myNode instanceof NetworkImpl) {
-                    ((NetworkImpl)myNode).run(startTime, endTime, false);
+                    runNetwork((NetworkImpl) myNode, startTime, endTime);
+                } else if (myRandomStreams != null) {
+                    myRandomStreams.run(myNode, startTime, endTime);
                 } else {
                     myNode.run(startTime, endTime);
                 }
             }
 
+            if (myTasks == null) {
+                myTasks = getStepPlan().collectTasks().toArray(new ThreadTask[0]);
+            }
             for (ThreadTask myTask : myTasks) {
                 myTask.run(startTime, endTime);
             }
@@ -246,6 +295,25 @@ public class LocalSimulator implements Simulator, java.io.Serializable {
         }
     }
 
+    /*
+     * Runs a subnetwork for a step, with the random streams of this simulation (these belong to
+     * the top-level run, so the subnetwork's simulator only holds them while it runs).
+     */
+    private void runNetwork(NetworkImpl network, float startTime, float endTime) throws SimulationException {
+        Simulator simulator = network.getSimulator();
+        if (simulator instanceof LocalSimulator) {
+            LocalSimulator local = (LocalSimulator) simulator;
+            local.myRandomStreams = myRandomStreams;
+            try {
+                network.run(startTime, endTime, false);
+            } finally {
+                local.myRandomStreams = null;
+            }
+        } else {
+            network.run(startTime, endTime, false);
+        }
+    }
+
     /**
      * @see ca.nengo.sim.Simulator#resetNetwork(boolean, boolean)
      */
@@ -380,7 +448,8 @@ public class LocalSimulator implements Simulator, java.io.Serializable {
     }
     
     public void makeNodeThreadPool() {
-    	myNodeThreadPool = new NodeThreadPool(myNetwork, myProbeTasks);
+    	myNodeThreadPool = new NodeThreadPool(getStepPlan(), myProbeTasks);
+    	myRandomStreams = myNodeThreadPool.getRandomStreams();
     }
     
     public NodeThreadPool getNodeThreadPool() {
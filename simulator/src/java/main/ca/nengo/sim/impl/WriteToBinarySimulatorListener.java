@@ -0,0 +1,143 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "WriteToBinarySimulatorListener.java". Description:
+"Streams values tracked by probes to a binary file"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+/*
+ * Created on 17-Oct-2026
+ */
+
+package ca.nengo.sim.impl;
+
+import java.io.File;
+import java.io.IOException;
+
+import ca.nengo.io.BinaryTimeSeriesWriter;
+import ca.nengo.model.Units;
+import ca.nengo.sim.SimulatorEvent;
+import ca.nengo.sim.SimulatorListener;
+import ca.nengo.util.Probe;
+import ca.nengo.util.TimeSeries;
+
+/**
+ * <p>Streams values tracked by any number of probes to a binary file as a simulation runs (see
+ * BinaryTimeSeriesWriter for the format). The file can be read back with BinaryTimeSeriesReader.</p>
+ *
+ * <p>Only the latest sample of each probe is used, so the probes needn't record their history
+ * (i.e. they can be created with record=false), in which case memory use doesn't grow with
+ * the length of the simulation.</p>
+ *
+ * <p>Example usage (Python syntax):</p>
+ * <pre>
+ *   probe_x = network.getSimulator().addProbe("x",x.X,False)
+ *   probe_error = network.getSimulator().addProbe("error",error.X,False)
+ *   listener = WriteToBinarySimulatorListener(File("output/run.bin"),[probe_x,probe_error],0.005)
+ *   network.simulator.addSimulatorListener(listener)
+ * </pre>
+ */
+public class WriteToBinarySimulatorListener implements SimulatorListener {
+
+	private File myFile;
+	private Probe[] myProbes;
+	private float myRecordInterval;
+	private float myLastInterval;
+	private BinaryTimeSeriesWriter myWriter;
+
+	/**
+	 * @param file The file that progress will be saved to. If it already exists, it will be overwritten.
+	 * @param probes The Probes from which data will be collected. Each frame of the file has the
+	 * 		latest sample from each probe, and the time of the first probe's sample.
+	 * @param recordInterval How often data will be written to disk. To record every timestep, use 0.0.
+	 */
+	public WriteToBinarySimulatorListener(File file, Probe[] probes, float recordInterval) {
+		if (probes.length == 0) {
+			throw new IllegalArgumentException("Expected at least one probe");
+		}
+		myFile = file;
+		myProbes = probes;
+		myRecordInterval = recordInterval;
+		myLastInterval = recordInterval;
+	}
+
+	/**
+	 * @param event The SimulatorEvent corresponding to the current state of the simulator.
+	 */
+	public void processEvent(SimulatorEvent event) {
+		try {
+			if (event.getType() == SimulatorEvent.Type.STARTED) {
+				close();
+				myLastInterval = myRecordInterval;
+			} else if (event.getType() == SimulatorEvent.Type.STEP_TAKEN) {
+				TimeSeries[] data = new TimeSeries[myProbes.length];
+				for (int i = 0; i < data.length; i++) {
+					data[i] = myProbes[i].getData();
+				}
+
+				float time = WriteToDiskSimulatorListener.getLatestTime(data[0]);
+				if (time >= myLastInterval) {
+					float[][] values = new float[data.length][];
+					for (int i = 0; i < data.length; i++) {
+						values[i] = WriteToDiskSimulatorListener.getLatestValues(data[i]);
+					}
+
+					if (myWriter == null) {
+						myWriter = open(data);
+					}
+					myWriter.write(time, values);
+					myLastInterval += myRecordInterval;
+				}
+			} else if (event.getType() == SimulatorEvent.Type.FINISHED) {
+				close();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.err.println("IO Exception in WriteToBinarySimulatorListener:  " + e);
+		}
+	}
+
+	//the header needs the dimensions of the probed values, so the file is opened at the first sample
+	private BinaryTimeSeriesWriter open(TimeSeries[] data) throws IOException {
+		String[] names = new String[data.length];
+		Units[][] units = new Units[data.length][];
+		String[][] labels = new String[data.length][];
+		for (int i = 0; i < data.length; i++) {
+			names[i] = (data[i].getName() == null) ? myProbes[i].getStateName() : data[i].getName();
+			units[i] = data[i].getUnits();
+			labels[i] = data[i].getLabels();
+			if (labels[i] == null || labels[i].length != units[i].length) {
+				labels[i] = new String[units[i].length];
+				for (int j = 0; j < labels[i].length; j++) {
+					labels[i][j] = String.valueOf(j+1);
+				}
+			}
+		}
+		return new BinaryTimeSeriesWriter(myFile, names, units, labels);
+	}
+
+	private void close() throws IOException {
+		if (myWriter != null) {
+			myWriter.close();
+			myWriter = null;
+		}
+	}
+
+}
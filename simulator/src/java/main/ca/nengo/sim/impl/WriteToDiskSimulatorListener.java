@@ -35,6 +35,8 @@ import java.io.IOException;
 import java.util.Calendar;
 
 import ca.nengo.util.Probe;
+import ca.nengo.util.TimeSeries;
+import ca.nengo.util.impl.TimeSeriesBuffer;
 import ca.nengo.sim.SimulatorEvent;
 import ca.nengo.sim.SimulatorListener;
 
@@ -45,7 +47,9 @@ import ca.nengo.sim.SimulatorListener;
  * a long period of time, and it is likely that the amount of data being stored
  * will cause issues with the proper running of Nengo. By attaching a
  * WriteToDiskSimulatorListener to a simulator instance, progress is saved to disk
- * after each recordInterval.
+ * after each recordInterval. Output is buffered, and written in full when the simulation
+ * finishes. For long runs or many probes, WriteToBinarySimulatorListener writes a more compact
+ * binary file.
  * 
  * Example usage (Python syntax):
  *   probe_error = network.getSimulator().addProbe("error",error.X,True)
@@ -91,17 +95,17 @@ public class WriteToDiskSimulatorListener implements SimulatorListener {
 	        	myStartTime = Calendar.getInstance().getTimeInMillis();
 	        	myWriter = new BufferedWriter(new FileWriter(myFile));
 	        } else if (event.getType() == SimulatorEvent.Type.STEP_TAKEN) {
-	            float[] times = myTargetProbe.getData().getTimes();
-	            
-	            if (times[times.length - 1] >= myLastInterval) {
-	                float[][] data = myTargetProbe.getData().getValues();
-	
-	                myWriter.write(Float.toString(times[times.length-1]));
-	                for (int i=0; i < data[0].length; i++) {
-	                	myWriter.write("," + Float.toString(data[times.length-1][i]));
+	            TimeSeries data = myTargetProbe.getData();
+	            float time = getLatestTime(data);
+
+	            if (time >= myLastInterval) {
+	                float[] values = getLatestValues(data);
+
+	                myWriter.write(Float.toString(time));
+	                for (int i=0; i < values.length; i++) {
+	                	myWriter.write("," + Float.toString(values[i]));
 	                }
 	                myWriter.newLine();
-	                myWriter.flush();
 	                myLastInterval += myRecordInterval;
 	            }
 	        } else if (event.getType() == SimulatorEvent.Type.FINISHED) {
@@ -115,4 +119,37 @@ public class WriteToDiskSimulatorListener implements SimulatorListener {
 			System.err.println("IO Exception in WriteToDiskSimulatorListener:  " + e);
 		}
 	}
+
+	/**
+	 * @param data Data from a probe
+	 * @return Time of the latest sample, or negative infinity if there are no samples. This doesn't
+	 * 		copy the probe's history if it is recorded in a TimeSeriesBuffer.
+	 */
+	static float getLatestTime(TimeSeries data) {
+		if (data instanceof TimeSeriesBuffer.View) {
+			TimeSeriesBuffer.View view = (TimeSeriesBuffer.View) data;
+			return view.getLength() == 0 ? Float.NEGATIVE_INFINITY : view.getTime(view.getLength()-1);
+		} else {
+			float[] times = data.getTimes();
+			return times.length == 0 ? Float.NEGATIVE_INFINITY : times[times.length-1];
+		}
+	}
+
+	/**
+	 * @param data Data from a probe, with at least one sample
+	 * @return Values of the latest sample
+	 */
+	static float[] getLatestValues(TimeSeries data) {
+		if (data instanceof TimeSeriesBuffer.View) {
+			TimeSeriesBuffer.View view = (TimeSeriesBuffer.View) data;
+			float[] result = new float[view.getDimension()];
+			for (int i = 0; i < result.length; i++) {
+				result[i] = view.getValue(view.getLength()-1, i);
+			}
+			return result;
+		} else {
+			float[][] values = data.getValues();
+			return values[values.length-1];
+		}
+	}
 }
@@ -0,0 +1,43 @@
+package ca.nengo.util;
+
+/**
+ * Synchronizes a coordinating thread with a fixed number of worker threads that run a simulation
+ * step in phases (eg projections, then nodes, then tasks). The coordinator starts each phase, and
+ * no phase starts until every worker has finished the previous one.
+ *
+ * Phases are numbered from 1. Each worker counts the phases itself, so that it can wait for a
+ * particular phase without the barrier having to keep per-thread state.
+ */
+public interface PhaseBarrier {
+
+	/**
+	 * Called by the coordinating thread. Starts the next phase, and blocks until every worker
+	 * has called arrive() for that phase.
+	 *
+	 * @throws InterruptedException if the barrier is released while waiting
+	 */
+	public void startPhase() throws InterruptedException;
+
+	/**
+	 * Called by a worker thread before it runs a phase.
+	 *
+	 * @param phase Number of the phase to wait for
+	 * @throws InterruptedException if the barrier has been released
+	 */
+	public void awaitPhase(long phase) throws InterruptedException;
+
+	/**
+	 * Called by a worker thread when it has finished its part of the current phase. Some
+	 * implementations block here until every worker has arrived.
+	 *
+	 * @throws InterruptedException if the barrier is released while waiting
+	 */
+	public void arrive() throws InterruptedException;
+
+	/**
+	 * Ends synchronization, so that all threads waiting at the barrier (and any that try to wait
+	 * later) get an InterruptedException.
+	 */
+	public void release();
+
+}
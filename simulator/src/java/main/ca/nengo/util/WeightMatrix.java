@@ -0,0 +1,126 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "WeightMatrix.java". Description:
+"A matrix of synaptic weights"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+/*
+ * Created on 17-Oct-2026
+ */
+package ca.nengo.util;
+
+import java.io.Serializable;
+
+/**
+ * <p>A matrix of synaptic weights, with a row for each postsynaptic neuron and a column
+ * for each presynaptic input. Implementations store the weights in whatever form is most
+ * compact (e.g. as a sparse matrix, or as a product of low-rank factors), so callers should
+ * work through these methods rather than asking for the full array.</p>
+ *
+ * <p>Modifications may change how the weights are stored (e.g. a low-rank matrix becomes dense
+ * when individual rows are set). Different threads may modify different rows at the same time
+ * (e.g. learning tasks that each cover a range of neurons).</p>
+ */
+public interface WeightMatrix extends Serializable, Cloneable {
+
+	/**
+	 * @return Number of rows (postsynaptic neurons)
+	 */
+	public int getRows();
+
+	/**
+	 * @return Number of columns (presynaptic inputs)
+	 */
+	public int getColumns();
+
+	/**
+	 * @param row A row index
+	 * @param column A column index
+	 * @return The weight at the given row and column
+	 */
+	public float get(int row, int column);
+
+	/**
+	 * @param row A row index
+	 * @return A copy of the given row
+	 */
+	public float[] getRow(int row);
+
+	/**
+	 * @return A copy of the full matrix
+	 */
+	public float[][] toArray();
+
+	/**
+	 * @param row A row index
+	 * @param x A vector with an element for each column
+	 * @return Dot product of the given row with x
+	 */
+	public float dotRow(int row, float[] x);
+
+	/**
+	 * @param row A row index
+	 * @param columns Column indices in ascending order (e.g. of inputs that spiked)
+	 * @return Sum of the weights in the given row and columns
+	 */
+	public float sumRow(int row, int[] columns);
+
+	/**
+	 * @param x A vector with an element for each column
+	 * @return Product of this matrix with x
+	 */
+	public float[] prod(float[] x);
+
+	/**
+	 * @param columns Column indices in ascending order (e.g. of inputs that spiked)
+	 * @return Sum of the given columns
+	 */
+	public float[] sumColumns(int[] columns);
+
+	/**
+	 * @param row A row index
+	 * @param weights New weights for the row
+	 */
+	public void setRow(int row, float[] weights);
+
+	/**
+	 * @param row A row index
+	 * @param change A vector to add to the given row
+	 */
+	public void addToRow(int row, float[] change);
+
+	/**
+	 * Adds the outer product of two vectors to a range of rows, i.e. adds left[i-start]*right
+	 * to each row i from start to end-1.
+	 *
+	 * @param left A vector with an element for each row in the range
+	 * @param right A vector with an element for each column
+	 * @param start First row to change
+	 * @param end One past the last row to change
+	 */
+	public void addOuterProduct(float[] left, float[] right, int start, int end);
+
+	/**
+	 * @return An independent copy of this matrix
+	 */
+	public WeightMatrix clone();
+
+}
@@ -0,0 +1,31 @@
+package ca.nengo.util.impl;
+
+import ca.nengo.model.SimulationException;
+
+/**
+ * A thread which uses an NEFCPUInterface to run packed ensembles on the CPU, in place of a
+ * GPUThread on machines without a GPU.
+ */
+public class CPUThread extends NodeThread {
+
+	NEFCPUInterface myNEFCPUInterface;
+
+	public CPUThread(NodeThreadPool nodePool) {
+		super(nodePool, -1); //runs the packed ensembles, and only helps with Java projections and tasks
+
+		myNEFCPUInterface = new NEFCPUInterface();
+	}
+
+	protected void runNodes(float startTime, float endTime) throws SimulationException{
+		myNEFCPUInterface.step(startTime, endTime);
+	}
+
+	public NEFCPUInterface getNEFCPUInterface(){
+		return myNEFCPUInterface;
+	}
+
+	protected void kill(){
+		super.kill();
+		myNEFCPUInterface.kill();
+	}
+}
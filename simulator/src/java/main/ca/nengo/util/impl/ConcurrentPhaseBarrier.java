@@ -0,0 +1,71 @@
+package ca.nengo.util.impl;
+
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+
+import ca.nengo.util.PhaseBarrier;
+
+/**
+ * A PhaseBarrier built on java.util.concurrent.CyclicBarrier. The coordinator and the workers
+ * all meet at one barrier to start a phase and at another to end it, so arrive() blocks until
+ * every worker has finished the phase.
+ */
+public class ConcurrentPhaseBarrier implements PhaseBarrier {
+
+	private final CyclicBarrier myStartBarrier;
+	private final CyclicBarrier myEndBarrier;
+	private volatile boolean myReleased;
+
+	/**
+	 * @param numWorkers Number of worker threads that take part in each phase
+	 */
+	public ConcurrentPhaseBarrier(int numWorkers) {
+		myStartBarrier = new CyclicBarrier(numWorkers + 1);
+		myEndBarrier = new CyclicBarrier(numWorkers + 1);
+	}
+
+	/**
+	 * @see ca.nengo.util.PhaseBarrier#startPhase()
+	 */
+	public void startPhase() throws InterruptedException {
+		await(myStartBarrier);
+		await(myEndBarrier);
+	}
+
+	/**
+	 * Each worker takes part in every phase, so the phase number is not needed here.
+	 *
+	 * @see ca.nengo.util.PhaseBarrier#awaitPhase(long)
+	 */
+	public void awaitPhase(long phase) throws InterruptedException {
+		await(myStartBarrier);
+	}
+
+	/**
+	 * @see ca.nengo.util.PhaseBarrier#arrive()
+	 */
+	public void arrive() throws InterruptedException {
+		await(myEndBarrier);
+	}
+
+	/**
+	 * @see ca.nengo.util.PhaseBarrier#release()
+	 */
+	public void release() {
+		myReleased = true;
+		myStartBarrier.reset();
+		myEndBarrier.reset();
+	}
+
+	private void await(CyclicBarrier barrier) throws InterruptedException {
+		if (myReleased) {
+			throw new InterruptedException("Barrier released");
+		}
+		try {
+			barrier.await();
+		} catch (BrokenBarrierException e) {
+			throw new InterruptedException("Barrier released");
+		}
+	}
+
+}
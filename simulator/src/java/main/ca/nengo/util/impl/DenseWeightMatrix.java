@@ -0,0 +1,178 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "DenseWeightMatrix.java". Description:
+"A WeightMatrix that stores every weight"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+/*
+ * Created on 17-Oct-2026
+ */
+package ca.nengo.util.impl;
+
+import ca.nengo.util.MU;
+import ca.nengo.util.WeightMatrix;
+
+/**
+ * A WeightMatrix that stores every weight.
+ */
+public class DenseWeightMatrix implements WeightMatrix {
+
+	private static final long serialVersionUID = 1L;
+
+	private float[][] myValues;
+	private int myColumns;
+
+	/**
+	 * @param values Weights (a row for each postsynaptic neuron). These are used directly, not copied.
+	 */
+	public DenseWeightMatrix(float[][] values) {
+		if (values.length > 0 && !MU.isMatrix(values)) {
+			throw new IllegalArgumentException("Rows of weights must all be the same length");
+		}
+		myValues = values;
+		myColumns = (values.length > 0) ? values[0].length : 0;
+	}
+
+	/**
+	 * @see ca.nengo.util.WeightMatrix#getRows()
+	 */
+	public int getRows() {
+		return myValues.length;
+	}
+
+	/**
+	 * @see ca.nengo.util.WeightMatrix#getColumns()
+	 */
+	public int getColumns() {
+		return myColumns;
+	}
+
+	/**
+	 * @see ca.nengo.util.WeightMatrix#get(int, int)
+	 */
+	public float get(int row, int column) {
+		return myValues[row][column];
+	}
+
+	/**
+	 * @see ca.nengo.util.WeightMatrix#getRow(int)
+	 */
+	public float[] getRow(int row) {
+		return myValues[row].clone();
+	}
+
+	/**
+	 * @see ca.nengo.util.WeightMatrix#toArray()
+	 */
+	public float[][] toArray() {
+		return MU.clone(myValues);
+	}
+
+	/**
+	 * @see ca.nengo.util.WeightMatrix#dotRow(int, float[])
+	 */
+	public float dotRow(int row, float[] x) {
+		float[] weights = myValues[row];
+		float result = 0;
+		for (int j = 0; j < weights.length; j++) {
+			result += weights[j] * x[j];
+		}
+		return result;
+	}
+
+	/**
+	 * @see ca.nengo.util.WeightMatrix#sumRow(int, int[])
+	 */
+	public float sumRow(int row, int[] columns) {
+		float[] weights = myValues[row];
+		float result = 0;
+		for (int k = 0; k < columns.length; k++) {
+			result += weights[columns[k]];
+		}
+		return result;
+	}
+
+	/**
+	 * @see ca.nengo.util.WeightMatrix#prod(float[])
+	 */
+	public float[] prod(float[] x) {
+		float[] result = new float[myValues.length];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = dotRow(i, x);
+		}
+		return result;
+	}
+
+	/**
+	 * @see ca.nengo.util.WeightMatrix#sumColumns(int[])
+	 */
+	public float[] sumColumns(int[] columns) {
+		float[] result = new float[myValues.length];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = sumRow(i, columns);
+		}
+		return result;
+	}
+
+	/**
+	 * @see ca.nengo.util.WeightMatrix#setRow(int, float[])
+	 */
+	public void setRow(int row, float[] weights) {
+		System.arraycopy(weights, 0, myValues[row], 0, myColumns);
+	}
+
+	/**
+	 * @see ca.nengo.util.WeightMatrix#addToRow(int, float[])
+	 */
+	public void addToRow(int row, float[] change) {
+		float[] weights = myValues[row];
+		for (int j = 0; j < weights.length; j++) {
+			weights[j] += change[j];
+		}
+	}
+
+	/**
+	 * @see ca.nengo.util.WeightMatrix#addOuterProduct(float[], float[], int, int)
+	 */
+	public void addOuterProduct(float[] left, float[] right, int start, int end) {
+		for (int i = start; i < end; i++) {
+			float scale = left[i - start];
+			if (scale != 0) {
+				float[] weights = myValues[i];
+				for (int j = 0; j < weights.length; j++) {
+					weights[j] += scale * right[j];
+				}
+			}
+		}
+	}
+
+	@Override
+	public DenseWeightMatrix clone() {
+		try {
+			DenseWeightMatrix result = (DenseWeightMatrix) super.clone();
+			result.myValues = MU.clone(myValues);
+			return result;
+		} catch (CloneNotSupportedException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+}
@@ -1,9 +1,6 @@
 package ca.nengo.util.impl;
 
-import ca.nengo.model.Node;
-import ca.nengo.model.Projection;
 import ca.nengo.model.SimulationException;
-import ca.nengo.util.ThreadTask;
 import ca.nengo.util.impl.NEFGPUInterface;
 
 /**
@@ -16,7 +13,7 @@ public class GPUThread extends NodeThread {
 	NEFGPUInterface myNEFGPUInterface;
 	
 	public GPUThread(NodeThreadPool nodePool) {
-		super(nodePool, new Node[0], 0, -1, new Projection[0], 0, -1, new ThreadTask[0], 0, -1);
+		super(nodePool, -1); //runs the GPU nodes, and only helps with Java projections and tasks
 		
 		// create NEFGPUInterface from nodes and projections.
 		// have to have some way to communicate which nodes and projections it decides are going to run on the GPU
@@ -0,0 +1,366 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "LowRankWeightMatrix.java". Description:
+"A WeightMatrix that is the product of two low-rank factors"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+/*
+ * Created on 17-Oct-2026
+ */
+package ca.nengo.util.impl;
+
+import ca.nengo.util.MU;
+import ca.nengo.util.WeightMatrix;
+
+/**
+ * <p>A WeightMatrix that is the product of two factors, left (rows x rank) and right
+ * (rank x columns). NEF connection weights have this form, with encoders on the left and
+ * the transform times the decoders on the right, and a rank equal to the dimension of the
+ * represented value. Memory and the cost of a product are then proportional to
+ * rank x (rows + columns) rather than to rows x columns.</p>
+ *
+ * <p>Learning rules that keep the weights low-rank should change the right factor (see
+ * addToRight(...)), typically after extending the left factor with the vectors along which
+ * weights are to change. An outer product is added by extending both factors, as long as that
+ * takes less memory than the full matrix. Setting or changing individual rows, or adding further
+ * outer products, replaces the factors with the full matrix (see isFactored()), so that
+ * each later change costs no more than it would for a DenseWeightMatrix.</p>
+ */
+public class LowRankWeightMatrix implements WeightMatrix {
+
+	private static final long serialVersionUID = 1L;
+
+	private float[][] myLeft;
+	private float[][] myRight;
+	private volatile DenseWeightMatrix myDense; //replaces the factors once rows are changed
+
+	/**
+	 * @param left Left factor (rows x rank). Used directly, not copied.
+	 * @param right Right factor (rank x columns). Used directly, not copied.
+	 */
+	public LowRankWeightMatrix(float[][] left, float[][] right) {
+		if ((left.length > 0 && !MU.isMatrix(left)) || (right.length > 0 && !MU.isMatrix(right))) {
+			throw new IllegalArgumentException("Rows of each factor must all be the same length");
+		}
+		int rank = (left.length > 0) ? left[0].length : right.length;
+		if (rank != right.length) {
+			throw new IllegalArgumentException("Left factor has " + rank + " columns but right factor has "
+					+ right.length + " rows");
+		}
+		myLeft = left;
+		myRight = right;
+	}
+
+	/**
+	 * @return True if the weights are still stored as factors, false if they have been replaced
+	 * 		with the full matrix because rows were changed
+	 */
+	public boolean isFactored() {
+		return myDense == null;
+	}
+
+	/**
+	 * @return Rank of the factorization (number of columns on the left and rows on the right)
+	 */
+	public int getRank() {
+		checkFactored();
+		return myRight.length;
+	}
+
+	/**
+	 * @return Left factor (not a copy)
+	 */
+	public float[][] getLeft() {
+		checkFactored();
+		return myLeft;
+	}
+
+	/**
+	 * @return Right factor (not a copy)
+	 */
+	public float[][] getRight() {
+		checkFactored();
+		return myRight;
+	}
+
+	/**
+	 * @param left Additional columns of the left factor (rows x extra rank)
+	 * @return A matrix with the same weights, in which the left factor is extended with the given
+	 * 		columns and the right factor with corresponding rows of zeros
+	 */
+	public LowRankWeightMatrix extend(float[][] left) {
+		checkFactored();
+		if (left.length != myLeft.length) {
+			throw new IllegalArgumentException("Expected " + myLeft.length + " rows (got " + left.length + ")");
+		}
+
+		int rank = getRank();
+		int extra = (left.length > 0) ? left[0].length : 0;
+		float[][] newLeft = new float[myLeft.length][rank + extra];
+		for (int i = 0; i < newLeft.length; i++) {
+			System.arraycopy(myLeft[i], 0, newLeft[i], 0, rank);
+			System.arraycopy(left[i], 0, newLeft[i], rank, extra);
+		}
+		float[][] newRight = new float[rank + extra][];
+		for (int m = 0; m < newRight.length; m++) {
+			newRight[m] = (m < rank) ? myRight[m].clone() : new float[getColumns()];
+		}
+		return new LowRankWeightMatrix(newLeft, newRight);
+	}
+
+	/**
+	 * Adds the outer product of two vectors to the right factor. This changes the weights by
+	 * left * (coefficients x right), at a cost proportional to rank x columns.
+	 *
+	 * @param coefficients A vector with an element for each row of the right factor
+	 * @param right A vector with an element for each column
+	 */
+	public void addToRight(float[] coefficients, float[] right) {
+		addToRight(coefficients, right, 0, getColumns());
+	}
+
+	/**
+	 * As addToRight(coefficients, right), but only for a range of columns, so that the work of
+	 * one update can be shared out (e.g. among learning tasks).
+	 *
+	 * @param coefficients A vector with an element for each row of the right factor
+	 * @param right A vector with an element for each column
+	 * @param start First column to change
+	 * @param end One past the last column to change
+	 */
+	public void addToRight(float[] coefficients, float[] right, int start, int end) {
+		checkFactored();
+		for (int m = 0; m < myRight.length; m++) {
+			float scale = coefficients[m];
+			if (scale != 0) {
+				float[] factorRow = myRight[m];
+				for (int j = start; j < end; j++) {
+					factorRow[j] += scale * right[j];
+				}
+			}
+		}
+	}
+
+	private void checkFactored() {
+		if (!isFactored()) {
+			throw new IllegalStateException("Weights are no longer factored, since rows have been changed");
+		}
+	}
+
+	/**
+	 * @see ca.nengo.util.WeightMatrix#getRows()
+	 */
+	public int getRows() {
+		DenseWeightMatrix dense = myDense;
+		return (dense != null) ? dense.getRows() : myLeft.length;
+	}
+
+	/**
+	 * @see ca.nengo.util.WeightMatrix#getColumns()
+	 */
+	public int getColumns() {
+		DenseWeightMatrix dense = myDense;
+		if (dense != null) {
+			return dense.getColumns();
+		}
+		return (myRight.length > 0) ? myRight[0].length : 0;
+	}
+
+	/**
+	 * @see ca.nengo.util.WeightMatrix#get(int, int)
+	 */
+	public float get(int row, int column) {
+		DenseWeightMatrix dense = myDense;
+		if (dense != null) {
+			return dense.get(row, column);
+		}
+
+		float[] left = myLeft[row];
+		float result = 0;
+		for (int m = 0; m < left.length; m++) {
+			result += left[m] * myRight[m][column];
+		}
+		return result;
+	}
+
+	/**
+	 * @see ca.nengo.util.WeightMatrix#getRow(int)
+	 */
+	public float[] getRow(int row) {
+		DenseWeightMatrix dense = myDense;
+		if (dense != null) {
+			return dense.getRow(row);
+		}
+
+		float[] left = myLeft[row];
+		float[] result = new float[getColumns()];
+		for (int m = 0; m < left.length; m++) {
+			float scale = left[m];
+			float[] factorRow = myRight[m];
+			for (int j = 0; j < result.length; j++) {
+				result[j] += scale * factorRow[j];
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @see ca.nengo.util.WeightMatrix#toArray()
+	 */
+	public float[][] toArray() {
+		DenseWeightMatrix dense = myDense;
+		if (dense != null) {
+			return dense.toArray();
+		}
+
+		float[][] result = new float[getRows()][];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = getRow(i);
+		}
+		return result;
+	}
+
+	/**
+	 * @see ca.nengo.util.WeightMatrix#dotRow(int, float[])
+	 */
+	public float dotRow(int row, float[] x) {
+		DenseWeightMatrix dense = myDense;
+		return (dense != null) ? dense.dotRow(row, x) : dot(myLeft[row], MU.prod(myRight, x));
+	}
+
+	/**
+	 * @see ca.nengo.util.WeightMatrix#sumRow(int, int[])
+	 */
+	public float sumRow(int row, int[] columns) {
+		DenseWeightMatrix dense = myDense;
+		return (dense != null) ? dense.sumRow(row, columns) : dot(myLeft[row], sumRightColumns(columns));
+	}
+
+	/**
+	 * @see ca.nengo.util.WeightMatrix#prod(float[])
+	 */
+	public float[] prod(float[] x) {
+		DenseWeightMatrix dense = myDense;
+		return (dense != null) ? dense.prod(x) : MU.prod(myLeft, MU.prod(myRight, x));
+	}
+
+	/**
+	 * @see ca.nengo.util.WeightMatrix#sumColumns(int[])
+	 */
+	public float[] sumColumns(int[] columns) {
+		DenseWeightMatrix dense = myDense;
+		return (dense != null) ? dense.sumColumns(columns) : MU.prod(myLeft, sumRightColumns(columns));
+	}
+
+	private float[] sumRightColumns(int[] columns) {
+		float[] result = new float[myRight.length];
+		for (int m = 0; m < result.length; m++) {
+			float[] factorRow = myRight[m];
+			for (int c = 0; c < columns.length; c++) {
+				result[m] += factorRow[columns[c]];
+			}
+		}
+		return result;
+	}
+
+	private static float dot(float[] a, float[] b) {
+		float result = 0;
+		for (int m = 0; m < a.length; m++) {
+			result += a[m] * b[m];
+		}
+		return result;
+	}
+
+	/**
+	 * Replaces the factors with the full matrix.
+	 *
+	 * @see ca.nengo.util.WeightMatrix#setRow(int, float[])
+	 */
+	public void setRow(int row, float[] weights) {
+		getDense().setRow(row, weights);
+	}
+
+	/**
+	 * Replaces the factors with the full matrix.
+	 *
+	 * @see ca.nengo.util.WeightMatrix#addToRow(int, float[])
+	 */
+	public void addToRow(int row, float[] change) {
+		getDense().addToRow(row, change);
+	}
+
+	/**
+	 * Extends the factors with the given vectors, unless the factors would then take more memory
+	 * than the full matrix, in which case they are replaced with it.
+	 *
+	 * @see ca.nengo.util.WeightMatrix#addOuterProduct(float[], float[], int, int)
+	 */
+	public void addOuterProduct(float[] left, float[] right, int start, int end) {
+		if (myDense == null) {
+			synchronized (this) {
+				if (myDense == null && (long) (myRight.length + 1) * (getRows() + getColumns()) < (long) getRows() * getColumns()) {
+					float[][] column = new float[getRows()][1];
+					for (int i = start; i < end; i++) {
+						column[i][0] = left[i - start];
+					}
+					LowRankWeightMatrix extended = extend(column);
+					extended.myRight[extended.myRight.length - 1] = right.clone();
+					myLeft = extended.myLeft;
+					myRight = extended.myRight;
+					return;
+				}
+			}
+		}
+		getDense().addOuterProduct(left, right, start, end);
+	}
+
+	//the full matrix, which is made from the factors the first time it is needed
+	private DenseWeightMatrix getDense() {
+		DenseWeightMatrix result = myDense;
+		if (result == null) {
+			synchronized (this) {
+				if (myDense == null) {
+					myDense = new DenseWeightMatrix(toArray());
+				}
+				result = myDense;
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public LowRankWeightMatrix clone() {
+		try {
+			LowRankWeightMatrix result = (LowRankWeightMatrix) super.clone();
+			DenseWeightMatrix dense = myDense;
+			if (dense != null) {
+				result.myDense = dense.clone();
+			} else {
+				result.myLeft = MU.clone(myLeft);
+				result.myRight = MU.clone(myRight);
+			}
+			return result;
+		} catch (CloneNotSupportedException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+}
@@ -0,0 +1,83 @@
+package ca.nengo.util.impl;
+
+import ca.nengo.util.PhaseBarrier;
+
+/**
+ * A PhaseBarrier that uses wait() and notifyAll() on a single lock. All waiting threads are woken
+ * whenever anything changes, which is simple but becomes expensive with many threads.
+ */
+public class MonitorPhaseBarrier implements PhaseBarrier {
+
+	private final Object myLock = new Object();
+	private final int myNumWorkers;
+
+	private long myPhase;
+	private int myNumArrived;
+	private boolean myReleased;
+
+	/**
+	 * @param numWorkers Number of worker threads that take part in each phase
+	 */
+	public MonitorPhaseBarrier(int numWorkers) {
+		myNumWorkers = numWorkers;
+	}
+
+	/**
+	 * @see ca.nengo.util.PhaseBarrier#startPhase()
+	 */
+	public void startPhase() throws InterruptedException {
+		synchronized (myLock) {
+			checkReleased();
+			myNumArrived = 0;
+			myPhase++;
+			myLock.notifyAll();
+
+			while (myNumArrived < myNumWorkers) {
+				myLock.wait();
+				checkReleased();
+			}
+		}
+	}
+
+	/**
+	 * @see ca.nengo.util.PhaseBarrier#awaitPhase(long)
+	 */
+	public void awaitPhase(long phase) throws InterruptedException {
+		synchronized (myLock) {
+			checkReleased();
+			while (myPhase < phase) {
+				myLock.wait();
+				checkReleased();
+			}
+		}
+	}
+
+	/**
+	 * @see ca.nengo.util.PhaseBarrier#arrive()
+	 */
+	public void arrive() {
+		synchronized (myLock) {
+			myNumArrived++;
+			if (myNumArrived == myNumWorkers) {
+				myLock.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * @see ca.nengo.util.PhaseBarrier#release()
+	 */
+	public void release() {
+		synchronized (myLock) {
+			myReleased = true;
+			myLock.notifyAll();
+		}
+	}
+
+	private void checkReleased() throws InterruptedException {
+		if (myReleased) {
+			throw new InterruptedException("Barrier released");
+		}
+	}
+
+}
@@ -0,0 +1,400 @@
+package ca.nengo.util.impl;
+
+import java.util.ArrayList;
+
+import ca.nengo.model.Node;
+import ca.nengo.model.RealOutput;
+import ca.nengo.model.SimulationException;
+import ca.nengo.model.SimulationMode;
+import ca.nengo.model.Termination;
+import ca.nengo.model.Units;
+import ca.nengo.model.impl.NetworkArrayImpl;
+import ca.nengo.model.impl.NetworkImpl;
+import ca.nengo.model.impl.RealOutputImpl;
+import ca.nengo.model.nef.impl.BiasTermination;
+import ca.nengo.model.nef.impl.DecodedOrigin;
+import ca.nengo.model.nef.impl.DecodedTermination;
+import ca.nengo.model.nef.impl.NEFEnsembleImpl;
+import ca.nengo.model.neuron.Neuron;
+import ca.nengo.model.neuron.impl.LIFSpikeGenerator;
+import ca.nengo.model.neuron.impl.SpikingNeuron;
+
+/**
+ * Allows running NEFEnsembles with flat-array kernels on the CPU, for machines without a
+ * CUDA-enabled GPU. Works like NEFGPUInterface: the ensembles that are marked to run on the
+ * GPU (see NEFEnsembleImpl.setUseGPU(boolean)) are taken out of the node list, their
+ * parameters are packed into flat arrays once, and each step runs every ensemble's decoded
+ * terminations, neurons and decoded origins over those arrays, with ensembles split across
+ * cores.
+ *
+ * As on the GPU, each decoded termination is modelled as a first-order low-pass filter with
+ * the termination's time constant, and state is not carried over between runs of a simulator.
+ * Ensembles that don't fit this model (eg with non-LIF neurons, noise, short-term plasticity,
+ * or terminations other than plain decoded ones) are left to run normally.
+ */
+public class NEFCPUInterface {
+	private static boolean myUseCPUBackend = false;
+	private static int myNumThreads = Runtime.getRuntime().availableProcessors();
+
+	protected NEFEnsembleImpl[] myCPUEnsembles;
+	protected DecodedTermination[][] myTerminations;
+	protected DecodedOrigin[][] myOrigins;
+
+	// packed parameters, indexed by ensemble, then termination, origin or neuron
+	float[][][][] terminationTransforms;
+	float[][] terminationTau;
+	float[][][] encoders;
+	float[][][][] decoders;
+	float[][] neuronBias;
+	float[][] neuronGain;
+	float[][] neuronTauRC;
+	float[][] neuronTauRef;
+	float[] maxTimeStep;
+	boolean[] isSpikingEnsemble;
+
+	// state, and working arrays that are reused at every step
+	float[][][] filteredInput;
+	float[][] voltage;
+	float[][] timeSinceLastSpike;
+	float[][] representedState;
+	float[][] activity;
+	float[][][] representedOutputValues;
+
+	public NEFCPUInterface(){
+	}
+
+	/**
+	 * @param use If true (and no GPU is in use), ensembles that are marked to run on the GPU
+	 * 		are run by an NEFCPUInterface instead
+	 */
+	public static void setUseCPUBackend(boolean use){
+		myUseCPUBackend = use;
+	}
+
+	public static boolean getUseCPUBackend(){
+		return myUseCPUBackend;
+	}
+
+	/**
+	 * @param numThreads Number of threads among which the ensembles are split at each step
+	 */
+	public static void setNumThreads(int numThreads){
+		myNumThreads = Math.max(1, numThreads);
+	}
+
+	public static int getNumThreads(){
+		return myNumThreads;
+	}
+
+	/**
+	 * @param node A node
+	 * @return True if the node is an NEFEnsembleImpl that is marked to run on the GPU and can
+	 * 		be run by this backend
+	 */
+	public static boolean canRun(Node node){
+		if (!(node instanceof NEFEnsembleImpl) || !((NEFEnsembleImpl) node).getUseGPU()) {
+			return false;
+		}
+		NEFEnsembleImpl ensemble = (NEFEnsembleImpl) node;
+
+		Node[] neurons = ensemble.getNodes();
+		if (neurons.length == 0) {
+			return false;
+		}
+		for (Node neuron : neurons) {
+			if (!(neuron instanceof SpikingNeuron)
+					|| !(((SpikingNeuron) neuron).getGenerator() instanceof LIFSpikeGenerator)
+					|| ((SpikingNeuron) neuron).getNoise() != null) {
+				return false;
+			}
+		}
+
+		for (Termination termination : ensemble.getTerminations()) {
+			if (!(termination instanceof DecodedTermination) || termination instanceof BiasTermination) {
+				return false;
+			}
+			DecodedTermination dt = (DecodedTermination) termination;
+			if (dt.getModulatory() || dt.getScaling() != null || dt.getTau() <= 0) {
+				return false;
+			}
+		}
+
+		for (DecodedOrigin origin : ensemble.getDecodedOrigins()) {
+			if (!Neuron.AXON.equals(origin.getNodeOrigin()) || origin.getNoise() != null
+					|| origin.getSTPDynamics() != null) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Finds all nodes in the given array which can run on this backend (including members of
+	 * NetworkArrays). Stores those ensembles in myCPUEnsembles and returns the rest.
+	 */
+	public Node[] takeCPUNodes(Node[] nodes){
+		ArrayList<NEFEnsembleImpl> cpuNodeList = new ArrayList<NEFEnsembleImpl>();
+		ArrayList<Node> nodeList = new ArrayList<Node>();
+
+		for (Node workingNode : nodes) {
+			if (workingNode instanceof NetworkArrayImpl && ((NetworkImpl) workingNode).getUseGPU()) {
+				// members of the array are run individually either way
+				for (Node member : ((NetworkImpl) workingNode).getNodes()) {
+					if (canRun(member)) {
+						cpuNodeList.add((NEFEnsembleImpl) member);
+					} else {
+						nodeList.add(member);
+					}
+				}
+			} else if (canRun(workingNode)) {
+				cpuNodeList.add((NEFEnsembleImpl) workingNode);
+			} else {
+				nodeList.add(workingNode);
+			}
+		}
+
+		myCPUEnsembles = cpuNodeList.toArray(new NEFEnsembleImpl[0]);
+		return nodeList.toArray(new Node[0]);
+	}
+
+	/**
+	 * @return Ensembles that are run by this backend
+	 */
+	public NEFEnsembleImpl[] getCPUEnsembles(){
+		return myCPUEnsembles;
+	}
+
+	/**
+	 * Gets all the necessary data from the ensembles taken by takeCPUNodes(...) and packs it
+	 * into flat arrays, laid out like the data that NEFGPUInterface passes to the GPU.
+	 */
+	public void initialize(){
+		int n = myCPUEnsembles.length;
+
+		myTerminations = new DecodedTermination[n][];
+		myOrigins = new DecodedOrigin[n][];
+		terminationTransforms = new float[n][][][];
+		terminationTau = new float[n][];
+		encoders = new float[n][][];
+		decoders = new float[n][][][];
+		neuronBias = new float[n][];
+		neuronGain = new float[n][];
+		neuronTauRC = new float[n][];
+		neuronTauRef = new float[n][];
+		maxTimeStep = new float[n];
+		isSpikingEnsemble = new boolean[n];
+
+		filteredInput = new float[n][][];
+		voltage = new float[n][];
+		timeSinceLastSpike = new float[n][];
+		representedState = new float[n][];
+		activity = new float[n][];
+		representedOutputValues = new float[n][][];
+
+		for (int i = 0; i < n; i++) {
+			NEFEnsembleImpl workingNode = myCPUEnsembles[i];
+			int numNeurons = workingNode.getNodeCount();
+
+			isSpikingEnsemble[i] = (workingNode.getMode() == SimulationMode.DEFAULT);
+
+			Termination[] terminations = workingNode.getTerminations();
+			myTerminations[i] = new DecodedTermination[terminations.length];
+			terminationTransforms[i] = new float[terminations.length][][];
+			terminationTau[i] = new float[terminations.length];
+			filteredInput[i] = new float[terminations.length][];
+			for (int j = 0; j < terminations.length; j++) {
+				myTerminations[i][j] = (DecodedTermination) terminations[j];
+				terminationTransforms[i][j] = myTerminations[i][j].getTransform();
+				terminationTau[i][j] = myTerminations[i][j].getTau();
+				filteredInput[i][j] = new float[terminationTransforms[i][j].length];
+			}
+
+			encoders[i] = workingNode.getEncoders();
+			float[] radii = workingNode.getRadii();
+			for (int j = 0; j < encoders[i].length; j++) {
+				for (int k = 0; k < encoders[i][j].length; k++) {
+					encoders[i][j][k] = encoders[i][j][k] / radii[k];
+				}
+			}
+
+			myOrigins[i] = workingNode.getDecodedOrigins();
+			decoders[i] = new float[myOrigins[i].length][][];
+			representedOutputValues[i] = new float[myOrigins[i].length][];
+			for (int j = 0; j < myOrigins[i].length; j++) {
+				decoders[i][j] = myOrigins[i][j].getDecoders();
+				representedOutputValues[i][j] = new float[myOrigins[i][j].getDimensions()];
+			}
+
+			Node[] neurons = workingNode.getNodes();
+			neuronBias[i] = new float[numNeurons];
+			neuronGain[i] = new float[numNeurons];
+			neuronTauRC[i] = new float[numNeurons];
+			neuronTauRef[i] = new float[numNeurons];
+			for (int j = 0; j < numNeurons; j++) {
+				SpikingNeuron neuron = (SpikingNeuron) neurons[j];
+				LIFSpikeGenerator generator = (LIFSpikeGenerator) neuron.getGenerator();
+				neuronBias[i][j] = neuron.getBias();
+				neuronGain[i][j] = neuron.getScale();
+				neuronTauRC[i][j] = generator.getTauRC();
+				neuronTauRef[i][j] = generator.getTauRef();
+				if (j == 0) {
+					maxTimeStep[i] = generator.getMaxTimeStep();
+				}
+			}
+
+			voltage[i] = new float[numNeurons];
+			timeSinceLastSpike[i] = new float[numNeurons];
+			representedState[i] = new float[workingNode.getDimension()];
+			activity[i] = new float[numNeurons];
+		}
+	}
+
+	/**
+	 * Runs every ensemble for one step, then puts the decoded outputs in the ensembles' origins
+	 * and the spikes in their spike patterns.
+	 */
+	public void step(final float startTime, final float endTime) throws SimulationException{
+		if (myCPUEnsembles.length == 0) {
+			return;
+		}
+
+		ParallelRange.run(myCPUEnsembles.length, Math.min(myNumThreads, myCPUEnsembles.length),
+				new ParallelRange.Body() {
+			public void run(int chunk, int start, int end) {
+				for (int i = start; i < end; i++) {
+					stepEnsemble(i, startTime, endTime);
+				}
+			}
+		});
+
+		for (int i = 0; i < myCPUEnsembles.length; i++) {
+			NEFEnsembleImpl currentEnsemble = myCPUEnsembles[i];
+			for (int j = 0; j < myOrigins[i].length; j++) {
+				myOrigins[i][j].setValues(new RealOutputImpl(
+						representedOutputValues[i][j].clone(), Units.UNK, endTime));
+			}
+
+			currentEnsemble.setTime(endTime);
+			if (isSpikingEnsemble[i] && currentEnsemble.isCollectingSpikes()) {
+				currentEnsemble.setSpikePattern(activity[i], endTime);
+			}
+		}
+	}
+
+	/*
+	 * Filters termination input, encodes the resulting state, runs the neurons and decodes
+	 * their activity, for one ensemble.
+	 */
+	private void stepEnsemble(int i, float startTime, float endTime) {
+		float dt = endTime - startTime;
+
+		// decoded terminations: transform, then low-pass filter, then sum into the state
+		float[] state = representedState[i];
+		for (int d = 0; d < state.length; d++) {
+			state[d] = 0;
+		}
+		for (int j = 0; j < myTerminations[i].length; j++) {
+			RealOutput in = myTerminations[i][j].getInput();
+			float[] input = (in == null) ? new float[0] : in.getValues(); //no input yet is taken as zero
+			float[][] transform = terminationTransforms[i][j];
+			float[] filtered = filteredInput[i][j];
+			float tau = terminationTau[i][j];
+			//exact for input held over the step, as in DecodedTermination (see ZeroOrderHold)
+			float decay = 1 - (float) Math.exp(-dt / tau);
+			for (int d = 0; d < filtered.length; d++) {
+				float[] row = transform[d];
+				float u = 0;
+				for (int k = 0; k < input.length; k++) {
+					u += row[k] * input[k];
+				}
+				filtered[d] += decay * (u - filtered[d]);
+				state[d] += filtered[d];
+			}
+		}
+
+		// encoding and neurons
+		float[][] enc = encoders[i];
+		float[] bias = neuronBias[i];
+		float[] gain = neuronGain[i];
+		float[] tauRC = neuronTauRC[i];
+		float[] tauRef = neuronTauRef[i];
+		float[] out = activity[i];
+		if (isSpikingEnsemble[i]) {
+			int steps = (int) Math.ceil(dt / maxTimeStep[i]);
+			float subDt = dt / steps;
+			float spikeOutput = 1f / dt;
+			float[] v = voltage[i];
+			float[] t = timeSinceLastSpike[i];
+			for (int n = 0; n < out.length; n++) {
+				float current = bias[n] + gain[n] * dot(enc[n], state);
+				out[n] = runSpiking(n, current, v, t, tauRC[n], tauRef[n], steps, subDt) ? spikeOutput : 0f;
+			}
+		} else {
+			for (int n = 0; n < out.length; n++) {
+				float current = bias[n] + gain[n] * dot(enc[n], state);
+				out[n] = current > 1 ? 1f / ( tauRef[n] - tauRC[n] * ((float) Math.log(1 - 1/current)) ) : 0;
+			}
+		}
+
+		// decoded origins
+		for (int j = 0; j < decoders[i].length; j++) {
+			float[][] dec = decoders[i][j];
+			float[] values = representedOutputValues[i][j];
+			for (int d = 0; d < values.length; d++) {
+				values[d] = 0;
+			}
+			for (int n = 0; n < out.length; n++) {
+				float a = out[n];
+				if (a != 0) {
+					float[] row = dec[n];
+					for (int d = 0; d < values.length; d++) {
+						values[d] += a * row[d];
+					}
+				}
+			}
+		}
+	}
+
+	private static float dot(float[] a, float[] b) {
+		float result = 0;
+		for (int k = 0; k < b.length; k++) {
+			result += a[k] * b[k];
+		}
+		return result;
+	}
+
+	//see LIFSpikeGenerator.doPreciseSpikingRun(...)
+	private static boolean runSpiking(int n, float current, float[] v, float[] t, float tauRC, float tauRef,
+			int steps, float dt) {
+		float voltage = v[n];
+		float timeSinceLastSpike = t[n];
+		boolean spiked = false;
+
+		for (int s = 0; s < steps; s++) {
+			float dV = (current - voltage) / tauRC;
+			timeSinceLastSpike = timeSinceLastSpike + dt;
+			if (timeSinceLastSpike < tauRef) {
+				dV = 0;
+			} else if (timeSinceLastSpike < tauRef + dt) {
+				dV *= (timeSinceLastSpike - tauRef) / dt;
+			}
+			float previousVoltage = voltage;
+			voltage = Math.max(0, voltage + dt * dV);
+
+			if (voltage >= 1) {
+				float dSpike = (1 - previousVoltage) * dt / (voltage - previousVoltage);
+				timeSinceLastSpike = dt - dSpike;
+				spiked = true;
+				voltage = 0;
+			}
+		}
+
+		v[n] = voltage;
+		t[n] = timeSinceLastSpike;
+		return spiked;
+	}
+
+	public void kill(){
+	}
+}
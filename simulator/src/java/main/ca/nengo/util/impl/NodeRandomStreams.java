@@ -0,0 +1,111 @@
+package ca.nengo.util.impl;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import ca.nengo.math.PDFTools;
+import ca.nengo.math.RandomStream;
+import ca.nengo.model.InstantaneousOutput;
+import ca.nengo.model.Node;
+import ca.nengo.model.Projection;
+import ca.nengo.model.SimulationException;
+
+/**
+ * Gives each node of a simulation its own RandomStream, which is used for all of the random
+ * draws (noise, Poisson spikes, etc.) that are made while the node runs. Each projection gets
+ * a stream too, for draws made while values are passed to its termination (eg stochastic
+ * synapses). The streams are split off PDFTools in a fixed order when they are made, so a given
+ * seed reproduces a run regardless of how many threads run the nodes and projections, or in
+ * what order.
+ *
+ * Each run of a simulation has its own streams (see NodeThreadPool.getRandomStreams()), so
+ * simulations that run at the same time don't share them.
+ */
+public class NodeRandomStreams {
+
+	private final Map<Node, RandomStream> myNodeStreams;
+	private final Map<Projection, RandomStream> myProjectionStreams;
+
+	/**
+	 * Splits a stream for each node and projection off the calling thread's current stream.
+	 *
+	 * @param nodes Nodes of a simulation, with networks broken down (see StepPlan.getLeafNodes())
+	 * @param projections Projections of a simulation, including those within networks
+	 */
+	public NodeRandomStreams(Node[] nodes, Projection[] projections) {
+		RandomStream base = PDFTools.split();
+
+		myNodeStreams = new IdentityHashMap<Node, RandomStream>(nodes.length * 2);
+		for (Node node : nodes) {
+			myNodeStreams.put(node, base.split());
+		}
+		myProjectionStreams = new IdentityHashMap<Projection, RandomStream>(projections.length * 2);
+		for (Projection projection : projections) {
+			myProjectionStreams.put(projection, base.split());
+		}
+	}
+
+	/**
+	 * @param node A node
+	 * @return The stream assigned to the node, or null if it has none
+	 */
+	public RandomStream getStream(Node node) {
+		return myNodeStreams.get(node);
+	}
+
+	/**
+	 * @param projection A projection
+	 * @return The stream assigned to the projection, or null if it has none
+	 */
+	public RandomStream getStream(Projection projection) {
+		return myProjectionStreams.get(projection);
+	}
+
+	/**
+	 * Runs a node with PDFTools drawing from the node's stream (if it has one) in the calling thread.
+	 *
+	 * @param node Node to run
+	 * @param startTime Simulation time at which running starts
+	 * @param endTime Simulation time at which running ends
+	 * @throws SimulationException if the node can't be run
+	 */
+	public void run(Node node, float startTime, float endTime) throws SimulationException {
+		RandomStream stream = myNodeStreams.get(node);
+		if (stream == null) {
+			node.run(startTime, endTime);
+		} else {
+			RandomStream previous = PDFTools.setStream(stream);
+			try {
+				node.run(startTime, endTime);
+			} finally {
+				PDFTools.setStream(previous);
+			}
+		}
+	}
+
+	/**
+	 * Passes the current output of a projection's origin to its termination, with PDFTools
+	 * drawing from the projection's stream (if it has one) in the calling thread.
+	 *
+	 * @param projection Projection to pass values through
+	 * @throws SimulationException if the termination can't take the values
+	 */
+	public void transmit(Projection projection) throws SimulationException {
+		RandomStream stream = myProjectionStreams.get(projection);
+		if (stream == null) {
+			transmitValues(projection);
+		} else {
+			RandomStream previous = PDFTools.setStream(stream);
+			try {
+				transmitValues(projection);
+			} finally {
+				PDFTools.setStream(previous);
+			}
+		}
+	}
+
+	private static void transmitValues(Projection projection) throws SimulationException {
+		InstantaneousOutput values = projection.getOrigin().getValues();
+		projection.getTermination().setValues(values);
+	}
+}
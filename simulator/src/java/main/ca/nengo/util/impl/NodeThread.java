@@ -1,8 +1,5 @@
 package ca.nengo.util.impl;
 
-import java.util.Date;
-
-import ca.nengo.model.InstantaneousOutput;
 import ca.nengo.model.Node;
 import ca.nengo.model.Projection;
 import ca.nengo.model.SimulationException;
@@ -10,159 +7,177 @@ import ca.nengo.util.ThreadTask;
 
 /**
  * A thread for running projections, nodes and tasks in. Projections are all runs before nodes, nodes before tasks.
+ * Each thread runs the items that the pool's WorkSchedules assign to it, and then helps with
+ * any items that other threads have not yet started, and with parts of nodes that other threads
+ * are still running (see NodeThreadPool.helpWithNodes()).
  *
  * @author Eric Crawford
  */
 public class NodeThread extends Thread {
 
 	private NodeThreadPool myNodeThreadPool;
-
-	private Node[] myNodes;
-	private int myStartIndexInNodes;
-	private int myEndIndexInNodes;
-
-	private Projection[] myProjections;
-	private int myStartIndexInProjections;
-	private int myEndIndexInProjections;
-
-	private ThreadTask[] myTasks;
-	private int myStartIndexInTasks;
-	private int myEndIndexInTasks;
+	private int myIndex;
 
 	private boolean myCollectTimings;
+	private long myBusyNanos;
 
 	private double myAverageTimeOnProjectionsPerStep;
 	private double myAverageTimeOnNodesPerStep;
 	private double myAverageTimeOnTasksPerStep;
 
+	private double myAverageWaitAfterProjectionsPerStep;
+	private double myAverageWaitAfterNodesPerStep;
+	private double myAverageWaitAfterTasksPerStep;
+
 	private int myNumSteps;
+	private long myPhase;
 
-	public NodeThread(NodeThreadPool nodePool, Node[] nodes,
-			int startIndexInNodes, int endIndexInNodes,
-			Projection[] projections, int startIndexInProjections,
-			int endIndexInProjections, ThreadTask[] tasks,
-            int startIndexInTasks, int endIndexInTasks) {
+	/**
+	 * @param nodePool The pool to which this thread belongs
+	 * @param index Index of this thread in the pool's WorkSchedules, or -1 if it has no work of
+	 * 		its own (it then only helps other threads)
+	 */
+	public NodeThread(NodeThreadPool nodePool, int index) {
 
 		myNodeThreadPool = nodePool;
-
-		myNodes = nodes;
-		myProjections = projections;
-        myTasks = tasks;
-
-		myStartIndexInNodes = startIndexInNodes;
-		myEndIndexInNodes = endIndexInNodes;
-
-		myStartIndexInProjections = startIndexInProjections;
-		myEndIndexInProjections = endIndexInProjections;
-
-		myStartIndexInTasks = startIndexInTasks;
-		myEndIndexInTasks = endIndexInTasks;
+		myIndex = index;
 		
+		myBusyNanos = 0;
 		myNumSteps = 0;
 		myAverageTimeOnProjectionsPerStep = 0;
 		myAverageTimeOnNodesPerStep = 0;
 		myAverageTimeOnTasksPerStep = 0;
+		myPhase = 0;
 	}
 	
 	
 
-	public void waitForPool() {
-		try {
-			myNodeThreadPool.threadWait();
-		} catch (Exception e) {
-		}
+	/**
+	 * Waits until the pool starts the next phase.
+	 *
+	 * @return Time spent waiting (ns) if timings are being collected, otherwise 0
+	 * @throws InterruptedException if the pool has been killed
+	 */
+	public long waitForPool() throws InterruptedException {
+		long start = myCollectTimings ? System.nanoTime() : 0;
+		myPhase++;
+		myNodeThreadPool.getBarrier().awaitPhase(myPhase);
+		return myCollectTimings ? System.nanoTime() - start : 0;
 	}
 
-	public void finished() {
-		try {
-			myNodeThreadPool.threadFinished();
-		} catch (Exception e) {
-		}
+	/**
+	 * Tells the pool that this thread has finished the current phase.
+	 *
+	 * @throws InterruptedException if the pool has been killed
+	 */
+	public void finished() throws InterruptedException {
+		myNodeThreadPool.getBarrier().arrive();
 	}
 
 	// might have to make these protected?
 	protected void runProjections(float startTime, float endTime) throws SimulationException{
 		
-		for (int i = myStartIndexInProjections; i < myEndIndexInProjections; i++) {
-			
-			InstantaneousOutput values = myProjections[i].getOrigin().getValues();
-			myProjections[i].getTermination().setValues(values);
+		Projection[] projections = myNodeThreadPool.getProjections();
+		WorkSchedule schedule = myNodeThreadPool.getProjectionSchedule();
+		NodeRandomStreams streams = myNodeThreadPool.getRandomStreams();
+		int i;
+		while ((i = schedule.next(myIndex)) >= 0) {
+			streams.transmit(projections[i]);
 		}
 		
 	}
 	
 	protected void runNodes(float startTime, float endTime) throws SimulationException{
 		
-		
-		for (int i = myStartIndexInNodes; i < myEndIndexInNodes; i++) {
-			
-			myNodes[i].run(startTime, endTime);
+		Node[] nodes = myNodeThreadPool.getNodes();
+		WorkSchedule schedule = myNodeThreadPool.getNodeSchedule();
+		NodeRandomStreams streams = myNodeThreadPool.getRandomStreams();
+		int i;
+		while ((i = schedule.next(myIndex)) >= 0) {
+			long start = System.nanoTime();
+			streams.run(nodes[i], startTime, endTime);
+			schedule.recordTime(i, System.nanoTime() - start);
 		}
 		
 	}
 	
 	protected void runTasks(float startTime, float endTime) throws SimulationException {
 		
-		for (int i = myStartIndexInTasks; i < myEndIndexInTasks; i++) {
-            myTasks[i].run(startTime, endTime);
+		ThreadTask[] tasks = myNodeThreadPool.getTasks();
+		WorkSchedule schedule = myNodeThreadPool.getTaskSchedule();
+		int i;
+		while ((i = schedule.next(myIndex)) >= 0) {
+			long start = System.nanoTime();
+            tasks[i].run(startTime, endTime);
+			schedule.recordTime(i, System.nanoTime() - start);
         }
 	}
 	
 	public void run() {
+		ParallelRange.setHelpers(myNodeThreadPool.getHelpers());
 		try {
 			float startTime, endTime;
 
 			waitForPool();
 
+			// The loop ends when the pool is killed, which interrupts any wait at the barrier.
 			while (true) {
 				startTime = myNodeThreadPool.getStartTime();
 				endTime = myNodeThreadPool.getEndTime();
 				
 				long projectionInterval, nodeInterval, taskInterval;
 				
-				projectionInterval = myCollectTimings ? new Date().getTime() : 0;
+				projectionInterval = myCollectTimings ? System.nanoTime() : 0;
 				
 				runProjections(startTime, endTime);
 				
-				projectionInterval = myCollectTimings ? new Date().getTime() - projectionInterval : 0;
+				projectionInterval = myCollectTimings ? System.nanoTime() - projectionInterval : 0;
 
 				finished();
+				long projectionWait = waitForPool();
 				
-				nodeInterval = myCollectTimings ? new Date().getTime() : 0;
+				nodeInterval = myCollectTimings ? System.nanoTime() : 0;
 
 				runNodes(startTime, endTime);
+				myNodeThreadPool.helpWithNodes();
 				
-				nodeInterval = myCollectTimings ? new Date().getTime() - nodeInterval : 0;
+				nodeInterval = myCollectTimings ? System.nanoTime() - nodeInterval : 0;
 
 				finished();
+				long nodeWait = waitForPool();
 				
-				taskInterval = myCollectTimings ? new Date().getTime() : 0;
+				taskInterval = myCollectTimings ? System.nanoTime() : 0;
 
                 runTasks(startTime, endTime);
                 
-                taskInterval = myCollectTimings ? new Date().getTime() - taskInterval : 0;
+                taskInterval = myCollectTimings ? System.nanoTime() - taskInterval : 0;
 
                 finished();
                 
+                //includes any time the pool spends between steps
+                long taskWait = waitForPool();
+                
                 if(myCollectTimings){
-	                myAverageTimeOnProjectionsPerStep = (myAverageTimeOnProjectionsPerStep * myNumSteps + projectionInterval) / (myNumSteps + 1);
-	                myAverageTimeOnNodesPerStep = (myAverageTimeOnNodesPerStep * myNumSteps + nodeInterval) / (myNumSteps + 1);
-	                myAverageTimeOnTasksPerStep = (myAverageTimeOnTasksPerStep * myNumSteps + taskInterval) / (myNumSteps + 1);
+	                myAverageTimeOnProjectionsPerStep = (myAverageTimeOnProjectionsPerStep * myNumSteps + projectionInterval / 1e6) / (myNumSteps + 1);
+	                myAverageTimeOnNodesPerStep = (myAverageTimeOnNodesPerStep * myNumSteps + nodeInterval / 1e6) / (myNumSteps + 1);
+	                myAverageTimeOnTasksPerStep = (myAverageTimeOnTasksPerStep * myNumSteps + taskInterval / 1e6) / (myNumSteps + 1);
+	                
+	                myAverageWaitAfterProjectionsPerStep = (myAverageWaitAfterProjectionsPerStep * myNumSteps + projectionWait / 1e6) / (myNumSteps + 1);
+	                myAverageWaitAfterNodesPerStep = (myAverageWaitAfterNodesPerStep * myNumSteps + nodeWait / 1e6) / (myNumSteps + 1);
+	                myAverageWaitAfterTasksPerStep = (myAverageWaitAfterTasksPerStep * myNumSteps + taskWait / 1e6) / (myNumSteps + 1);
+	                
+	                myBusyNanos += projectionInterval + nodeInterval + taskInterval;
 	                
 	                myNumSteps++;
                 }
-                
-				// This is the means of getting out of the loop. The pool will interrupt
-				// this thread at the appropriate time.
-				if (Thread.currentThread().isInterrupted() || myNodeThreadPool.getRunFinished()) {
-					kill();
-					return;
-				}
 			}
+		} catch (InterruptedException e) {
+			// This is the means of getting out of the loop. The pool releases the barrier
+			// and interrupts this thread when the run is finished.
+			kill();
 		} catch (Exception e) {
 			System.err.println(e);
 			myNodeThreadPool.kill();
-			finished();
 		}
 	}
 	
@@ -173,6 +188,9 @@ public class NodeThread extends Thread {
 			timingOutput.append("Average time processing projections per step: " + myAverageTimeOnProjectionsPerStep + " ms\n");
 			timingOutput.append("Average time processing nodes per step: " + myAverageTimeOnNodesPerStep + " ms\n");
 			timingOutput.append("Average time processing tasks per step: " + myAverageTimeOnTasksPerStep + " ms\n");
+			timingOutput.append("Average wait at barrier after projections per step: " + myAverageWaitAfterProjectionsPerStep + " ms\n");
+			timingOutput.append("Average wait at barrier after nodes per step: " + myAverageWaitAfterNodesPerStep + " ms\n");
+			timingOutput.append("Average wait at barrier after tasks (and between steps) per step: " + myAverageWaitAfterTasksPerStep + " ms\n");
 			
 			System.out.print(timingOutput.toString());
 		}
@@ -193,4 +211,34 @@ public class NodeThread extends Thread {
 	public double getMyAverageTimeOnTasksPerStep() {
 		return myAverageTimeOnTasksPerStep;
 	}
+
+	/**
+	 * @return Average time (ms) per step that this thread waited for other threads to finish projections
+	 */
+	public double getMyAverageWaitAfterProjectionsPerStep() {
+		return myAverageWaitAfterProjectionsPerStep;
+	}
+
+	/**
+	 * @return Average time (ms) per step that this thread waited for other threads to finish nodes
+	 */
+	public double getMyAverageWaitAfterNodesPerStep() {
+		return myAverageWaitAfterNodesPerStep;
+	}
+
+	/**
+	 * @return Average time (ms) per step that this thread waited for other threads to finish tasks,
+	 * 		including time that the pool spent between steps
+	 */
+	public double getMyAverageWaitAfterTasksPerStep() {
+		return myAverageWaitAfterTasksPerStep;
+	}
+
+	/**
+	 * @return Total time (ns) that this thread has spent running projections, nodes and tasks
+	 * 		(only collected along with other timings)
+	 */
+	public long getBusyNanos() {
+		return myBusyNanos;
+	}
 }
@@ -4,14 +4,22 @@ package ca.nengo.util.impl;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import ca.nengo.model.Ensemble;
 import ca.nengo.model.Network;
 import ca.nengo.model.Node;
 import ca.nengo.model.Projection;
 import ca.nengo.model.SimulationException;
 import ca.nengo.model.impl.NetworkArrayImpl;
+import ca.nengo.model.nef.NEFEnsemble;
+import ca.nengo.model.nef.impl.NEFEnsembleImpl;
+import ca.nengo.util.PhaseBarrier;
 import ca.nengo.util.TaskSpawner;
 import ca.nengo.util.ThreadTask;
 
@@ -31,21 +39,58 @@ public class NodeThreadPool {
 	protected static int myNumJavaThreads = defaultNumJavaThreads;
 	protected int myNumThreads;
 	protected NodeThread[] myThreads;
-	protected Object myLock;
+
+	/**
+	 * Ways of synchronizing the threads between phases of a step.
+	 */
+	public static enum BarrierType {
+		/**
+		 * wait()/notifyAll() on a single lock (see MonitorPhaseBarrier)
+		 */
+		MONITOR,
+
+		/**
+		 * Spin, then park (see SpinPhaseBarrier)
+		 */
+		SPIN,
+
+		/**
+		 * java.util.concurrent barriers (see ConcurrentPhaseBarrier)
+		 */
+		CONCURRENT
+	}
+
+	protected static BarrierType myBarrierType = BarrierType.MONITOR;
+	protected PhaseBarrier myBarrier;
 
 	protected Node[] myNodes;
 	protected Projection[] myProjections;
     protected ThreadTask[] myTasks;
+	protected NodeRandomStreams myRandomStreams;
+
+	protected WorkSchedule myProjectionSchedule;
+	protected WorkSchedule myNodeSchedule;
+	protected WorkSchedule myTaskSchedule;
+	protected static int ourRebalanceInterval = 100; //steps between reassignments based on measured run times
+	protected int myStepCount;
+	protected long myPhaseNanos;
+
+	//parts of nodes (eg chunks of neurons, see ParallelRange) offered to threads that have run out of nodes
+	protected final ConcurrentLinkedQueue<Runnable> myHelpRequests = new ConcurrentLinkedQueue<Runnable>();
+	protected final Executor myHelpers = new Executor() {
+		public void execute(Runnable request) {
+			myHelpRequests.offer(request);
+		}
+	};
+	protected final AtomicInteger myThreadsOnNodes = new AtomicInteger(0);
+	protected boolean myHelping;
 
-	protected volatile int numThreadsComplete;
-	protected volatile int numThreadsWaiting;
-
-	protected volatile boolean threadsRunning;
 	protected volatile boolean runFinished;
 	protected float myStartTime;
 	protected float myEndTime;
 	
 	protected static boolean myCollectTimings;
+	private static final Map<Class<?>, Boolean> ourCCMModelNetworkTypes = new ConcurrentHashMap<Class<?>, Boolean>();
 	protected long myRunStartTime;
 	protected double myAverageTimePerStep;
 	protected int myNumSteps;
@@ -72,6 +117,28 @@ public class NodeThreadPool {
 		myNumJavaThreads = 0;
 	}
 
+	/**
+	 * @return The way threads are synchronized between phases in new pools
+	 */
+	public static BarrierType getBarrierType() {
+		return myBarrierType;
+	}
+
+	/**
+	 * @param type The way threads are to be synchronized between phases in pools that are
+	 * 		created from now on
+	 */
+	public static void setBarrierType(BarrierType type) {
+		myBarrierType = type;
+	}
+
+	/**
+	 * @return The barrier at which the threads of this pool meet between phases
+	 */
+	public PhaseBarrier getBarrier() {
+		return myBarrier;
+	}
+
 	public static boolean isCollectingTimings() {
 		return myCollectTimings;
 	}
@@ -92,6 +159,98 @@ public class NodeThreadPool {
 		return runFinished;
 	}
 
+	/**
+	 * @return Nodes run by the Java threads of this pool
+	 */
+	public Node[] getNodes() {
+		return myNodes;
+	}
+
+	/**
+	 * @return Projections run by the Java threads of this pool
+	 */
+	public Projection[] getProjections() {
+		return myProjections;
+	}
+
+	/**
+	 * @return Tasks run by the Java threads of this pool
+	 */
+	public ThreadTask[] getTasks() {
+		return myTasks;
+	}
+
+	/**
+	 * @return Random streams of the nodes and projections run by this pool
+	 */
+	public NodeRandomStreams getRandomStreams() {
+		return myRandomStreams;
+	}
+
+	/**
+	 * @return Assignment of nodes to threads
+	 */
+	public WorkSchedule getNodeSchedule() {
+		return myNodeSchedule;
+	}
+
+	/**
+	 * @return Assignment of projections to threads
+	 */
+	public WorkSchedule getProjectionSchedule() {
+		return myProjectionSchedule;
+	}
+
+	/**
+	 * @return Assignment of tasks to threads
+	 */
+	public WorkSchedule getTaskSchedule() {
+		return myTaskSchedule;
+	}
+
+	/**
+	 * @return Helpers to which this pool's threads offer parts of the nodes they run (see
+	 * 		ParallelRange.setHelpers(Executor)). They are run by threads that have run out of
+	 * 		nodes of their own (see helpWithNodes()), so a node split into parts doesn't use more
+	 * 		threads than the pool has.
+	 */
+	public Executor getHelpers() {
+		return myHelpers;
+	}
+
+	/**
+	 * Called by each thread when it has run out of nodes. If any node is split into parts that
+	 * can be shared (see getHelpers()), runs parts offered by other threads until every thread
+	 * has run out of nodes.
+	 */
+	public void helpWithNodes() {
+		myThreadsOnNodes.decrementAndGet();
+		while (myHelping && myThreadsOnNodes.get() > 0 && !runFinished) {
+			Runnable request = myHelpRequests.poll();
+			if (request != null) {
+				request.run();
+			} else {
+				Thread.yield();
+			}
+		}
+	}
+
+	/**
+	 * @param node A Node that is to be run by a thread
+	 * @return Rough relative cost of running the Node for a step, for balancing work between
+	 * 		threads before run times have been measured
+	 */
+	public static float estimateCost(Node node) {
+		if (node instanceof NEFEnsemble) {
+			NEFEnsemble ensemble = (NEFEnsemble) node;
+			return ensemble.getNodes().length * (1 + ensemble.getDimension());
+		} else if (node instanceof Ensemble) {
+			return ((Ensemble) node).getNodes().length;
+		} else {
+			return 1;
+		}
+	}
+
 	// Dummy default constructor.
 	protected NodeThreadPool(){
 	}
@@ -99,49 +258,63 @@ public class NodeThreadPool {
 	public NodeThreadPool(Network network, List<ThreadTask> threadTasks){
 		initialize(network, threadTasks);
 	}
+
+	/**
+	 * @param plan Flattened network to run (see LocalSimulator.getStepPlan())
+	 * @param threadTasks Tasks to run in addition to those of the network's nodes (eg probes)
+	 */
+	public NodeThreadPool(StepPlan plan, List<ThreadTask> threadTasks){
+		initialize(plan, threadTasks);
+	}
+
+	/**
+	 * As initialize(StepPlan, List), flattening the network first.
+	 */
+	protected void initialize(Network network, List<ThreadTask> threadTasks){
+		initialize(new StepPlan(network), threadTasks);
+	}
 	
 	/**
 	 * 1. Checks whether the GPU is to be used for the simulation. If it is, creates
 	 * a GPU Thread, passes this thread the nodes and projections which are to be run on the GPU,
 	 * and calls the initialization function of the gpu thread's NEFGPUInterface. Starts the GPU thread.
+	 * If there is no GPU but the CPU backend is enabled, does the same with a CPUThread and its
+	 * NEFCPUInterface instead.
 	 * 
-	 * 2. Creates the appropriate number of java threads and assigns to each a fair number of
-	 * projections, nodes and tasks from those that remain after the GPU data has been dealt with.
-	 * Starts the Java threads.
+	 * 2. Creates the appropriate number of java threads and assigns to each a share of the
+	 * projections, nodes and tasks that remain after the GPU data has been dealt with, balanced
+	 * according to estimated cost (see WorkSchedule). Starts the Java threads.
 	 * 
 	 * 3. Initializes synchronization primitives and variables for collecting timing data if applicable.
 	 * 
+	 * The network is given already flattened, so that pools can be made repeatedly for an
+	 * unchanged network without walking its hierarchy again.
+	 * 
 	 * @author Eric Crawford
 	 */
-	protected void initialize(Network network, List<ThreadTask> threadTasks){
-		
-		myLock = new Object();
-		
-		Node[] nodes = network.getNodes();
-		Projection[] projections = network.getProjections();
+	protected void initialize(StepPlan plan, List<ThreadTask> threadTasks){
 		
-		List<Node> nodeList = collectNodes(nodes, false);
-		List<Projection> projList = collectProjections(nodes, projections);
-		List<ThreadTask> taskList = collectTasks(nodes);
+		List<ThreadTask> taskList = plan.collectTasks();
 		taskList.addAll(threadTasks);
 		
-		myNodes = nodeList.toArray(new Node[0]);
-		myProjections = projList.toArray(new Projection[0]);
+		myNodes = plan.getNodes().clone();
+		myProjections = plan.getProjections().clone();
 		myTasks = taskList.toArray(new ThreadTask[0]);
+		myRandomStreams = new NodeRandomStreams(plan.getLeafNodes(), plan.getProjections());
 		
-		threadsRunning = false;
 		runFinished = false;
-		numThreadsWaiting = 0;
-		numThreadsComplete = 0;
 		
 		boolean useGPU = NEFGPUInterface.getUseGPU();
+		boolean useCPUBackend = !useGPU && NEFCPUInterface.getUseCPUBackend();
 		
-		if(useGPU){
+		if(useGPU || useCPUBackend){
 			myNumThreads = myNumJavaThreads + 1;
 	    }else{
 	    	myNumThreads = myNumJavaThreads;
 	    }
 		
+		myBarrier = createBarrier(myBarrierType, myNumThreads);
+		
 		
 		myThreads = new NodeThread[myNumThreads];
 		
@@ -164,45 +337,57 @@ public class NodeThreadPool {
 			
 			gpuThread.setPriority(Thread.MAX_PRIORITY);
 			gpuThread.start();
+		}else if(useCPUBackend){
+			// Without a GPU, the ensembles that would have run on it are packed and run by an NEFCPUInterface.
+			CPUThread cpuThread = new CPUThread(this);
+			
+			myNodes = cpuThread.getNEFCPUInterface().takeCPUNodes(myNodes);
+			cpuThread.getNEFCPUInterface().initialize();
+			
+			cpuThread.setCollectTimings(myCollectTimings);
+			cpuThread.setName("CPUThread0");
+			
+			myThreads[myNumJavaThreads] = cpuThread;
+			
+			cpuThread.setPriority(Thread.MAX_PRIORITY);
+			cpuThread.start();
 		}
 		
 		//In the remaining nodes (non-GPU nodes), DO break down the NetworkArrays, we don't want to call the 
 		// "run" method of nodes which are members of classes which derive from the NetworkImpl class since 
-		// NetworkImpls create their own LocalSimulators when run.
-		myNodes = collectNodes(myNodes, true).toArray(new Node[0]);
+		// NetworkImpls create their own LocalSimulators when run. The backends only remove nodes, so if
+		// none were removed, the plan has the broken-down list already.
+		if (myNodes.length == plan.getNodes().length) {
+			myNodes = plan.getLeafNodes().clone();
+		} else {
+			myNodes = collectNodes(myNodes, true).toArray(new Node[0]);
+		}
 
-		int nodesPerJavaThread = (int) Math.ceil((float) myNodes.length / (float) myNumJavaThreads);
-		int projectionsPerJavaThread = (int) Math.ceil((float) myProjections.length / (float) myNumJavaThreads);
-        int tasksPerJavaThread = (int) Math.ceil((float) myTasks.length / (float) myNumJavaThreads);
+		float[] nodeCosts = new float[myNodes.length];
+		myHelping = useCPUBackend;
+		for (int i = 0; i < nodeCosts.length; i++) {
+			nodeCosts[i] = estimateCost(myNodes[i]);
+			if (myNodes[i] instanceof NEFEnsembleImpl && ((NEFEnsembleImpl) myNodes[i]).getNumParallelChunks() > 1) {
+				myHelping = true;
+			}
+		}
+		float[] projectionCosts = new float[myProjections.length];
+		for (int i = 0; i < projectionCosts.length; i++) {
+			projectionCosts[i] = myProjections[i].getOrigin().getDimensions();
+		}
+		float[] taskCosts = new float[myTasks.length];
+		Arrays.fill(taskCosts, 1);
 
-		int nodeOffset = 0, projectionOffset = 0, taskOffset = 0;
-		int nodeStartIndex, nodeEndIndex, projectionStartIndex, projectionEndIndex, taskStartIndex, taskEndIndex;
+		// Distribute projections, nodes and tasks to the java threads, balancing estimated cost.
+		myNodeSchedule = new WorkSchedule(nodeCosts, myNumJavaThreads);
+		myProjectionSchedule = new WorkSchedule(projectionCosts, myNumJavaThreads);
+		myTaskSchedule = new WorkSchedule(taskCosts, myNumJavaThreads);
+		myStepCount = 0;
+		myPhaseNanos = 0;
 
-		
-		// Evenly distribute projections, nodes and tasks to the java threads.
 		for(int i = 0; i < myNumJavaThreads; i++){
 
-			nodeStartIndex = nodeOffset;
-			nodeEndIndex = myNodes.length - nodeOffset >= nodesPerJavaThread ?
-					nodeOffset + nodesPerJavaThread : myNodes.length;
-
-			nodeOffset += nodesPerJavaThread;
-
-			projectionStartIndex = projectionOffset;
-			projectionEndIndex = myProjections.length - projectionOffset >= projectionsPerJavaThread ?
-					projectionOffset + projectionsPerJavaThread : myProjections.length;
-
-			projectionOffset += projectionsPerJavaThread;
-
-			taskStartIndex = taskOffset;
-			taskEndIndex = myTasks.length - taskOffset >= tasksPerJavaThread ?
-					taskOffset + tasksPerJavaThread : myTasks.length;
-
-			taskOffset += tasksPerJavaThread;
-
-			myThreads[i] = new NodeThread(this, myNodes, nodeStartIndex,
-					nodeEndIndex, myProjections, projectionStartIndex,
-					projectionEndIndex, myTasks, taskStartIndex, taskEndIndex);
+			myThreads[i] = new NodeThread(this, i);
 			
 			myThreads[i].setCollectTimings(myCollectTimings);
 			myThreads[i].setName("JavaThread" + i);
@@ -216,6 +401,21 @@ public class NodeThreadPool {
 		myNumSteps = 0;
 	}
 
+	/**
+	 * @param type Kind of barrier
+	 * @param numThreads Number of worker threads
+	 * @return A new barrier of the given kind
+	 */
+	protected static PhaseBarrier createBarrier(BarrierType type, int numThreads) {
+		if (type == BarrierType.SPIN) {
+			return new SpinPhaseBarrier(numThreads);
+		} else if (type == BarrierType.CONCURRENT) {
+			return new ConcurrentPhaseBarrier(numThreads);
+		} else {
+			return new MonitorPhaseBarrier(numThreads);
+		}
+	}
+
 	/**
 	 * Tell the threads in the current thread pool to take a step. The step consists of three
 	 * phases: projections, nodes, tasks. All threads must complete a stage before any thread begins
@@ -236,15 +436,33 @@ public class NodeThreadPool {
 			int oldPriority = Thread.currentThread().getPriority();
 			Thread.currentThread().setPriority(Thread.MAX_PRIORITY);
 
+			// reassign work according to measured run times now and then (threads are waiting now)
+			myStepCount++;
+			if (myStepCount % ourRebalanceInterval == 1) {
+				myNodeSchedule.rebalance();
+				myTaskSchedule.rebalance();
+			}
+
+			long phaseStart = myCollectTimings ? System.nanoTime() : 0;
+
 			// start the projection processing, wait for it to finish
+			myProjectionSchedule.reset();
 			startThreads();
 
 			// start the node processing, wait for it to finish
+			myNodeSchedule.reset();
+			myHelpRequests.clear();
+			myThreadsOnNodes.set(myNumThreads);
 			startThreads();
 			
 			// start the task processing, wait for it to finish
+			myTaskSchedule.reset();
 			startThreads();
 
+			if (myCollectTimings) {
+				myPhaseNanos += System.nanoTime() - phaseStart;
+			}
+
 			Thread.currentThread().setPriority(oldPriority);
 		}
 		catch(Exception e) {
@@ -260,65 +478,28 @@ public class NodeThreadPool {
 	}
 
 	/**
-	 * Tells the threads to run for one phase (projections, nodes or tasks). 
-	 * The threads should be waiting on myLock at the time this is called.
+	 * Tells the threads to run for one phase (projections, nodes or tasks), and waits until
+	 * they have all finished it.
 	 * 
 	 * @author Eric Crawford
 	 */
 	private void startThreads() throws InterruptedException {
-		synchronized(myLock){
-			if(runFinished)
-				throw new InterruptedException();
-			
-			numThreadsComplete = 0;
-			threadsRunning = true;
-			myLock.notifyAll();  //release all the threads from the threadWait() loop
-			
-			while(threadsRunning || numThreadsWaiting < myThreads.length) 
-				myLock.wait();  //we don't want the stepthread to be able to continue (and start threads) until all the threads are waiting to be started
-		}
-	}
-
-	/**
-	 * Called by the threads in this node pool. Called once they finish a phase (projections, nodes or tasks).
-	 * Forces them to wait on myLock.
-	 * 
-	 * @author Eric Crawford
-	 */
-	public void threadWait() throws InterruptedException{
-		synchronized(myLock){
-			numThreadsWaiting++;
-			if(numThreadsWaiting == myThreads.length)
-				myLock.notifyAll(); //all the threads are done the step and in a waiting state, so free the stepthread
-			
-			while(!threadsRunning) {
-                myLock.wait();
-            }
-		}
+		if(runFinished)
+			throw new InterruptedException();
+		
+		myBarrier.startPhase();
 	}
 
 	/**
-	 * Called by the threads in this pool to signal that they are done a phase. 
-	 * 
-	 * @author Eric Crawford
+	 * @param thread Index of a thread in this pool
+	 * @return Average time (ms) per step that the thread spent waiting for other threads while
+	 * 		a step was in progress (only available if timings are being collected)
 	 */
-	public void threadFinished() throws InterruptedException{
-		
-		synchronized(myLock){
-			numThreadsComplete++;
-
-			if(numThreadsComplete == myThreads.length){
-				threadsRunning = false;
-				numThreadsWaiting=0;
-				myLock.notifyAll(); //this is to move the threads into the threadwait loop
-			}
-			else{
-				while(threadsRunning) //threads wait here when they are finished, but others are still running (i.e. wait here until end of one step)
-					myLock.wait();
-			}
-	
-			threadWait(); //threads wait here when they're all finished (i.e. wait here between steps)
+	public double getAverageIdleTimePerStep(int thread) {
+		if (myNumSteps == 0) {
+			return 0;
 		}
+		return (myPhaseNanos - myThreads[thread].getBusyNanos()) / 1e6 / myNumSteps;
 	}
 
 	/**
@@ -327,31 +508,33 @@ public class NodeThreadPool {
 	 * 
 	 * @author Eric Crawford
 	 */
-	public void kill(){
-		synchronized(myLock)
-		{
-			runFinished = true;
+	public synchronized void kill(){
+		if (runFinished) {
+			return;
+		}
+		runFinished = true;
+		myBarrier.release();
 
-			for(int i = 0; i < myThreads.length; i++){
-				myThreads[i].interrupt();
-			}
+		for(int i = 0; i < myThreads.length; i++){
+			myThreads[i].interrupt();
+		}
+		
+		if(myCollectTimings){
+			StringBuffer timingOutput = new StringBuffer();
+			timingOutput.append("Timings for NodeThreadPool (" + myBarrier.getClass().getSimpleName() + "):\n");
 			
-			if(myCollectTimings){
-				StringBuffer timingOutput = new StringBuffer();
-				timingOutput.append("Timings for NodeThreadPool:\n");
-				
-				long approxRunTime = new Date().getTime() - myRunStartTime;
-				timingOutput.append("Approximate total run time: " + approxRunTime + " ms\n");
-				
-				timingOutput.append("Average time per step: " + myAverageTimePerStep + " ms\n");
-				
-				System.out.print(timingOutput.toString());
+			long approxRunTime = new Date().getTime() - myRunStartTime;
+			timingOutput.append("Approximate total run time: " + approxRunTime + " ms\n");
+			
+			timingOutput.append("Average time per step: " + myAverageTimePerStep + " ms\n");
+			
+			for (int i = 0; i < myThreads.length; i++) {
+				timingOutput.append("Average idle time per step for " + myThreads[i].getName() + ": "
+						+ getAverageIdleTimePerStep(i) + " ms\n");
 			}
-
-			myLock.notifyAll();
+			
+			System.out.print(timingOutput.toString());
 		}
-		
-		
 	}
 	
     /**
@@ -366,53 +549,33 @@ public class NodeThreadPool {
      * @author Eric Crawford
      */
     public static List<Node> collectNodes(Node[] startingNodes, boolean breakDownNetworkArrays){
+        ArrayList<Node> nodes = new ArrayList<Node>(startingNodes.length);
+        collectNodes(startingNodes, breakDownNetworkArrays, nodes);
+        return nodes;
+    }
 
-        ArrayList<Node> nodes = new ArrayList<Node>();
-
-        List<Node> nodesToProcess = new LinkedList<Node>();
-        nodesToProcess.addAll(Arrays.asList(startingNodes));
-
-        Node workingNode;
-
-        boolean isNetwork = false;
-        while(nodesToProcess.size() != 0)
-        {
-            workingNode = nodesToProcess.remove(0);
-            
+    private static void collectNodes(Node[] startingNodes, boolean breakDownNetworkArrays, List<Node> nodes){
+        for (Node workingNode : startingNodes) {
             //Decide whether to break the node into its subnodes
-            if((workingNode.getClass().getCanonicalName().contains("CCMModelNetwork"))){
+            boolean isNetwork;
+            if(isCCMModelNetwork(workingNode)){
             	isNetwork = false;
             }
-            else if(workingNode instanceof NetworkArrayImpl)
-            {
-            	if(breakDownNetworkArrays){
-            		isNetwork = true;
-            	}else{
-            		isNetwork = false;
-            	}
-            }
-            else if(workingNode instanceof Network){
-            	isNetwork = true;
+            else if(workingNode instanceof NetworkArrayImpl){
+            	isNetwork = breakDownNetworkArrays;
             }
             else{
-                isNetwork = false;
+            	isNetwork = workingNode instanceof Network;
             }
-            
-            
-            if(isNetwork){
-            	List<Node> nodeList = new LinkedList<Node>(Arrays.asList(((Network) workingNode).getNodes()));
 
-                nodeList.addAll(nodesToProcess);
-                nodesToProcess = nodeList;
+            if(isNetwork){
+            	collectNodes(((Network) workingNode).getNodes(), breakDownNetworkArrays, nodes);
             }
             else{
             	nodes.add(workingNode);
-            } 
+            }
         }
-
-        return nodes;
     }
-    
 
     /**
      * Return all the projections in the network. Essentially returns all the projections that
@@ -421,29 +584,19 @@ public class NodeThreadPool {
      * @author Eric Crawford
      */
     public static List<Projection> collectProjections(Node[] startingNodes, Projection[] startingProjections){
-
         ArrayList<Projection> projections = new ArrayList<Projection>(Arrays.asList(startingProjections));
+        collectProjections(startingNodes, projections);
+        return projections;
+    }
 
-        List<Node> nodesToProcess = new LinkedList<Node>();
-        nodesToProcess.addAll(Arrays.asList(startingNodes));
-
-        Node workingNode;
-
-        while(nodesToProcess.size() != 0)
-        {
-            workingNode = nodesToProcess.remove(0);
-
+    private static void collectProjections(Node[] startingNodes, List<Projection> projections){
+        for (Node workingNode : startingNodes) {
             if(workingNode instanceof Network) {
-                List<Node> nodeList = new LinkedList<Node>(Arrays.asList(((Network) workingNode).getNodes()));
-
-                nodeList.addAll(nodesToProcess);
-                nodesToProcess = nodeList;
-
-                projections.addAll(Arrays.asList(((Network) workingNode).getProjections()));
+                Network network = (Network) workingNode;
+                projections.addAll(Arrays.asList(network.getProjections()));
+                collectProjections(network.getNodes(), projections);
             }
         }
-
-        return projections;
     }
 
     /**
@@ -453,32 +606,51 @@ public class NodeThreadPool {
      * @author Eric Crawford
      */
     public static List<ThreadTask> collectTasks(Node[] startingNodes){
-
         ArrayList<ThreadTask> tasks = new ArrayList<ThreadTask>();
+        for (TaskSpawner spawner : collectTaskSpawners(startingNodes)) {
+            tasks.addAll(Arrays.asList(spawner.getTasks()));
+        }
+        return tasks;
+    }
 
-        List<Node> nodesToProcess = new LinkedList<Node>();
-        nodesToProcess.addAll(Arrays.asList(startingNodes));
-
-        Node workingNode;
-
-        while(nodesToProcess.size() != 0)
-        {
-            workingNode = nodesToProcess.remove(0);
-
-            if(workingNode instanceof Network && !(workingNode.getClass().getCanonicalName().contains("CCMModelNetwork")))
-            {
-                List<Node> nodeList = new LinkedList<Node>(Arrays.asList(((Network) workingNode).getNodes()));
+    /**
+     * @param startingNodes Top-level nodes of a network
+     * @return The nodes in the network and its subnetworks from which collectTasks(Node[])
+     * 		gathers tasks, in the same order
+     */
+    public static List<TaskSpawner> collectTaskSpawners(Node[] startingNodes){
+        ArrayList<TaskSpawner> spawners = new ArrayList<TaskSpawner>();
+        collectTaskSpawners(startingNodes, spawners);
+        return spawners;
+    }
 
-                nodeList.addAll(nodesToProcess);
-                nodesToProcess = nodeList;
+    private static void collectTaskSpawners(Node[] startingNodes, List<TaskSpawner> spawners){
+        for (Node workingNode : startingNodes) {
+            if(workingNode instanceof TaskSpawner) {
+                spawners.add((TaskSpawner) workingNode);
             }
-            
-            if(workingNode instanceof TaskSpawner)
-            {
-                tasks.addAll(Arrays.asList(((TaskSpawner) workingNode).getTasks()));
+
+            if(workingNode instanceof Network && !isCCMModelNetwork(workingNode)) {
+                collectTaskSpawners(((Network) workingNode).getNodes(), spawners);
             }
         }
+    }
 
-        return tasks;
+    /**
+     * CCMModelNetworks (defined in Python) run their own contents, so they aren't broken down.
+     * The class name is only checked once per class.
+     */
+    private static boolean isCCMModelNetwork(Node node) {
+        if (!(node instanceof Network)) {
+            return false;
+        }
+        Class<?> type = node.getClass();
+        Boolean result = ourCCMModelNetworkTypes.get(type);
+        if (result == null) {
+            String name = type.getCanonicalName();
+            result = Boolean.valueOf(name != null && name.contains("CCMModelNetwork"));
+            ourCCMModelNetworkTypes.put(type, result);
+        }
+        return result.booleanValue();
     }
 }
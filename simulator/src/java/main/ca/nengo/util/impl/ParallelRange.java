@@ -0,0 +1,189 @@
+package ca.nengo.util.impl;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ca.nengo.math.PDFTools;
+import ca.nengo.math.RandomStream;
+import ca.nengo.model.SimulationException;
+
+/**
+ * Runs a loop over a range of indices (eg the neurons of a large ensemble) as a fixed number
+ * of contiguous chunks in parallel. The calling thread works on chunks too, and offers the rest
+ * to helper threads, so a chunk that no helper gets to is run by the caller. Helpers are either
+ * given by the caller (eg the threads of a NodeThreadPool, see setHelpers(Executor)), so that
+ * they don't add to the threads the caller runs in, or shared by all callers.
+ *
+ * Chunk boundaries only depend on the range and the number of chunks, so a computation that
+ * combines per-chunk results in chunk order gives the same result on every run, however the
+ * chunks happen to be scheduled. For the same reason, each chunk draws random numbers from
+ * its own stream (see PDFTools.getStream()), split off the caller's stream in chunk order.
+ */
+public class ParallelRange {
+
+	/**
+	 * The body of a loop over a range of indices.
+	 */
+	public static interface Body {
+		/**
+		 * @param chunk Index of the chunk
+		 * @param start First index of the chunk
+		 * @param end Index after the last index of the chunk
+		 * @throws SimulationException if the work can not be done
+		 */
+		public void run(int chunk, int start, int end) throws SimulationException;
+	}
+
+	private static ExecutorService ourExecutor;
+	private static final ThreadLocal<Executor> ourHelpers = new ThreadLocal<Executor>();
+
+	private ParallelRange() {
+	}
+
+	private static synchronized ExecutorService getExecutor() {
+		if (ourExecutor == null) {
+			int numThreads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+			ourExecutor = Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+				private int myCount = 0;
+				public synchronized Thread newThread(Runnable r) {
+					Thread result = new Thread(r, "ParallelRange" + myCount++);
+					result.setDaemon(true);
+					return result;
+				}
+			});
+		}
+		return ourExecutor;
+	}
+
+	/**
+	 * @param helpers Helpers to which the calling thread offers chunks, or null to use the shared
+	 * 		helper threads
+	 * @return The calling thread's previous helpers
+	 */
+	public static Executor setHelpers(Executor helpers) {
+		Executor result = ourHelpers.get();
+		ourHelpers.set(helpers);
+		return result;
+	}
+
+	/**
+	 * @return Helpers to which the calling thread offers chunks, or null if it has none of its own
+	 */
+	public static Executor getHelpers() {
+		return ourHelpers.get();
+	}
+
+	/**
+	 * @param length Number of indices
+	 * @param numChunks Number of chunks
+	 * @param chunk Index of a chunk
+	 * @return First index of the chunk (the chunk ends where the next one starts)
+	 */
+	public static int getChunkStart(int length, int numChunks, int chunk) {
+		return (int) ((long) length * chunk / numChunks);
+	}
+
+	/**
+	 * Runs body over [0, length) in numChunks chunks, and returns when all chunks are done. Chunks
+	 * are offered to the calling thread's helpers if it has any (see setHelpers(Executor)), and
+	 * otherwise to the shared helper threads.
+	 *
+	 * @param length Number of indices
+	 * @param numChunks Number of chunks (if 1 or less, the body is simply run in the calling thread)
+	 * @param body Work to do on each chunk
+	 * @throws SimulationException if the body throws an exception for any chunk
+	 */
+	public static void run(int length, int numChunks, Body body) throws SimulationException {
+		run(length, numChunks, body, true);
+	}
+
+	/**
+	 * As run(length, numChunks, body), optionally without giving chunks their own random streams.
+	 * Work that doesn't draw random numbers (eg matrix arithmetic) should not split streams, so
+	 * that the caller's stream doesn't depend on how many chunks were used.
+	 *
+	 * @param length Number of indices
+	 * @param numChunks Number of chunks (if 1 or less, the body is simply run in the calling thread)
+	 * @param body Work to do on each chunk
+	 * @param splitStreams If true, each chunk draws random numbers from a stream split off the caller's
+	 * @throws SimulationException if the body throws an exception for any chunk
+	 */
+	public static void run(int length, int numChunks, Body body, boolean splitStreams) throws SimulationException {
+		Executor helpers = ourHelpers.get();
+		run(length, numChunks, body, splitStreams, (helpers == null) ? getExecutor() : helpers);
+	}
+
+	/**
+	 * As run(length, numChunks, body, splitStreams), offering chunks to the given helpers.
+	 *
+	 * @param length Number of indices
+	 * @param numChunks Number of chunks (if 1 or less, the body is simply run in the calling thread)
+	 * @param body Work to do on each chunk
+	 * @param splitStreams If true, each chunk draws random numbers from a stream split off the caller's
+	 * @param helpers Helpers to offer chunks to, or null to run every chunk in the calling thread
+	 * @throws SimulationException if the body throws an exception for any chunk
+	 */
+	public static void run(final int length, int numChunks, final Body body, boolean splitStreams, Executor helpers)
+			throws SimulationException {
+		if (numChunks <= 1) {
+			body.run(0, 0, length);
+			return;
+		}
+
+		final int chunks = numChunks;
+		final RandomStream[] streams = new RandomStream[chunks];
+		for (int i = 0; splitStreams && i < chunks; i++) {
+			streams[i] = PDFTools.split();
+		}
+		final AtomicInteger next = new AtomicInteger(0);
+		final CountDownLatch done = new CountDownLatch(chunks);
+		final SimulationException[] error = new SimulationException[1];
+
+		Runnable worker = new Runnable() {
+			public void run() {
+				int chunk;
+				while ((chunk = next.getAndIncrement()) < chunks) {
+					RandomStream previous = (streams[chunk] == null) ? null : PDFTools.setStream(streams[chunk]);
+					try {
+						body.run(chunk, getChunkStart(length, chunks, chunk), getChunkStart(length, chunks, chunk+1));
+					} catch (SimulationException e) {
+						synchronized (error) {
+							error[0] = e;
+						}
+					} catch (RuntimeException e) {
+						synchronized (error) {
+							error[0] = new SimulationException(e);
+						}
+					} finally {
+						if (streams[chunk] != null) {
+							PDFTools.setStream(previous);
+						}
+						done.countDown();
+					}
+				}
+			}
+		};
+
+		for (int i = 1; helpers != null && i < chunks; i++) {
+			helpers.execute(worker);
+		}
+		worker.run();
+
+		try {
+			done.await();
+		} catch (InterruptedException e) {
+			throw new SimulationException(e);
+		}
+
+		synchronized (error) {
+			if (error[0] != null) {
+				throw error[0];
+			}
+		}
+	}
+
+}
@@ -24,9 +24,6 @@ a recipient may use your version of this file under either the MPL or the GPL Li
 
 package ca.nengo.util.impl;
 
-import java.util.ArrayList;
-import java.util.List;
-
 import ca.nengo.model.Node;
 import ca.nengo.model.Probeable;
 import ca.nengo.model.SimulationException;
@@ -45,8 +42,9 @@ public class ProbeImpl implements Probe, java.io.Serializable {
 	private Probeable myTarget;
 	private String myStateName;
 	private boolean myRecord;
-	private float[] myTimes;
-	private List<float[]> myValues;
+	private TimeSeriesBuffer myBuffer;
+	private TimeSeries myLatest;
+	private float myWindow = -1;
 	private Units[] myUnits;
 	private float mySamplingPeriod = -1;
 	private float myLastSampleTime = -100000;
@@ -83,8 +81,27 @@ public class ProbeImpl implements Probe, java.io.Serializable {
 	 */
 	public void reset() {
 		myUnits = null; //will be reset on first doCollect()
-		myTimes = new float[1000];
-		myValues = new ArrayList<float[]>(1000);
+		myBuffer = new TimeSeriesBuffer(1000);
+		myBuffer.setWindow(myWindow);
+		myLatest = null;
+	}
+
+	/**
+	 * @param window If positive, only samples from this many seconds before the latest sample
+	 * 		are kept, so that memory use is bounded in long runs (otherwise all samples are kept)
+	 */
+	public void setWindow(float window) {
+		myWindow = window;
+		if (myBuffer != null) {
+			myBuffer.setWindow(window);
+		}
+	}
+
+	/**
+	 * @return Length of time over which samples are kept (not positive if all samples are kept)
+	 */
+	public float getWindow() {
+		return myWindow;
 	}
 	
 	/**
@@ -114,22 +131,14 @@ public class ProbeImpl implements Probe, java.io.Serializable {
 					+ myStateName + ", although this problem should have been detected on connect()", e);
 		}
 		
-		float[] times = stepData.getTimes();
-		float[][] values = stepData.getValues();
-		int len = times.length;		
-		
 		if (myRecord) {
-			if (myValues.size() + len >= myTimes.length) {
-				grow();
-			}		
-			System.arraycopy(times, 0, myTimes, myValues.size(), len); //don't move this to after the values update			
+			float[] times = stepData.getTimes();
+			float[][] values = stepData.getValues();
+			for (int i = 0; i < times.length; i++) {
+				myBuffer.add(times[i], values[i]);
+			}
 		} else {
-			myTimes = times;
-			myValues = new ArrayList<float[]>(10);
-		}
-		
-		for (int i = 0; i < len; i++) {
-			myValues.add(values[i]);
+			myLatest = stepData;
 		}
 		
 		if (myUnits == null) {
@@ -137,24 +146,22 @@ public class ProbeImpl implements Probe, java.io.Serializable {
 		}
 	}
 	
-	private void grow() {
-		float[] newTimes = new float[myTimes.length + 1000];
-		System.arraycopy(myTimes, 0, newTimes, 0, myTimes.length);
-		myTimes = newTimes;
-	}
-	
 	/**
+	 * Recorded data are returned as a view of the probe's storage (see TimeSeriesBuffer.View), so
+	 * this doesn't copy them.
+	 * 
 	 * @see ca.nengo.util.Probe#getData()
 	 */
 	public TimeSeries getData() {
-		float[] times = new float[myValues.size()];
-		System.arraycopy(myTimes, 0, times, 0, myValues.size());
+		Units[] units = (myUnits == null) ? new Units[]{Units.UNK} : myUnits;
+		String name = ((myTarget instanceof Node) ? ((Node) myTarget).getName()+":" : "") + myStateName;
 		
-		float[][] values = myValues.toArray(new float[0][]);
-		
-		TimeSeriesImpl result = new TimeSeriesImpl(times, values, (myUnits == null) ? new Units[]{Units.UNK} : myUnits);
-		result.setName(((myTarget instanceof Node) ? ((Node) myTarget).getName()+":" : "") + myStateName);
-		return result;
+		if (!myRecord && myLatest != null) {
+			TimeSeriesImpl result = new TimeSeriesImpl(myLatest.getTimes(), myLatest.getValues(), units);
+			result.setName(name);
+			return result;
+		}
+		return myBuffer.getView(name, units);
 	}
 
 	/**
@@ -0,0 +1,260 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "SparseWeightMatrix.java". Description:
+"A WeightMatrix that stores only the weights of existing synapses"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+/*
+ * Created on 17-Oct-2026
+ */
+package ca.nengo.util.impl;
+
+import java.util.Arrays;
+
+import ca.nengo.util.WeightMatrix;
+
+/**
+ * <p>A WeightMatrix that stores only the weights of existing synapses, in compressed sparse
+ * row form. Memory and the cost of each product are proportional to the number of synapses.</p>
+ *
+ * <p>The connectivity is fixed when the matrix is made. Changes to weights where there is no
+ * synapse are ignored, so that e.g. learning rules change only existing synapses.</p>
+ */
+public class SparseWeightMatrix implements WeightMatrix {
+
+	private static final long serialVersionUID = 1L;
+
+	private int myColumnCount;
+	private int[] myRowStarts;
+	private int[] myColumns;
+	private float[] myValues;
+
+	/**
+	 * @param values Full weight matrix, in which non-zero weights are taken to be synapses
+	 */
+	public SparseWeightMatrix(float[][] values) {
+		myColumnCount = (values.length > 0) ? values[0].length : 0;
+		myRowStarts = new int[values.length + 1];
+		for (int i = 0; i < values.length; i++) {
+			if (values[i].length != myColumnCount) {
+				throw new IllegalArgumentException("Rows of weights must all be the same length");
+			}
+			int count = 0;
+			for (int j = 0; j < values[i].length; j++) {
+				if (values[i][j] != 0) {
+					count++;
+				}
+			}
+			myRowStarts[i+1] = myRowStarts[i] + count;
+		}
+
+		myColumns = new int[myRowStarts[values.length]];
+		myValues = new float[myColumns.length];
+		int k = 0;
+		for (int i = 0; i < values.length; i++) {
+			for (int j = 0; j < values[i].length; j++) {
+				if (values[i][j] != 0) {
+					myColumns[k] = j;
+					myValues[k] = values[i][j];
+					k++;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param columnCount Number of columns
+	 * @param rowStarts Index in columns and values of the first synapse of each row, followed
+	 * 		by the total number of synapses (length is number of rows + 1)
+	 * @param columns Column of each synapse (ascending within each row)
+	 * @param values Weight of each synapse
+	 */
+	public SparseWeightMatrix(int columnCount, int[] rowStarts, int[] columns, float[] values) {
+		if (columns.length != values.length || rowStarts[rowStarts.length-1] != values.length) {
+			throw new IllegalArgumentException("Expected " + rowStarts[rowStarts.length-1]
+					+ " columns and values (got " + columns.length + " and " + values.length + ")");
+		}
+		for (int i = 0; i < rowStarts.length - 1; i++) {
+			for (int k = rowStarts[i]; k < rowStarts[i+1]; k++) {
+				if (columns[k] < 0 || columns[k] >= columnCount || (k > rowStarts[i] && columns[k] <= columns[k-1])) {
+					throw new IllegalArgumentException("Columns must be ascending within each row and less than " + columnCount);
+				}
+			}
+		}
+		myColumnCount = columnCount;
+		myRowStarts = rowStarts;
+		myColumns = columns;
+		myValues = values;
+	}
+
+	/**
+	 * @return Number of synapses
+	 */
+	public int getSynapseCount() {
+		return myValues.length;
+	}
+
+	/**
+	 * @see ca.nengo.util.WeightMatrix#getRows()
+	 */
+	public int getRows() {
+		return myRowStarts.length - 1;
+	}
+
+	/**
+	 * @see ca.nengo.util.WeightMatrix#getColumns()
+	 */
+	public int getColumns() {
+		return myColumnCount;
+	}
+
+	/**
+	 * @see ca.nengo.util.WeightMatrix#get(int, int)
+	 */
+	public float get(int row, int column) {
+		int k = Arrays.binarySearch(myColumns, myRowStarts[row], myRowStarts[row+1], column);
+		return (k >= 0) ? myValues[k] : 0;
+	}
+
+	/**
+	 * @see ca.nengo.util.WeightMatrix#getRow(int)
+	 */
+	public float[] getRow(int row) {
+		float[] result = new float[myColumnCount];
+		for (int k = myRowStarts[row]; k < myRowStarts[row+1]; k++) {
+			result[myColumns[k]] = myValues[k];
+		}
+		return result;
+	}
+
+	/**
+	 * @see ca.nengo.util.WeightMatrix#toArray()
+	 */
+	public float[][] toArray() {
+		float[][] result = new float[getRows()][];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = getRow(i);
+		}
+		return result;
+	}
+
+	/**
+	 * @see ca.nengo.util.WeightMatrix#dotRow(int, float[])
+	 */
+	public float dotRow(int row, float[] x) {
+		float result = 0;
+		for (int k = myRowStarts[row]; k < myRowStarts[row+1]; k++) {
+			result += myValues[k] * x[myColumns[k]];
+		}
+		return result;
+	}
+
+	/**
+	 * @see ca.nengo.util.WeightMatrix#sumRow(int, int[])
+	 */
+	public float sumRow(int row, int[] columns) {
+		//both lists of columns are ascending
+		float result = 0;
+		int k = myRowStarts[row];
+		int end = myRowStarts[row+1];
+		for (int c = 0; c < columns.length && k < end; c++) {
+			while (k < end && myColumns[k] < columns[c]) {
+				k++;
+			}
+			if (k < end && myColumns[k] == columns[c]) {
+				result += myValues[k];
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @see ca.nengo.util.WeightMatrix#prod(float[])
+	 */
+	public float[] prod(float[] x) {
+		float[] result = new float[getRows()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = dotRow(i, x);
+		}
+		return result;
+	}
+
+	/**
+	 * @see ca.nengo.util.WeightMatrix#sumColumns(int[])
+	 */
+	public float[] sumColumns(int[] columns) {
+		float[] indicator = new float[myColumnCount];
+		for (int c = 0; c < columns.length; c++) {
+			indicator[columns[c]] = 1;
+		}
+		return prod(indicator);
+	}
+
+	/**
+	 * Weights where there is no synapse are ignored.
+	 *
+	 * @see ca.nengo.util.WeightMatrix#setRow(int, float[])
+	 */
+	public void setRow(int row, float[] weights) {
+		for (int k = myRowStarts[row]; k < myRowStarts[row+1]; k++) {
+			myValues[k] = weights[myColumns[k]];
+		}
+	}
+
+	/**
+	 * Changes where there is no synapse are ignored.
+	 *
+	 * @see ca.nengo.util.WeightMatrix#addToRow(int, float[])
+	 */
+	public void addToRow(int row, float[] change) {
+		for (int k = myRowStarts[row]; k < myRowStarts[row+1]; k++) {
+			myValues[k] += change[myColumns[k]];
+		}
+	}
+
+	/**
+	 * Changes where there is no synapse are ignored.
+	 *
+	 * @see ca.nengo.util.WeightMatrix#addOuterProduct(float[], float[], int, int)
+	 */
+	public void addOuterProduct(float[] left, float[] right, int start, int end) {
+		for (int i = start; i < end; i++) {
+			float scale = left[i - start];
+			if (scale != 0) {
+				for (int k = myRowStarts[i]; k < myRowStarts[i+1]; k++) {
+					myValues[k] += scale * right[myColumns[k]];
+				}
+			}
+		}
+	}
+
+	@Override
+	public SparseWeightMatrix clone() {
+		try {
+			SparseWeightMatrix result = (SparseWeightMatrix) super.clone();
+			result.myValues = myValues.clone();
+			return result;
+		} catch (CloneNotSupportedException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+}
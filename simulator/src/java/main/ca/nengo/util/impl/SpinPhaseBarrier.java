@@ -0,0 +1,120 @@
+package ca.nengo.util.impl;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import ca.nengo.util.PhaseBarrier;
+
+/**
+ * A PhaseBarrier in which waiting threads first spin on a volatile phase counter, and then park
+ * until they are unparked by the thread that they are waiting for. With short phases and a core
+ * per thread, most waits end while spinning, without involving the scheduler.
+ */
+public class SpinPhaseBarrier implements PhaseBarrier {
+
+	private static final long ourMaxParkNanos = 1000000; //in case an unpark is missed
+
+	private final int myNumWorkers;
+	private final int mySpinCount;
+
+	private volatile long myPhase;
+	private volatile boolean myReleased;
+	private final AtomicInteger myNumArrived;
+	private final ConcurrentLinkedQueue<Thread> myParkedWorkers;
+	private volatile Thread myCoordinator;
+
+	/**
+	 * Spins only if there is more than one processor.
+	 *
+	 * @param numWorkers Number of worker threads that take part in each phase
+	 */
+	public SpinPhaseBarrier(int numWorkers) {
+		this(numWorkers, Runtime.getRuntime().availableProcessors() > 1 ? 20000 : 0);
+	}
+
+	/**
+	 * @param numWorkers Number of worker threads that take part in each phase
+	 * @param spinCount Number of times a waiting thread checks for progress before it parks
+	 */
+	public SpinPhaseBarrier(int numWorkers, int spinCount) {
+		myNumWorkers = numWorkers;
+		mySpinCount = spinCount;
+		myNumArrived = new AtomicInteger(0);
+		myParkedWorkers = new ConcurrentLinkedQueue<Thread>();
+	}
+
+	/**
+	 * @see ca.nengo.util.PhaseBarrier#startPhase()
+	 */
+	public void startPhase() throws InterruptedException {
+		checkReleased();
+		myCoordinator = Thread.currentThread();
+		myNumArrived.set(0);
+		myPhase++;
+
+		Thread worker;
+		while ((worker = myParkedWorkers.poll()) != null) {
+			LockSupport.unpark(worker);
+		}
+
+		for (int i = 0; i < mySpinCount && myNumArrived.get() < myNumWorkers; i++) {
+			checkReleased();
+		}
+		while (myNumArrived.get() < myNumWorkers) {
+			LockSupport.parkNanos(ourMaxParkNanos);
+			checkReleased();
+		}
+	}
+
+	/**
+	 * @see ca.nengo.util.PhaseBarrier#awaitPhase(long)
+	 */
+	public void awaitPhase(long phase) throws InterruptedException {
+		for (int i = 0; i < mySpinCount && myPhase < phase; i++) {
+			checkReleased();
+		}
+		while (myPhase < phase) {
+			checkReleased();
+			myParkedWorkers.add(Thread.currentThread());
+			if (myPhase < phase) { //the phase may have started before we were queued
+				LockSupport.parkNanos(ourMaxParkNanos);
+			}
+		}
+		checkReleased();
+	}
+
+	/**
+	 * @see ca.nengo.util.PhaseBarrier#arrive()
+	 */
+	public void arrive() {
+		if (myNumArrived.incrementAndGet() == myNumWorkers) {
+			Thread coordinator = myCoordinator;
+			if (coordinator != null) {
+				LockSupport.unpark(coordinator);
+			}
+		}
+	}
+
+	/**
+	 * @see ca.nengo.util.PhaseBarrier#release()
+	 */
+	public void release() {
+		myReleased = true;
+		Thread worker;
+		while ((worker = myParkedWorkers.poll()) != null) {
+			LockSupport.unpark(worker);
+		}
+		Thread coordinator = myCoordinator;
+		if (coordinator != null) {
+			LockSupport.unpark(coordinator);
+		}
+	}
+
+	private void checkReleased() throws InterruptedException {
+		if (myReleased) {
+			throw new InterruptedException("Barrier released");
+		}
+	}
+
+}
@@ -0,0 +1,85 @@
+package ca.nengo.util.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import ca.nengo.model.Network;
+import ca.nengo.model.Node;
+import ca.nengo.model.Projection;
+import ca.nengo.util.TaskSpawner;
+import ca.nengo.util.ThreadTask;
+
+/**
+ * The flattened contents of a network hierarchy, as needed to run it one step at a time:
+ * the nodes to run, the projections to copy values across, and the nodes that spawn
+ * additional tasks. Subnetworks are expanded into their contents as in
+ * NodeThreadPool.collectNodes(), collectProjections() and collectTasks().
+ *
+ * A plan is a snapshot. It doesn't follow structural changes to the network, so the owner
+ * of a plan (eg a LocalSimulator) should discard it when the network reports a change.
+ * Tasks are the exception, since they can change without any structural change (eg a probe
+ * is added to a subnetwork's simulator). They are collected from the spawners again
+ * each time they are asked for.
+ */
+public class StepPlan {
+
+	private final Node[] myNodes;
+	private final Node[] myLeafNodes;
+	private final Projection[] myProjections;
+	private final TaskSpawner[] mySpawners;
+
+	/**
+	 * @param network Network to flatten
+	 */
+	public StepPlan(Network network) {
+		this(network.getNodes(), network.getProjections());
+	}
+
+	/**
+	 * @param nodes Top-level nodes of a network
+	 * @param projections Top-level projections of a network
+	 */
+	public StepPlan(Node[] nodes, Projection[] projections) {
+		myNodes = NodeThreadPool.collectNodes(nodes, false).toArray(new Node[0]);
+		myLeafNodes = NodeThreadPool.collectNodes(nodes, true).toArray(new Node[0]);
+		myProjections = NodeThreadPool.collectProjections(nodes, projections).toArray(new Projection[0]);
+		mySpawners = NodeThreadPool.collectTaskSpawners(nodes).toArray(new TaskSpawner[0]);
+	}
+
+	/**
+	 * @return Nodes of the network and its subnetworks, with NetworkArrays as single nodes
+	 * 		(the array is shared, so don't change it)
+	 */
+	public Node[] getNodes() {
+		return myNodes;
+	}
+
+	/**
+	 * @return Nodes of the network and its subnetworks, with NetworkArrays broken down into
+	 * 		their ensembles (the array is shared, so don't change it)
+	 */
+	public Node[] getLeafNodes() {
+		return myLeafNodes;
+	}
+
+	/**
+	 * @return Projections of the network and its subnetworks (the array is shared, so don't
+	 * 		change it)
+	 */
+	public Projection[] getProjections() {
+		return myProjections;
+	}
+
+	/**
+	 * @return Current tasks of the nodes in the network and its subnetworks
+	 */
+	public List<ThreadTask> collectTasks() {
+		List<ThreadTask> result = new ArrayList<ThreadTask>(mySpawners.length * 2);
+		for (TaskSpawner spawner : mySpawners) {
+			result.addAll(Arrays.asList(spawner.getTasks()));
+		}
+		return result;
+	}
+
+}
@@ -0,0 +1,319 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "TimeSeriesBuffer.java". Description:
+"Contiguous primitive storage for samples of a time series"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+/*
+ * Created on 17-Oct-2026
+ */
+package ca.nengo.util.impl;
+
+import ca.nengo.model.Units;
+import ca.nengo.util.TimeSeries;
+
+/**
+ * <p>Stores the samples of a time series in one contiguous primitive array (sample by sample),
+ * rather than as an array per sample. Capacity doubles as needed, so that appending is cheap
+ * over long runs.</p>
+ *
+ * <p>Optionally the buffer keeps only samples from a trailing window of time, in which case it
+ * works as a ring buffer and its size levels off once the window is full.</p>
+ */
+public class TimeSeriesBuffer implements java.io.Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private int myInitialCapacity;
+	private int myDimension;
+	private float[] myTimes;
+	private float[] myValues;
+	private int myStart;
+	private int mySize;
+	private float myWindow;
+
+	/**
+	 * @param initialCapacity Number of samples for which space is allocated at first
+	 */
+	public TimeSeriesBuffer(int initialCapacity) {
+		myInitialCapacity = Math.max(1, initialCapacity);
+		myWindow = -1;
+		clear();
+	}
+
+	/**
+	 * @param window Length of time (in seconds) over which samples are kept. Samples older than
+	 * 		this, relative to the latest sample, are dropped. If not positive, all samples are kept.
+	 */
+	public void setWindow(float window) {
+		myWindow = window;
+	}
+
+	/**
+	 * @return Length of time over which samples are kept (not positive if all are kept)
+	 */
+	public float getWindow() {
+		return myWindow;
+	}
+
+	/**
+	 * Discards all samples. Views that have been handed out are not affected.
+	 */
+	public void clear() {
+		myDimension = -1;
+		myTimes = new float[myInitialCapacity];
+		myValues = null;
+		myStart = 0;
+		mySize = 0;
+	}
+
+	/**
+	 * @param time Time of a new sample
+	 * @param values Values of the sample (copied into the buffer). All samples must have the same
+	 * 		dimension.
+	 */
+	public void add(float time, float[] values) {
+		if (myDimension < 0) {
+			myDimension = values.length;
+			myValues = new float[myTimes.length * myDimension];
+		} else if (values.length != myDimension) {
+			throw new IllegalArgumentException("Expected a sample of dimension " + myDimension
+					+ " but got " + values.length);
+		}
+
+		if (myWindow > 0) {
+			while (mySize > 0 && time - myTimes[myStart] > myWindow) {
+				myStart = (myStart + 1) % myTimes.length;
+				mySize--;
+			}
+		}
+		if (mySize == myTimes.length) {
+			grow();
+		}
+
+		int index = (myStart + mySize) % myTimes.length;
+		myTimes[index] = time;
+		System.arraycopy(values, 0, myValues, index * myDimension, myDimension);
+		mySize++;
+	}
+
+	//doubles capacity, unwrapping the ring so that the oldest sample comes first
+	private void grow() {
+		int capacity = myTimes.length * 2;
+		float[] times = new float[capacity];
+		float[] values = new float[capacity * myDimension];
+		int first = Math.min(mySize, myTimes.length - myStart);
+		System.arraycopy(myTimes, myStart, times, 0, first);
+		System.arraycopy(myTimes, 0, times, first, mySize - first);
+		System.arraycopy(myValues, myStart * myDimension, values, 0, first * myDimension);
+		System.arraycopy(myValues, 0, values, first * myDimension, (mySize - first) * myDimension);
+		myTimes = times;
+		myValues = values;
+		myStart = 0;
+	}
+
+	/**
+	 * @return Number of samples in the buffer
+	 */
+	public int size() {
+		return mySize;
+	}
+
+	/**
+	 * @return Dimension of the samples (-1 if there are none yet)
+	 */
+	public int getDimension() {
+		return myDimension;
+	}
+
+	/**
+	 * @param sample Index of a sample (0 is the oldest one in the buffer)
+	 * @return Time of the sample
+	 */
+	public float getTime(int sample) {
+		return myTimes[(myStart + sample) % myTimes.length];
+	}
+
+	/**
+	 * @param sample Index of a sample (0 is the oldest one in the buffer)
+	 * @param dimension Index of a dimension
+	 * @return Value of the sample in the given dimension
+	 */
+	public float getValue(int sample, int dimension) {
+		return myValues[((myStart + sample) % myTimes.length) * myDimension + dimension];
+	}
+
+	/**
+	 * @param name Name of the time series
+	 * @param units Units of each dimension
+	 * @return The samples currently in the buffer, as a TimeSeries. Without a window, this shares
+	 * 		the buffer's storage (later samples are added beyond the view, or in new storage),
+	 * 		and arrays are only built if getTimes() or getValues() are called. With a window,
+	 * 		old samples are overwritten, so the samples are copied.
+	 */
+	public View getView(String name, Units[] units) {
+		View result = new View(name, units, myTimes, myValues, myStart, mySize, Math.max(0, myDimension));
+		if (myWindow > 0) {
+			result.getTimes();
+			result.getValues();
+		}
+		return result;
+	}
+
+	/**
+	 * A TimeSeries that reads samples from the storage of a TimeSeriesBuffer. Individual samples
+	 * can be read without building the arrays that getTimes() and getValues() return.
+	 */
+	public static class View implements TimeSeries {
+
+		private static final long serialVersionUID = 1L;
+
+		private String myName;
+		private Units[] myUnits;
+		private String[] myLabels;
+		private float[] myBufferTimes;
+		private float[] myBufferValues;
+		private int myStart;
+		private int mySize;
+		private int myDimension;
+
+		private float[] myTimes;
+		private float[][] myValues;
+
+		private View(String name, Units[] units, float[] times, float[] values, int start, int size, int dimension) {
+			myName = name;
+			myUnits = units;
+			myBufferTimes = times;
+			myBufferValues = values;
+			myStart = start;
+			mySize = size;
+			myDimension = dimension;
+
+			myLabels = new String[units.length];
+			for (int i = 0; i < myLabels.length; i++) {
+				myLabels[i] = String.valueOf(i+1);
+			}
+		}
+
+		/**
+		 * @return Number of samples
+		 */
+		public int getLength() {
+			return mySize;
+		}
+
+		/**
+		 * @param sample Index of a sample
+		 * @return Time of the sample
+		 */
+		public float getTime(int sample) {
+			if (myTimes != null) {
+				return myTimes[sample];
+			}
+			return myBufferTimes[(myStart + sample) % myBufferTimes.length];
+		}
+
+		/**
+		 * @param sample Index of a sample
+		 * @param dimension Index of a dimension
+		 * @return Value of the sample in the given dimension
+		 */
+		public float getValue(int sample, int dimension) {
+			if (myValues != null) {
+				return myValues[sample][dimension];
+			}
+			return myBufferValues[((myStart + sample) % myBufferTimes.length) * myDimension + dimension];
+		}
+
+		/**
+		 * @see ca.nengo.util.TimeSeries#getName()
+		 */
+		public String getName() {
+			return myName;
+		}
+
+		/**
+		 * @see ca.nengo.util.TimeSeries#getTimes()
+		 */
+		public float[] getTimes() {
+			if (myTimes == null) {
+				float[] times = new float[mySize];
+				for (int i = 0; i < mySize; i++) {
+					times[i] = getTime(i);
+				}
+				myTimes = times;
+			}
+			return myTimes;
+		}
+
+		/**
+		 * @see ca.nengo.util.TimeSeries#getValues()
+		 */
+		public float[][] getValues() {
+			if (myValues == null) {
+				float[][] values = new float[mySize][];
+				for (int i = 0; i < mySize; i++) {
+					values[i] = new float[myDimension];
+					int offset = ((myStart + i) % myBufferTimes.length) * myDimension;
+					System.arraycopy(myBufferValues, offset, values[i], 0, myDimension);
+				}
+				myValues = values;
+			}
+			return myValues;
+		}
+
+		/**
+		 * @see ca.nengo.util.TimeSeries#getDimension()
+		 */
+		public int getDimension() {
+			return myUnits.length;
+		}
+
+		/**
+		 * @see ca.nengo.util.TimeSeries#getUnits()
+		 */
+		public Units[] getUnits() {
+			return myUnits;
+		}
+
+		/**
+		 * @see ca.nengo.util.TimeSeries#getLabels()
+		 */
+		public String[] getLabels() {
+			return myLabels;
+		}
+
+		/**
+		 * @see ca.nengo.util.TimeSeries#clone()
+		 */
+		@Override
+		public TimeSeries clone() throws CloneNotSupportedException {
+			float[][] values = getValues();
+			float[][] valuesCopy = new float[values.length][];
+			for (int i = 0; i < values.length; i++) {
+				valuesCopy[i] = values[i].clone();
+			}
+			TimeSeriesImpl result = new TimeSeriesImpl(getTimes().clone(), valuesCopy, myUnits.clone(), myLabels.clone());
+			result.setName(myName);
+			return result;
+		}
+	}
+}
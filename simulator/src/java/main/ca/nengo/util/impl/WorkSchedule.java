@@ -0,0 +1,171 @@
+package ca.nengo.util.impl;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Distributes a fixed list of work items (eg the nodes of a network) among threads for one phase
+ * of a simulation step. Items are assigned to threads so that the total cost of each thread is
+ * about the same (largest items first, each to the least-loaded thread). Each thread then claims
+ * its own items in order, and a thread that runs out of items takes unclaimed items from the
+ * other threads, so that a poor cost estimate does not leave threads idle.
+ *
+ * Costs can be refined with measured run times (see recordTime(int, long)) and the items
+ * reassigned with rebalance().
+ */
+public class WorkSchedule {
+
+	private static final float ourSmoothing = .1f; //weight of each new measurement
+
+	private final int myNumThreads;
+	private final float[] myCosts;
+	private final boolean[] myMeasured;
+
+	private int[] myOrder; //item indices, grouped by thread
+	private int[] myStarts; //start of each thread's group in myOrder (with an extra entry at the end)
+	private AtomicInteger[] myNext;
+
+	/**
+	 * @param costs Estimated cost of each item (arbitrary units)
+	 * @param numThreads Number of threads among which to divide the items
+	 */
+	public WorkSchedule(float[] costs, int numThreads) {
+		myNumThreads = Math.max(1, numThreads);
+		myCosts = costs.clone();
+		myMeasured = new boolean[costs.length];
+		myNext = new AtomicInteger[myNumThreads];
+		for (int i = 0; i < myNumThreads; i++) {
+			myNext[i] = new AtomicInteger(0);
+		}
+		rebalance();
+	}
+
+	/**
+	 * @return Number of items
+	 */
+	public int getNumItems() {
+		return myCosts.length;
+	}
+
+	/**
+	 * @param thread Index of a thread
+	 * @return Total cost of the items assigned to the thread
+	 */
+	public float getAssignedCost(int thread) {
+		float result = 0;
+		for (int i = myStarts[thread]; i < myStarts[thread+1]; i++) {
+			result += myCosts[myOrder[i]];
+		}
+		return result;
+	}
+
+	/**
+	 * Makes all items available to be claimed again. Must be called before each phase, while
+	 * no thread is claiming items.
+	 */
+	public void reset() {
+		for (int i = 0; i < myNumThreads; i++) {
+			myNext[i].set(myStarts[i]);
+		}
+	}
+
+	/**
+	 * @param thread Index of the calling thread, or -1 if it has no items of its own
+	 * @return Index of the next item that the calling thread should run, or -1 if all items
+	 * 		have been claimed
+	 */
+	public int next(int thread) {
+		if (thread >= 0) {
+			int result = claim(thread);
+			if (result >= 0) {
+				return result;
+			}
+		}
+
+		//steal from other threads, starting with the next one
+		for (int i = 1; i <= myNumThreads; i++) {
+			int victim = (thread + i + myNumThreads) % myNumThreads;
+			int result = claim(victim);
+			if (result >= 0) {
+				return result;
+			}
+		}
+		return -1;
+	}
+
+	private int claim(int thread) {
+		if (myNext[thread].get() >= myStarts[thread+1]) {
+			return -1;
+		}
+		int position = myNext[thread].getAndIncrement();
+		return position < myStarts[thread+1] ? myOrder[position] : -1;
+	}
+
+	/**
+	 * Updates the cost of an item with a measured run time. The first measurement replaces the
+	 * estimate, and later ones are smoothed. Each item should only be timed by the thread that
+	 * runs it.
+	 *
+	 * @param item Index of an item
+	 * @param nanos Time taken to run the item (ns)
+	 */
+	public void recordTime(int item, long nanos) {
+		if (myMeasured[item]) {
+			myCosts[item] += ourSmoothing * (nanos - myCosts[item]);
+		} else {
+			myCosts[item] = nanos;
+			myMeasured[item] = true;
+		}
+	}
+
+	/**
+	 * Reassigns items to threads according to current costs. Must not be called while threads
+	 * are claiming items.
+	 */
+	public void rebalance() {
+		int n = myCosts.length;
+		Integer[] sorted = new Integer[n];
+		for (int i = 0; i < n; i++) {
+			sorted[i] = Integer.valueOf(i);
+		}
+		Arrays.sort(sorted, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return Float.compare(myCosts[b.intValue()], myCosts[a.intValue()]);
+			}
+		});
+
+		//largest first, each to the least-loaded thread
+		int[] assignment = new int[n];
+		int[] counts = new int[myNumThreads];
+		float[] loads = new float[myNumThreads];
+		for (int i = 0; i < n; i++) {
+			int least = 0;
+			for (int j = 1; j < myNumThreads; j++) {
+				if (loads[j] < loads[least]) {
+					least = j;
+				}
+			}
+			int item = sorted[i].intValue();
+			assignment[item] = least;
+			loads[least] += Math.max(myCosts[item], Float.MIN_VALUE);
+			counts[least]++;
+		}
+
+		int[] starts = new int[myNumThreads + 1];
+		for (int j = 0; j < myNumThreads; j++) {
+			starts[j+1] = starts[j] + counts[j];
+		}
+		int[] order = new int[n];
+		int[] fill = starts.clone();
+		for (int i = 0; i < n; i++) { //keeps each thread's items in decreasing order of cost
+			int item = sorted[i].intValue();
+			order[fill[assignment[item]]++] = item;
+		}
+
+		myOrder = order;
+		myStarts = starts;
+		reset();
+	}
+
+}
@@ -25,4 +25,34 @@ public class TestUtil {
 		}
 	}
 
+	/**
+	 * @param n Number of points
+	 * @return n one-dimensional evaluation points, evenly spaced from -1 to 1
+	 */
+	public static float[][] getEvalPoints(int n) {
+		float[][] evalPoints = new float[n][];
+		for (int j = 0; j < n; j++) {
+			evalPoints[j] = new float[]{-1 + 2f * j / (n - 1)};
+		}
+		return evalPoints;
+	}
+
+	/**
+	 * @param evalPoints One-dimensional evaluation points
+	 * @param n Number of tuning curves
+	 * @return Values of n rectified linear tuning curves at the given points, with evenly spaced
+	 * 		intercepts and alternating directions
+	 */
+	public static float[][] getRectifiedValues(float[][] evalPoints, int n) {
+		float[][] values = new float[n][evalPoints.length];
+		for (int i = 0; i < n; i++) {
+			float intercept = -1 + 2f * i / n;
+			float sign = (i % 2 == 0) ? 1 : -1;
+			for (int j = 0; j < evalPoints.length; j++) {
+				values[i][j] = Math.max(0, sign * (evalPoints[j][0] - sign * intercept)) * 100;
+			}
+		}
+		return values;
+	}
+
 }
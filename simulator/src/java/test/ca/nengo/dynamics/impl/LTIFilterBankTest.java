@@ -0,0 +1,86 @@
+package ca.nengo.dynamics.impl;
+
+import ca.nengo.model.Units;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for LTIFilterBank.
+ */
+public class LTIFilterBankTest extends TestCase {
+
+	private LTISystem myFilter;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		//a second-order low-pass filter with unit gain
+		myFilter = CanonicalModel.getRealization(new float[]{0f, 10000f}, new float[]{200f, 10000f}, 0f);
+	}
+
+	public void testIntegrate() throws CloneNotSupportedException {
+		int channels = 5;
+		LTIFilterBank bank = new LTIFilterBank(myFilter, channels);
+		assertEquals(channels, bank.getChannels());
+		assertEquals(2, bank.getOrder());
+		assertEquals(10, bank.getState().length);
+
+		//each channel matches its own filter advanced by the zero-order hold equivalent
+		float dt = .001f;
+		ZeroOrderHold discrete = new ZeroOrderHold(myFilter, dt);
+		float[][] states = new float[channels][2];
+		float[] input = new float[channels];
+		float[] output = new float[channels];
+		for (int step = 0; step < 50; step++) {
+			for (int i = 0; i < channels; i++) {
+				input[i] = (float) Math.sin(i + step * .1);
+			}
+			bank.integrate(input, dt, output);
+			for (int i = 0; i < channels; i++) {
+				float[] x = states[i];
+				float x0 = discrete.getA()[0][0] * x[0] + discrete.getA()[0][1] * x[1] + discrete.getB()[0][0] * input[i];
+				float x1 = discrete.getA()[1][0] * x[0] + discrete.getA()[1][1] * x[1] + discrete.getB()[1][0] * input[i];
+				x[0] = x0;
+				x[1] = x1;
+				float expected = discrete.getC()[0][0] * x0 + discrete.getC()[0][1] * x1;
+				assertEquals(expected, output[i], 1e-5f);
+			}
+		}
+
+		//a clone has its own state
+		LTIFilterBank clone = bank.clone();
+		float[] state = bank.getChannelState(3);
+		clone.integrate(new float[channels], dt, output);
+		assertEquals(state[0], bank.getChannelState(3)[0], 0f);
+		assertEquals(state[1], bank.getChannelState(3)[1], 0f);
+	}
+
+	public void testMatrices() {
+		LTIFilterBank bank = new LTIFilterBank(myFilter, 3);
+		bank.setChannelState(1, new float[]{1f, 2f});
+		float[] u = new float[]{0f, 3f, 0f};
+
+		//block-diagonal matrices agree with f and g
+		float[][] A = bank.getA(0f);
+		float[][] B = bank.getB(0f);
+		float[] dxdt = bank.f(0f, u);
+		for (int j = 0; j < A.length; j++) {
+			float expected = 0;
+			for (int k = 0; k < A.length; k++) {
+				expected += A[j][k] * bank.getState()[k];
+			}
+			for (int i = 0; i < u.length; i++) {
+				expected += B[j][i] * u[i];
+			}
+			assertEquals(expected, dxdt[j], 1e-3f);
+		}
+		assertEquals(myFilter.getA(0f)[1][0], A[3][2], 0f);
+		assertEquals(0f, A[3][0], 0f);
+
+		float[] y = bank.g(0f, u);
+		assertEquals(0f, y[0], 0f);
+		assertEquals(myFilter.getC(0f)[0][0] + 2 * myFilter.getC(0f)[0][1], y[1], 1e-3f);
+		assertEquals(3, bank.getC(0f).length);
+		assertEquals(3, bank.getD(0f).length);
+		assertEquals(Units.UNK, bank.getOutputUnits(2));
+	}
+
+}
@@ -0,0 +1,68 @@
+package ca.nengo.dynamics.impl;
+
+import Jama.Matrix;
+import ca.nengo.model.Units;
+import ca.nengo.model.impl.RealOutputImpl;
+import ca.nengo.model.nef.impl.DecodedTermination;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for ZeroOrderHold.
+ */
+public class ZeroOrderHoldTest extends TestCase {
+
+	public void testExp() {
+		//exponential of a rotation generator is a rotation, even for a large angle
+		double angle = 7;
+		Matrix exp = ZeroOrderHold.exp(new Matrix(new double[][]{new double[]{0, -angle}, new double[]{angle, 0}}));
+		assertEquals(Math.cos(angle), exp.get(0, 0), 1e-12);
+		assertEquals(-Math.sin(angle), exp.get(0, 1), 1e-12);
+		assertEquals(Math.sin(angle), exp.get(1, 0), 1e-12);
+		assertEquals(Math.cos(angle), exp.get(1, 1), 1e-12);
+	}
+
+	public void testDiscretize() {
+		//first-order low-pass filter with unit gain
+		float tau = .005f;
+		float dt = .001f;
+		LTISystem system = new SimpleLTISystem(new float[]{-1f / tau}, new float[][]{new float[]{1f / tau}},
+				new float[][]{new float[]{1f}}, new float[1], new Units[]{Units.UNK});
+		ZeroOrderHold discrete = new ZeroOrderHold(system, dt);
+		assertEquals(dt, discrete.getStep(), 0f);
+		assertEquals(Math.exp(-dt / tau), discrete.getA()[0][0], 1e-6);
+		assertEquals(1 - Math.exp(-dt / tau), discrete.getB()[0][0], 1e-6);
+		assertEquals(1f, discrete.getC()[0][0], 0f);
+		assertEquals(0f, discrete.getD()[0][0], 0f);
+
+		//a double integrator, which has a singular A
+		system = CanonicalModel.getRealization(new float[]{0f, 1f}, new float[]{0f, 0f}, 0f);
+		discrete = new ZeroOrderHold(system, 2f);
+		assertEquals(1f, discrete.getA()[0][0], 1e-6f);
+		assertEquals(2f, discrete.getA()[0][1], 1e-6f);
+		assertEquals(0f, discrete.getA()[1][0], 1e-6f);
+		assertEquals(1f, discrete.getA()[1][1], 1e-6f);
+		assertEquals(2f, discrete.getB()[0][0], 1e-6f);
+		assertEquals(2f, discrete.getB()[1][0], 1e-6f);
+	}
+
+	public void testDecodedTermination() throws Exception {
+		//time constant much shorter than the step: the step response is exact and doesn't oscillate
+		float tau = .0002f;
+		float dt = .001f;
+		LTISystem dynamics = new SimpleLTISystem(new float[]{-1f / tau}, new float[][]{new float[]{1f / tau}},
+				new float[][]{new float[]{1f}}, new float[1], new Units[]{Units.UNK});
+		DecodedTermination termination = new DecodedTermination(null, "test", new float[][]{new float[]{1f}},
+				dynamics, new EulerIntegrator(dt / 10));
+
+		for (int reuse = 0; reuse < 2; reuse++) {
+			termination.setReuseOutputs(reuse == 1);
+			termination.reset(false);
+			for (int step = 1; step <= 5; step++) {
+				termination.setValues(new RealOutputImpl(new float[]{1f}, Units.UNK, 0));
+				termination.run((step - 1) * dt, step * dt);
+				assertEquals(1 - Math.pow(Math.exp(-dt / tau), step), termination.getOutput()[0], 1e-5);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,145 @@
+package ca.nengo.io;
+
+import java.io.File;
+
+import ca.nengo.TestUtil;
+import ca.nengo.math.Function;
+import ca.nengo.math.PDFTools;
+import ca.nengo.math.impl.ConstantFunction;
+import ca.nengo.math.impl.PostfixFunction;
+import ca.nengo.math.impl.WeightedCostApproximator;
+import ca.nengo.model.StructuralException;
+import ca.nengo.model.nef.NEFEnsemble;
+import ca.nengo.model.nef.NEFEnsembleFactory;
+import ca.nengo.model.nef.impl.DecodedOrigin;
+import ca.nengo.model.nef.impl.NEFEnsembleFactoryImpl;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for ArrayCache.
+ */
+public class ArrayCacheTest extends TestCase {
+
+	private File myDirectory;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		myDirectory = new File("./array_cache_test");
+	}
+
+	protected void tearDown() throws Exception {
+		ArrayCache.setDefault(null);
+		File[] files = myDirectory.listFiles();
+		if (files != null) {
+			for (int i = 0; i < files.length; i++) {
+				files[i].delete();
+			}
+		}
+		myDirectory.delete();
+		super.tearDown();
+	}
+
+	public void testRoundTrip() {
+		ArrayCache cache = new ArrayCache(myDirectory, 1000000);
+		float[][] floats = new float[][]{new float[]{1, 2, 3}, new float[0], new float[]{-1.5f}};
+		double[][] doubles = new double[][]{new double[]{Math.PI}, new double[]{1e-300, -2}};
+		cache.put("f", floats);
+		cache.put("d", doubles);
+
+		float[][] f = cache.getFloats("f");
+		assertEquals(floats.length, f.length);
+		for (int i = 0; i < floats.length; i++) {
+			assertEquals(floats[i].length, f[i].length);
+			for (int j = 0; j < floats[i].length; j++) {
+				assertEquals(floats[i][j], f[i][j], 0f);
+			}
+		}
+		double[][] d = new ArrayCache(myDirectory, 1000000).getDoubles("d");
+		assertEquals(doubles.length, d.length);
+		for (int i = 0; i < doubles.length; i++) {
+			for (int j = 0; j < doubles[i].length; j++) {
+				assertEquals(doubles[i][j], d[i][j], 0d);
+			}
+		}
+
+		//wrong type or missing key
+		assertNull(cache.getDoubles("f"));
+		assertNull(cache.getFloats("missing"));
+	}
+
+	public void testEviction() {
+		float[][] matrix = new float[10][10];
+		ArrayCache cache = new ArrayCache(myDirectory, 1000);
+		cache.put("a", matrix);
+		cache.put("b", matrix);
+		assertTrue(cache.contains("a"));
+		assertTrue(cache.contains("b"));
+
+		//"a" is used more recently than "b", so "b" goes first
+		assertNotNull(cache.getFloats("a"));
+		cache.put("c", matrix);
+		assertTrue(cache.contains("a"));
+		assertFalse(cache.contains("b"));
+		assertTrue(cache.contains("c"));
+		assertTrue(cache.getTotalBytes() <= 1000);
+
+		cache.clear();
+		assertEquals(0, cache.getTotalBytes());
+		assertFalse(cache.contains("a"));
+	}
+
+	public void testKey() {
+		float[][] values = new float[][]{new float[]{1, 2}, new float[]{3}};
+		String key = new ArrayCache.Key("test").add("x").add(values).add(2L).getKey();
+		assertEquals(key, new ArrayCache.Key("test").add("x").add(values).add(2L).getKey());
+		assertFalse(key.equals(new ArrayCache.Key("other").add("x").add(values).add(2L).getKey()));
+		assertFalse(key.equals(new ArrayCache.Key("test").add("x").add(values).add(3L).getKey()));
+
+		//row boundaries are part of the key
+		float[][] reshaped = new float[][]{new float[]{1}, new float[]{2, 3}};
+		assertFalse(key.equals(new ArrayCache.Key("test").add("x").add(reshaped).add(2L).getKey()));
+
+		//non-serializable objects can't be keyed
+		assertNull(new ArrayCache.Key("test").addObject(new Object()).getKey());
+	}
+
+	public void testDecoders() {
+		float[][] evalPoints = TestUtil.getEvalPoints(100);
+		float[][] values = TestUtil.getRectifiedValues(evalPoints, 20);
+		Function target = new PostfixFunction("x0^2", 1);
+		Function cost = new ConstantFunction(1, 1f);
+
+		PDFTools.setSeed(1);
+		float[] expected = new WeightedCostApproximator(evalPoints, values, cost, .1f, -1, true).findCoefficients(target);
+
+		ArrayCache cache = new ArrayCache(myDirectory, 1000000);
+		ArrayCache.setDefault(cache);
+		for (int run = 0; run < 2; run++) {
+			PDFTools.setSeed(1);
+			float[] coefficients = new WeightedCostApproximator(evalPoints, values, cost, .1f, -1, true).findCoefficients(target);
+			for (int i = 0; i < expected.length; i++) {
+				assertEquals(expected[i], coefficients[i], 0f);
+			}
+		}
+		assertTrue(cache.getTotalBytes() > 0);
+	}
+
+	public void testEnsemble() throws StructuralException {
+		NEFEnsembleFactory factory = new NEFEnsembleFactoryImpl();
+		PDFTools.setSeed(2);
+		float[][] expected = ((DecodedOrigin) factory.make("a", 50, 1).getOrigin(NEFEnsemble.X)).getDecoders();
+
+		ArrayCache cache = new ArrayCache(myDirectory, 10000000);
+		ArrayCache.setDefault(cache);
+		for (int run = 0; run < 2; run++) {
+			PDFTools.setSeed(2);
+			float[][] decoders = ((DecodedOrigin) factory.make("a", 50, 1).getOrigin(NEFEnsemble.X)).getDecoders();
+			for (int i = 0; i < expected.length; i++) {
+				assertEquals(expected[i][0], decoders[i][0], 0f);
+			}
+		}
+		//activities, Gamma inverse and decoders
+		assertTrue(myDirectory.listFiles().length >= 3);
+	}
+
+}
@@ -0,0 +1,81 @@
+package ca.nengo.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import ca.nengo.model.Units;
+import ca.nengo.util.TimeSeries;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for BinaryTimeSeriesWriter and BinaryTimeSeriesReader.
+ */
+public class BinaryTimeSeriesWriterTest extends TestCase {
+
+	private File myFile;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		myFile = new File("./binary_time_series_test.bin");
+	}
+
+	protected void tearDown() throws Exception {
+		myFile.delete();
+		super.tearDown();
+	}
+
+	public void testRoundTrip() throws IOException {
+		//a small batch, so that frames are written in several batches
+		BinaryTimeSeriesWriter writer = new BinaryTimeSeriesWriter(myFile, new String[]{"a", "b"},
+				new Units[][]{new Units[]{Units.AVU}, new Units[]{Units.mV, Units.UNK}},
+				new String[][]{new String[]{"x"}, new String[]{"y", "z"}}, 64);
+		for (int i = 0; i < 100; i++) {
+			writer.write(i * .001f, new float[][]{new float[]{i}, new float[]{-i, 2*i}});
+		}
+		assertEquals(100, writer.getNumFrames());
+		writer.close();
+
+		try {
+			writer.write(1, new float[][]{new float[]{0}, new float[]{0, 0}});
+			fail("Should have thrown exception after close");
+		} catch (IOException e) {} // exception is expected
+
+		BinaryTimeSeriesReader reader = new BinaryTimeSeriesReader(myFile);
+		assertEquals(2, reader.getNumSeries());
+		assertEquals(100, reader.getLength());
+		assertEquals(.05f, reader.getTime(50), 0f);
+		assertEquals(100f, reader.getValues(50, 1)[1], 0f);
+
+		TimeSeries b = reader.getSeries(1);
+		assertEquals("b", b.getName());
+		assertEquals(2, b.getDimension());
+		assertEquals(Units.mV, b.getUnits()[0]);
+		assertEquals("z", b.getLabels()[1]);
+		assertEquals(100, b.getTimes().length);
+		assertEquals(99 * .001f, b.getTimes()[99], 0f);
+		assertEquals(-99f, b.getValues()[99][0], 0f);
+		assertEquals(198f, b.getValues()[99][1], 0f);
+		assertEquals(7f, reader.getSeries(0).getValues()[7][0], 0f);
+		reader.close();
+	}
+
+	public void testPartialFrame() throws IOException {
+		BinaryTimeSeriesWriter writer = new BinaryTimeSeriesWriter(myFile, new String[]{"a"},
+				new Units[][]{new Units[]{Units.UNK}}, null);
+		writer.write(0, new float[][]{new float[]{1}});
+		writer.write(1, new float[][]{new float[]{2}});
+		writer.close();
+
+		//as if a run had been interrupted while writing
+		RandomAccessFile file = new RandomAccessFile(myFile, "rw");
+		file.setLength(file.length() - 2);
+		file.close();
+
+		BinaryTimeSeriesReader reader = new BinaryTimeSeriesReader(myFile);
+		assertEquals(1, reader.getLength());
+		assertEquals("1", reader.getSeries(0).getLabels()[0]);
+		assertEquals(1f, reader.getSeries(0).getValues()[0][0], 0f);
+		reader.close();
+	}
+}
@@ -2,12 +2,13 @@ package ca.nengo.math.impl;
 
 import ca.nengo.TestUtil;
 import ca.nengo.math.Function;
+import ca.nengo.math.PDFTools;
 import ca.nengo.math.impl.FourierFunction;
 import ca.nengo.math.impl.GradientDescentApproximator;
 import ca.nengo.math.impl.GradientDescentApproximator.Constraints;
 //import ca.nengo.model.Units;
 //import ca.nengo.plot.Plotter;
-//import ca.nengo.util.MU;
+import ca.nengo.util.MU;
 //import ca.nengo.util.impl.TimeSeries1DImpl;
 import junit.framework.TestCase;
 
@@ -129,4 +130,71 @@ public class GradientDescentApproximatorTest extends TestCase {
 		
 	}
 	
+	public void testStepRules() {
+		float[][] evalPoints = TestUtil.getEvalPoints(500);
+		float[][] values = TestUtil.getRectifiedValues(evalPoints, 40);
+		Function target = new PostfixFunction("x0^2", 1);
+		GradientDescentApproximator.Constraints constraints = new GradientDescentApproximator.CoefficientsSameSign(true);
+
+		GradientDescentApproximator approximator = new GradientDescentApproximator(evalPoints, values, constraints, false);
+		float fullMSE = getMSE(approximator, target);
+
+		//mini-batches with momentum, and with Adam steps, do better in fewer iterations
+		PDFTools.setSeed(1);
+		approximator.setBatchSize(50);
+		approximator.setMaxIterations(200);
+		approximator.setStepRule(GradientDescentApproximator.StepRule.MOMENTUM);
+		approximator.setRate(.1f / values.length);
+		assertTrue(getMSE(approximator, target) < fullMSE);
+
+		PDFTools.setSeed(1);
+		approximator.setStepRule(GradientDescentApproximator.StepRule.ADAM);
+		approximator.setRate(.0001f);
+		float[] coefficients = approximator.findCoefficients(target);
+		assertTrue(getMSE(approximator, target) < fullMSE);
+		for (int i = 0; i < coefficients.length; i++) {
+			assertTrue(coefficients[i] >= 0);
+		}
+	}
+
+	public void testParallelAndEarlyStopping() {
+		float[][] evalPoints = TestUtil.getEvalPoints(2000);
+		float[][] values = TestUtil.getRectifiedValues(evalPoints, 100);
+		Function target = new PostfixFunction("x0^2", 1);
+		GradientDescentApproximator.Constraints constraints = new GradientDescentApproximator.CoefficientsSameSign(true);
+
+		//summing gradients over shards in parallel changes only rounding
+		GradientDescentApproximator approximator = new GradientDescentApproximator(evalPoints, values, constraints, false);
+		approximator.setMaxIterations(100);
+		approximator.setNumThreads(1);
+		float[] expected = approximator.findCoefficients(target);
+		approximator.setNumThreads(4);
+		float[] coefficients = approximator.findCoefficients(target);
+		float[] expectedApprox = MU.prod(MU.transpose(values), expected);
+		float[] approx = MU.prod(MU.transpose(values), coefficients);
+		for (int j = 0; j < approx.length; j++) {
+			assertEquals(expectedApprox[j], approx[j], .001f);
+		}
+
+		//without improvement the search stops well before the iteration limit
+		approximator.setMaxIterations(1000000);
+		approximator.setTolerance(0);
+		approximator.setPatience(20);
+		approximator.findCoefficients(target);
+		assertTrue(approximator.getIterations() < 1000000);
+		assertTrue(approximator.getIterations() >= 20);
+	}
+
+	private static float getMSE(GradientDescentApproximator approximator, Function target) {
+		float[] coefficients = approximator.findCoefficients(target);
+		float[] approx = MU.prod(MU.transpose(approximator.getValues()), coefficients);
+		float[][] evalPoints = approximator.getEvalPoints();
+		float sum = 0;
+		for (int j = 0; j < approx.length; j++) {
+			float error = approx[j] - target.map(evalPoints[j]);
+			sum += error * error;
+		}
+		return sum / approx.length;
+	}
+
 }
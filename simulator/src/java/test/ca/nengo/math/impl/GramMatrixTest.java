@@ -0,0 +1,55 @@
+package ca.nengo.math.impl;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for GramMatrix.
+ */
+public class GramMatrixTest extends TestCase {
+
+	public void testCompute() {
+		//sizes that don't divide evenly into tiles and blocks
+		Random random = new Random(1);
+		float[][] values = new float[70][];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = new float[600];
+			for (int k = 0; k < values[i].length; k++) {
+				values[i][k] = random.nextFloat() * 100;
+			}
+		}
+		float[] weights = new float[600];
+		for (int k = 0; k < weights.length; k++) {
+			weights[k] = random.nextFloat();
+		}
+
+		double[][] expected = new double[values.length][values.length];
+		for (int i = 0; i < values.length; i++) {
+			for (int j = 0; j < values.length; j++) {
+				for (int k = 0; k < weights.length; k++) {
+					expected[i][j] += (double) values[i][k] * values[j][k] * weights[k];
+				}
+				expected[i][j] = expected[i][j] / weights.length;
+			}
+		}
+
+		for (int threads = 1; threads <= 3; threads += 2) {
+			checkClose(expected, new GramMatrix(threads, GramMatrix.Precision.DOUBLE).compute(values, weights), 1e-9);
+			checkClose(expected, new GramMatrix(threads, GramMatrix.Precision.FLOAT).compute(values, weights), 1e-5);
+		}
+
+		try {
+			new GramMatrix(0, GramMatrix.Precision.DOUBLE);
+			fail("Should have thrown exception for zero threads");
+		} catch (IllegalArgumentException e) {} // exception is expected
+	}
+
+	private static void checkClose(double[][] expected, double[][] actual, double relativeTolerance) {
+		for (int i = 0; i < expected.length; i++) {
+			for (int j = 0; j < expected.length; j++) {
+				assertEquals(expected[i][j], actual[i][j], relativeTolerance * Math.abs(expected[i][j]));
+			}
+		}
+	}
+}
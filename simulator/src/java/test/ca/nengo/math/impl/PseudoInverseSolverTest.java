@@ -0,0 +1,96 @@
+package ca.nengo.math.impl;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+import Jama.Matrix;
+import ca.nengo.math.PseudoInverseSolver;
+
+/**
+ * Unit tests for the PseudoInverseSolver implementations.
+ */
+public class PseudoInverseSolverTest extends TestCase {
+
+	private double[][] myGamma;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		//a Gram matrix of rank 20
+		Random random = new Random(2);
+		float[][] values = new float[30][200];
+		float[][] basis = new float[20][200];
+		for (int i = 0; i < basis.length; i++) {
+			for (int k = 0; k < basis[i].length; k++) {
+				basis[i][k] = (float) random.nextGaussian();
+			}
+		}
+		for (int i = 0; i < values.length; i++) {
+			for (int b = 0; b < basis.length; b++) {
+				float coefficient = (float) random.nextGaussian();
+				for (int k = 0; k < values[i].length; k++) {
+					values[i][k] += coefficient * basis[b][k];
+				}
+			}
+		}
+		float[] weights = new float[200];
+		java.util.Arrays.fill(weights, 1f);
+		myGamma = new GramMatrix(1, GramMatrix.Precision.DOUBLE).compute(values, weights);
+	}
+
+	public void testEigenMatchesSVD() {
+		SVDPseudoInverseSolver svd = new SVDPseudoInverseSolver();
+		for (int threads = 1; threads <= 3; threads += 2) {
+			EigenPseudoInverseSolver eigen = new EigenPseudoInverseSolver(threads);
+			checkClose(svd.pseudoInverse(myGamma, 1e-6f, -1), eigen.pseudoInverse(myGamma, 1e-6f, -1), 1e-6);
+			checkClose(svd.pseudoInverse(myGamma, 1e-6f, 10), eigen.pseudoInverse(myGamma, 1e-6f, 10), 1e-6);
+		}
+
+		try {
+			new EigenPseudoInverseSolver(1).pseudoInverse(new double[][]{new double[]{1, 2}, new double[]{3, 4}}, 0, -1);
+			fail("Should have thrown exception for non-symmetric matrix");
+		} catch (IllegalArgumentException e) {} // exception is expected
+	}
+
+	public void testCholesky() {
+		float reg = .1f;
+		Matrix regularized = new Matrix(myGamma).plus(Matrix.identity(myGamma.length, myGamma.length).times(reg));
+		double[][] expected = regularized.inverse().getArray();
+		for (int threads = 1; threads <= 3; threads += 2) {
+			checkClose(expected, new CholeskyPseudoInverseSolver(threads).pseudoInverse(myGamma, reg, -1), 1e-8);
+		}
+
+		//indefinite
+		assertNull(new CholeskyPseudoInverseSolver(1).inverse(new double[][]{new double[]{1, 2}, new double[]{2, 1}}, 0));
+	}
+
+	public void testAdaptive() {
+		double[][] nonSymmetric = new double[][]{new double[]{1, 2}, new double[]{3, 4}};
+		PseudoInverseSolver adaptive = new AdaptivePseudoInverseSolver(2, 10);
+		checkClose(new SVDPseudoInverseSolver().pseudoInverse(nonSymmetric, 0, -1), adaptive.pseudoInverse(nonSymmetric, 0, -1), 1e-10);
+
+		//Cholesky is used when there is regularization, and eigendecomposition otherwise
+		checkClose(new CholeskyPseudoInverseSolver(1).pseudoInverse(myGamma, .1f, -1), adaptive.pseudoInverse(myGamma, .1f, -1), 1e-10);
+		checkClose(new EigenPseudoInverseSolver(1).pseudoInverse(myGamma, 0f, -1), adaptive.pseudoInverse(myGamma, 0f, -1), 1e-10);
+		checkClose(new EigenPseudoInverseSolver(1).pseudoInverse(myGamma, .1f, 5), adaptive.pseudoInverse(myGamma, .1f, 5), 1e-10);
+
+		//by default the result is truncated like an SVD, however large the matrix
+		PseudoInverseSolver defaultSolver = new AdaptivePseudoInverseSolver();
+		assertEquals(AdaptivePseudoInverseSolver.NO_CHOLESKY, ((AdaptivePseudoInverseSolver) defaultSolver).getCholeskySize());
+		checkClose(new SVDPseudoInverseSolver().pseudoInverse(myGamma, .1f, -1), defaultSolver.pseudoInverse(myGamma, .1f, -1), 1e-8);
+	}
+
+	private static void checkClose(double[][] expected, double[][] actual, double tolerance) {
+		double scale = 0;
+		for (int i = 0; i < expected.length; i++) {
+			for (int j = 0; j < expected[i].length; j++) {
+				scale = Math.max(scale, Math.abs(expected[i][j]));
+			}
+		}
+		for (int i = 0; i < expected.length; i++) {
+			for (int j = 0; j < expected[i].length; j++) {
+				assertEquals(expected[i][j], actual[i][j], tolerance * scale);
+			}
+		}
+	}
+}
@@ -0,0 +1,74 @@
+package ca.nengo.math.impl;
+
+import ca.nengo.TestUtil;
+import ca.nengo.math.Function;
+import ca.nengo.math.LinearApproximator;
+import ca.nengo.math.PDFTools;
+import ca.nengo.math.PseudoInverseSolver;
+import ca.nengo.model.StructuralException;
+import ca.nengo.model.nef.NEFEnsemble;
+import ca.nengo.model.nef.impl.DecodedOrigin;
+import ca.nengo.model.nef.impl.NEFEnsembleFactoryImpl;
+import ca.nengo.model.nef.impl.NEFEnsembleImpl;
+import ca.nengo.util.MU;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for StreamingCostApproximator.
+ */
+public class StreamingCostApproximatorTest extends TestCase {
+
+	public void testFindCoefficients() {
+		float[][] evalPoints = TestUtil.getEvalPoints(250);
+		float[][] values = TestUtil.getRectifiedValues(evalPoints, 40);
+		Function[] targets = new Function[]{new PostfixFunction("x0^2", 1), new SineFunction(2)};
+
+		//with regularization in place of noise, chunked and whole solves agree
+		PseudoInverseSolver solver = WeightedCostApproximator.getPseudoInverseSolver();
+		try {
+			WeightedCostApproximator.setPseudoInverseSolver(new CholeskyPseudoInverseSolver(1));
+			LinearApproximator whole = new StreamingCostApproximator.Factory(.1f, -1, evalPoints.length)
+				.getApproximator(evalPoints, values);
+			LinearApproximator chunked = new StreamingCostApproximator.Factory(.1f, -1, 60)
+				.getApproximator(evalPoints, values);
+			float[][] expected = whole.findCoefficients(targets);
+			float[][] coefficients = chunked.findCoefficients(targets);
+			for (int d = 0; d < targets.length; d++) {
+				float[] expectedApprox = MU.prod(MU.transpose(values), expected[d]);
+				float[] approx = MU.prod(MU.transpose(values), coefficients[d]);
+				float error = 0;
+				for (int j = 0; j < evalPoints.length; j++) {
+					assertEquals(expectedApprox[j], approx[j], .001f);
+					error += (approx[j] - targets[d].map(evalPoints[j])) * (approx[j] - targets[d].map(evalPoints[j]));
+				}
+				assertTrue(Math.sqrt(error / evalPoints.length) < .1);
+				float[] single = chunked.findCoefficients(targets[d]);
+				for (int i = 0; i < single.length; i++) {
+					assertEquals(coefficients[d][i], single[i], 0f);
+				}
+			}
+		} finally {
+			WeightedCostApproximator.setPseudoInverseSolver(solver);
+		}
+	}
+
+	public void testEnsemble() throws StructuralException {
+		NEFEnsembleFactoryImpl factory = new NEFEnsembleFactoryImpl();
+		factory.setApproximatorFactory(new StreamingCostApproximator.Factory(.1f, -1, 100));
+		PDFTools.setSeed(3);
+		NEFEnsembleImpl ensemble = (NEFEnsembleImpl) factory.make("streaming", 100, 1);
+		DecodedOrigin origin = (DecodedOrigin) ensemble.getOrigin(NEFEnsemble.X);
+		LinearApproximator approximator = ensemble.getDecodingApproximator(origin.getNodeOrigin());
+		assertTrue(approximator instanceof StreamingCostApproximator);
+
+		//decoded estimates of x at the eval points
+		float[][] evalPoints = approximator.getEvalPoints();
+		float[] estimates = MU.prod(MU.transpose(approximator.getValues()), MU.transpose(origin.getDecoders())[0]);
+		float error = 0;
+		for (int j = 0; j < evalPoints.length; j++) {
+			error += (estimates[j] - evalPoints[j][0]) * (estimates[j] - evalPoints[j][0]);
+		}
+		assertTrue(Math.sqrt(error / evalPoints.length) < .05);
+	}
+
+}
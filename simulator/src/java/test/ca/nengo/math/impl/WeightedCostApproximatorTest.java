@@ -6,10 +6,16 @@ package ca.nengo.math.impl;
 import ca.nengo.TestUtil;
 import ca.nengo.math.Function;
 import ca.nengo.math.LinearApproximator;
+import ca.nengo.math.PDFTools;
+import ca.nengo.math.PseudoInverseSolver;
 import ca.nengo.math.impl.ConstantFunction;
 import ca.nengo.math.impl.FourierFunction;
 import ca.nengo.math.impl.WeightedCostApproximator;
+import ca.nengo.model.StructuralException;
 import ca.nengo.model.Units;
+import ca.nengo.model.nef.impl.NEFEnsembleFactoryImpl;
+import ca.nengo.model.nef.impl.NEFEnsembleImpl;
+import ca.nengo.model.neuron.Neuron;
 import ca.nengo.util.MU;
 import ca.nengo.util.impl.TimeSeries1DImpl;
 import Jama.Matrix;
@@ -105,6 +111,176 @@ public class WeightedCostApproximatorTest extends TestCase {
 		
 	}
 	
+	public void testFindCoefficientsBatch() {
+		float[][] evalPoints = TestUtil.getEvalPoints(100);
+		float[][] values = new float[10][evalPoints.length];
+		for (int i = 0; i < values.length; i++) {
+			for (int j = 0; j < evalPoints.length; j++) {
+				values[i][j] = (float) Math.exp(-(evalPoints[j][0] - (i - 5) / 5f) * (evalPoints[j][0] - (i - 5) / 5f) * 4);
+			}
+		}
+		LinearApproximator approximator = new WeightedCostApproximator.Factory(0f, true).getApproximator(evalPoints, values);
+
+		//repeated functions are allowed
+		Function square = new PostfixFunction("x0^2", 1);
+		Function sine = new SineFunction(2);
+		Function[] targets = new Function[]{square, sine, square};
+		float[][] batch = approximator.findCoefficients(targets);
+		assertEquals(3, batch.length);
+		for (int d = 0; d < targets.length; d++) {
+			float[] single = approximator.findCoefficients(targets[d]);
+			for (int i = 0; i < single.length; i++) {
+				assertEquals(single[i], batch[d][i], 0f);
+			}
+		}
+	}
+
+	public void testLowRank() {
+		float[][] evalPoints = TestUtil.getEvalPoints(200);
+		float[][] values = TestUtil.getRectifiedValues(evalPoints, 40);
+		Function target = new PostfixFunction("x0^2", 1);
+		Function cost = new ConstantFunction(1, 1f);
+
+		int lowRankSize = WeightedCostApproximator.getLowRankSize();
+		try {
+			PDFTools.setSeed(1);
+			float[] expected = new WeightedCostApproximator(evalPoints, values, cost, .1f, -1, true).findCoefficients(target);
+
+			//with the full rank, the low-rank solution is the pseudoinverse solution
+			WeightedCostApproximator.setLowRankSize(values.length);
+			PDFTools.setSeed(1);
+			WeightedCostApproximator lowRank = new WeightedCostApproximator(evalPoints, values, cost, .1f, -1, true);
+			float[] coefficients = lowRank.findCoefficients(target);
+			float scale = Math.max(MU.max(expected), -MU.min(expected));
+			for (int i = 0; i < expected.length; i++) {
+				assertEquals(expected[i], coefficients[i], .001f * scale);
+			}
+
+			//with a lower rank, the result is close to that from the largest singular values of GAMMA
+			WeightedCostApproximator.setLowRankSize(Integer.MAX_VALUE);
+			PDFTools.setSeed(1);
+			float[] truncated = new WeightedCostApproximator(evalPoints, values, cost, .1f, 10, true).findCoefficients(target);
+			WeightedCostApproximator.setLowRankSize(values.length);
+			PDFTools.setSeed(1);
+			coefficients = new WeightedCostApproximator(evalPoints, values, cost, .1f, 10, true).findCoefficients(target);
+			float[] expectedApprox = MU.prod(MU.transpose(values), truncated);
+			float[] approx = MU.prod(MU.transpose(values), coefficients);
+			for (int j = 0; j < evalPoints.length; j++) {
+				assertEquals(expectedApprox[j], approx[j], .01f);
+			}
+		} finally {
+			WeightedCostApproximator.setLowRankSize(lowRankSize);
+		}
+	}
+
+	public void testSelectAndAppendValues() {
+		float[][] evalPoints = TestUtil.getEvalPoints(200);
+		//rectified linear tuning curves, with the largest value in the first
+		float[][] values = TestUtil.getRectifiedValues(evalPoints, 40);
+		float[][] first = new float[30][];
+		float[][] rest = new float[10][];
+		int[] indices = new int[first.length];
+		for (int i = 0; i < values.length; i++) {
+			if (i < first.length) {
+				first[i] = values[i];
+				indices[i] = i;
+			} else {
+				rest[i - first.length] = values[i];
+			}
+		}
+		Function target = new PostfixFunction("x0^2", 1);
+		Function cost = new ConstantFunction(1, 1f);
+
+		//the same seed gives the same noise on the first values
+		PseudoInverseSolver solver = WeightedCostApproximator.getPseudoInverseSolver();
+		try {
+			WeightedCostApproximator.setPseudoInverseSolver(new CholeskyPseudoInverseSolver(1));
+			PDFTools.setSeed(1);
+			WeightedCostApproximator all = new WeightedCostApproximator(evalPoints, values, cost, .1f, -1, true);
+			PDFTools.setSeed(1);
+			WeightedCostApproximator some = new WeightedCostApproximator(evalPoints, first, cost, .1f, -1, true);
+			assertTrue(all.isUpdatable());
+
+			WeightedCostApproximator selected = all.selectValues(indices);
+			assertTrue(selected.isUpdatable());
+			assertEquals(first.length, selected.getValues().length);
+			assertSameApproximation(some.findCoefficients(target), selected.findCoefficients(target), first);
+
+			WeightedCostApproximator appended = some.appendValues(rest);
+			assertTrue(appended.isUpdatable());
+			assertEquals(values.length, appended.getValues().length);
+			assertSameApproximation(all.findCoefficients(target), appended.findCoefficients(target), values);
+		} finally {
+			WeightedCostApproximator.setPseudoInverseSolver(solver);
+		}
+	}
+
+	public void testUpdateWithDefaultSolver() {
+		float[][] evalPoints = TestUtil.getEvalPoints(200);
+		float[][] values = TestUtil.getRectifiedValues(evalPoints, 40);
+		int[] indices = new int[values.length - 5];
+		for (int i = 0; i < indices.length; i++) {
+			indices[i] = i;
+		}
+		Function cost = new ConstantFunction(1, 1f);
+
+		//the default inverse is truncated, so an exact one is found for updates
+		WeightedCostApproximator all = new WeightedCostApproximator(evalPoints, values, cost, .1f, -1, true);
+		assertFalse(all.hasUpdateInverse());
+		assertTrue(all.isUpdatable());
+		assertTrue(all.hasUpdateInverse());
+		WeightedCostApproximator changed = all.changeValues(indices, new float[][]{values[0], values[1]});
+		assertTrue(changed.hasUpdateInverse());
+		assertEquals(indices.length + 2, changed.getValues().length);
+		assertTrue(all.selectValues(indices).hasUpdateInverse());
+
+		//keeping all the values shares the inverse
+		int[] same = new int[values.length];
+		for (int i = 0; i < same.length; i++) {
+			same[i] = i;
+		}
+		WeightedCostApproximator selected = all.selectValues(same);
+		assertTrue(selected.hasUpdateInverse());
+		Function target = new PostfixFunction("x0^2", 1);
+		float[] expected = all.findCoefficients(target);
+		float[] coefficients = selected.findCoefficients(target);
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i], coefficients[i], 0f);
+		}
+
+		//with limited nSV the inverse is found again (once)
+		WeightedCostApproximator limited = new WeightedCostApproximator(evalPoints, values, cost, .1f, 10, true);
+		assertFalse(limited.isUpdatable());
+		changed = limited.changeValues(indices, new float[][]{values[0]});
+		assertFalse(changed.hasUpdateInverse());
+		assertEquals(indices.length + 1, changed.getValues().length);
+	}
+
+	public void testEnsembleUpdate() throws StructuralException {
+		NEFEnsembleImpl ensemble = (NEFEnsembleImpl) new NEFEnsembleFactoryImpl().make("test", 50, 1);
+		WeightedCostApproximator before = (WeightedCostApproximator) ensemble.getDecodingApproximator(Neuron.AXON);
+		assertFalse(before.hasUpdateInverse());
+
+		ensemble.setNodeCount(60);
+		WeightedCostApproximator after = (WeightedCostApproximator) ensemble.getDecodingApproximator(Neuron.AXON);
+		assertEquals(60, after.getValues().length);
+		assertTrue(before.hasUpdateInverse());
+		assertTrue(after.hasUpdateInverse());
+
+		ensemble.removeNodes(new int[]{3, 7});
+		after = (WeightedCostApproximator) ensemble.getDecodingApproximator(Neuron.AXON);
+		assertEquals(58, after.getValues().length);
+		assertTrue(after.hasUpdateInverse());
+	}
+
+	private static void assertSameApproximation(float[] expected, float[] coefficients, float[][] values) {
+		float[] expectedApprox = MU.prod(MU.transpose(values), expected);
+		float[] approx = MU.prod(MU.transpose(values), coefficients);
+		for (int j = 0; j < approx.length; j++) {
+			assertEquals(expectedApprox[j], approx[j], .001f);
+		}
+	}
+
 	public static void main(String[] args)
 	{
 		WeightedCostApproximatorTest t = new WeightedCostApproximatorTest();
@@ -10,8 +10,10 @@ import org.apache.log4j.Logger;
 import ca.nengo.TestUtil;
 import ca.nengo.model.InstantaneousOutput;
 import ca.nengo.model.SimulationException;
+import ca.nengo.model.SpikeOutput;
 import ca.nengo.model.StructuralException;
 import ca.nengo.model.Units;
+import ca.nengo.util.impl.LowRankWeightMatrix;
 
 /**
  * Unit tests for LinearExponentialTermination.
@@ -234,6 +236,53 @@ public class LinearExponentialTerminationTest extends TestCase {
         }
     }
 
+    public void testResetWeightsInMatrix()
+    {
+        float[][] left = new float[][]{new float[]{1}, new float[]{2}};
+        float[][] right = new float[][]{new float[]{1, -1}};
+        LowRankWeightMatrix matrix = new LowRankWeightMatrix(left, right);
+        LinearExponentialTermination term = new LinearExponentialTermination(null, "test", new float[2], 0.0f);
+        term.setWeightMatrix(matrix, 1);
+
+        //unsaved changes to the row are undone by reset, as they are with the termination's own weights
+        term.modifyWeights(new float[]{1, 1}, false);
+        term.setWeights(new float[]{5, 5}, false);
+        term.reset(false);
+        assertEquals(2f, term.getWeights()[0], 0f);
+        assertEquals(-2f, term.getWeights()[1], 0f);
+
+        term.setWeights(new float[]{3, 4}, true);
+        term.modifyWeights(new float[]{1, 1}, false);
+        term.reset(false);
+        assertEquals(3f, term.getWeights()[0], 0f);
+        assertEquals(4f, term.getWeights()[1], 0f);
+        assertEquals(1f, matrix.get(0, 0), 0f);
+
+        //a matrix whose rows aren't changed is left as it is
+        LowRankWeightMatrix untouched = new LowRankWeightMatrix(left, right);
+        term.setWeightMatrix(untouched, 0);
+        term.reset(false);
+        assertTrue(untouched.isFactored());
+    }
+
+    public void testSparseSpikes() throws SimulationException {
+        float[] weights = new float[100];
+        boolean[] spikes = new boolean[weights.length];
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = (float) Math.sin(i);
+            spikes[i] = (i % 7 == 3);
+        }
+
+        //spike indices give the same current as the full spike values
+        LinearExponentialTermination sparse = new LinearExponentialTermination(null, "sparse", weights, .01f);
+        LinearExponentialTermination dense = new LinearExponentialTermination(null, "dense", weights, .01f);
+        float[] sparseCurrents = getCurrents(sparse, new SpikeOutputImpl(spikes, Units.SPIKES, 0), .01f, 5);
+        float[] denseCurrents = getCurrents(dense, new DenseSpikeOutput(spikes), .01f, 5);
+        for (int i = 0; i < sparseCurrents.length; i++) {
+            assertEquals(denseCurrents[i], sparseCurrents[i], 0f);
+        }
+    }
+
     private float[] getCurrents(LinearExponentialTermination let, InstantaneousOutput values, float time, int steps)
     throws SimulationException {
         let.setValues(values);
@@ -248,6 +297,39 @@ public class LinearExponentialTerminationTest extends TestCase {
         return currents;
     }
 
+    //a SpikeOutput without spike indices
+    private static class DenseSpikeOutput implements SpikeOutput {
+
+        private static final long serialVersionUID = 1L;
+
+        private boolean[] myValues;
+
+        public DenseSpikeOutput(boolean[] values) {
+            myValues = values;
+        }
+
+        public boolean[] getValues() {
+            return myValues;
+        }
+
+        public Units getUnits() {
+            return Units.SPIKES;
+        }
+
+        public int getDimension() {
+            return myValues.length;
+        }
+
+        public float getTime() {
+            return 0;
+        }
+
+        @Override
+        public SpikeOutput clone() {
+            return new DenseSpikeOutput(myValues.clone());
+        }
+    }
+
     //approximate assertEquals for floats
     private void assertClose(float target, float value, float tolerance) {
         assertTrue(value > target - tolerance && value < target + tolerance);
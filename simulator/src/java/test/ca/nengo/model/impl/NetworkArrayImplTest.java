@@ -0,0 +1,83 @@
+package ca.nengo.model.impl;
+
+import ca.nengo.math.Function;
+import ca.nengo.math.PDFTools;
+import ca.nengo.math.impl.PostfixFunction;
+import ca.nengo.model.Origin;
+import ca.nengo.model.StructuralException;
+import ca.nengo.model.nef.NEFEnsemble;
+import ca.nengo.model.nef.NEFEnsembleFactory;
+import ca.nengo.model.nef.impl.DecodedOrigin;
+import ca.nengo.model.nef.impl.NEFEnsembleFactoryImpl;
+import ca.nengo.model.nef.impl.NEFEnsembleImpl;
+import ca.nengo.model.neuron.Neuron;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for NetworkArrayImpl.
+ */
+public class NetworkArrayImplTest extends TestCase {
+
+	public void testParallelConstruction() throws StructuralException {
+		NEFEnsembleFactory factory = new NEFEnsembleFactoryImpl();
+		PDFTools.setSeed(1);
+		NetworkArrayImpl array = new NetworkArrayImpl("array", 4, factory, 20, 2);
+		assertEquals(4, array.getNodes().length);
+		assertEquals(8, array.getDimension());
+		assertEquals(80, array.getNeurons());
+		assertNotNull(array.getOrigin(NEFEnsemble.X));
+		assertEquals("3", array.getNodes()[3].getName());
+
+		//each element has its own random stream, so the result doesn't depend on threads
+		PDFTools.setSeed(1);
+		NetworkArrayImpl again = new NetworkArrayImpl("again", 4, factory, 20, 2);
+		for (int i = 0; i < 4; i++) {
+			float[][] expected = ((NEFEnsembleImpl) array.getNodes()[i]).getEncoders();
+			float[][] encoders = ((NEFEnsembleImpl) again.getNodes()[i]).getEncoders();
+			for (int j = 0; j < expected.length; j++) {
+				assertEquals(expected[j][0], encoders[j][0], 0f);
+				assertEquals(expected[j][1], encoders[j][1], 0f);
+			}
+		}
+	}
+
+	public void testSharedApproximators() throws StructuralException {
+		NEFEnsembleFactory factory = new NEFEnsembleFactoryImpl();
+		NEFEnsembleImpl[] nodes = new NEFEnsembleImpl[4];
+		for (int i = 0; i < nodes.length; i++) {
+			//the last element differs from the others
+			PDFTools.setSeed(i < 3 ? 2 : 3);
+			nodes[i] = (NEFEnsembleImpl) factory.make(String.valueOf(i), 30, 1);
+		}
+		NetworkArrayImpl array = new NetworkArrayImpl("array", nodes);
+
+		Function square = new PostfixFunction("x0^2", 1);
+		Origin origin = array.addDecodedOrigin("square", new Function[]{square}, Neuron.AXON);
+		assertEquals(4, origin.getDimensions());
+
+		String nodeOrigin = Neuron.AXON;
+		assertSame(nodes[0].getDecodingApproximator(nodeOrigin), nodes[1].getDecodingApproximator(nodeOrigin));
+		assertSame(nodes[0].getDecodingApproximator(nodeOrigin), nodes[2].getDecodingApproximator(nodeOrigin));
+		assertNotSame(nodes[0].getDecodingApproximator(nodeOrigin), nodes[3].getDecodingApproximator(nodeOrigin));
+
+		float[][] expected = ((DecodedOrigin) nodes[0].getOrigin("square")).getDecoders();
+		float[][] shared = ((DecodedOrigin) nodes[2].getOrigin("square")).getDecoders();
+		assertNotSame(expected, shared);
+		for (int j = 0; j < expected.length; j++) {
+			assertEquals(expected[j][0], shared[j][0], 0f);
+		}
+
+		//functions split across elements are decoded separately with the shared approximator
+		Function[] functions = new Function[4];
+		for (int i = 0; i < functions.length; i++) {
+			functions[i] = new PostfixFunction("x0*" + (i + 1), 1);
+		}
+		array.addDecodedOrigin("scaled", functions, nodeOrigin, true);
+		float[][] once = ((DecodedOrigin) nodes[0].getOrigin("scaled")).getDecoders();
+		float[][] twice = ((DecodedOrigin) nodes[1].getOrigin("scaled")).getDecoders();
+		for (int j = 0; j < once.length; j++) {
+			assertEquals(2 * once[j][0], twice[j][0], 1e-4f * Math.abs(once[j][0]) + 1e-6f);
+		}
+	}
+
+}
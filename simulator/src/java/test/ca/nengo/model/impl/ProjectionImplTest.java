@@ -24,6 +24,8 @@ import ca.nengo.model.nef.impl.BiasTermination;
 import ca.nengo.model.nef.impl.DecodedOrigin;
 import ca.nengo.model.nef.impl.DecodedTermination;
 import ca.nengo.model.nef.impl.NEFEnsembleFactoryImpl;
+import ca.nengo.model.nef.impl.NEFEnsembleImpl;
+import ca.nengo.model.neuron.Neuron;
 import ca.nengo.util.DataUtils;
 import ca.nengo.util.MU;
 import ca.nengo.util.Probe;
@@ -62,6 +64,24 @@ public class ProjectionImplTest extends TestCase {
 		assertEquals(myTermination, myProjection.getTermination());
 	}
 
+	public void testGetWeights() throws StructuralException {
+		NEFEnsembleFactory ef = new NEFEnsembleFactoryImpl();
+		NEFEnsemble pre = ef.make("pre", 3, 1);
+		NEFEnsemble post = ef.make("post", 2, 1);
+		float[][] weights = new float[][]{new float[]{1, 2, 3}, new float[]{-1, 0, .5f}};
+		Termination termination = ((NEFEnsembleImpl) post).addTermination("input", weights, .005f, false);
+
+		//the weights are those of the node terminations, as there is no shared matrix
+		Projection projection = new ProjectionImpl(pre.getOrigin(Neuron.AXON), termination, null);
+		float[][] result = projection.getWeights();
+		assertEquals(weights.length, result.length);
+		for (int i = 0; i < weights.length; i++) {
+			for (int j = 0; j < weights[i].length; j++) {
+				assertEquals(weights[i][j], result[i][j], 0f);
+			}
+		}
+	}
+
 //	public void testAddBias() throws StructuralException, SimulationException {
 //		//TODO: transient dominating error calc
 //      //TODO: speed up this test, or something, it takes forever and fails half the time.
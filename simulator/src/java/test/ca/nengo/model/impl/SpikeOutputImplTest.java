@@ -3,6 +3,7 @@
  */
 package ca.nengo.model.impl;
 
+import ca.nengo.model.SparseSpikeOutput;
 import ca.nengo.model.SpikeOutput;
 import ca.nengo.model.Units;
 import ca.nengo.model.impl.SpikeOutputImpl;
@@ -44,4 +45,30 @@ public class SpikeOutputImplTest extends TestCase {
 		assertEquals(1, mySpikeOutput.getDimension());
 	}
 
+	public void testGetSpikeIndices() {
+		int[] indices = ((SparseSpikeOutput) mySpikeOutput).getSpikeIndices();
+		assertEquals(1, indices.length);
+		assertEquals(0, indices[0]);
+
+		SparseSpikeOutput output = new SpikeOutputImpl(new boolean[]{false, true, false, false, true}, Units.SPIKES, 0);
+		indices = output.getSpikeIndices();
+		assertEquals(2, indices.length);
+		assertEquals(1, indices[0]);
+		assertEquals(4, indices[1]);
+		assertEquals(0, new SpikeOutputImpl(new boolean[3], Units.SPIKES, 0).getSpikeIndices().length);
+
+		//indices are recomputed for each output of a buffer
+		SpikeOutputBuffer buffer = new SpikeOutputBuffer(3, Units.SPIKES);
+		buffer.next()[2] = true;
+		assertEquals(2, ((SparseSpikeOutput) buffer.publish(0)).getSpikeIndices()[0]);
+		buffer.next()[1] = true;
+		assertEquals(1, ((SparseSpikeOutput) buffer.publish(1)).getSpikeIndices()[0]);
+		boolean[] values = buffer.next();
+		values[2] = false;
+		values[0] = true;
+		indices = ((SparseSpikeOutput) buffer.publish(2)).getSpikeIndices();
+		assertEquals(1, indices.length);
+		assertEquals(0, indices[0]);
+	}
+
 }
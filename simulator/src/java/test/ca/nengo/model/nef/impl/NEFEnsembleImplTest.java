@@ -3,23 +3,31 @@
  */
 package ca.nengo.model.nef.impl;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+
 import ca.nengo.math.Function;
 import ca.nengo.math.impl.AbstractFunction;
 //import ca.nengo.math.impl.ConstantFunction;
 import ca.nengo.model.Network;
 import ca.nengo.model.Node;
 import ca.nengo.model.Projection;
+import ca.nengo.model.RealOutput;
 import ca.nengo.model.SimulationException;
+import ca.nengo.model.SimulationMode;
 import ca.nengo.model.StructuralException;
 import ca.nengo.model.Units;
 import ca.nengo.model.impl.FunctionInput;
 import ca.nengo.model.impl.NetworkImpl;
+import ca.nengo.model.impl.RealOutputImpl;
 import ca.nengo.model.nef.NEFEnsemble;
 import ca.nengo.model.nef.NEFEnsembleFactory;
 import ca.nengo.model.nef.impl.BiasOrigin;
 //import ca.nengo.model.nef.impl.DecodedOrigin;
 //import ca.nengo.model.nef.impl.DecodedTermination;
 import ca.nengo.model.nef.impl.NEFEnsembleFactoryImpl;
+import ca.nengo.model.neuron.Neuron;
 import ca.nengo.model.neuron.impl.SpikingNeuron;
 import ca.nengo.plot.Plotter;
 import ca.nengo.util.MU;
@@ -292,6 +300,57 @@ public class NEFEnsembleImplTest extends TestCase {
 			fail("Number of dead neurons outside expected range");
 
 	}
+
+	public void testChangeNodes() throws StructuralException {
+		NEFEnsembleFactoryImpl ef = new NEFEnsembleFactoryImpl();
+		NEFEnsembleImpl ensemble = (NEFEnsembleImpl) ef.make("test", 100, 1);
+		Node[] nodes = ensemble.getNodes();
+
+		ensemble.setNodeCount(120);
+		assertEquals(120, ensemble.getNodes().length);
+		assertSame(nodes[99], ensemble.getNodes()[99]);
+		checkDecoding(ensemble);
+
+		ensemble.removeNodes(new int[]{0, 10, 119});
+		assertEquals(117, ensemble.getNodes().length);
+		assertSame(nodes[1], ensemble.getNodes()[0]);
+		assertSame(nodes[11], ensemble.getNodes()[9]);
+		checkDecoding(ensemble);
+
+		ensemble.setNodeCount(50);
+		assertEquals(50, ensemble.getNodes().length);
+		checkDecoding(ensemble);
+
+		Node[] before = ensemble.getNodes();
+		ensemble.removeNodes(new int[0]);
+		assertSame(before, ensemble.getNodes());
+		try {
+			ensemble.removeNodes(new int[]{3, 50});
+			fail("Index out of range should be rejected");
+		} catch (StructuralException e) {
+		}
+		try {
+			ensemble.removeNodes(new int[]{-1});
+			fail("Index out of range should be rejected");
+		} catch (StructuralException e) {
+		}
+		assertEquals(50, ensemble.getNodes().length);
+	}
+
+	//the X origin should decode the eval points closely
+	private static void checkDecoding(NEFEnsembleImpl ensemble) throws StructuralException {
+		float[][] decoders = ((DecodedOrigin) ensemble.getOrigin(NEFEnsemble.X)).getDecoders();
+		assertEquals(ensemble.getNodes().length, decoders.length);
+		float[][] evalPoints = ensemble.getEvalPoints();
+		float[][] rates = ensemble.getConstantOutputs(evalPoints, Neuron.AXON);
+		float[] estimates = MU.prod(MU.transpose(rates), MU.transpose(decoders)[0]);
+		float error = 0;
+		for (int j = 0; j < evalPoints.length; j++) {
+			error += (estimates[j] - evalPoints[j][0]) * (estimates[j] - evalPoints[j][0]);
+		}
+		assertTrue(Math.sqrt(error / evalPoints.length) < .05);
+	}
+
 	private int countDeadNeurons(NEFEnsembleImpl pop)
 	{
 		Node[] neurons = pop.getNodes();
@@ -307,6 +366,128 @@ public class NEFEnsembleImplTest extends TestCase {
 		return numDead;
 	}
 	
+	public void testPopulationEngine() throws StructuralException, SimulationException, CloneNotSupportedException {
+		NEFEnsembleFactoryImpl ef = new NEFEnsembleFactoryImpl();
+		NEFEnsembleImpl reference = (NEFEnsembleImpl) ef.make("objects", 200, 1);
+		reference.addDecodedTermination("input", MU.I(1), .005f, false);
+		NEFEnsembleImpl candidate = reference.clone();
+		candidate.setUsePopulationEngine(true);
+
+		checkSameOutput(reference, candidate, SimulationMode.DEFAULT, 0f);
+		checkSameOutput(reference, candidate, SimulationMode.RATE, 0f);
+	}
+
+	public void testFusedRateMode() throws StructuralException, SimulationException, CloneNotSupportedException {
+		NEFEnsembleFactoryImpl ef = new NEFEnsembleFactoryImpl();
+		NEFEnsembleImpl reference = (NEFEnsembleImpl) ef.make("objects", 100, new float[]{2f});
+		reference.addDecodedTermination("input", MU.I(1), .005f, false);
+		NEFEnsembleImpl candidate = reference.clone();
+		candidate.setUsePopulationEngine(true);
+
+		checkSameOutput(reference, candidate, SimulationMode.RATE, 0f);
+		checkSameOutput(reference, candidate, SimulationMode.CONSTANT_RATE, 0f);
+
+		candidate.setNumParallelChunks(3);
+		checkSameOutput(reference, candidate, SimulationMode.CONSTANT_RATE, 1e-4f);
+	}
+
+	public void testReuseOutputs() throws StructuralException, SimulationException, CloneNotSupportedException {
+		NEFEnsembleFactoryImpl ef = new NEFEnsembleFactoryImpl();
+		NEFEnsembleImpl reference = (NEFEnsembleImpl) ef.make("reference", 100, 1);
+		reference.addDecodedTermination("input", MU.I(1), .005f, false);
+		NEFEnsembleImpl candidate = reference.clone();
+		candidate.setReuseOutputs(true);
+
+		checkSameOutput(reference, candidate, SimulationMode.DEFAULT, 0f);
+		checkSameOutput(reference, candidate, SimulationMode.RATE, 0f);
+
+		candidate.setUsePopulationEngine(true);
+		checkSameOutput(reference, candidate, SimulationMode.DEFAULT, 0f);
+	}
+
+	public void testReuseOutputsAllocation() throws StructuralException, SimulationException {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+			return; //allocation can't be measured on this JVM
+		}
+		com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threads;
+		long thread = Thread.currentThread().getId();
+
+		NEFEnsembleImpl ensemble = (NEFEnsembleImpl) new NEFEnsembleFactoryImpl().make("test", 200, 1);
+		ensemble.addDecodedTermination("input", MU.I(1), .005f, false);
+		ensemble.getTermination("input").setValues(new RealOutputImpl(new float[]{.5f}, Units.UNK, 0));
+		ensemble.setReuseOutputs(true);
+
+		float dt = .001f;
+		int steps = 1000;
+		for (int i = 0; i < 3 * steps; i++) { //until the step is compiled
+			ensemble.run(i * dt, (i + 1) * dt);
+		}
+		long before = bean.getThreadAllocatedBytes(thread);
+		for (int i = 3 * steps; i < 4 * steps; i++) {
+			ensemble.run(i * dt, (i + 1) * dt);
+		}
+		long perStep = (bean.getThreadAllocatedBytes(thread) - before) / steps;
+		assertTrue("Allocated " + perStep + " bytes per step", perStep < 4096);
+	}
+
+	public void testParallelChunks() throws StructuralException, SimulationException, CloneNotSupportedException {
+		NEFEnsembleFactoryImpl ef = new NEFEnsembleFactoryImpl();
+		NEFEnsembleImpl reference = (NEFEnsembleImpl) ef.make("reference", 100, 1);
+		reference.addDecodedTermination("input", MU.I(1), .005f, false);
+		assertEquals(1, reference.getNumParallelChunks()); //by default, one chunk per 1000 neurons
+		NEFEnsembleImpl candidate = reference.clone();
+		candidate.setNumParallelChunks(4);
+
+		checkSameOutput(reference, candidate, SimulationMode.DEFAULT, 1e-4f);
+		checkSameOutput(reference, candidate, SimulationMode.RATE, 1e-4f);
+
+		//the reduction order is fixed, so results repeat exactly for a given number of chunks
+		NEFEnsembleImpl repeat = candidate.clone();
+		checkSameOutput(candidate, repeat, SimulationMode.DEFAULT, 0f);
+
+		candidate.setUsePopulationEngine(true);
+		checkSameOutput(reference, candidate, SimulationMode.DEFAULT, 1e-4f);
+	}
+
+	private static void checkSameOutput(NEFEnsembleImpl reference, NEFEnsembleImpl candidate, SimulationMode mode,
+			float tolerance)
+			throws StructuralException, SimulationException {
+		NEFEnsembleImpl[] ensembles = new NEFEnsembleImpl[]{reference, candidate};
+		for (NEFEnsembleImpl ensemble : ensembles) {
+			ensemble.setMode(mode);
+			ensemble.reset(false);
+			ensemble.collectSpikes(true);
+		}
+
+		float dt = .001f;
+		RealOutput previous = null;
+		float previousValue = 0;
+		for (int i = 0; i < 200; i++) {
+			float[] input = new float[]{(float) Math.sin(i * dt * 10)};
+			for (NEFEnsembleImpl ensemble : ensembles) {
+				ensemble.getTermination("input").setValues(new RealOutputImpl(input, Units.UNK, i * dt));
+				ensemble.run(i * dt, (i+1) * dt);
+			}
+			float[] expected = ((RealOutput) reference.getOrigin(NEFEnsemble.X).getValues()).getValues();
+			RealOutput output = (RealOutput) candidate.getOrigin(NEFEnsemble.X).getValues();
+			assertEquals(expected[0], output.getValues()[0], tolerance);
+
+			//output from the previous step must still be intact
+			if (previous != null) {
+				assertEquals(previousValue, previous.getValues()[0], 0f);
+			}
+			previous = output;
+			previousValue = output.getValues()[0];
+		}
+
+		for (int i = 0; i < reference.getNodeCount(); i++) {
+			float[] expected = reference.getSpikePattern().getSpikeTimes(i);
+			float[] actual = candidate.getSpikePattern().getSpikeTimes(i);
+			assertTrue(Arrays.equals(expected, actual));
+		}
+	}
+
 	public void testAddDecodedSignalOrigin() throws StructuralException
 	{
 		NEFEnsembleFactoryImpl ef = new NEFEnsembleFactoryImpl();
@@ -14,6 +14,7 @@ import ca.nengo.model.StructuralException;
 import ca.nengo.model.Units;
 import ca.nengo.model.impl.RealOutputImpl;
 import ca.nengo.model.neuron.ExpandableSynapticIntegrator;
+import ca.nengo.model.neuron.Neuron;
 import ca.nengo.model.neuron.SpikeGenerator;
 import ca.nengo.model.neuron.impl.LIFSpikeGenerator;
 import ca.nengo.model.neuron.impl.LinearSynapticIntegrator;
@@ -106,4 +107,25 @@ public class SpikingNeuronTest extends TestCase {
 		ourLogger.info(((RealOutput) output).getValues()[0]);
 	}
 
+	public void testGetConstantRates() throws StructuralException, SimulationException {
+		SpikingNeuron neuron = new SpikingNeuron(myIntegrator, myGenerator, 2, .5f, "test");
+		float[] radialInputs = new float[]{-1, 0, .2f, .3f, .7f, 1};
+		float[] rates = new float[radialInputs.length];
+		assertTrue(neuron.getConstantRates(Neuron.AXON, radialInputs, rates));
+		float[] currents = new float[radialInputs.length];
+		assertTrue(neuron.getConstantRates(SpikingNeuron.CURRENT, radialInputs, currents));
+		assertFalse(neuron.getConstantRates("foo", radialInputs, new float[radialInputs.length]));
+
+		//same as running one input at a time
+		neuron.setMode(SimulationMode.CONSTANT_RATE);
+		for (int i = 0; i < radialInputs.length; i++) {
+			neuron.setRadialInput(radialInputs[i]);
+			neuron.run(0, 0);
+			assertEquals(((RealOutput) neuron.getOrigin(Neuron.AXON).getValues()).getValues()[0], rates[i], 0f);
+			assertEquals(((RealOutput) neuron.getOrigin(SpikingNeuron.CURRENT).getValues()).getValues()[0], currents[i], 0f);
+		}
+		assertEquals(0f, rates[0], 0f);
+		assertTrue(rates[5] > rates[4]);
+	}
+
 }
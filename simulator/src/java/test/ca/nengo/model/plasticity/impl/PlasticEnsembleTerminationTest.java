@@ -1,11 +1,18 @@
 package ca.nengo.model.plasticity.impl;
 
 import junit.framework.TestCase;
+import ca.nengo.model.SimulationException;
 import ca.nengo.model.StructuralException;
+import ca.nengo.model.Units;
 import ca.nengo.model.impl.LinearExponentialTermination;
+import ca.nengo.model.impl.RealOutputImpl;
 import ca.nengo.model.nef.impl.NEFEnsembleFactoryImpl;
 import ca.nengo.model.nef.impl.NEFEnsembleImpl;
 import ca.nengo.model.neuron.impl.SpikingNeuron;
+import ca.nengo.util.MU;
+import ca.nengo.util.ThreadTask;
+import ca.nengo.util.impl.LowRankWeightMatrix;
+import ca.nengo.util.impl.NodeThreadPool;
 
 public class PlasticEnsembleTerminationTest extends TestCase {
 
@@ -82,4 +89,71 @@ public class PlasticEnsembleTerminationTest extends TestCase {
             }
         }
     }
+
+    public void testLowRankWeights() throws StructuralException, SimulationException {
+        NEFEnsembleFactoryImpl ef = new NEFEnsembleFactoryImpl();
+        NEFEnsembleImpl c = (NEFEnsembleImpl)ef.make("c", 10, 1);
+        c.addDecodedTermination("error", MU.I(1), 0.005f, true);
+
+        //learning is shared out among several tasks for each termination
+        float[][] encoders = c.getEncoders();
+        float[][] right = new float[][]{new float[]{0.5f, -1.0f, 0.25f}};
+        PESTermination dense;
+        PESTermination lowRank;
+        int numThreads = NodeThreadPool.getNumJavaThreads();
+        try {
+            NodeThreadPool.setNumJavaThreads(3);
+            dense = (PESTermination) c.addPESTermination("dense", MU.prod(encoders, right), 0.005f, false);
+            lowRank = (PESTermination) c.addPESTermination("lowRank",
+                    new LowRankWeightMatrix(encoders, right), 0.005f, false);
+        } finally {
+            NodeThreadPool.setNumJavaThreads(numThreads);
+        }
+        assertTrue(lowRank.getWeightMatrix() instanceof LowRankWeightMatrix);
+        assertSameTransform(dense.getTransform(), lowRank.getTransform());
+        ThreadTask[] tasks = c.getTasks();
+        assertEquals(6, tasks.length);
+
+        //the rank-one update of the right factor gives the same weights as the outer-product update
+        PESTermination[] terms = new PESTermination[]{dense, lowRank};
+        for (int step = 1; step <= 20; step++) {
+            float time = step * 0.001f;
+            for (PESTermination term : terms) {
+                term.setModTermName("error");
+                term.setValues(new RealOutputImpl(new float[]{1, 0.5f, -1}, Units.UNK, time));
+                term.setTerminationState(time);
+                term.setModTerminationState("error", new RealOutputImpl(new float[]{0.2f}, Units.UNK, time), time);
+            }
+            for (ThreadTask task : tasks) {
+                task.reset(false);
+                task.run(time - 0.001f, time);
+            }
+        }
+        float[][] learned = dense.getTransform();
+        assertSameTransform(learned, lowRank.getTransform());
+        assertTrue(learned[0][0] != encoders[0][0] * right[0][0]);
+
+        lowRank.reset(false);
+        assertSameTransform(MU.prod(encoders, right), lowRank.getTransform());
+
+        //Oja smoothing needs the full weights
+        try {
+            lowRank.setOja(true);
+            fail("Oja smoothing can't be used with low-rank weights");
+        } catch (StructuralException e) {} // exception is expected
+        dense.setOja(true);
+        try {
+            dense.setWeightMatrix(new LowRankWeightMatrix(encoders, right));
+            fail("Oja smoothing can't be used with low-rank weights");
+        } catch (StructuralException e) {} // exception is expected
+    }
+
+    private static void assertSameTransform(float[][] expected, float[][] transform) {
+        assertEquals(expected.length, transform.length);
+        for (int i = 0; i < expected.length; i++) {
+            for (int j = 0; j < expected[i].length; j++) {
+                assertEquals(expected[i][j], transform[i][j], 1e-5f);
+            }
+        }
+    }
 }
@@ -0,0 +1,53 @@
+package ca.nengo.sim.impl;
+
+import java.io.File;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+import ca.nengo.io.BinaryTimeSeriesReader;
+import ca.nengo.model.Network;
+import ca.nengo.model.SimulationException;
+import ca.nengo.model.StructuralException;
+import ca.nengo.model.impl.NetworkImpl;
+import ca.nengo.model.nef.NEFEnsemble;
+import ca.nengo.model.nef.NEFEnsembleFactory;
+import ca.nengo.model.nef.impl.NEFEnsembleFactoryImpl;
+import ca.nengo.util.Probe;
+
+/**
+ * Unit tests for WriteToBinarySimulatorListener.
+ */
+public class WriteToBinarySimulatorListenerTest extends TestCase {
+
+	public void testInterval() throws StructuralException, SimulationException, IOException {
+		Network network = new NetworkImpl();
+		NEFEnsembleFactory factory = new NEFEnsembleFactoryImpl();
+		network.addNode(factory.make("a", 20, 2));
+		network.addNode(factory.make("b", 20, 1));
+		File file = new File("testWTBSL.bin");
+
+		Probe probeA = network.getSimulator().addProbe("a", "X", false);
+		Probe probeB = network.getSimulator().addProbe("b", "X", true);
+		WriteToBinarySimulatorListener listener = new WriteToBinarySimulatorListener(file, new Probe[]{probeA, probeB}, .005f);
+		network.getSimulator().addSimulatorListener(listener);
+		network.getSimulator().run(0f, .2f, .001f);
+
+		BinaryTimeSeriesReader reader = new BinaryTimeSeriesReader(file);
+		assertEquals(40, reader.getLength());
+		assertEquals(2, reader.getSeries(0).getDimension());
+		assertEquals(1, reader.getSeries(1).getDimension());
+
+		//the last frame matches the probe's recorded history
+		float[][] recorded = probeB.getData().getValues();
+		assertEquals(recorded[recorded.length-1][0], reader.getSeries(1).getValues()[39][0], 0f);
+		reader.close();
+
+		//a second run overwrites the file (the last interval may be missed due to rounding of step times)
+		network.getSimulator().run(0f, .1f, .001f);
+		reader = new BinaryTimeSeriesReader(file);
+		assertTrue(reader.getLength() == 19 || reader.getLength() == 20);
+		reader.close();
+		assertTrue(file.delete());
+	}
+}
@@ -0,0 +1,126 @@
+package ca.nengo.util.impl;
+
+import ca.nengo.util.MU;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for LowRankWeightMatrix.
+ */
+public class LowRankWeightMatrixTest extends TestCase {
+
+	private float[][] myLeft;
+	private float[][] myRight;
+	private LowRankWeightMatrix myMatrix;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		myLeft = new float[][]{new float[]{1, 0}, new float[]{-1, 2}, new float[]{.5f, .5f}};
+		myRight = new float[][]{new float[]{1, 2, 3, 4}, new float[]{0, -1, 0, 1}};
+		myMatrix = new LowRankWeightMatrix(myLeft, myRight);
+	}
+
+	public void testWeights() {
+		assertEquals(2, myMatrix.getRank());
+		SparseWeightMatrixTest.assertSameWeights(new DenseWeightMatrix(MU.prod(myLeft, myRight)), myMatrix);
+	}
+
+	public void testProducts() {
+		DenseWeightMatrix dense = new DenseWeightMatrix(MU.prod(myLeft, myRight));
+		float[] x = new float[]{.5f, -1, 2, 3};
+		float[] expected = dense.prod(x);
+		float[] result = myMatrix.prod(x);
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i], result[i], 1e-5f);
+			assertEquals(expected[i], myMatrix.dotRow(i, x), 1e-5f);
+		}
+
+		int[] columns = new int[]{1, 3};
+		expected = dense.sumColumns(columns);
+		result = myMatrix.sumColumns(columns);
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i], result[i], 1e-5f);
+			assertEquals(expected[i], myMatrix.sumRow(i, columns), 1e-5f);
+		}
+	}
+
+	public void testExtend() {
+		LowRankWeightMatrix extended = myMatrix.extend(new float[][]{new float[]{1}, new float[]{2}, new float[]{3}});
+		assertEquals(3, extended.getRank());
+		SparseWeightMatrixTest.assertSameWeights(myMatrix, extended);
+
+		//updating the new factor row adds an outer product with the new left column
+		float[] right = new float[]{1, 0, -1, 0};
+		LowRankWeightMatrix copy = extended.clone();
+		extended.addToRight(new float[]{0, 0, 2}, right);
+		for (int i = 0; i < extended.getRows(); i++) {
+			for (int j = 0; j < extended.getColumns(); j++) {
+				assertEquals(myMatrix.get(i, j) + 2 * (i + 1) * right[j], extended.get(i, j), 1e-5f);
+			}
+		}
+
+		//the clone and the original are independent
+		SparseWeightMatrixTest.assertSameWeights(myMatrix, copy);
+		assertEquals(4f, myMatrix.get(0, 3), 0f);
+	}
+
+	public void testRowChanges() {
+		float[][] expected = MU.prod(myLeft, myRight);
+		LowRankWeightMatrix copy = myMatrix.clone();
+
+		//changing a row replaces the factors with the full matrix
+		float[] row = new float[]{1, -1, 1, -1};
+		myMatrix.setRow(1, row);
+		myMatrix.addToRow(2, row);
+		assertFalse(myMatrix.isFactored());
+		expected[1] = row.clone();
+		expected[2] = MU.sum(expected[2], row);
+		SparseWeightMatrixTest.assertSameWeights(new DenseWeightMatrix(expected), myMatrix);
+
+		try {
+			myMatrix.getRank();
+			fail("A matrix that has been made dense has no factors");
+		} catch (IllegalStateException e) {} // exception is expected
+
+		//the clone and the original are independent
+		assertTrue(copy.isFactored());
+		SparseWeightMatrixTest.assertSameWeights(new DenseWeightMatrix(MU.prod(myLeft, myRight)), copy);
+		LowRankWeightMatrix denseCopy = myMatrix.clone();
+		myMatrix.setRow(0, new float[4]);
+		assertEquals(expected[0][0], denseCopy.get(0, 0), 0f);
+	}
+
+	public void testOuterProducts() {
+		float[][] left = new float[10][1];
+		float[][] right = new float[1][10];
+		for (int i = 0; i < 10; i++) {
+			left[i][0] = i;
+			right[0][i] = 10 - i;
+		}
+		LowRankWeightMatrix matrix = new LowRankWeightMatrix(left, right);
+		float[][] expected = MU.prod(left, right);
+
+		//outer products extend the factors while they take less memory than the full matrix ...
+		float[] u = new float[]{1, 2, 3};
+		float[] v = new float[]{1, 0, -1, 0, 1, 0, -1, 0, 1, 0};
+		for (int k = 0; k < 3; k++) {
+			matrix.addOuterProduct(u, v, 2*k, 2*k + 3);
+			for (int i = 0; i < u.length; i++) {
+				expected[2*k + i] = MU.sum(expected[2*k + i], MU.prod(v, u[i]));
+			}
+			assertTrue(matrix.isFactored());
+			assertEquals(k + 2, matrix.getRank());
+			SparseWeightMatrixTest.assertSameWeights(new DenseWeightMatrix(MU.clone(expected)), matrix);
+		}
+
+		//... and then the full matrix is used instead
+		for (int k = 0; k < 3; k++) {
+			matrix.addOuterProduct(u, v, 7, 10);
+			for (int i = 0; i < u.length; i++) {
+				expected[7 + i] = MU.sum(expected[7 + i], MU.prod(v, u[i]));
+			}
+		}
+		assertFalse(matrix.isFactored());
+		SparseWeightMatrixTest.assertSameWeights(new DenseWeightMatrix(expected), matrix);
+	}
+
+}
@@ -0,0 +1,234 @@
+package ca.nengo.util.impl;
+
+import java.util.Arrays;
+
+import ca.nengo.math.Function;
+import ca.nengo.math.PDFTools;
+import ca.nengo.math.impl.GaussianPDF;
+import ca.nengo.math.impl.SineFunction;
+import ca.nengo.model.Network;
+import ca.nengo.model.Node;
+import ca.nengo.model.RealOutput;
+import ca.nengo.model.SimulationException;
+import ca.nengo.model.SimulationMode;
+import ca.nengo.model.StructuralException;
+import ca.nengo.model.Termination;
+import ca.nengo.model.Units;
+import ca.nengo.model.impl.EnsembleTermination;
+import ca.nengo.model.impl.FunctionInput;
+import ca.nengo.model.impl.LinearExponentialTermination;
+import ca.nengo.model.impl.NetworkImpl;
+import ca.nengo.model.impl.NoiseFactory;
+import ca.nengo.model.nef.NEFEnsemble;
+import ca.nengo.model.nef.impl.DecodedOrigin;
+import ca.nengo.model.nef.impl.NEFEnsembleFactoryImpl;
+import ca.nengo.model.nef.impl.NEFEnsembleImpl;
+import ca.nengo.model.neuron.Neuron;
+import ca.nengo.model.neuron.impl.SpikingNeuron;
+import ca.nengo.util.MU;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for NodeThreadPool.
+ */
+public class NodeThreadPoolTest extends TestCase {
+
+	private Network myNetwork;
+	private NEFEnsemble myInputEnsemble;
+	private NEFEnsemble myOutputEnsemble;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		myNetwork = new NetworkImpl();
+		FunctionInput input = new FunctionInput("input", new Function[]{new SineFunction(10)}, Units.UNK);
+		myNetwork.addNode(input);
+
+		NEFEnsembleFactoryImpl ef = new NEFEnsembleFactoryImpl();
+		NEFEnsemble a = ef.make("a", 30, 1);
+		a.addDecodedTermination("input", MU.I(1), .005f, false);
+		myNetwork.addNode(a);
+		myInputEnsemble = a;
+		NEFEnsemble b = ef.make("b", 30, 1);
+		b.addDecodedTermination("input", MU.I(1), .005f, false);
+		myNetwork.addNode(b);
+		myOutputEnsemble = b;
+
+		myNetwork.addProjection(input.getOrigin(FunctionInput.ORIGIN_NAME), a.getTermination("input"));
+		myNetwork.addProjection(a.getOrigin(NEFEnsemble.X), b.getTermination("input"));
+	}
+
+	public void testBarrierTypes() throws SimulationException, StructuralException {
+		int numThreads = NodeThreadPool.getNumJavaThreads();
+		NodeThreadPool.BarrierType barrierType = NodeThreadPool.getBarrierType();
+		try {
+			NodeThreadPool.turnOffMultithreading();
+			float expected = runNetwork();
+
+			NodeThreadPool.setNumJavaThreads(3);
+			NodeThreadPool.BarrierType[] types = NodeThreadPool.BarrierType.values();
+			for (int i = 0; i < types.length; i++) {
+				NodeThreadPool.setBarrierType(types[i]);
+				assertEquals(types[i].toString(), expected, runNetwork(), 0f);
+			}
+		} finally {
+			NodeThreadPool.setNumJavaThreads(numThreads);
+			NodeThreadPool.setBarrierType(barrierType);
+		}
+	}
+
+	public void testCPUBackend() throws SimulationException, StructuralException {
+		int numThreads = NodeThreadPool.getNumJavaThreads();
+		boolean useCPUBackend = NEFCPUInterface.getUseCPUBackend();
+		try {
+			((NEFEnsembleImpl) myInputEnsemble).setUseGPU(true);
+			((NEFEnsembleImpl) myOutputEnsemble).setUseGPU(true);
+			assertTrue(NEFCPUInterface.canRun(myInputEnsemble));
+
+			//in rate mode the backend computes the same values as the neuron objects, for any network
+			myNetwork.setMode(SimulationMode.RATE);
+			NodeThreadPool.turnOffMultithreading();
+			float expected = runNetwork();
+
+			NodeThreadPool.setNumJavaThreads(2);
+			NEFCPUInterface.setUseCPUBackend(true);
+			assertEquals(expected, runNetwork(), .01f);
+
+			myNetwork.setMode(SimulationMode.DEFAULT);
+			myOutputEnsemble.collectSpikes(true);
+			runNetwork();
+			int spikes = 0;
+			for (int i = 0; i < myOutputEnsemble.getNodes().length; i++) {
+				spikes += myOutputEnsemble.getSpikePattern().getSpikeTimes(i).length;
+			}
+			assertTrue(spikes > 0);
+		} finally {
+			NodeThreadPool.setNumJavaThreads(numThreads);
+			NEFCPUInterface.setUseCPUBackend(useCPUBackend);
+		}
+	}
+
+	public void testCPUBackendSeeds() throws Exception {
+		int numThreads = NodeThreadPool.getNumJavaThreads();
+		boolean useCPUBackend = NEFCPUInterface.getUseCPUBackend();
+		try {
+			//PSCs are filtered the same way on both paths, so results agree for any network
+			for (long seed = 1; seed <= 20; seed++) {
+				PDFTools.setSeed(seed);
+				setUp();
+				((NEFEnsembleImpl) myInputEnsemble).setUseGPU(true);
+				((NEFEnsembleImpl) myOutputEnsemble).setUseGPU(true);
+				myNetwork.setMode(SimulationMode.RATE);
+
+				NodeThreadPool.turnOffMultithreading();
+				NEFCPUInterface.setUseCPUBackend(false);
+				float expected = runNetwork();
+
+				NodeThreadPool.setNumJavaThreads(2);
+				NEFCPUInterface.setUseCPUBackend(true);
+				float actual = runNetwork();
+				assertEquals("seed " + seed, expected, actual, 1e-5f);
+			}
+		} finally {
+			NodeThreadPool.setNumJavaThreads(numThreads);
+			NEFCPUInterface.setUseCPUBackend(useCPUBackend);
+		}
+	}
+
+	public void testRandomStreams() throws Exception {
+		int numThreads = NodeThreadPool.getNumJavaThreads();
+		try {
+			NodeThreadPool.turnOffMultithreading();
+			float expected = runNoisyNetwork(1);
+
+			//same seed, same result, however nodes are distributed among threads
+			for (int threads = 1; threads <= 3; threads++) {
+				NodeThreadPool.setNumJavaThreads(threads);
+				assertEquals(expected, runNoisyNetwork(1), 0f);
+			}
+
+			assertTrue(expected != runNoisyNetwork(2));
+		} finally {
+			NodeThreadPool.setNumJavaThreads(numThreads);
+		}
+	}
+
+	public void testStochasticSynapses() throws Exception {
+		int numThreads = NodeThreadPool.getNumJavaThreads();
+		try {
+			NodeThreadPool.turnOffMultithreading();
+			float expected = runStochasticNetwork(1);
+
+			//release draws are made while projections run, which threads share out differently
+			for (int threads = 1; threads <= 3; threads++) {
+				NodeThreadPool.setNumJavaThreads(threads);
+				assertEquals(expected, runStochasticNetwork(1), 0f);
+			}
+		} finally {
+			NodeThreadPool.setNumJavaThreads(numThreads);
+		}
+	}
+
+	public void testParallelChunks() throws Exception {
+		int numThreads = NodeThreadPool.getNumJavaThreads();
+		try {
+			NodeThreadPool.turnOffMultithreading();
+			float expected = runChunkedNetwork(1);
+
+			//chunks are shared out among the pool's threads, with the same random streams
+			for (int threads = 1; threads <= 3; threads++) {
+				NodeThreadPool.setNumJavaThreads(threads);
+				assertEquals(expected, runChunkedNetwork(1), 0f);
+			}
+		} finally {
+			NodeThreadPool.setNumJavaThreads(numThreads);
+		}
+	}
+
+	private float runChunkedNetwork(long seed) throws Exception {
+		PDFTools.setSeed(seed);
+		setUp();
+		for (NEFEnsemble ensemble : new NEFEnsemble[]{myInputEnsemble, myOutputEnsemble}) {
+			((NEFEnsembleImpl) ensemble).setNumParallelChunks(4);
+			for (Node node : ensemble.getNodes()) {
+				((SpikingNeuron) node).setNoise(NoiseFactory.makeRandomNoise(1000, new GaussianPDF(0, .5f)));
+			}
+		}
+		return runNetwork();
+	}
+
+	private float runStochasticNetwork(long seed) throws Exception {
+		PDFTools.setSeed(seed);
+		setUp();
+		float[][] weights = new float[myOutputEnsemble.getNodes().length][myInputEnsemble.getNodes().length];
+		for (int i = 0; i < weights.length; i++) {
+			Arrays.fill(weights[i], .05f);
+		}
+		EnsembleTermination synapses = (EnsembleTermination) ((NEFEnsembleImpl) myOutputEnsemble)
+				.addTermination("synapses", weights, .005f, false);
+		for (Termination termination : synapses.getNodeTerminations()) {
+			float[] probabilities = new float[weights[0].length];
+			Arrays.fill(probabilities, .5f);
+			((LinearExponentialTermination) termination).setWeightProbabilities(probabilities);
+		}
+		myNetwork.addProjection(myInputEnsemble.getOrigin(Neuron.AXON), synapses);
+		return runNetwork();
+	}
+
+	//builds the network from scratch, since noise and neuron parameters are random too
+	private float runNoisyNetwork(long seed) throws Exception {
+		PDFTools.setSeed(seed);
+		setUp();
+		DecodedOrigin origin = (DecodedOrigin) myInputEnsemble.getOrigin(NEFEnsemble.X);
+		origin.setNoise(NoiseFactory.makeRandomNoise(1000, new GaussianPDF(0, .5f)));
+		return runNetwork();
+	}
+
+	private float runNetwork() throws SimulationException, StructuralException {
+		myNetwork.reset(false);
+		myNetwork.run(0, .1f);
+		return ((RealOutput) myOutputEnsemble.getOrigin(NEFEnsemble.X).getValues()).getValues()[0];
+	}
+
+}
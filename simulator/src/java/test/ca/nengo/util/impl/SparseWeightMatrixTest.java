@@ -0,0 +1,96 @@
+package ca.nengo.util.impl;
+
+import ca.nengo.util.WeightMatrix;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for SparseWeightMatrix.
+ */
+public class SparseWeightMatrixTest extends TestCase {
+
+	private float[][] myValues;
+	private SparseWeightMatrix myMatrix;
+	private DenseWeightMatrix myDense;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		myValues = new float[][]{
+				new float[]{1, 0, 2, 0, 0},
+				new float[]{0, 0, 0, 0, 0},
+				new float[]{0, -3, 0, 4, 5},
+				new float[]{6, 0, 0, 0, 7}};
+		myMatrix = new SparseWeightMatrix(myValues);
+		myDense = new DenseWeightMatrix(myValues);
+	}
+
+	public void testStructure() {
+		assertEquals(4, myMatrix.getRows());
+		assertEquals(5, myMatrix.getColumns());
+		assertEquals(7, myMatrix.getSynapseCount());
+		assertSameWeights(myDense, myMatrix);
+
+		SparseWeightMatrix explicit = new SparseWeightMatrix(5, new int[]{0, 2, 2, 5, 7},
+				new int[]{0, 2, 1, 3, 4, 0, 4}, new float[]{1, 2, -3, 4, 5, 6, 7});
+		assertSameWeights(myDense, explicit);
+
+		try {
+			new SparseWeightMatrix(5, new int[]{0, 2}, new int[]{2, 0}, new float[]{1, 1});
+			fail("Columns must be ascending");
+		} catch (IllegalArgumentException e) {} // exception is expected
+	}
+
+	public void testProducts() {
+		float[] x = new float[]{.5f, -1, 2, 3, -.25f};
+		float[] expected = myDense.prod(x);
+		float[] result = myMatrix.prod(x);
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i], result[i], 1e-6f);
+			assertEquals(expected[i], myMatrix.dotRow(i, x), 1e-6f);
+		}
+
+		int[] columns = new int[]{0, 3, 4};
+		expected = myDense.sumColumns(columns);
+		result = myMatrix.sumColumns(columns);
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i], result[i], 0f);
+			assertEquals(expected[i], myMatrix.sumRow(i, columns), 0f);
+		}
+	}
+
+	public void testUpdates() {
+		//weights of non-synapses stay at zero
+		myMatrix.setRow(0, new float[]{1, 1, 1, 1, 1});
+		assertEquals(1f, myMatrix.get(0, 2), 0f);
+		assertEquals(0f, myMatrix.get(0, 1), 0f);
+
+		myMatrix.addToRow(2, new float[]{1, 1, 1, 1, 1});
+		assertEquals(-2f, myMatrix.get(2, 1), 0f);
+		assertEquals(0f, myMatrix.get(2, 0), 0f);
+
+		WeightMatrix copy = myMatrix.clone();
+		myMatrix.addOuterProduct(new float[]{2, 3}, new float[]{1, 1, 1, 1, 1}, 2, 4);
+		assertEquals(-2f + 2f, myMatrix.get(2, 1), 0f);
+		assertEquals(7f + 3f, myMatrix.get(3, 4), 0f);
+		assertEquals(0f, myMatrix.get(3, 1), 0f);
+		assertEquals(1f, myMatrix.get(0, 0), 0f);
+
+		//the clone is independent
+		assertEquals(-2f, copy.get(2, 1), 0f);
+		assertEquals(7f, copy.get(3, 4), 0f);
+	}
+
+	static void assertSameWeights(WeightMatrix expected, WeightMatrix matrix) {
+		assertEquals(expected.getRows(), matrix.getRows());
+		assertEquals(expected.getColumns(), matrix.getColumns());
+		float[][] array = matrix.toArray();
+		for (int i = 0; i < expected.getRows(); i++) {
+			float[] row = matrix.getRow(i);
+			for (int j = 0; j < expected.getColumns(); j++) {
+				assertEquals(expected.get(i, j), matrix.get(i, j), 1e-5f);
+				assertEquals(expected.get(i, j), row[j], 1e-5f);
+				assertEquals(expected.get(i, j), array[i][j], 1e-5f);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,80 @@
+package ca.nengo.util.impl;
+
+import java.util.Arrays;
+
+import ca.nengo.model.Node;
+import ca.nengo.model.Projection;
+import ca.nengo.model.SimulationException;
+import ca.nengo.model.StructuralException;
+import ca.nengo.model.impl.NetworkImpl;
+import ca.nengo.model.nef.NEFEnsemble;
+import ca.nengo.model.nef.impl.NEFEnsembleFactoryImpl;
+import ca.nengo.sim.impl.LocalSimulator;
+import ca.nengo.util.MU;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for StepPlan.
+ */
+public class StepPlanTest extends TestCase {
+
+	private NetworkImpl myNetwork;
+	private NetworkImpl mySubnetwork;
+	private NEFEnsembleFactoryImpl myFactory;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		myFactory = new NEFEnsembleFactoryImpl();
+		myNetwork = new NetworkImpl();
+		NEFEnsemble a = myFactory.make("a", 10, 1);
+		myNetwork.addNode(a);
+
+		mySubnetwork = new NetworkImpl();
+		mySubnetwork.setName("sub");
+		NEFEnsemble b = myFactory.make("b", 10, 1);
+		mySubnetwork.addNode(b);
+		NEFEnsemble c = myFactory.make("c", 10, 1);
+		c.addDecodedTermination("input", MU.I(1), .005f, false);
+		mySubnetwork.addNode(c);
+		mySubnetwork.addProjection(b.getOrigin(NEFEnsemble.X), c.getTermination("input"));
+		myNetwork.addNode(mySubnetwork);
+	}
+
+	public void testFlatten() {
+		StepPlan plan = new StepPlan(myNetwork);
+		Node[] nodes = myNetwork.getNodes();
+		Projection[] projections = myNetwork.getProjections();
+
+		assertEquals(NodeThreadPool.collectNodes(nodes, false), Arrays.asList(plan.getNodes()));
+		assertEquals(NodeThreadPool.collectNodes(nodes, true), Arrays.asList(plan.getLeafNodes()));
+		assertEquals(3, plan.getLeafNodes().length);
+		assertEquals(NodeThreadPool.collectProjections(nodes, projections), Arrays.asList(plan.getProjections()));
+		assertEquals(1, plan.getProjections().length);
+	}
+
+	public void testCaching() throws StructuralException, SimulationException {
+		LocalSimulator simulator = (LocalSimulator) myNetwork.getSimulator();
+		StepPlan plan = simulator.getStepPlan();
+		assertSame(plan, simulator.getStepPlan());
+
+		//probes change the tasks but not the structure
+		assertEquals(0, plan.collectTasks().size());
+		mySubnetwork.getSimulator().addProbe("c", NEFEnsemble.X, true);
+		assertEquals(1, plan.collectTasks().size());
+		assertSame(plan, simulator.getStepPlan());
+
+		//a change in a subnetwork reaches the simulator of the top-level network
+		mySubnetwork.addNode(myFactory.make("d", 10, 1));
+		StepPlan changed = simulator.getStepPlan();
+		assertNotSame(plan, changed);
+		assertEquals(4, changed.getLeafNodes().length);
+		assertSame(changed, simulator.getStepPlan());
+
+		//the rebuilt plan is still listening
+		mySubnetwork.removeNode("d");
+		assertEquals(3, simulator.getStepPlan().getLeafNodes().length);
+	}
+
+}
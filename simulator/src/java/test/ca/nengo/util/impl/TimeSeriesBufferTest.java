@@ -0,0 +1,69 @@
+package ca.nengo.util.impl;
+
+import ca.nengo.model.Units;
+import ca.nengo.util.TimeSeries;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for TimeSeriesBuffer.
+ */
+public class TimeSeriesBufferTest extends TestCase {
+
+	public void testGrowth() {
+		TimeSeriesBuffer buffer = new TimeSeriesBuffer(2);
+		for (int i = 0; i < 100; i++) {
+			buffer.add(i, new float[]{i, -i});
+		}
+		assertEquals(100, buffer.size());
+		assertEquals(2, buffer.getDimension());
+		assertEquals(37f, buffer.getTime(37), 0f);
+		assertEquals(-37f, buffer.getValue(37, 1), 0f);
+
+		try {
+			buffer.add(100, new float[]{1});
+			fail("Should have thrown exception for wrong dimension");
+		} catch (IllegalArgumentException e) {} // exception is expected
+	}
+
+	public void testView() throws CloneNotSupportedException {
+		TimeSeriesBuffer buffer = new TimeSeriesBuffer(4);
+		buffer.add(0, new float[]{1});
+		buffer.add(1, new float[]{2});
+		Units[] units = new Units[]{Units.UNK};
+		TimeSeriesBuffer.View view = buffer.getView("test", units);
+
+		//samples added later, and clearing, don't change a view that was already handed out
+		for (int i = 2; i < 10; i++) {
+			buffer.add(i, new float[]{i+1});
+		}
+		buffer.clear();
+		buffer.add(0, new float[]{5});
+
+		assertEquals(2, view.getLength());
+		assertEquals(2f, view.getValue(1, 0), 0f);
+		assertEquals(2, view.getTimes().length);
+		assertEquals(1f, view.getValues()[0][0], 0f);
+		assertEquals("test", view.getName());
+
+		TimeSeries copy = view.clone();
+		assertEquals(2f, copy.getValues()[1][0], 0f);
+	}
+
+	public void testWindow() {
+		TimeSeriesBuffer buffer = new TimeSeriesBuffer(2);
+		buffer.setWindow(10);
+		for (int i = 0; i < 1000; i++) {
+			buffer.add(i, new float[]{i});
+		}
+
+		//samples within the window of the last one are kept
+		assertEquals(11, buffer.size());
+		assertEquals(989f, buffer.getValue(0, 0), 0f);
+		assertEquals(999f, buffer.getValue(10, 0), 0f);
+
+		TimeSeries view = buffer.getView("test", new Units[]{Units.UNK});
+		buffer.add(1000, new float[]{1000});
+		assertEquals(989f, view.getValues()[0][0], 0f);
+		assertEquals(999f, view.getValues()[10][0], 0f);
+	}
+}
@@ -0,0 +1,50 @@
+package ca.nengo.util.impl;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for WorkSchedule.
+ */
+public class WorkScheduleTest extends TestCase {
+
+	public void testBalance() {
+		float[] costs = new float[]{1, 1, 10, 1, 1, 1, 1, 1, 1, 1, 1};
+		WorkSchedule schedule = new WorkSchedule(costs, 2);
+		assertEquals(10f, schedule.getAssignedCost(0), .0001f);
+		assertEquals(10f, schedule.getAssignedCost(1), .0001f);
+
+		//measured times replace estimates
+		for (int i = 0; i < costs.length; i++) {
+			schedule.recordTime(i, i == 0 ? 20 : 1);
+		}
+		schedule.rebalance();
+		assertEquals(20f, Math.max(schedule.getAssignedCost(0), schedule.getAssignedCost(1)), .0001f);
+	}
+
+	public void testNext() {
+		WorkSchedule schedule = new WorkSchedule(new float[]{5, 4, 3, 2, 1}, 2);
+
+		//one thread takes its own items first, largest first, and then takes the others'
+		boolean[] claimed = new boolean[5];
+		int item;
+		int count = 0;
+		while ((item = schedule.next(0)) >= 0) {
+			assertFalse(claimed[item]);
+			claimed[item] = true;
+			if (count++ == 0) {
+				assertEquals(0, item);
+			}
+		}
+		assertEquals(5, count);
+		assertEquals(-1, schedule.next(1));
+
+		//everything is available again after a reset
+		schedule.reset();
+		count = 0;
+		while (schedule.next(1) >= 0) {
+			count++;
+		}
+		assertEquals(5, count);
+	}
+
+}